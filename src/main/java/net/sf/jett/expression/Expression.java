@@ -3,18 +3,12 @@ package net.sf.jett.expression;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlContext;
-import org.apache.commons.jexl3.JexlEngine;
-import org.apache.commons.jexl3.JexlException;
-import org.apache.commons.jexl3.JexlScript;
+import org.apache.commons.jexl3.JexlExpression;
 import org.apache.commons.jexl3.parser.ASTIdentifier;
 import org.apache.commons.jexl3.parser.ASTMethodNode;
 import org.apache.commons.jexl3.parser.ASTNumberLiteral;
@@ -27,7 +21,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.poi.ss.usermodel.CreationHelper;
 import org.apache.poi.ss.usermodel.RichTextString;
 
-import net.sf.jett.exception.ParseException;
 import net.sf.jett.formula.Formula;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.util.FormulaUtil;
@@ -46,14 +39,6 @@ public class Expression
 {
     private static final Logger logger = LogManager.getLogger();
 
-    /**
-     * Contains a cache of collection names found in expression texts.  If it is
-     * known that there are no collection names, then the value will be an empty
-     * String, to distinguish from the case in which the result is not known
-     * yet, in which case the result is <code>null</code>.
-     */
-    private static final Map<String, String> MAP_EXPRESSION_TO_COLL_NAMES = new HashMap<>();
-
     /**
      * This pattern makes sure that there is no backslash in front of an
      * expression that is due to be replaced with the result of its evaluation.
@@ -71,6 +56,7 @@ public class Expression
     public static final String END_EXPR = "}";
 
     private String myExpression;
+    private volatile Compiled myCompiled;
 
     /**
      * Create an <code>Expression</code>.
@@ -81,6 +67,26 @@ public class Expression
         myExpression = expression;
     }
 
+    /**
+     * Returns the compiled <code>JexlExpression</code>, compiling it with the
+     * given <code>ExpressionFactory</code> the first time.  It is compiled
+     * again only if a different <code>ExpressionFactory</code> is used.
+     * @param factory An <code>ExpressionFactory</code>.
+     * @return The compiled <code>JexlExpression</code>.
+     * @since 0.12.0
+     */
+    private JexlExpression getJexlExpression(ExpressionFactory factory)
+    {
+        // One volatile read, so the factory and expression always match.
+        Compiled compiled = myCompiled;
+        if (compiled == null || compiled.myFactory != factory)
+        {
+            compiled = new Compiled(factory, factory.createExpression(myExpression));
+            myCompiled = compiled;
+        }
+        return compiled.myJexlExpression;
+    }
+
     /**
      * Evaluate this <code>Expression</code> using the given <code>Map</code> of
      * beans as a context.
@@ -94,7 +100,7 @@ public class Expression
         if (beans != null && !beans.isEmpty())
         {
             JexlContext context = new ClassAwareMapContext(beans);
-            return factory.createExpression(myExpression).evaluate(context);
+            return getJexlExpression(factory).evaluate(context);
         }
         return myExpression;
     }
@@ -157,9 +163,12 @@ public class Expression
                 continue;
             }
 
-// Evaluate the current prefix against beans/context.
-            Expression expr = new Expression(collectionName);
-            Object result = expr.evaluate(factory, beans);
+// Evaluate the current prefix against beans/context.  Don't report errors
+// for some identifiers that depend on implicit processing to be a legal
+// expression, e.g. a property access on a List meant to be a property access
+// on an element of the List.
+            Object result = (beans == null || beans.isEmpty()) ? collectionName :
+                    factory.createLenientExpression(collectionName).evaluate(new ClassAwareMapContext(beans));
 
             if (result instanceof Collection) {
 // If there is a "next" segment, check if it's a side-effect-free,
@@ -234,67 +243,50 @@ public class Expression
         
         final String expression = myExpression;
 
-        // 1) Try cache first.
-        final String cached = MAP_EXPRESSION_TO_COLL_NAMES.get(expression);
+        // 1) Try cache first.  It belongs to this transformation's context.
+        final Map<String, String> exprToCollNames = context.getExpressionToCollNamesMap();
+        final String cached = exprToCollNames.get(expression);
         if (cached != null) {
             // Preserve your original return contract:
             // empty string was cached when no collection was found => return null to caller.
             return cached.isEmpty() ? null : cached;
         }
 
-        // 2) Parse using the public JEXL 3 API (no direct Parser/SimpleNode usage).
-        //    Any syntax error will throw JexlException.Parsing.
-        final JexlEngine jexl = context.getExpressionFactory().createJexlEngine();/*  new JexlBuilder()
-                .cache(512)      // tune as you like
-                .silent(true)    // optional
-                .debug(false)    // optional
-                .strict(false)
-                .permissions(...)
-                .create();*/
-        try {
-            // Compile the expression to a script:
-            final JexlScript script = jexl.createScript(expression);
-
-            // 3) Ask JEXL for all variables referenced by the script.
-            //    Each variable is a path like ["foo","bar","baz"] for foo.bar.baz
-            final Set<List<String>> variables = script.getVariables();
-            if (variables != null) {
-                for (List<String> refPath : variables) {
-                    logger.trace("  Reference path: {}", refPath);
-                    // Replace your old AST-based finder with a path-based one:
-                    final String collectionName = findCollectionName(refPath, beans, context);
-                    if (collectionName != null) {
-                        MAP_EXPRESSION_TO_COLL_NAMES.put(expression, collectionName);
-                        return collectionName;
-                    }
-                }
+        // 2) Ask the factory for all variables referenced by the expression.
+        //    Each variable is a path like ["foo","bar","baz"] for foo.bar.baz.
+        //    The factory parses each distinct expression text only once, with
+        //    its own engine, and throws a ParseException on a syntax error.
+        final Set<List<String>> variables = context.getExpressionFactory().getVariables(expression);
+        for (List<String> refPath : variables) {
+            logger.trace("  Reference path: {}", refPath);
+            // 3) Only the bean-dependent collection resolution runs per transform.
+            final String collectionName = findCollectionName(refPath, beans, context);
+            if (collectionName != null) {
+                exprToCollNames.put(expression, collectionName);
+                return collectionName;
             }
-        } catch (JexlException.Parsing e) {
-            // 4) Map JEXL 3 parsing errors to your domain exception type.
-            throw new ParseException(
-                "JEXL parse error in expression \"" + expression + "\": " + e.getMessage(), e);
         }
 
-        // 5) No collection reference was found: cache sentinel "" and return null (same as before).
-        MAP_EXPRESSION_TO_COLL_NAMES.put(expression, "");
+        // 4) No collection reference was found: cache sentinel "" and return null (same as before).
+        exprToCollNames.put(expression, "");
         return null;
         
        
     }
 
     /**
-     * Clear the <code>Map</code> that is used to cache the fact that a certain
-     * collection name may be present in expression text.  Call this method when
-     * a new beans <code>Map</code> is being used, which would render the cache
-     * useless.  Such a situation arises when supplying multiple bean maps to
-     * the <code>transform</code> method on <code>ExcelTransformer</code>, and
-     * we are moving to a new <code>Sheet</code>, or if either
-     * <code>transform</code> method on <code>ExcelTransformer</code> is called
-     * more than once.
+     * Formerly cleared the static <code>Map</code> that was used to cache the
+     * fact that a certain collection name may be present in expression text.
+     * That cache now lives in each <code>WorkbookContext</code>, so that
+     * concurrent transformations don't interfere with each other, and it is
+     * cleared by <code>ExcelTransformer</code> itself.  This method does
+     * nothing.
+     * @deprecated The cache is now available from
+     *    {@link WorkbookContext#getExpressionToCollNamesMap()}.
      */
+    @Deprecated
     public static void clearExpressionToCollNamesMap()
     {
-        MAP_EXPRESSION_TO_COLL_NAMES.clear();
     }
 
     /**
@@ -316,33 +308,23 @@ public class Expression
     public static List<String> getImplicitCollectionExpr(String value, Map<String, Object> beans,
                                                          WorkbookContext context)
     {
-        ExpressionFactory factory = context.getExpressionFactory();
-
         logger.trace("getImplicitCollectionExpr: \"{}\".", value);
-        List<Expression> expressions = getExpressions(value);
+        Interpolation interpolation = context.getExpressionFactory().getInterpolation(value);
+        List<Expression> expressions = interpolation.getExpressions();
         List<String> implicitCollections = new ArrayList<>();
 
-        // Don't report errors for some identifiers that depend on implicit
-        // processing to be a legal expression, e.g. a property access on a List
-        // meant to be a property access on an element of the List.  Store the
-        // current silent/lenient flags for restoration later.
-        boolean strict = factory.isStrict();
-        boolean silent = factory.isSilent();
-        factory.setStrict(false);
-        factory.setSilent(true);
-
-        if (value.startsWith(Expression.BEGIN_EXPR) && value.endsWith(Expression.END_EXPR) && expressions.size() == 1)
+        Expression expression = interpolation.getSingleExpression();
+        if (expression != null)
         {
-            Expression expression = new Expression(value.substring(2, value.length() - 1));
             String implColl = expression.getValueIndicatingImplicitCollection(beans, context);
             if (implColl != null && !"".equals(implColl))
                 implicitCollections.add(implColl);
         }
         else if (expressions.size() >= 1)
         {
-            for (Expression expression : expressions)
+            for (Expression expr : expressions)
             {
-                String implColl = expression.getValueIndicatingImplicitCollection(beans, context);
+                String implColl = expr.getValueIndicatingImplicitCollection(beans, context);
                 if (implColl != null && !"".equals(implColl))
                     implicitCollections.add(implColl);
             }
@@ -357,10 +339,6 @@ public class Expression
             }
         }
 
-        // Restore settings.
-        factory.setStrict(strict);
-        factory.setSilent(silent);
-
         return implicitCollections;
     }
 
@@ -383,10 +361,11 @@ public class Expression
                                         CreationHelper helper, ExpressionFactory factory, Map<String, Object> beans)
     {
         String value = richTextString.getString();
-        List<Expression> expressions = getExpressions(value);
-        if (value.startsWith(Expression.BEGIN_EXPR) && value.endsWith(Expression.END_EXPR) && expressions.size() == 1)
+        Interpolation interpolation = factory.getInterpolation(value);
+        List<Expression> expressions = interpolation.getExpressions();
+        Expression expression = interpolation.getSingleExpression();
+        if (expression != null)
         {
-            Expression expression = new Expression(value.substring(2, value.length() - 1));
             Object result = expression.evaluate(factory, beans);
             if (result instanceof String)
             {
@@ -417,15 +396,16 @@ public class Expression
      */
     public static Object evaluateString(String value, ExpressionFactory factory, Map<String, Object> beans)
     {
-        List<Expression> expressions = getExpressions(value);
-        if (value.startsWith(Expression.BEGIN_EXPR) && value.endsWith(Expression.END_EXPR) && expressions.size() == 1)
+        Interpolation interpolation = factory.getInterpolation(value);
+        List<Expression> expressions = interpolation.getExpressions();
+        Expression expression = interpolation.getSingleExpression();
+        if (expression != null)
         {
-            Expression expression = new Expression(value.substring(2, value.length() - 1));
             return expression.evaluate(factory, beans);
         }
         else
         {
-            return replaceExpressions(value, expressions, factory, beans);
+            return interpolation.interpolate(factory, beans);
         }
     }
 
@@ -434,19 +414,35 @@ public class Expression
      * @param value The given value.
      * @return A <code>List</code> of <code>Expressions</code>, possibly empty.
      */
-    private static List<Expression> getExpressions(String value)
+    static List<Expression> getExpressions(String value)
+    {
+        return getExpressions(value, null);
+    }
+
+    /**
+     * Extract all <code>Expressions</code> from the given value, optionally
+     * recording where each one is found.
+     * @param value The given value.
+     * @param offsets If not <code>null</code>, then for each
+     *    <code>Expression</code> found, its 0-based begin index (at the "$")
+     *    and its 0-based end index (just past the closing "}") are added to
+     *    this <code>List</code>.
+     * @return A <code>List</code> of <code>Expressions</code>, possibly empty.
+     * @since 0.12.0
+     */
+    static List<Expression> getExpressions(String value, List<Integer> offsets)
     {
         List<Expression> expressions = new ArrayList<>();
         int beginIdx = value.indexOf(Expression.BEGIN_EXPR);
         int endIdx = findEndOfExpression(value, beginIdx + Expression.BEGIN_EXPR.length());
         logger.debug("  getExprs: beginIdx = {}, endIdx = {}", beginIdx, endIdx);
 
+        int formulaBeginIdx = value.indexOf(Formula.BEGIN_FORMULA);
+        int formulaEndIdx = formulaBeginIdx != -1 ?
+                FormulaUtil.getEndOfJettFormula(value, formulaBeginIdx) :
+                value.indexOf(Formula.END_FORMULA);
         while (beginIdx != -1 && endIdx != -1 && endIdx > beginIdx)
         {
-            int formulaBeginIdx = value.indexOf(Formula.BEGIN_FORMULA);
-            int formulaEndIdx = formulaBeginIdx != -1 ?
-                    FormulaUtil.getEndOfJettFormula(value, formulaBeginIdx) :
-                    value.indexOf(Formula.END_FORMULA);
             boolean exprFound = true;
             // Skip escaped expressions, e.g. "\${...}".
             if (beginIdx > 0 && value.charAt(beginIdx - 1) == '\\')
@@ -467,6 +463,11 @@ public class Expression
                 logger.debug("  Expression Found: {}", strExpr);
                 Expression expr = new Expression(strExpr);
                 expressions.add(expr);
+                if (offsets != null)
+                {
+                    offsets.add(beginIdx);
+                    offsets.add(endIdx + Expression.END_EXPR.length());
+                }
             }
 
             beginIdx = value.indexOf(Expression.BEGIN_EXPR, endIdx + 1);
@@ -476,50 +477,6 @@ public class Expression
         return expressions;
     }
 
-    /**
-     * Replace all expressions with their evaluated results.  This attempts to
-     * preserve any formatting within the <code>RichTextString</code>.
-     * @param value The entire string, with possibly many expressions.
-     * @param expressions A <code>List</code> of <code>Expressions</code>.
-     * @param factory An <code>ExpressionFactory</code>.
-     * @param beans A <code>Map</code> of beans to provide context for the
-     *    <code>Expressions</code>.
-     * @return A <code>String</code> with all expressions replaced with their
-     *    evaluated results.
-     */
-    private static String replaceExpressions(String value,
-                                             List<Expression> expressions, ExpressionFactory factory, Map<String, Object> beans)
-    {
-        // Replace Expressions with values.
-        for (Expression expr : expressions)
-        {
-            logger.debug("replExprs: Loop for {}", expr.myExpression);
-            int beginIdx = value.indexOf(Expression.BEGIN_EXPR);
-            int endIdx = beginIdx + Expression.BEGIN_EXPR.length() + expr.myExpression.length();
-            if (beginIdx != -1 && endIdx != -1 && endIdx > beginIdx)
-            {
-                String replaceMe = value.substring(beginIdx, endIdx + 1);
-                Object result = expr.evaluate(factory, beans);
-                String replaceWith = "";
-                if (result != null)
-                    replaceWith = expr.evaluate(factory, beans).toString();
-                logger.debug("  Replacing \"{}\" with \"{}\".", replaceMe, replaceWith);
-
-                // Don't replace an expression when the $ is escaped, e.g. "\${replaceMe}".
-                value = value.replaceFirst(NEGATIVE_LOOKBEHIND_BACKSLASH + Pattern.quote(replaceMe),
-                        Matcher.quoteReplacement(replaceWith));
-                logger.debug("  value is now \"{}\".", value);
-            }
-            else
-            {
-                break;
-            }
-        }
-        // Respect escapes of expressions.  E.g. "\${expr}" => "${expr}", unevaluated.
-        value = value.replace("\\" + Expression.BEGIN_EXPR, Expression.BEGIN_EXPR);
-        return value;
-    }
-
     /**
      * Replace all expressions with their evaluated results.  This attempts to
      * preserve any formatting within the <code>RichTextString</code>.
@@ -581,4 +538,28 @@ public class Expression
         }
         return -1;
     }
+
+    /**
+     * A <code>Compiled</code> is a <code>JexlExpression</code> together with
+     * the <code>ExpressionFactory</code> that compiled it.  It is immutable,
+     * so that both are published together.
+     * @since 0.12.0
+     */
+    private static final class Compiled
+    {
+        private final ExpressionFactory myFactory;
+        private final JexlExpression myJexlExpression;
+
+        /**
+         * Constructs a <code>Compiled</code>.
+         * @param factory The <code>ExpressionFactory</code>.
+         * @param jexlExpression The <code>JexlExpression</code> that it
+         *    compiled.
+         */
+        private Compiled(ExpressionFactory factory, JexlExpression jexlExpression)
+        {
+            myFactory = factory;
+            myJexlExpression = jexlExpression;
+        }
+    }
 }
\ No newline at end of file
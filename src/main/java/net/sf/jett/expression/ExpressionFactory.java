@@ -1,14 +1,23 @@
 package net.sf.jett.expression;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlException;
 import org.apache.commons.jexl3.JexlExpression;
+import org.apache.commons.jexl3.JexlScript;
 import org.apache.commons.jexl3.internal.introspection.Permissions;
 import org.apache.commons.jexl3.introspection.JexlPermissions;
 
+import net.sf.jett.exception.ParseException;
+
 /**
  * <p>An <code>ExpressionFactory</code> is a factory class that
  * creates and uses a <code>JexlEngine</code> to create JEXL
@@ -22,11 +31,30 @@ import org.apache.commons.jexl3.introspection.JexlPermissions;
  * <code>ExcelTransformers</code> to avoid contention by having their own
  * <code>ExpressionFactories</code>.
  *
+ * <p>As of 0.12.0, once it has been configured, an
+ * <code>ExpressionFactory</code> may be used by many threads at once.  The
+ * JEXL Engines are built lazily and published safely, and implicit
+ * collections detection uses its own lenient JEXL Engine instead of
+ * temporarily changing the "strict" and "silent" flags of the shared one.
+ * Configuration methods should not be called while transformations are in
+ * progress.</p>
+ *
  * @author Randy Gettman
  */
 public class ExpressionFactory
 {
-    private JexlEngine myEngine;
+    /**
+     * The maximum number of cached <code>Interpolations</code> is this factor
+     * times the JEXL cache size.
+     * @since 0.12.0
+     */
+    public static final int INTERPOLATION_CACHE_FACTOR = 8;
+
+    private volatile JexlEngine myEngine;
+    private volatile JexlEngine myLenientEngine;
+    private final Map<String, Interpolation> myInterpolations = new ConcurrentHashMap<>();
+    private final Map<String, Interpolation> myTemplateInterpolations = new ConcurrentHashMap<>();
+    private final Map<String, Set<List<String>>> myVariables = new ConcurrentHashMap<>();
     private Map<String, Object> myFuncs = new HashMap();
     private boolean isStrict = false;
     private boolean isDebug = false;
@@ -52,28 +80,201 @@ public class ExpressionFactory
     public boolean isSilent() {
         return isSilent;
     }
-    public void setDebug(boolean val) { if (isDebug == val) return;isDebug=val;myEngine=null; }
-    public void setStrict(boolean val) { if (isStrict == val) return;isStrict=val;myEngine=null; }
-    public void setSilent(boolean val) { if (isSilent == val) return;isSilent=val;myEngine=null; }
-    public void setCacheSize(int val) { if (cacheSize == val) return;cacheSize=val;myEngine=null; }
+    public void setDebug(boolean val) { if (isDebug == val) return;isDebug=val;reset(); }
+    public void setStrict(boolean val) { if (isStrict == val) return;isStrict=val;reset(); }
+    public void setSilent(boolean val) { if (isSilent == val) return;isSilent=val;reset(); }
+    public void setCacheSize(int val) { if (cacheSize == val) return;cacheSize=val;reset(); }
 
-    private void check() {
-        if (myEngine != null)
-            return;
-        myFuncs.put("jagg", JaggFuncs.class);
-        myFuncs.put("jett", JettFuncs.class);
-        myEngine=new JexlBuilder().strict(isStrict).debug(isDebug).silent(isSilent).cache(cacheSize).namespaces(myFuncs).permissions(permissions).create();
+    /**
+     * Discards the JEXL Engines after a configuration change, so that they
+     * will be rebuilt with the new configuration on next use.
+     * @since 0.12.0
+     */
+    private void reset()
+    {
+        myEngine = null;
+        myLenientEngine = null;
+        myInterpolations.clear();
+        myTemplateInterpolations.clear();
+        myVariables.clear();
+    }
+
+    /**
+     * Returns all variables referenced by the given expression text, as
+     * reported by <code>JexlScript.getVariables()</code>.  Each variable is a
+     * path like ["foo","bar","baz"] for "foo.bar.baz".  The text is parsed with
+     * this factory's JEXL Engine only the first time it is seen; the result
+     * doesn't depend on any beans, so it is cached across transformations.
+     * The cache holds at most the JEXL cache size times
+     * {@link #INTERPOLATION_CACHE_FACTOR} entries; it is cleared when it is
+     * full.
+     * @param expression The expression text.
+     * @return An unmodifiable <code>Set</code> of variable paths, possibly
+     *    empty.
+     * @throws ParseException If the expression text can't be parsed.
+     * @since 0.12.0
+     */
+    public Set<List<String>> getVariables(String expression)
+    {
+        Set<List<String>> variables = myVariables.get(expression);
+        if (variables == null)
+        {
+            try
+            {
+                JexlScript script = getEngine().createScript(expression);
+                Set<List<String>> scriptVars = script.getVariables();
+                variables = (scriptVars == null) ? Collections.<List<String>>emptySet() :
+                        Collections.unmodifiableSet(scriptVars);
+            }
+            catch (JexlException.Parsing e)
+            {
+                throw new ParseException(
+                        "JEXL parse error in expression \"" + expression + "\": " + e.getMessage(), e);
+            }
+            if (myVariables.size() >= Math.max(cacheSize, 1) * INTERPOLATION_CACHE_FACTOR)
+            {
+                myVariables.clear();
+            }
+            myVariables.put(expression, variables);
+        }
+        return variables;
+    }
+
+    /**
+     * Splits the given texts, usually the texts of the cells of a compiled
+     * template, into their <code>Expressions</code> unless that has already
+     * been done.  They are kept apart from other texts, so that texts that
+     * are only seen during transformation, e.g. the results of expressions,
+     * don't push them out, and every transformation of the same template
+     * finds them already split, and already compiled once they have been
+     * evaluated.  Template texts are limited like other texts, to the JEXL
+     * cache size times {@link #INTERPOLATION_CACHE_FACTOR}; they are cleared
+     * when they reach the limit, e.g. after many different templates.
+     * @param texts The texts, with possibly embedded expressions.
+     * @since 0.12.0
+     */
+    public void addTemplateTexts(Collection<String> texts)
+    {
+        int maxSize = Math.max(cacheSize, 1) * INTERPOLATION_CACHE_FACTOR;
+        for (String text : texts)
+        {
+            if (!myTemplateInterpolations.containsKey(text))
+            {
+                if (myTemplateInterpolations.size() >= maxSize)
+                {
+                    myTemplateInterpolations.clear();
+                }
+                myTemplateInterpolations.putIfAbsent(text, new Interpolation(text));
+            }
+        }
+    }
+
+    /**
+     * Returns the <code>Interpolation</code> of the given text, i.e. the text
+     * split into its <code>Expressions</code>, computing and caching it the
+     * first time the text is seen.  The <code>Expressions</code> in a cached
+     * <code>Interpolation</code> keep their compiled form, so evaluating text
+     * seen before doesn't scan or compile anything.  The cache holds at most
+     * the JEXL cache size times {@link #INTERPOLATION_CACHE_FACTOR} entries;
+     * it is cleared when it is full.
+     * @param text The text, with possibly embedded expressions.
+     * @return The <code>Interpolation</code>.
+     * @since 0.12.0
+     */
+    Interpolation getInterpolation(String text)
+    {
+        Interpolation interpolation = myTemplateInterpolations.get(text);
+        if (interpolation != null)
+            return interpolation;
+        interpolation = myInterpolations.get(text);
+        if (interpolation == null)
+        {
+            interpolation = new Interpolation(text);
+            if (myInterpolations.size() >= Math.max(cacheSize, 1) * INTERPOLATION_CACHE_FACTOR)
+            {
+                myInterpolations.clear();
+            }
+            myInterpolations.put(text, interpolation);
+        }
+        return interpolation;
+    }
+
+    /**
+     * Returns the JEXL Engine built with this factory's configuration,
+     * building it if necessary.
+     * @return The <code>JexlEngine</code>.
+     * @since 0.12.0
+     */
+    private JexlEngine getEngine()
+    {
+        JexlEngine engine = myEngine;
+        if (engine == null)
+        {
+            synchronized (this)
+            {
+                engine = myEngine;
+                if (engine == null)
+                {
+                    engine = createJexlEngine();
+                    myEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the JEXL Engine that is never strict and always silent, building
+     * it if necessary.  It is used to probe expressions for implicit
+     * collections processing.
+     * @return The lenient <code>JexlEngine</code>.
+     * @since 0.12.0
+     */
+    private JexlEngine getLenientEngine()
+    {
+        if (!isStrict && isSilent)
+            return getEngine();
+        JexlEngine engine = myLenientEngine;
+        if (engine == null)
+        {
+            synchronized (this)
+            {
+                engine = myLenientEngine;
+                if (engine == null)
+                {
+                    engine = createJexlEngine(false, isDebug, true);
+                    myLenientEngine = engine;
+                }
+            }
+        }
+        return engine;
     }
 
     public JexlExpression createExpression(String expression)  {
-        check();
-        return myEngine.createExpression(expression);
+        return getEngine().createExpression(expression);
     }
+
+    /**
+     * Creates a <code>JexlExpression</code> that is evaluated leniently and
+     * silently, regardless of the "strict" and "silent" flags of this factory.
+     * Errors that arise from expressions that are only legal after implicit
+     * collections processing, e.g. a property access on a <code>List</code>
+     * meant to be a property access on an element of the <code>List</code>,
+     * are not reported.
+     * @param expression The expression text.
+     * @return A <code>JexlExpression</code>.
+     * @since 0.12.0
+     */
+    public JexlExpression createLenientExpression(String expression)
+    {
+        return getLenientEngine().createExpression(expression);
+    }
+
     public void registerFuncs(String namespace, Object funcsObject) {
         if (myFuncs.containsKey(namespace))
             throw new IllegalArgumentException("ExpressionFactory : namespace "+namespace+" already registed!");
         myFuncs.put(namespace, funcsObject);
-        myEngine=null;
+        reset();
     }
     
     /* DEFAULT IS ALLOW ALL 
@@ -81,15 +282,30 @@ public class ExpressionFactory
      */
     public void permissions(String rules[]) {
         permissions = JexlPermissions.parse(rules);
-        myEngine=null;
+        reset();
     }
     public void permissions(JexlPermissions p) {
         permissions = p;
-        myEngine=null;
+        reset();
     }
     
     public JexlEngine createJexlEngine() {
-        return new JexlBuilder().strict(isStrict).debug(isDebug).silent(isSilent).cache(cacheSize).namespaces(myFuncs).permissions(permissions).create();
+        return createJexlEngine(isStrict, isDebug, isSilent);
+    }
+
+    /**
+     * Creates a new <code>JexlEngine</code> with this factory's cache size,
+     * namespaces and permissions, and the given flags.
+     * @param strict Whether the engine is strict.
+     * @param debug Whether the engine is in debug mode.
+     * @param silent Whether the engine is silent.
+     * @return A new <code>JexlEngine</code>.
+     * @since 0.12.0
+     */
+    private JexlEngine createJexlEngine(boolean strict, boolean debug, boolean silent)
+    {
+        return new JexlBuilder().strict(strict).debug(debug).silent(silent).cache(cacheSize)
+                .namespaces(new HashMap<>(myFuncs)).permissions(permissions).create();
     }
 }
 
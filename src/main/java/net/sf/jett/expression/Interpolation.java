@@ -0,0 +1,145 @@
+package net.sf.jett.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An <code>Interpolation</code> is the result of splitting text, usually
+ * the text of a cell, into the <code>Expressions</code> embedded in it.  It
+ * is computed once per distinct text and cached by the
+ * <code>ExpressionFactory</code>, so that the same text found in many cells,
+ * or in the same cell across many loop iterations, isn't scanned again, and
+ * its <code>Expressions</code> keep their compiled JEXL form.</p>
+ *
+ * <p>The literal text between <code>Expressions</code> is also precomputed,
+ * with escaped expressions, e.g. "\${expr}", already unescaped, so that
+ * interpolating the text is a single pass that appends literals and
+ * expression results to one <code>StringBuilder</code>.</p>
+ *
+ * <p>An <code>Interpolation</code> is immutable and may be shared by many
+ * threads.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+class Interpolation
+{
+    private final String myText;
+    private final List<Expression> myExpressions;
+    private final Expression mySingleExpression;
+    private final String[] myLiterals;
+    private final int myLiteralsLength;
+
+    /**
+     * Splits the given text into its <code>Expressions</code>.
+     * @param text The text, with possibly embedded expressions.
+     */
+    Interpolation(String text)
+    {
+        myText = text;
+        List<Integer> offsets = new ArrayList<>();
+        List<Expression> expressions = Expression.getExpressions(text, offsets);
+        myExpressions = Collections.unmodifiableList(expressions);
+
+        // Literal i precedes Expression i; the last literal follows the last
+        // Expression.
+        int numExprs = expressions.size();
+        myLiterals = new String[numExprs + 1];
+        int literalsLength = 0;
+        int prevEnd = 0;
+        for (int i = 0; i < numExprs; i++)
+        {
+            myLiterals[i] = unescape(text.substring(prevEnd, offsets.get(2 * i)));
+            literalsLength += myLiterals[i].length();
+            prevEnd = offsets.get(2 * i + 1);
+        }
+        myLiterals[numExprs] = unescape(text.substring(prevEnd));
+        myLiteralsLength = literalsLength + myLiterals[numExprs].length();
+
+        // The text is one Expression only if that Expression spans all of
+        // it; other text, e.g. an escaped expression, may follow it.
+        if (numExprs == 1 && offsets.get(0) == 0 && offsets.get(1) == text.length())
+        {
+            mySingleExpression = expressions.get(0);
+        }
+        else
+        {
+            mySingleExpression = null;
+        }
+    }
+
+    /**
+     * Returns the original text.
+     * @return The original text.
+     */
+    String getText()
+    {
+        return myText;
+    }
+
+    /**
+     * Returns the <code>Expressions</code> embedded in the text, in order,
+     * excluding escaped expressions and expressions inside JETT formulas.
+     * @return An unmodifiable <code>List</code> of <code>Expressions</code>,
+     *    possibly empty.
+     */
+    List<Expression> getExpressions()
+    {
+        return myExpressions;
+    }
+
+    /**
+     * If the entire text consists of one <code>Expression</code>, then returns
+     * that <code>Expression</code>, whose result may be any
+     * <code>Object</code>.
+     * @return The single <code>Expression</code>, or <code>null</code> if the
+     *    text isn't exactly one <code>Expression</code>.
+     */
+    Expression getSingleExpression()
+    {
+        return mySingleExpression;
+    }
+
+    /**
+     * Evaluates all <code>Expressions</code> and replaces them with their
+     * results in a single pass.  A <code>null</code> result is replaced with
+     * an empty string.  Escaped expressions, e.g. "\${expr}", are left
+     * unevaluated, without the escaping backslash.  Results are appended as
+     * they are, so an escaped expression in a result keeps its backslash.
+     * @param factory An <code>ExpressionFactory</code>.
+     * @param beans A <code>Map</code> of beans to provide context for the
+     *    <code>Expressions</code>.
+     * @return The interpolated <code>String</code>.
+     */
+    String interpolate(ExpressionFactory factory, Map<String, Object> beans)
+    {
+        int numExprs = myExpressions.size();
+        if (numExprs == 0)
+            return myLiterals[0];
+        StringBuilder buf = new StringBuilder(myLiteralsLength + 16 * numExprs);
+        for (int i = 0; i < numExprs; i++)
+        {
+            buf.append(myLiterals[i]);
+            Object result = myExpressions.get(i).evaluate(factory, beans);
+            if (result != null)
+                buf.append(result.toString());
+        }
+        buf.append(myLiterals[numExprs]);
+        return buf.toString();
+    }
+
+    /**
+     * Removes the escaping backslash from escaped expressions, e.g.
+     * "\${expr}" becomes "${expr}".
+     * @param literal Literal text.
+     * @return The unescaped literal text.
+     */
+    private static String unescape(String literal)
+    {
+        if (literal.indexOf('\\') == -1)
+            return literal;
+        return literal.replace("\\" + Expression.BEGIN_EXPR, Expression.BEGIN_EXPR);
+    }
+}
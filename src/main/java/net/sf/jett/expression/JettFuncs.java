@@ -15,8 +15,11 @@ import org.apache.poi.ss.util.CellReference;
  */
 public class JettFuncs
 {
-    private static final Integer[] CARDS = new Integer[52];
-    private static int numCardsDealt = 0;
+    /**
+     * Each thread deals from its own deck, so a transformation, which runs on
+     * one thread, never shares a deck with a concurrent transformation.
+     */
+    private static final ThreadLocal<Deck> DECKS = ThreadLocal.withInitial(Deck::new);
 
     /**
      * Takes 0-based row and column numbers (e.g. 1, 4), and generates an Excel cell
@@ -47,30 +50,17 @@ public class JettFuncs
     }
 
     /**
-     * Picks a random card.
+     * Picks a random card.  Cards are dealt from a shuffled deck until it runs
+     * out, then the deck is shuffled again.  Each thread has its own deck.
      * @return A random card.
      * @since 0.9.1
      */
     public static String pickACard()
     {
-        if (numCardsDealt == 0)
-        {
-            for (int i = 0; i < CARDS.length; i++)
-            {
-                CARDS[i] = i;
-            }
-        }
-        int index = numCardsDealt % CARDS.length;
-        if (index == 0)
-        {
-            List<Integer> asList = Arrays.asList(CARDS);
-            Collections.shuffle(asList);
-        }
-        int card = CARDS[index];
+        int card = DECKS.get().deal();
         int suit = card / 13;
         int rank = card % 13;
 
-        numCardsDealt++;
         StringBuilder buf = new StringBuilder();
         switch (rank)
         {
@@ -132,4 +122,43 @@ public class JettFuncs
         }
         return buf.toString();
     }
+
+    /**
+     * A <code>Deck</code> of 52 cards, numbered 0-51, that is shuffled every
+     * time all of its cards have been dealt.
+     * @since 0.12.0
+     */
+    private static class Deck
+    {
+        private final Integer[] myCards = new Integer[52];
+        private int myNextIndex = 0;
+
+        /**
+         * Creates a <code>Deck</code> with all of its cards.
+         */
+        private Deck()
+        {
+            for (int i = 0; i < myCards.length; i++)
+            {
+                myCards[i] = i;
+            }
+        }
+
+        /**
+         * Deals the next card, shuffling first if no cards have been dealt
+         * since the last shuffle.
+         * @return The card, 0-51.
+         */
+        private int deal()
+        {
+            int index = myNextIndex;
+            if (index == 0)
+            {
+                List<Integer> asList = Arrays.asList(myCards);
+                Collections.shuffle(asList);
+            }
+            myNextIndex = (index + 1) % myCards.length;
+            return myCards[index];
+        }
+    }
 }
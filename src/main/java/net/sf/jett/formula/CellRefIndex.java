@@ -0,0 +1,331 @@
+package net.sf.jett.formula;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import net.sf.jett.util.FormulaUtil;
+
+/**
+ * <p>A <code>CellRefIndex</code> indexes all <code>CellRefs</code> in the
+ * cell reference map by sheet, row, and column, so that shifting or copying
+ * the cell references in a range of cells only visits the references inside
+ * that range, instead of every <code>CellRef</code> under every cell key.
+ * </p>
+ *
+ * <p>Each indexed {@link Entry} is one <code>CellRef</code> in the
+ * <code>List</code> for one cell key.  A <code>CellRef</code> with a sheet
+ * name is indexed under that sheet name.  A <code>CellRef</code> without a
+ * sheet name refers to the sheet of its cell key, under which it is indexed,
+ * unless its cell key is explicit, in which case it may match any sheet.</p>
+ *
+ * <p>The index doesn't modify the cell reference map.  Code that changes the
+ * <code>Lists</code> in the cell reference map must either keep the index up
+ * to date with {@link #add} and {@link #remove}, or discard the index, e.g.
+ * with {@link net.sf.jett.model.WorkbookContext#clearCellRefIndex()}.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class CellRefIndex
+{
+    private Map<String, SheetEntries> mySheets;
+    private SheetEntries myAnySheetEntries;
+
+    /**
+     * Constructs a <code>CellRefIndex</code> of all <code>CellRefs</code> in
+     * the given cell reference map.
+     * @param cellRefMap The cell reference map, a <code>Map</code> of cell key
+     *    strings to <code>Lists</code> of <code>CellRefs</code>.
+     */
+    public CellRefIndex(Map<String, List<CellRef>> cellRefMap)
+    {
+        mySheets = new HashMap<>();
+        myAnySheetEntries = new SheetEntries();
+        for (Map.Entry<String, List<CellRef>> mapEntry : cellRefMap.entrySet())
+        {
+            List<CellRef> cellRefs = mapEntry.getValue();
+            for (CellRef cellRef : cellRefs)
+            {
+                add(mapEntry.getKey(), cellRefs, cellRef);
+            }
+        }
+    }
+
+    /**
+     * Indexes the given <code>CellRef</code>, which is in the given
+     * <code>List</code> for the given cell key.
+     * @param cellKey The cell key.
+     * @param cellRefs The <code>List</code> of <code>CellRefs</code> for the
+     *    cell key.
+     * @param cellRef The <code>CellRef</code>.
+     */
+    public void add(String cellKey, List<CellRef> cellRefs, CellRef cellRef)
+    {
+        Entry entry = new Entry(cellKey, cellRefs, cellRef);
+        SheetEntries sheetEntries = getSheetEntries(entry, true);
+        sheetEntries.add(entry);
+    }
+
+    /**
+     * Removes the given <code>Entry</code> from the index.
+     * @param entry An <code>Entry</code> returned by {@link #find}.
+     */
+    public void remove(Entry entry)
+    {
+        SheetEntries sheetEntries = getSheetEntries(entry, false);
+        if (sheetEntries != null)
+            sheetEntries.remove(entry.myCellRefs, entry.myCellRef);
+    }
+
+    /**
+     * Removes all entries for the <code>CellRefs</code> in the given
+     * <code>List</code>, e.g. when the <code>List</code> is replaced in the
+     * cell reference map.
+     * @param cellKey The cell key.
+     * @param cellRefs The <code>List</code> of <code>CellRefs</code> for the
+     *    cell key.
+     */
+    public void removeAll(String cellKey, List<CellRef> cellRefs)
+    {
+        for (CellRef cellRef : cellRefs)
+        {
+            remove(new Entry(cellKey, cellRefs, cellRef));
+        }
+    }
+
+    /**
+     * Finds all entries whose <code>CellRefs</code> refer to cells in the given
+     * range on the given sheet.  An entry matches the sheet if its
+     * <code>CellRef</code> has that sheet name or no sheet name, and its cell
+     * key is for that sheet, is for the sheet's template sheet, or is
+     * explicit.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param templateSheetName The name of the template sheet from which the
+     *    <code>Sheet</code> was created, or <code>null</code> if not known.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @return A <code>List</code> of matching entries, possibly empty.
+     */
+    public List<Entry> find(String sheetName, String templateSheetName,
+                            int left, int right, int top, int bottom)
+    {
+        List<Entry> found = new ArrayList<>();
+        if (left > right || top > bottom)
+            return found;
+        SheetEntries sheetEntries = mySheets.get(sheetName);
+        if (sheetEntries != null)
+        {
+            for (Entry entry : sheetEntries.find(left, right, top, bottom))
+            {
+                if (entry.myCellRef.getSheetName() == null || entry.amIExplicit ||
+                        entry.myKeySheetName.equals(sheetName) || entry.myKeySheetName.equals(templateSheetName))
+                {
+                    found.add(entry);
+                }
+            }
+        }
+        if (templateSheetName != null && !templateSheetName.equals(sheetName))
+        {
+            sheetEntries = mySheets.get(templateSheetName);
+            if (sheetEntries != null)
+            {
+                for (Entry entry : sheetEntries.find(left, right, top, bottom))
+                {
+                    if (entry.myCellRef.getSheetName() == null)
+                        found.add(entry);
+                }
+            }
+        }
+        found.addAll(myAnySheetEntries.find(left, right, top, bottom));
+        return found;
+    }
+
+    /**
+     * Returns the entries for the sheet under which the given entry is
+     * indexed.
+     * @param entry The <code>Entry</code>.
+     * @param create Whether to create the entries for the sheet if they don't
+     *    exist yet.
+     * @return The <code>SheetEntries</code>, or <code>null</code> if they
+     *    don't exist and <code>create</code> is <code>false</code>.
+     */
+    private SheetEntries getSheetEntries(Entry entry, boolean create)
+    {
+        String sheetName = entry.myCellRef.getSheetName();
+        if (sheetName == null)
+        {
+            if (entry.amIExplicit)
+                return myAnySheetEntries;
+            sheetName = entry.myKeySheetName;
+        }
+        SheetEntries sheetEntries = mySheets.get(sheetName);
+        if (sheetEntries == null && create)
+        {
+            sheetEntries = new SheetEntries();
+            mySheets.put(sheetName, sheetEntries);
+        }
+        return sheetEntries;
+    }
+
+    /**
+     * An <code>Entry</code> is one <code>CellRef</code> in the
+     * <code>List</code> for one cell key in the cell reference map.
+     */
+    public static class Entry
+    {
+        private String myCellKey;
+        private List<CellRef> myCellRefs;
+        private CellRef myCellRef;
+        private boolean amIExplicit;
+        private String myKeySheetName;
+        private String myKeySuffix;
+
+        /**
+         * Constructs an <code>Entry</code>, parsing the cell key once.
+         * @param cellKey The cell key, e.g. "i/Sheet1!C2[0,1]".
+         * @param cellRefs The <code>List</code> of <code>CellRefs</code> for the
+         *    cell key.
+         * @param cellRef The <code>CellRef</code>.
+         */
+        private Entry(String cellKey, List<CellRef> cellRefs, CellRef cellRef)
+        {
+            myCellKey = cellKey;
+            myCellRefs = cellRefs;
+            myCellRef = cellRef;
+            amIExplicit = cellKey.startsWith(FormulaUtil.EXPLICIT_REF_PREFIX);
+            // Bypass the explicit/implicit indicator.
+            myKeySheetName = cellKey.substring(2, cellKey.indexOf("!"));
+            int idx = cellKey.indexOf("[");
+            myKeySuffix = (idx > -1) ? cellKey.substring(idx) : "";
+        }
+
+        /**
+         * Returns the cell key.
+         * @return The cell key.
+         */
+        public String getCellKey()
+        {
+            return myCellKey;
+        }
+
+        /**
+         * Returns the <code>List</code> of <code>CellRefs</code> for the cell
+         * key, as found in the cell reference map.
+         * @return The <code>List</code> of <code>CellRefs</code>.
+         */
+        public List<CellRef> getCellRefs()
+        {
+            return myCellRefs;
+        }
+
+        /**
+         * Returns the <code>CellRef</code>.
+         * @return The <code>CellRef</code>.
+         */
+        public CellRef getCellRef()
+        {
+            return myCellRef;
+        }
+
+        /**
+         * Returns the "[loop,iter]" suffix of the cell key, if any.
+         * @return The suffix of the cell key, e.g. "[0,1]", or an empty string
+         *    if it doesn't have one.
+         */
+        public String getKeySuffix()
+        {
+            return myKeySuffix;
+        }
+    }
+
+    /**
+     * The entries indexed under one sheet, by row, then by column.
+     */
+    private static class SheetEntries
+    {
+        private NavigableMap<Integer, NavigableMap<Integer, List<Entry>>> myRows = new TreeMap<>();
+
+        /**
+         * Adds the given entry.
+         * @param entry The <code>Entry</code>.
+         */
+        private void add(Entry entry)
+        {
+            int row = entry.myCellRef.getRow();
+            int col = entry.myCellRef.getCol();
+            NavigableMap<Integer, List<Entry>> cols = myRows.get(row);
+            if (cols == null)
+            {
+                cols = new TreeMap<>();
+                myRows.put(row, cols);
+            }
+            List<Entry> entries = cols.get(col);
+            if (entries == null)
+            {
+                entries = new ArrayList<>(1);
+                cols.put(col, entries);
+            }
+            entries.add(entry);
+        }
+
+        /**
+         * Removes the entry for the given <code>CellRef</code> in the given
+         * <code>List</code>, comparing both by identity.
+         * @param cellRefs The <code>List</code> of <code>CellRefs</code>.
+         * @param cellRef The <code>CellRef</code>.
+         */
+        private void remove(List<CellRef> cellRefs, CellRef cellRef)
+        {
+            int row = cellRef.getRow();
+            int col = cellRef.getCol();
+            NavigableMap<Integer, List<Entry>> cols = myRows.get(row);
+            if (cols == null)
+                return;
+            List<Entry> entries = cols.get(col);
+            if (entries == null)
+                return;
+            for (int i = 0; i < entries.size(); i++)
+            {
+                Entry entry = entries.get(i);
+                if (entry.myCellRefs == cellRefs && entry.myCellRef == cellRef)
+                {
+                    entries.remove(i);
+                    if (entries.isEmpty())
+                    {
+                        cols.remove(col);
+                        if (cols.isEmpty())
+                            myRows.remove(row);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns all entries in the given range.
+         * @param left The 0-based column index on which the range starts.
+         * @param right The 0-based column index on which the range ends.
+         * @param top The 0-based row index on which the range starts.
+         * @param bottom The 0-based row index on which the range ends.
+         * @return A <code>List</code> of entries, possibly empty.
+         */
+        private List<Entry> find(int left, int right, int top, int bottom)
+        {
+            List<Entry> found = new ArrayList<>();
+            for (NavigableMap<Integer, List<Entry>> cols : myRows.subMap(top, true, bottom, true).values())
+            {
+                for (List<Entry> entries : cols.subMap(left, true, right, true).values())
+                {
+                    found.addAll(entries);
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package net.sf.jett.jdbc;
 
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Array;
@@ -20,23 +18,89 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+
+import org.apache.poi.ss.SpreadsheetVersion;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 /**
- * A <code>JDBCExecutor</code> has the capability of running SQL statements via
- * JDBC over a supplied <code>Connection</code>.
+ * <p>A <code>JDBCExecutor</code> has the capability of running SQL statements
+ * via JDBC over a supplied <code>Connection</code>, or over
+ * <code>Connections</code> obtained from a supplied <code>DataSource</code>.</p>
+ *
+ * <p>The <code>execQuery</code> methods read all rows into a
+ * <code>List</code>.  The <code>streamQuery</code> methods instead return a
+ * {@link ResultSetCursor}, which reads rows one at a time as it is iterated,
+ * so large results never have to be held in memory at once.  A
+ * <code>ResultSetCursor</code> can be used directly as the items of a
+ * "forEach" tag, which closes it when the loop is done.</p>
+ *
+ * <p>A template that runs the same query for each item of a loop can avoid
+ * preparing it again each time by turning on statement caching with
+ * {@link #setStatementCacheSize(int)}.  Better yet, it can run one
+ * {@link #execQueryIn(String, String, Collection, Object...)} before the loop
+ * to fetch the rows for all items at once, then look up each item's rows in
+ * the loop:</p>
+ *
+ * <code>&lt;jt:forEach items="${titles}" var="title"&gt;${byTitle[title].size()}</code>
+ *
+ * <p>Results of queries for reference data that rarely changes can be shared
+ * across transformations by attaching a {@link QueryResultCache} with
+ * {@link #setResultCache(QueryResultCache)}.</p>
+ *
+ * <p>A <code>JDBCExecutor</code> that caches statements must be closed when
+ * it's no longer needed, e.g. when the transformation is done.  A
+ * <code>JDBCExecutor</code> must not be used by more than one thread at the
+ * same time.</p>
  *
  * @author Randy Gettman
  * @since 0.6.0
  */
-public class JDBCExecutor
+public class JDBCExecutor implements AutoCloseable
 {
     private static final Logger logger = LogManager.getLogger();
 
+    /**
+     * The maximum number of keys placed in one <code>IN</code> list by
+     * {@link #execQueryIn(String, String, Collection, Object...)}; more keys
+     * are split over multiple queries.  Some databases, e.g. Oracle, don't
+     * accept more than this many.
+     * @since 0.12.0
+     */
+    public static final int MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * The maximum number of characters that an Excel cell can hold.  Pass
+     * this to {@link #setMaxClobLength(int)} to truncate long text to what
+     * can be displayed anyway.
+     * @since 0.12.0
+     */
+    public static final int EXCEL_MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    /**
+     * Matches the <code>IN (?)</code> placeholder that
+     * {@link #execQueryIn(String, String, Collection, Object...)} expands.
+     */
+    private static final Pattern IN_LIST_PATTERN = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?\\s*\\)");
+
     private Connection myConnection;
+    private DataSource myDataSource;
+    private int myFetchSize;
+    private Map<String, PreparedStatement> myStatementCache;
+    private int myNumStatementsPrepared;
+    private int myNumStatementCacheHits;
+    private QueryResultCache myResultCache;
+    private int myMaxClobLength;
+    private boolean amIReadingLobsLazily;
 
     /**
      * Constructs a <code>JDBCExecutor</code> that will operate over the given
@@ -46,22 +110,267 @@ public class JDBCExecutor
     public JDBCExecutor(Connection connection)
    {
       myConnection = connection;
+      myDataSource = null;
+      myFetchSize = 0;
+      myStatementCache = null;
+      myResultCache = null;
+      myMaxClobLength = 0;
+      amIReadingLobsLazily = false;
    }
 
+    /**
+     * Constructs a <code>JDBCExecutor</code> that will obtain a
+     * <code>Connection</code> from the given <code>DataSource</code> for each
+     * query.  The <code>Connection</code> is closed when the query is done,
+     * or for a streamed query, when its <code>ResultSetCursor</code> is
+     * closed.
+     * @param dataSource A <code>DataSource</code>.
+     * @since 0.12.0
+     */
+    public JDBCExecutor(DataSource dataSource)
+    {
+        myConnection = null;
+        myDataSource = dataSource;
+        myFetchSize = 0;
+        myStatementCache = null;
+        myResultCache = null;
+        myMaxClobLength = 0;
+        amIReadingLobsLazily = false;
+    }
+
+    /**
+     * Sets the number of rows that the JDBC driver should fetch from the
+     * database at a time for streamed queries.  This is only a hint to the
+     * driver; some drivers also require other settings, e.g. turning off
+     * auto-commit, before they stream rows.  Default is <code>0</code>, which
+     * uses the driver's default.
+     * @param fetchSize The fetch size, or <code>0</code> for the driver's
+     *    default.
+     * @throws IllegalArgumentException If the fetch size is negative.
+     * @since 0.12.0
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("Fetch size must not be negative: " + fetchSize);
+        myFetchSize = fetchSize;
+    }
+
+    /**
+     * Sets the maximum number of characters to read from each CLOB or
+     * <code>LONGVARCHAR</code> value; the rest is never read from a CLOB.
+     * Pass {@link #EXCEL_MAX_TEXT_LENGTH} to read only what an Excel cell can
+     * hold.  Default is <code>0</code>, which reads entire values.
+     * @param maxClobLength The maximum number of characters, or
+     *    <code>0</code> for no maximum.
+     * @throws IllegalArgumentException If the maximum is negative.
+     * @since 0.12.0
+     */
+    public void setMaxClobLength(int maxClobLength)
+    {
+        if (maxClobLength < 0)
+            throw new IllegalArgumentException("Maximum CLOB length must not be negative: " + maxClobLength);
+        myMaxClobLength = maxClobLength;
+    }
+
+    /**
+     * Sets whether CLOB and BLOB values are read only when a template first
+     * accesses them, instead of when their rows are read.  A lazily read CLOB
+     * becomes a <code>String</code>, and a BLOB becomes a
+     * <code>byte[]</code>.  LOBs are typically only valid until the
+     * transaction ends, so turn off auto-commit, or use
+     * <code>streamQuery</code>, when reading LOBs lazily.  A
+     * <code>JDBCExecutor</code> over a <code>DataSource</code> closes the
+     * <code>Connection</code> as soon as <code>execQuery</code> is done, so
+     * <code>execQuery</code> always reads LOBs right away then, a BLOB into a
+     * <code>byte[]</code>; only <code>streamQuery</code>, which keeps the
+     * <code>Connection</code> open until its <code>ResultSetCursor</code> is
+     * closed, reads them lazily.
+     * Results with lazily read LOBs aren't placed into the result cache.
+     * Default is <code>false</code>.
+     * @param readLobsLazily Whether to read LOBs lazily.
+     * @since 0.12.0
+     */
+    public void setReadLobsLazily(boolean readLobsLazily)
+    {
+        amIReadingLobsLazily = readLobsLazily;
+    }
+
+    /**
+     * Sets the maximum number of <code>PreparedStatements</code> to keep open
+     * for reuse by <code>execQuery</code>, keyed by SQL text.  When the cache
+     * is full, the least recently used statement is closed.  Default is
+     * <code>0</code>, which doesn't cache statements.  Changing the size
+     * closes all cached statements.  Statements can only be cached over a
+     * supplied <code>Connection</code>; a <code>DataSource</code> provides
+     * a different <code>Connection</code> for each query, and is expected to
+     * cache statements itself if desired.
+     * @param size The maximum number of statements to cache, or
+     *    <code>0</code> not to cache statements.
+     * @throws SQLException If there was a problem closing cached statements.
+     * @throws IllegalArgumentException If the size is negative.
+     * @throws IllegalStateException If the size is positive and this
+     *    <code>JDBCExecutor</code> uses a <code>DataSource</code>.
+     * @since 0.12.0
+     */
+    public void setStatementCacheSize(final int size) throws SQLException
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("Statement cache size must not be negative: " + size);
+        if (size > 0 && myDataSource != null)
+            throw new IllegalStateException("Statements can't be cached over a DataSource.");
+        clearStatementCache();
+        if (size > 0)
+        {
+            myStatementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+                {
+                    if (size() > size)
+                    {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+        else
+        {
+            myStatementCache = null;
+        }
+    }
+
+    /**
+     * Sets the <code>QueryResultCache</code> in which <code>execQuery</code>
+     * looks for and stores query results.  The same cache may be shared by
+     * many <code>JDBCExecutors</code>, even on different threads; it should
+     * only be shared by <code>JDBCExecutors</code> over the same database.
+     * Rows are cached separately for each maximum CLOB length, so that
+     * executors with different maximums don't see each other's text.  BLOBs
+     * that aren't read lazily are read into <code>byte[]</code>s, because
+     * the driver's objects may not be valid by the time cached rows are used.
+     * Each <code>execQuery</code> call returns its own <code>List</code>,
+     * which may be sorted or otherwise modified, but the
+     * <code>ResultSetRows</code> in it are shared with the cache, and must
+     * not be modified.  Streamed queries aren't cached.
+     * @param resultCache A <code>QueryResultCache</code>, or
+     *    <code>null</code> not to cache results.
+     * @since 0.12.0
+     */
+    public void setResultCache(QueryResultCache resultCache)
+    {
+        myResultCache = resultCache;
+    }
+
+    /**
+     * Returns the <code>QueryResultCache</code>, if any.
+     * @return The <code>QueryResultCache</code>, or <code>null</code> if
+     *    results aren't cached.
+     * @since 0.12.0
+     */
+    public QueryResultCache getResultCache()
+    {
+        return myResultCache;
+    }
+
+    /**
+     * Returns the number of <code>PreparedStatements</code> prepared by
+     * <code>execQuery</code>, i.e. not found in the statement cache.
+     * @return The number of statements prepared.
+     * @since 0.12.0
+     */
+    public int getNumStatementsPrepared()
+    {
+        return myNumStatementsPrepared;
+    }
+
+    /**
+     * Returns the number of times that <code>execQuery</code> reused a cached
+     * <code>PreparedStatement</code>.
+     * @return The number of statement cache hits.
+     * @since 0.12.0
+     */
+    public int getNumStatementCacheHits()
+    {
+        return myNumStatementCacheHits;
+    }
+
+    /**
+     * Closes all cached <code>PreparedStatements</code>.  Statement caching
+     * stays on, if it's on.
+     * @throws SQLException If there was a problem closing a statement.  All
+     *    statements are closed regardless; the first such problem is thrown.
+     * @since 0.12.0
+     */
+    public void clearStatementCache() throws SQLException
+    {
+        if (myStatementCache == null)
+            return;
+        SQLException first = null;
+        for (Iterator<PreparedStatement> itr = myStatementCache.values().iterator(); itr.hasNext(); )
+        {
+            PreparedStatement ps = itr.next();
+            itr.remove();
+            try
+            {
+                ps.close();
+            }
+            catch (SQLException e)
+            {
+                if (first == null)
+                    first = e;
+                else
+                    first.setNextException(e);
+            }
+        }
+        if (first != null)
+            throw first;
+    }
+
+    /**
+     * Closes all cached <code>PreparedStatements</code>.  The supplied
+     * <code>Connection</code>, if any, is left open; it belongs to the caller.
+     * @throws SQLException If there was a problem closing a statement.
+     * @since 0.12.0
+     */
+    @Override
+    public void close() throws SQLException
+    {
+        clearStatementCache();
+    }
+
     /**
      * Executes the given SQL statement using a <code>Statement</code> to obtain
      * a <code>List</code> of <code>ResultSetRows</code>.  Execution of the
      * <code>Statement</code> yields a <code>ResultSet</code>, which is
-     * processed to create the <code>ResultSetRows</code>.
+     * processed to create the <code>ResultSetRows</code>.  If there is a
+     * result cache, then cached rows are returned instead, if available.
      * @param sql The SQL statement.
      * @return A <code>List</code> of <code>ResultSetRows</code>.
      * @throws SQLException If there was a problem executing the statement.
      */
     public List<ResultSetRow> execQuery(String sql) throws SQLException
     {
-        try (Statement st = myConnection.createStatement(); ResultSet rs = st.executeQuery(sql))
+        QueryResultCache resultCache = myResultCache;
+        if (resultCache != null)
+        {
+            List<ResultSetRow> rows = resultCache.get(myMaxClobLength, sql);
+            if (rows != null)
+                return new ArrayList<>(rows);
+        }
+        Connection connection = getConnection();
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql))
+        {
+            List<ResultSetRow> rows = processResultSet(rs);
+            if (resultCache != null && isCacheable(rows))
+                resultCache.put(myMaxClobLength, sql, new Object[0], new ArrayList<>(rows));
+            return rows;
+        }
+        finally
         {
-            return processResultSet(rs);
+            releaseConnection(connection);
         }
     }
 
@@ -69,7 +378,9 @@ public class JDBCExecutor
      * Executes the given SQL statement using a <code>PreparedStatement</code>
      * to obtain a <code>List</code> of <code>ResultSetRows</code>.  Execution
      * of the <code>PreparedStatement</code> yields a <code>ResultSet</code>,
-     * which is processed to create the <code>ResultSetRows</code>.
+     * which is processed to create the <code>ResultSetRows</code>.  If
+     * there is a result cache, then cached rows are returned instead, if
+     * available.
      * @param sql The SQL statement.
      * @param bindVariableValues Optional bind variable values.  There must be
      *    exactly one of these for every <code>?</code> in the SQL query.
@@ -78,61 +389,438 @@ public class JDBCExecutor
      */
     public List<ResultSetRow> execQuery(String sql, Object... bindVariableValues) throws SQLException
     {
-        try (PreparedStatement ps = myConnection.prepareStatement(sql))
+        QueryResultCache resultCache = myResultCache;
+        if (resultCache != null)
+        {
+            List<ResultSetRow> rows = resultCache.get(myMaxClobLength, sql, bindVariableValues);
+            if (rows != null)
+                return new ArrayList<>(rows);
+        }
+        Connection connection = getConnection();
+        PreparedStatement ps = null;
+        try
+        {
+            ps = prepareStatement(connection, sql);
+            setBindVariables(ps, bindVariableValues);
+            try (ResultSet rs = ps.executeQuery())
+            {
+                List<ResultSetRow> rows = processResultSet(rs);
+                if (resultCache != null && isCacheable(rows))
+                    resultCache.put(myMaxClobLength, sql, bindVariableValues, new ArrayList<>(rows));
+                return rows;
+            }
+        }
+        catch (SQLException e)
+        {
+            // Don't reuse a statement that failed; its connection may be broken.
+            if (myStatementCache != null && myStatementCache.get(sql) == ps)
+                myStatementCache.remove(sql);
+            throw e;
+        }
+        finally
+        {
+            try
+            {
+                if (ps != null && (myStatementCache == null || myStatementCache.get(sql) != ps))
+                    ps.close();
+            }
+            finally
+            {
+                releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * <p>Executes the given SQL statement once for many keys, instead of once
+     * per key, and returns the rows for each key.  The SQL statement must
+     * contain exactly one <code>IN (?)</code>, which is expanded into a list
+     * of bind variables for the keys, e.g.</p>
+     *
+     * <code>SELECT * FROM employee WHERE title IN (?)</code>
+     *
+     * <p>The rows are then separated by the value of the given key column,
+     * which must be in the results.  If there are more than
+     * {@link #MAX_IN_LIST_SIZE} distinct keys, then the query is run once per
+     * that many keys.  The <code>IN</code> list is padded to a power of two
+     * by repeating the last key, so that only a few distinct SQL statements
+     * are prepared, which helps the statement cache.  Numeric keys match
+     * numeric column values of any type that are equal in value, e.g. an
+     * <code>Integer</code> key matches a <code>BigDecimal</code> value; of
+     * several keys that are equal in value, only the first is used.
+     * <code>IN (?)</code> and <code>?</code> inside string literals, quoted
+     * identifiers, and comments are ignored.</p>
+     * @param sql The SQL statement, containing one <code>IN (?)</code>.
+     * @param keyColumn The name of the result column that holds each row's
+     *    key.
+     * @param keys The keys.  <code>null</code> keys are ignored, because
+     *    they can't match in SQL.
+     * @param bindVariableValues Optional bind variable values, for every other
+     *    <code>?</code> in the SQL query, in order.
+     * @return A <code>Map</code> of each key to its <code>List</code> of
+     *    <code>ResultSetRows</code>, in the order of the keys, with an empty
+     *    <code>List</code> for any key with no rows.
+     * @throws SQLException If there was a problem executing the statement.
+     * @throws IllegalArgumentException If the SQL statement doesn't contain
+     *    exactly one <code>IN (?)</code>, or if the key column isn't in the
+     *    results.
+     * @since 0.12.0
+     */
+    public Map<Object, List<ResultSetRow>> execQueryIn(String sql, String keyColumn, Collection<?> keys,
+        Object... bindVariableValues) throws SQLException
+    {
+        // Search a copy without literals and comments, at the same indexes.
+        String code = maskLiteralsAndComments(sql);
+        Matcher matcher = IN_LIST_PATTERN.matcher(code);
+        if (!matcher.find())
+            throw new IllegalArgumentException("SQL must contain \"IN (?)\": " + sql);
+        String before = sql.substring(0, matcher.start());
+        String after = sql.substring(matcher.end());
+        if (matcher.find())
+            throw new IllegalArgumentException("SQL must contain only one \"IN (?)\": " + sql);
+        int numBindsBefore = 0;
+        for (int i = 0; i < before.length(); i++)
+        {
+            if (code.charAt(i) == '?')
+                numBindsBefore++;
+        }
+        if (numBindsBefore > bindVariableValues.length)
+            throw new IllegalArgumentException("Expected at least " + numBindsBefore +
+                    " bind variable values, got " + bindVariableValues.length + ".");
+
+        // Normalized key -> original key, in order, without duplicates.
+        Map<Object, Object> distinctKeys = new LinkedHashMap<>();
+        Map<Object, List<ResultSetRow>> results = new LinkedHashMap<>();
+        for (Object key : keys)
         {
-            for (int i = 0; i < bindVariableValues.length; i++)
+            if (key != null)
             {
-                // Set bind variables here.
-                // Try for most common first.
-                // Convert to 1-based JDBC index.
-                Object o = bindVariableValues[i];
-                if (o instanceof String)
-                    ps.setString(i + 1, (String) o);
-                else if (o instanceof Integer)
-                    ps.setInt(i + 1, (Integer) o);
-                else if (o instanceof Double)
-                    ps.setDouble(i + 1, (Double) o);
-                else if (o instanceof Boolean)
-                    ps.setBoolean(i + 1, (Boolean) o);
-                else if (o instanceof Float)
-                    ps.setFloat(i + 1, (Float) o);
-                else if (o instanceof Long)
-                    ps.setLong(i + 1, (Long) o);
-                else if (o instanceof Date)
-                    ps.setDate(i + 1, (Date) o);
-                else if (o instanceof Time)
-                    ps.setTime(i + 1, (Time) o);
-                else if (o instanceof Timestamp)
-                    ps.setTimestamp(i + 1, (Timestamp) o);
-                else if (o instanceof BigDecimal)
-                    ps.setBigDecimal(i + 1, (BigDecimal) o);
-                else if (o instanceof Short)
-                    ps.setShort(i + 1, (Short) o);
-                else if (o instanceof Byte)
-                    ps.setByte(i + 1, (Byte) o);
-                else if (o instanceof byte[])
-                    ps.setBytes(i + 1, (byte[]) o);
-                else if (o instanceof Clob)
-                    ps.setClob(i + 1, (Clob) o);
-                else if (o instanceof Blob)
-                    ps.setBlob(i + 1, (Blob) o);
-                else if (o instanceof Array)
-                    ps.setArray(i + 1, (Array) o);
-                else if (o instanceof SQLXML)
-                    ps.setSQLXML(i + 1, (SQLXML) o);
-                else if (o instanceof RowId)
-                    ps.setRowId(i + 1, (RowId) o);
-                else if (o instanceof URL)
-                    ps.setURL(i + 1, (URL) o);
-                // Should cover NULL as well.
+                Object normalized = normalizeKey(key);
+                if (!distinctKeys.containsKey(normalized))
+                {
+                    distinctKeys.put(normalized, key);
+                    results.put(key, new ArrayList<ResultSetRow>());
+                }
+            }
+        }
+        List<Object> keyList = new ArrayList<>(distinctKeys.keySet());
+
+        for (int start = 0; start < keyList.size(); start += MAX_IN_LIST_SIZE)
+        {
+            List<Object> chunk = keyList.subList(start, Math.min(start + MAX_IN_LIST_SIZE, keyList.size()));
+            int inListSize = Math.min(Integer.highestOneBit(chunk.size() - 1) << 1, MAX_IN_LIST_SIZE);
+            inListSize = Math.max(inListSize, chunk.size());
+
+            StringBuilder buf = new StringBuilder(before);
+            buf.append("IN (");
+            Object[] binds = new Object[bindVariableValues.length + inListSize];
+            System.arraycopy(bindVariableValues, 0, binds, 0, numBindsBefore);
+            for (int i = 0; i < inListSize; i++)
+            {
+                if (i > 0)
+                    buf.append(", ");
+                buf.append("?");
+                Object key = chunk.get(Math.min(i, chunk.size() - 1));
+                binds[numBindsBefore + i] = distinctKeys.get(key);
+            }
+            buf.append(")");
+            buf.append(after);
+            System.arraycopy(bindVariableValues, numBindsBefore, binds, numBindsBefore + inListSize,
+                    bindVariableValues.length - numBindsBefore);
+
+            List<ResultSetRow> rows = execQuery(buf.toString(), binds);
+            if (!rows.isEmpty() && rows.get(0).getSchema().indexOf(keyColumn) < 0)
+                throw new IllegalArgumentException("Key column \"" + keyColumn + "\" not found in results of: " + sql);
+            for (ResultSetRow row : rows)
+            {
+                Object key = distinctKeys.get(normalizeKey(row.get(keyColumn)));
+                if (key != null)
+                    results.get(key).add(row);
                 else
-                    ps.setObject(i + 1, o);
+                    logger.debug("execQueryIn: no key matches {}={}", keyColumn, row.get(keyColumn));
             }
-            try (ResultSet rs = ps.executeQuery())
+        }
+        return results;
+    }
+
+    /**
+     * Returns a copy of the given SQL statement with its string literals,
+     * quoted identifiers, and comments replaced by spaces, so that the
+     * <code>?</code> found in the copy are the bind variables, at the same
+     * indexes as in the statement.  A doubled quote inside a literal, e.g.
+     * <code>'It''s'</code>, just ends one literal and starts another.
+     * @param sql The SQL statement.
+     * @return The SQL statement without literals and comments.
+     * @since 0.12.0
+     */
+    private static String maskLiteralsAndComments(String sql)
+    {
+        StringBuilder buf = new StringBuilder(sql);
+        int length = sql.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = sql.charAt(i);
+            int end;
+            if (c == '\'' || c == '"')
+            {
+                end = sql.indexOf(c, i + 1);
+                end = (end < 0) ? length : end + 1;
+            }
+            else if (sql.startsWith("--", i))
+            {
+                end = sql.indexOf('\n', i);
+                if (end < 0)
+                    end = length;
+            }
+            else if (sql.startsWith("/*", i))
+            {
+                end = sql.indexOf("*/", i + 2);
+                end = (end < 0) ? length : end + 2;
+            }
+            else
+            {
+                i++;
+                continue;
+            }
+            for (int j = i; j < end; j++)
+            {
+                buf.setCharAt(j, ' ');
+            }
+            i = end;
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Executes the given SQL statement using a <code>PreparedStatement</code>
+     * with a forward-only, read-only cursor, and returns a
+     * <code>ResultSetCursor</code> that reads the <code>ResultSetRows</code>
+     * one at a time as it's iterated.  The <code>ResultSetCursor</code> must
+     * be closed, which closes the <code>ResultSet</code> and the
+     * <code>PreparedStatement</code>, plus the <code>Connection</code> if it
+     * came from a <code>DataSource</code>.  It closes itself once all rows
+     * have been read, and a "forEach" tag closes it when its loop is done.
+     * @param sql The SQL statement.
+     * @param bindVariableValues Optional bind variable values.  There must be
+     *    exactly one of these for every <code>?</code> in the SQL query.
+     * @return A <code>ResultSetCursor</code>.
+     * @throws SQLException If there was a problem executing the statement.
+     * @since 0.12.0
+     */
+    public ResultSetCursor streamQuery(String sql, Object... bindVariableValues) throws SQLException
+    {
+        Connection connection = getConnection();
+        PreparedStatement ps = null;
+        try
+        {
+            ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (myFetchSize > 0)
+                ps.setFetchSize(myFetchSize);
+            setBindVariables(ps, bindVariableValues);
+            ResultSet rs = ps.executeQuery();
+            return new ResultSetCursor(this, rs, ps, (myDataSource != null) ? connection : null);
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            if (ps != null)
+                ps.close();
+            releaseConnection(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Determines whether the given rows may be placed into the result cache.
+     * Rows with lazily read LOBs may not, because the LOBs may not be valid
+     * by the time they're accessed from the cache.
+     * @param rows The <code>ResultSetRows</code> of a query.
+     * @return Whether the rows may be cached.
+     * @since 0.12.0
+     */
+    private boolean isCacheable(List<ResultSetRow> rows)
+    {
+        if (!isReadingLobsLazily() || rows.isEmpty())
+            return true;
+        for (int type : rows.get(0).getSchema().getTypes())
+        {
+            if (type == Types.CLOB || type == Types.NCLOB || type == Types.BLOB)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether <code>execQuery</code> reads LOBs lazily.  It doesn't
+     * if the <code>Connection</code> comes from a <code>DataSource</code>,
+     * because the <code>Connection</code>, and with it the LOBs, is closed as
+     * soon as the query is done.
+     * @return Whether <code>execQuery</code> reads LOBs lazily.
+     * @since 0.12.0
+     */
+    private boolean isReadingLobsLazily()
+    {
+        return amIReadingLobsLazily && myDataSource == null;
+    }
+
+    /**
+     * Returns a <code>PreparedStatement</code> for the given SQL statement,
+     * from the statement cache if possible.  A statement that is prepared
+     * while caching is on is placed into the cache.
+     * @param connection The <code>Connection</code>.
+     * @param sql The SQL statement.
+     * @return A <code>PreparedStatement</code>, with no bind variables set.
+     * @throws SQLException If there was a problem preparing the statement.
+     * @since 0.12.0
+     */
+    private PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException
+    {
+        PreparedStatement ps = (myStatementCache != null) ? myStatementCache.get(sql) : null;
+        if (ps != null)
+        {
+            myNumStatementCacheHits++;
+            ps.clearParameters();
+            return ps;
+        }
+        ps = connection.prepareStatement(sql);
+        myNumStatementsPrepared++;
+        if (myStatementCache != null)
+            myStatementCache.put(sql, ps);
+        return ps;
+    }
+
+    /**
+     * Closes the given <code>PreparedStatement</code>, logging instead of
+     * throwing any <code>SQLException</code>.
+     * @param ps A <code>PreparedStatement</code>.
+     * @since 0.12.0
+     */
+    private static void closeQuietly(PreparedStatement ps)
+    {
+        try
+        {
+            ps.close();
+        }
+        catch (SQLException e)
+        {
+            logger.warn("Unable to close cached PreparedStatement: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the form of the given key used to match keys to the values of
+     * the key column in {@link #execQueryIn(String, String, Collection, Object...)}.
+     * Numbers are converted to <code>BigDecimals</code> without trailing
+     * zeros, so that equal numbers of different types match.
+     * @param key A key or key column value.
+     * @return The normalized key.
+     * @since 0.12.0
+     */
+    private static Object normalizeKey(Object key)
+    {
+        if (key instanceof Number)
+        {
+            try
             {
-                return processResultSet(rs);
+                return new BigDecimal(key.toString()).stripTrailingZeros();
+            }
+            catch (NumberFormatException e)
+            {
+                // e.g. NaN or Infinity.
+                return key;
             }
         }
+        return key;
+    }
+
+    /**
+     * Sets the given bind variable values on the given
+     * <code>PreparedStatement</code>.
+     * @param ps A <code>PreparedStatement</code>.
+     * @param bindVariableValues The bind variable values.
+     * @throws SQLException If there was a problem setting a bind variable.
+     * @since 0.12.0
+     */
+    private void setBindVariables(PreparedStatement ps, Object... bindVariableValues) throws SQLException
+    {
+        for (int i = 0; i < bindVariableValues.length; i++)
+        {
+            // Set bind variables here.
+            // Try for most common first.
+            // Convert to 1-based JDBC index.
+            Object o = bindVariableValues[i];
+            if (o instanceof String)
+                ps.setString(i + 1, (String) o);
+            else if (o instanceof Integer)
+                ps.setInt(i + 1, (Integer) o);
+            else if (o instanceof Double)
+                ps.setDouble(i + 1, (Double) o);
+            else if (o instanceof Boolean)
+                ps.setBoolean(i + 1, (Boolean) o);
+            else if (o instanceof Float)
+                ps.setFloat(i + 1, (Float) o);
+            else if (o instanceof Long)
+                ps.setLong(i + 1, (Long) o);
+            else if (o instanceof Date)
+                ps.setDate(i + 1, (Date) o);
+            else if (o instanceof Time)
+                ps.setTime(i + 1, (Time) o);
+            else if (o instanceof Timestamp)
+                ps.setTimestamp(i + 1, (Timestamp) o);
+            else if (o instanceof BigDecimal)
+                ps.setBigDecimal(i + 1, (BigDecimal) o);
+            else if (o instanceof Short)
+                ps.setShort(i + 1, (Short) o);
+            else if (o instanceof Byte)
+                ps.setByte(i + 1, (Byte) o);
+            else if (o instanceof byte[])
+                ps.setBytes(i + 1, (byte[]) o);
+            else if (o instanceof Clob)
+                ps.setClob(i + 1, (Clob) o);
+            else if (o instanceof Blob)
+                ps.setBlob(i + 1, (Blob) o);
+            else if (o instanceof Array)
+                ps.setArray(i + 1, (Array) o);
+            else if (o instanceof SQLXML)
+                ps.setSQLXML(i + 1, (SQLXML) o);
+            else if (o instanceof RowId)
+                ps.setRowId(i + 1, (RowId) o);
+            else if (o instanceof URL)
+                ps.setURL(i + 1, (URL) o);
+            // Should cover NULL as well.
+            else
+                ps.setObject(i + 1, o);
+        }
+    }
+
+    /**
+     * Returns the <code>Connection</code> over which to run a query: either
+     * the supplied <code>Connection</code>, or a new one from the supplied
+     * <code>DataSource</code>.
+     * @return A <code>Connection</code>.
+     * @throws SQLException If there was a problem obtaining a
+     *    <code>Connection</code> from the <code>DataSource</code>.
+     * @since 0.12.0
+     */
+    private Connection getConnection() throws SQLException
+    {
+        return (myDataSource != null) ? myDataSource.getConnection() : myConnection;
+    }
+
+    /**
+     * Closes the given <code>Connection</code> if it came from the supplied
+     * <code>DataSource</code>; a supplied <code>Connection</code> is left
+     * open.
+     * @param connection The <code>Connection</code> from
+     *    {@link #getConnection()}.
+     * @throws SQLException If there was a problem closing the
+     *    <code>Connection</code>.
+     * @since 0.12.0
+     */
+    private void releaseConnection(Connection connection) throws SQLException
+    {
+        if (myDataSource != null)
+            connection.close();
     }
 
     /**
@@ -144,130 +832,195 @@ public class JDBCExecutor
      */
     private List<ResultSetRow> processResultSet(ResultSet rs) throws SQLException
     {
-        ResultSetMetaData rsmd = rs.getMetaData();
-        List<Integer> types = getTypes(rsmd);
-        List<String> colNames = getColumnNames(rsmd);
+        ResultSetSchema schema = getSchema(rs.getMetaData());
+        boolean readLobsLazily = isReadingLobsLazily();
+        // A Connection from a DataSource is closed before the rows are used,
+        // and cached rows may outlive a supplied Connection.
+        boolean readBlobs = (myDataSource != null || myResultCache != null);
         List<ResultSetRow> rows = new ArrayList<>();
         while (rs.next())
         {
-            ResultSetRow row = new ResultSetRow();
-            for (int i = 0; i < types.size(); i++)
-            {
-                // http://docs.oracle.com/javase/6/docs/technotes/guides/jdbc/getstart/mapping.html#996857
-                // gives the mappings between JDBC types and Java data types.
-                // Convert to 1-based JDBC index.
-                String colName = colNames.get(i);
-                logger.debug("pRS: i={}, colName={}", i, colNames.get(i));
+            rows.add(readRow(rs, schema, readLobsLazily, readBlobs));
+        }
 
-                switch(types.get(i))
-                {
-                case Types.CHAR:
-                case Types.VARCHAR:
-                case Types.LONGVARCHAR:
-                    row.set(colName, rs.getString(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.BINARY:
-                case Types.VARBINARY:
-                case Types.LONGVARBINARY:
-                    row.set(colName, rs.getBytes(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.BIT:
-                case Types.BOOLEAN:
-                    row.set(colName, rs.getBoolean(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.TINYINT:
-                case Types.SMALLINT:
-                    row.set(colName, rs.getShort(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.INTEGER:
-                    row.set(colName, rs.getInt(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.REAL:
-                    row.set(colName, rs.getFloat(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.FLOAT:
-                case Types.DOUBLE:
-                    row.set(colName, rs.getDouble(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.DECIMAL:
-                case Types.NUMERIC:
-                    row.set(colName, rs.getBigDecimal(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.DATE:
-                    row.set(colName, rs.getDate(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.TIME:
-                    row.set(colName, rs.getTime(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                   break;
-                case Types.TIMESTAMP:
-                    row.set(colName, rs.getTimestamp(i + 1));
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.CLOB:
+        return rows;
+    }
+
+    /**
+     * Reads all content of the current row of the given
+     * <code>ResultSet</code> into a <code>ResultSetRow</code>, reading LOBs
+     * lazily if so configured.
+     * @param rs A <code>ResultSet</code>, positioned on a row.
+     * @param schema The <code>ResultSetSchema</code> of the columns, shared
+     *    by all rows.
+     * @return A <code>ResultSetRow</code>.
+     * @throws SQLException If there is a problem reading the row.
+     * @since 0.12.0
+     */
+    ResultSetRow readRow(ResultSet rs, ResultSetSchema schema) throws SQLException
+    {
+        return readRow(rs, schema, amIReadingLobsLazily, false);
+    }
+
+    /**
+     * Reads all content of the current row of the given
+     * <code>ResultSet</code> into a <code>ResultSetRow</code>.
+     * @param rs A <code>ResultSet</code>, positioned on a row.
+     * @param schema The <code>ResultSetSchema</code> of the columns, shared
+     *    by all rows.
+     * @param readLobsLazily Whether to read CLOBs and BLOBs only when they're
+     *    first accessed.
+     * @param readBlobs Whether to read BLOBs that aren't read lazily into
+     *    <code>byte[]</code>s now, because they won't be valid later, instead
+     *    of keeping the driver's objects.
+     * @return A <code>ResultSetRow</code>.
+     * @throws SQLException If there is a problem reading the row.
+     * @since 0.12.0
+     */
+    private ResultSetRow readRow(ResultSet rs, ResultSetSchema schema, boolean readLobsLazily, boolean readBlobs)
+            throws SQLException
+    {
+        List<Integer> types = schema.getTypes();
+        ResultSetRow row = new ResultSetRow(schema);
+        for (int i = 0; i < types.size(); i++)
+        {
+            // http://docs.oracle.com/javase/6/docs/technotes/guides/jdbc/getstart/mapping.html#996857
+            // gives the mappings between JDBC types and Java data types.
+            // Convert to 1-based JDBC index.
+            logger.debug("pRS: i={}, colName={}", i, schema.getColumnNames().get(i));
+
+            switch(types.get(i))
+            {
+            case Types.CHAR:
+            case Types.VARCHAR:
+                row.set(i, rs.getString(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.LONGVARCHAR:
+            {
+                String value = rs.getString(i + 1);
+                if (rs.wasNull() || value == null)
+                    row.set(i, null);
+                else if (myMaxClobLength > 0 && value.length() > myMaxClobLength)
+                    row.set(i, value.substring(0, myMaxClobLength));
+                else
+                    row.set(i, value);
+                break;
+            }
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                row.set(i, rs.getBytes(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                row.set(i, rs.getBoolean(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                row.set(i, rs.getShort(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.INTEGER:
+                row.set(i, rs.getInt(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.REAL:
+                row.set(i, rs.getFloat(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                row.set(i, rs.getDouble(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                row.set(i, rs.getBigDecimal(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.DATE:
+                row.set(i, rs.getDate(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.TIME:
+                row.set(i, rs.getTime(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+               break;
+            case Types.TIMESTAMP:
+                row.set(i, rs.getTimestamp(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.CLOB:
+            case Types.NCLOB:
+            {
+                Clob clob = rs.getClob(i + 1);
+                if (rs.wasNull() || clob == null)
+                    row.set(i, null);
+                else if (readLobsLazily)
+                    row.set(i, new LazyLob(clob, myMaxClobLength));
+                else
+                    row.set(i, LazyLob.readClob(clob, myMaxClobLength));
+                break;
+            }
+            case Types.ARRAY:
+                row.set(i, rs.getArray(i + 1).getArray());
+                if (rs.wasNull())
+                    row.set(i, null);
+                break;
+            case Types.BLOB:
+                if (readLobsLazily || readBlobs)
                 {
-                    Clob clob = rs.getClob(i + 1);
-                    if (rs.wasNull())
-                    {
-                        row.set(colName, null);
-                    }
+                    Blob blob = rs.getBlob(i + 1);
+                    if (rs.wasNull() || blob == null)
+                        row.set(i, null);
+                    else if (readLobsLazily)
+                        row.set(i, new LazyLob(blob));
                     else
-                    {
-                        BufferedReader r = new BufferedReader(clob.getCharacterStream());
-                        StringBuffer buf = new StringBuffer();
-                        String line;
-                        try
-                        {
-                            while ((line = r.readLine()) != null)
-                            {
-                                buf.append(line);
-                            }
-                            row.set(colName, buf.toString());
-                        }
-                        catch (IOException e)
-                        {
-                            row.set(colName, e.getMessage());
-                        }
-                     }
-                     break;
+                        row.set(i, new LazyLob(blob).read());
                 }
-                case Types.ARRAY:
-                    row.set(colName, rs.getArray(i + 1).getArray());
-                    if (rs.wasNull())
-                        row.set(colName, null);
-                    break;
-                case Types.BLOB:
-                case Types.JAVA_OBJECT:
-                default:
-                    row.set(colName, rs.getObject(i + 1));
+                else
+                {
+                    // Get the Blob as an object.
+                    row.set(i, rs.getObject(i + 1));
                     if (rs.wasNull())
-                        row.set(colName, null);
+                        row.set(i, null);
                 }
+                break;
+            case Types.JAVA_OBJECT:
+            default:
+                row.set(i, rs.getObject(i + 1));
+                if (rs.wasNull())
+                    row.set(i, null);
             }
-            rows.add(row);
         }
+        return row;
+    }
 
-        return rows;
+    /**
+     * Returns the <code>ResultSetSchema</code> of the result set, to be shared
+     * by all of its rows.
+     * @param rsmd A <code>ResultSetMetaData</code>.
+     * @return A <code>ResultSetSchema</code>.
+     * @throws SQLException If there is a problem accessing the metadata.
+     * @since 0.12.0
+     */
+    ResultSetSchema getSchema(ResultSetMetaData rsmd) throws SQLException
+    {
+        return new ResultSetSchema(getColumnNames(rsmd), getTypes(rsmd));
     }
 
     /**
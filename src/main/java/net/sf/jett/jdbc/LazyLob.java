@@ -0,0 +1,133 @@
+package net.sf.jett.jdbc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * <p>A <code>LazyLob</code> stands in for the value of a CLOB or BLOB column
+ * in a <code>ResultSetRow</code> until the value is first accessed, so that
+ * LOBs that no template cell references are never read.  A CLOB is read as a
+ * <code>String</code>, and a BLOB as a <code>byte[]</code>.</p>
+ *
+ * <p>It also contains the bounded reading logic used for CLOBs whether or not
+ * they are read lazily.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+class LazyLob
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private Clob myClob;
+    private Blob myBlob;
+    private int myMaxLength;
+
+    /**
+     * Constructs a <code>LazyLob</code> for a CLOB.
+     * @param clob The <code>Clob</code>.
+     * @param maxLength The maximum number of characters to read, or
+     *    <code>0</code> for no maximum.
+     */
+    LazyLob(Clob clob, int maxLength)
+    {
+        myClob = clob;
+        myMaxLength = maxLength;
+    }
+
+    /**
+     * Constructs a <code>LazyLob</code> for a BLOB.
+     * @param blob The <code>Blob</code>.
+     */
+    LazyLob(Blob blob)
+    {
+        myBlob = blob;
+    }
+
+    /**
+     * Reads the LOB, then frees it.
+     * @return A <code>String</code> for a CLOB, or a <code>byte[]</code> for a
+     *    BLOB.
+     * @throws SQLException If there was a problem reading the LOB, e.g.
+     *    because it's no longer valid.
+     */
+    Object read() throws SQLException
+    {
+        try
+        {
+            if (myClob != null)
+                return readClob(myClob, myMaxLength);
+            long length = myBlob.length();
+            if (length > Integer.MAX_VALUE)
+                throw new SQLException("BLOB too large to read: " + length + " bytes");
+            return myBlob.getBytes(1, (int) length);
+        }
+        finally
+        {
+            free();
+        }
+    }
+
+    /**
+     * Reads the given <code>Clob</code> into a <code>String</code> through a
+     * character buffer, keeping line terminators.  If a maximum length is
+     * given, then no more than that many characters are read.
+     * @param clob The <code>Clob</code>.
+     * @param maxLength The maximum number of characters to read, or
+     *    <code>0</code> for no maximum.
+     * @return The content of the <code>Clob</code>.
+     * @throws SQLException If there was a problem reading the
+     *    <code>Clob</code>.
+     */
+    static String readClob(Clob clob, int maxLength) throws SQLException
+    {
+        long length = clob.length();
+        int limit = (maxLength > 0) ? maxLength : Integer.MAX_VALUE;
+        StringBuilder buf = new StringBuilder((int) Math.min(Math.max(length, 16), Math.min(limit, 1 << 20)));
+        char[] chars = new char[Math.min(BUFFER_SIZE, limit)];
+        try (Reader reader = clob.getCharacterStream())
+        {
+            int numRead;
+            while (buf.length() < limit &&
+                   (numRead = reader.read(chars, 0, Math.min(chars.length, limit - buf.length()))) != -1)
+            {
+                buf.append(chars, 0, numRead);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SQLException("Unable to read CLOB: " + e.getMessage(), e);
+        }
+        if (buf.length() < length)
+            logger.debug("Truncated CLOB of length {} to {} characters.", length, buf.length());
+        return buf.toString();
+    }
+
+    /**
+     * Frees the LOB, releasing the resources that hold it.
+     */
+    private void free()
+    {
+        try
+        {
+            if (myClob != null)
+                myClob.free();
+            else
+                myBlob.free();
+        }
+        catch (SQLException e)
+        {
+            logger.debug("Unable to free LOB: {}", e.getMessage());
+        }
+        myClob = null;
+        myBlob = null;
+    }
+}
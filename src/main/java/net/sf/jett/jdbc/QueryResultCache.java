@@ -0,0 +1,432 @@
+package net.sf.jett.jdbc;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * <p>A <code>QueryResultCache</code> remembers the rows returned by queries,
+ * keyed by SQL text, bind variable values, and the maximum length to which
+ * CLOBs were read, so that a query for reference
+ * data, e.g. a code table, doesn't have to run again for every
+ * transformation.  Attach it to any number of <code>JDBCExecutors</code> with
+ * {@link JDBCExecutor#setResultCache(QueryResultCache)}.</p>
+ *
+ * <p>Results expire after a time to live, and the least recently used results
+ * are evicted when the estimated size of all cached rows exceeds a maximum
+ * number of bytes.  Results can also be discarded explicitly, e.g. when the
+ * underlying tables change.  The sizes are estimates, meant for tuning with
+ * the statistics that this cache keeps, not exact measurements.</p>
+ *
+ * <p>A <code>QueryResultCache</code> is thread-safe, so it can be shared by
+ * transformations on different threads.  The cached rows themselves are
+ * shared, so they must not be modified.  If two threads run the same query at
+ * the same time before its results are cached, both run it.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class QueryResultCache
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    // Rough sizes, in bytes, of objects on a 64-bit JVM with compressed
+    // references.
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int BOXED_SIZE = 24;
+
+    private final long myMaxWeight;
+    private final long myTtlNanos;
+    private final LinkedHashMap<Key, Entry> myEntries;
+    private long myWeight;
+    private long myNumHits;
+    private long myNumMisses;
+    private long myNumEvictions;
+    private long myNumExpirations;
+
+    /**
+     * Constructs a <code>QueryResultCache</code>.
+     * @param maxWeight The maximum estimated size, in bytes, of all cached
+     *    rows.
+     * @param ttlMillis How long results stay cached, in milliseconds, or
+     *    <code>0</code> to keep them until they're evicted or invalidated.
+     * @throws IllegalArgumentException If <code>maxWeight</code> isn't
+     *    positive, or if <code>ttlMillis</code> is negative.
+     */
+    public QueryResultCache(long maxWeight, long ttlMillis)
+    {
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        if (ttlMillis < 0)
+            throw new IllegalArgumentException("Time to live must not be negative: " + ttlMillis);
+        myMaxWeight = maxWeight;
+        myTtlNanos = ttlMillis * 1000000L;
+        myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached rows for the given query, if they're cached and
+     * haven't expired.
+     * @param maxClobLength The maximum number of characters to which CLOBs
+     *    were read, or <code>0</code> for no maximum.  Rows read with a
+     *    different maximum aren't returned.
+     * @param sql The SQL statement.
+     * @param bindVariableValues The bind variable values.
+     * @return An unmodifiable <code>List</code> of <code>ResultSetRows</code>,
+     *    or <code>null</code> if the query's results aren't cached.
+     */
+    public synchronized List<ResultSetRow> get(int maxClobLength, String sql, Object... bindVariableValues)
+    {
+        Key key = new Key(maxClobLength, sql, bindVariableValues);
+        Entry entry = myEntries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime()))
+        {
+            remove(key);
+            myNumExpirations++;
+            entry = null;
+        }
+        if (entry == null)
+        {
+            myNumMisses++;
+            return null;
+        }
+        myNumHits++;
+        return entry.myRows;
+    }
+
+    /**
+     * Caches the given rows as the results of the given query, evicting the
+     * least recently used results as necessary to stay within the maximum
+     * size.  Results larger than the maximum size aren't cached.
+     * @param maxClobLength The maximum number of characters to which CLOBs
+     *    were read, or <code>0</code> for no maximum.
+     * @param sql The SQL statement.
+     * @param bindVariableValues The bind variable values.
+     * @param rows The query's <code>ResultSetRows</code>.
+     * @return An unmodifiable <code>List</code> of the given rows, which is
+     *    what later calls to <code>get</code> return.
+     */
+    public synchronized List<ResultSetRow> put(int maxClobLength, String sql, Object[] bindVariableValues,
+                                               List<ResultSetRow> rows)
+    {
+        List<ResultSetRow> cachedRows = Collections.unmodifiableList(rows);
+        Key key = new Key(maxClobLength, sql, bindVariableValues);
+        long weight = weigh(key, rows);
+        remove(key);
+        if (weight > myMaxWeight)
+        {
+            logger.debug("Not caching {} rows ({} bytes) over maximum {} bytes: {}",
+                    rows.size(), weight, myMaxWeight, sql);
+            return cachedRows;
+        }
+
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Key, Entry>> itr = myEntries.entrySet().iterator();
+             itr.hasNext() && myWeight + weight > myMaxWeight; )
+        {
+            Entry eldest = itr.next().getValue();
+            itr.remove();
+            myWeight -= eldest.myWeight;
+            if (isExpired(eldest, now))
+                myNumExpirations++;
+            else
+                myNumEvictions++;
+        }
+        myEntries.put(key, new Entry(cachedRows, weight, now));
+        myWeight += weight;
+        return cachedRows;
+    }
+
+    /**
+     * Discards the cached results of the given query with the given bind
+     * variable values, read with any maximum CLOB length.
+     * @param sql The SQL statement.
+     * @param bindVariableValues The bind variable values.
+     */
+    public synchronized void invalidate(String sql, Object... bindVariableValues)
+    {
+        Key query = new Key(0, sql, bindVariableValues);
+        for (Iterator<Map.Entry<Key, Entry>> itr = myEntries.entrySet().iterator(); itr.hasNext(); )
+        {
+            Map.Entry<Key, Entry> mapEntry = itr.next();
+            if (mapEntry.getKey().isSameQuery(query))
+            {
+                itr.remove();
+                myWeight -= mapEntry.getValue().myWeight;
+            }
+        }
+    }
+
+    /**
+     * Discards the cached results of the given query with any bind variable
+     * values, read with any maximum CLOB length.
+     * @param sql The SQL statement.
+     */
+    public synchronized void invalidateAll(String sql)
+    {
+        for (Iterator<Map.Entry<Key, Entry>> itr = myEntries.entrySet().iterator(); itr.hasNext(); )
+        {
+            Map.Entry<Key, Entry> mapEntry = itr.next();
+            if (mapEntry.getKey().mySql.equals(sql))
+            {
+                itr.remove();
+                myWeight -= mapEntry.getValue().myWeight;
+            }
+        }
+    }
+
+    /**
+     * Discards all cached results.  Statistics are kept.
+     */
+    public synchronized void clear()
+    {
+        myEntries.clear();
+        myWeight = 0;
+    }
+
+    /**
+     * Returns the number of queries whose results are cached, including any
+     * that have expired but haven't been discarded yet.
+     * @return The number of cached queries.
+     */
+    public synchronized int getNumEntries()
+    {
+        return myEntries.size();
+    }
+
+    /**
+     * Returns the estimated size of all cached rows, in bytes.
+     * @return The estimated size, in bytes.
+     */
+    public synchronized long getWeight()
+    {
+        return myWeight;
+    }
+
+    /**
+     * Returns the maximum estimated size of all cached rows, in bytes.
+     * @return The maximum size, in bytes.
+     */
+    public long getMaxWeight()
+    {
+        return myMaxWeight;
+    }
+
+    /**
+     * Returns the number of times that cached results were found.
+     * @return The number of hits.
+     */
+    public synchronized long getNumHits()
+    {
+        return myNumHits;
+    }
+
+    /**
+     * Returns the number of times that results weren't cached, or had expired.
+     * @return The number of misses.
+     */
+    public synchronized long getNumMisses()
+    {
+        return myNumMisses;
+    }
+
+    /**
+     * Returns the number of results discarded to make room for others.
+     * @return The number of evictions.
+     */
+    public synchronized long getNumEvictions()
+    {
+        return myNumEvictions;
+    }
+
+    /**
+     * Returns the number of results discarded because they expired.
+     * @return The number of expirations.
+     */
+    public synchronized long getNumExpirations()
+    {
+        return myNumExpirations;
+    }
+
+    /**
+     * Returns a string summary of this cache's statistics, for logging.
+     * @return A string representation.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "QueryResultCache[entries=" + myEntries.size() + ", bytes=" + myWeight + "/" + myMaxWeight +
+                ", hits=" + myNumHits + ", misses=" + myNumMisses + ", evictions=" + myNumEvictions +
+                ", expirations=" + myNumExpirations + "]";
+    }
+
+    /**
+     * Determines whether the given entry has expired.
+     * @param entry An <code>Entry</code>.
+     * @param now The current value of <code>System.nanoTime()</code>.
+     * @return Whether the entry has expired.
+     */
+    private boolean isExpired(Entry entry, long now)
+    {
+        return myTtlNanos > 0 && now - entry.myCreatedNanos >= myTtlNanos;
+    }
+
+    /**
+     * Removes the entry for the given key, if any.
+     * @param key The <code>Key</code>.
+     */
+    private void remove(Key key)
+    {
+        Entry entry = myEntries.remove(key);
+        if (entry != null)
+            myWeight -= entry.myWeight;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the given cached query.
+     * @param key The query's <code>Key</code>.
+     * @param rows The query's <code>ResultSetRows</code>.
+     * @return The estimated size, in bytes.
+     */
+    private static long weigh(Key key, List<ResultSetRow> rows)
+    {
+        long weight = OBJECT_OVERHEAD + weigh(key.mySql) + OBJECT_OVERHEAD +
+                (long) REFERENCE_SIZE * key.myBindVariableValues.length;
+        for (Object value : key.myBindVariableValues)
+        {
+            weight += weigh(value);
+        }
+        weight += OBJECT_OVERHEAD + (long) REFERENCE_SIZE * rows.size();
+        for (ResultSetRow row : rows)
+        {
+            // The row, its array of values, and the values.
+            weight += OBJECT_OVERHEAD + REFERENCE_SIZE * 3 + OBJECT_OVERHEAD;
+            ResultSetSchema schema = row.getSchema();
+            if (schema != null)
+            {
+                weight += (long) REFERENCE_SIZE * schema.getNumColumns();
+                for (int i = 0; i < schema.getNumColumns(); i++)
+                {
+                    weight += weigh(row.get(schema.getColumnNames().get(i)));
+                }
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the given value.
+     * @param value A column or bind variable value.
+     * @return The estimated size, in bytes.
+     */
+    private static long weigh(Object value)
+    {
+        if (value == null)
+            return 0;
+        if (value instanceof String)
+            return OBJECT_OVERHEAD * 2 + 2L * ((String) value).length();
+        if (value instanceof byte[])
+            return OBJECT_OVERHEAD + ((byte[]) value).length;
+        if (value instanceof BigDecimal)
+            return OBJECT_OVERHEAD * 2 + BOXED_SIZE + ((BigDecimal) value).unscaledValue().bitLength() / 8;
+        if (value instanceof Object[])
+        {
+            Object[] array = (Object[]) value;
+            long weight = OBJECT_OVERHEAD + (long) REFERENCE_SIZE * array.length;
+            for (Object element : array)
+            {
+                weight += weigh(element);
+            }
+            return weight;
+        }
+        return BOXED_SIZE;
+    }
+
+    /**
+     * A <code>Key</code> identifies a query by its SQL text and bind variable
+     * values, and how its rows were read: the maximum CLOB length.
+     */
+    private static final class Key
+    {
+        private final int myMaxClobLength;
+        private final String mySql;
+        private final Object[] myBindVariableValues;
+        private final int myHashCode;
+
+        /**
+         * Constructs a <code>Key</code>.
+         * @param maxClobLength The maximum CLOB length, or <code>0</code> for
+         *    no maximum.
+         * @param sql The SQL statement.
+         * @param bindVariableValues The bind variable values, which are copied.
+         */
+        private Key(int maxClobLength, String sql, Object[] bindVariableValues)
+        {
+            myMaxClobLength = maxClobLength;
+            mySql = sql;
+            myBindVariableValues = (bindVariableValues != null) ? bindVariableValues.clone() : new Object[0];
+            myHashCode = 31 * (31 * maxClobLength + sql.hashCode()) + Arrays.deepHashCode(myBindVariableValues);
+        }
+
+        /**
+         * Determines whether the given <code>Key</code> identifies the same
+         * query, regardless of the maximum CLOB length.
+         * @param other Another <code>Key</code>.
+         * @return Whether the SQL text and bind variable values are equal.
+         */
+        private boolean isSameQuery(Key other)
+        {
+            return mySql.equals(other.mySql) && Arrays.deepEquals(myBindVariableValues, other.myBindVariableValues);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return myHashCode == other.myHashCode && myMaxClobLength == other.myMaxClobLength &&
+                    isSameQuery(other);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return myHashCode;
+        }
+    }
+
+    /**
+     * An <code>Entry</code> is the cached result of one query.
+     */
+    private static final class Entry
+    {
+        private final List<ResultSetRow> myRows;
+        private final long myWeight;
+        private final long myCreatedNanos;
+
+        /**
+         * Constructs an <code>Entry</code>.
+         * @param rows The unmodifiable <code>List</code> of rows.
+         * @param weight The estimated size, in bytes.
+         * @param createdNanos When the rows were cached, as
+         *    <code>System.nanoTime()</code>.
+         */
+        private Entry(List<ResultSetRow> rows, long weight, long createdNanos)
+        {
+            myRows = rows;
+            myWeight = weight;
+            myCreatedNanos = createdNanos;
+        }
+    }
+}
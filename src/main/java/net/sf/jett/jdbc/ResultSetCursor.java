@@ -0,0 +1,266 @@
+package net.sf.jett.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * <p>A <code>ResultSetCursor</code> streams the <code>ResultSetRows</code> of
+ * a query, reading each row from the open <code>ResultSet</code> only as it's
+ * iterated, so that only one row is held in memory at a time.  It can be
+ * iterated only once.</p>
+ *
+ * <p>A <code>ResultSetCursor</code> can be used directly as the items of a
+ * "forEach" tag, which closes it when its loop is done.  Closing it closes the
+ * <code>ResultSet</code> and its <code>Statement</code>, plus the
+ * <code>Connection</code> if the <code>JDBCExecutor</code> obtained it from a
+ * <code>DataSource</code>.  It also closes itself as soon as all rows have
+ * been read.</p>
+ *
+ * <p>If the <code>JDBCExecutor</code> reads LOBs lazily, then they must be
+ * accessed before the cursor is closed, because closing it typically
+ * invalidates them.  The LOBs of the last row returned are read when the
+ * cursor is closed, because a "forEach" tag asks whether there's another row,
+ * which closes the cursor, before it transforms the current row.</p>
+ *
+ * <p>Because <code>Iterator</code> methods can't throw a
+ * <code>SQLException</code>, a <code>SQLException</code> that occurs while
+ * reading a row is thrown wrapped in an
+ * <code>IllegalStateException</code>.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ * @see JDBCExecutor#streamQuery(String, Object...)
+ */
+public class ResultSetCursor implements Iterable<ResultSetRow>, AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private JDBCExecutor myExecutor;
+    private ResultSet myResultSet;
+    private Statement myStatement;
+    private Connection myConnection;
+    private ResultSetSchema mySchema;
+    private ResultSetRow myLastRow;
+    private boolean amIIterated;
+    private boolean amIClosed;
+    private int myNumRowsRead;
+
+    /**
+     * Constructs a <code>ResultSetCursor</code> over an open
+     * <code>ResultSet</code>.
+     * @param executor The <code>JDBCExecutor</code> that reads rows.
+     * @param rs The open <code>ResultSet</code>.
+     * @param statement The <code>Statement</code> that produced the
+     *    <code>ResultSet</code>.
+     * @param connection The <code>Connection</code> to close along with the
+     *    <code>Statement</code>, or <code>null</code> to leave it open.
+     * @throws SQLException If there is a problem accessing the metadata.
+     */
+    ResultSetCursor(JDBCExecutor executor, ResultSet rs, Statement statement, Connection connection)
+            throws SQLException
+    {
+        myExecutor = executor;
+        myResultSet = rs;
+        myStatement = statement;
+        myConnection = connection;
+        mySchema = executor.getSchema(rs.getMetaData());
+        myLastRow = null;
+        amIIterated = false;
+        amIClosed = false;
+        myNumRowsRead = 0;
+    }
+
+    /**
+     * Returns the names of the columns of the query's result.
+     * @return A <code>List</code> of column names.
+     */
+    public List<String> getColumnNames()
+    {
+        return mySchema.getColumnNames();
+    }
+
+    /**
+     * Returns the <code>ResultSetSchema</code> shared by all rows.
+     * @return The <code>ResultSetSchema</code>.
+     */
+    public ResultSetSchema getSchema()
+    {
+        return mySchema;
+    }
+
+    /**
+     * Returns the number of rows read so far.
+     * @return The number of rows read.
+     */
+    public int getNumRowsRead()
+    {
+        return myNumRowsRead;
+    }
+
+    /**
+     * Returns whether this cursor has been closed.
+     * @return Whether this cursor has been closed.
+     */
+    public boolean isClosed()
+    {
+        return amIClosed;
+    }
+
+    /**
+     * Returns an <code>Iterator</code> that reads the rows one at a time.
+     * @return An <code>Iterator</code> over <code>ResultSetRows</code>.
+     * @throws IllegalStateException If this cursor has already been iterated.
+     */
+    @Override
+    public Iterator<ResultSetRow> iterator()
+    {
+        if (amIIterated)
+            throw new IllegalStateException("A ResultSetCursor can only be iterated once.");
+        amIIterated = true;
+        return new Iterator<ResultSetRow>()
+        {
+            private ResultSetRow myNext = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (myNext == null && !amIClosed)
+                {
+                    try
+                    {
+                        if (myResultSet.next())
+                        {
+                            myNext = myExecutor.readRow(myResultSet, mySchema);
+                            myNumRowsRead++;
+                        }
+                        else
+                        {
+                            close();
+                        }
+                    }
+                    catch (SQLException e)
+                    {
+                        closeQuietly();
+                        throw new IllegalStateException("Unable to read row " + (myNumRowsRead + 1) + ": " +
+                                e.getMessage(), e);
+                    }
+                }
+                return myNext != null;
+            }
+
+            @Override
+            public ResultSetRow next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                ResultSetRow row = myNext;
+                myNext = null;
+                myLastRow = row;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Reads any lazily read LOBs of the last row returned, then closes the
+     * <code>ResultSet</code>, its <code>Statement</code>, and the
+     * <code>Connection</code> if it was obtained for this cursor, in that
+     * order.  All of them are closed even if closing one fails.  Closing an
+     * already closed cursor has no effect.
+     * @throws SQLException If there was a problem reading the LOBs or closing
+     *    any of them; any further problems are suppressed by the first.
+     */
+    @Override
+    public void close() throws SQLException
+    {
+        if (amIClosed)
+            return;
+        amIClosed = true;
+        logger.debug("Closing ResultSetCursor after {} rows.", myNumRowsRead);
+        SQLException exception = null;
+        if (myLastRow != null)
+        {
+            try
+            {
+                myLastRow.readLobs();
+            }
+            catch (SQLException e)
+            {
+                exception = e;
+            }
+            myLastRow = null;
+        }
+        try
+        {
+            myResultSet.close();
+        }
+        catch (SQLException e)
+        {
+            exception = suppress(exception, e);
+        }
+        try
+        {
+            myStatement.close();
+        }
+        catch (SQLException e)
+        {
+            exception = suppress(exception, e);
+        }
+        if (myConnection != null)
+        {
+            try
+            {
+                myConnection.close();
+            }
+            catch (SQLException e)
+            {
+                exception = suppress(exception, e);
+            }
+        }
+        myResultSet = null;
+        myStatement = null;
+        myConnection = null;
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * Combines the given exceptions, so that only one is thrown.
+     * @param first The first <code>SQLException</code>, or <code>null</code>
+     *    if there wasn't one.
+     * @param e Another <code>SQLException</code>.
+     * @return The first <code>SQLException</code>, with the other one added as
+     *    a suppressed exception, or the other one if there wasn't a first.
+     */
+    private static SQLException suppress(SQLException first, SQLException e)
+    {
+        if (first == null)
+            return e;
+        first.addSuppressed(e);
+        return first;
+    }
+
+    /**
+     * Closes this cursor, logging instead of throwing any
+     * <code>SQLException</code>, because one is already being thrown.
+     */
+    private void closeQuietly()
+    {
+        try
+        {
+            close();
+        }
+        catch (SQLException e)
+        {
+            logger.warn("Unable to close ResultSetCursor: {}", e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.sf.jett.jdbc;
 
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,11 +13,22 @@ import java.util.Map;
  * accessed via a call to <code>employee.get("first_name")</code>, since the
  * <code>getFirstName()</code> method would not be found.
  *
+ * <p>Rows read by a <code>JDBCExecutor</code> share one
+ * {@link ResultSetSchema} per query, and store their column values in an
+ * array, so no per-row map is needed.  Properties that aren't columns of the
+ * schema, including all properties of a row constructed with no schema, are
+ * kept in a map that's created only when needed.</p>
+ *
+ * <p>This class is not thread-safe; in particular, accessing a lazily read
+ * LOB replaces it with its value.</p>
+ *
  * @author Randy Gettman
  * @since 0.6.0
  */
 public class ResultSetRow
 {
+    private ResultSetSchema mySchema;
+    private Object[] myColumnValues;
     private Map<String, Object> myValues;
 
     /**
@@ -24,7 +36,32 @@ public class ResultSetRow
      */
     public ResultSetRow()
     {
-        myValues = new HashMap<>();
+        this(null);
+    }
+
+    /**
+     * Constructs an empty <code>ResultSetRow</code> for a row with the given
+     * columns.
+     * @param schema The <code>ResultSetSchema</code> shared by all rows of the
+     *    query, or <code>null</code> for none.
+     * @since 0.12.0
+     */
+    ResultSetRow(ResultSetSchema schema)
+    {
+        mySchema = schema;
+        myColumnValues = (schema != null) ? new Object[schema.getNumColumns()] : null;
+    }
+
+    /**
+     * Returns the <code>ResultSetSchema</code> that describes this row's
+     * columns.
+     * @return The <code>ResultSetSchema</code>, or <code>null</code> if this
+     *    row was constructed with no schema.
+     * @since 0.12.0
+     */
+    public ResultSetSchema getSchema()
+    {
+        return mySchema;
     }
 
     /**
@@ -34,17 +71,75 @@ public class ResultSetRow
      */
     public void set(String property, Object value)
     {
-        myValues.put(property.toLowerCase(), value);
+        int index = (mySchema != null) ? mySchema.indexOf(property) : -1;
+        if (index >= 0)
+        {
+            myColumnValues[index] = value;
+        }
+        else
+        {
+            if (myValues == null)
+                myValues = new HashMap<>();
+            myValues.put(property.toLowerCase(), value);
+        }
+    }
+
+    /**
+     * Sets the value of the column at the given index of this row's schema.
+     * @param index The 0-based column index.
+     * @param value The value.
+     * @since 0.12.0
+     */
+    void set(int index, Object value)
+    {
+        myColumnValues[index] = value;
+    }
+
+    /**
+     * Reads all lazily read LOBs of this row now, while they're still valid.
+     * @throws SQLException If a LOB couldn't be read.
+     * @since 0.12.0
+     */
+    void readLobs() throws SQLException
+    {
+        if (myColumnValues == null)
+            return;
+        for (int i = 0; i < myColumnValues.length; i++)
+        {
+            if (myColumnValues[i] instanceof LazyLob)
+                myColumnValues[i] = ((LazyLob) myColumnValues[i]).read();
+        }
     }
 
     /**
-     * Returns the value for a given property string name.
+     * Returns the value for a given property string name.  A lazily read LOB
+     * is read now, the first time it's accessed.
      * @param property A property string name.
      * @return The value, or <code>null</code> if the property string name did
      *    not exist.
+     * @throws IllegalStateException If a lazily read LOB couldn't be read.
      */
     public Object get(String property)
     {
-        return myValues.get(property.toLowerCase());
+        int index = (mySchema != null) ? mySchema.indexOf(property) : -1;
+        if (index >= 0)
+        {
+            Object value = myColumnValues[index];
+            if (value instanceof LazyLob)
+            {
+                try
+                {
+                    value = ((LazyLob) value).read();
+                }
+                catch (SQLException e)
+                {
+                    throw new IllegalStateException("Unable to read LOB column \"" + property + "\": " +
+                            e.getMessage(), e);
+                }
+                myColumnValues[index] = value;
+            }
+            return value;
+        }
+        return (myValues != null) ? myValues.get(property.toLowerCase()) : null;
     }
 }
@@ -0,0 +1,103 @@
+package net.sf.jett.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A <code>ResultSetSchema</code> describes the columns of one query's
+ * result, and is shared by all <code>ResultSetRows</code> of that result.
+ * Each row stores only an array of values, in column order, and uses its
+ * schema to turn a column name into an index.</p>
+ *
+ * <p>Column names are case-insensitive.  Each distinct spelling of a column
+ * name is normalized once, then remembered, so the repeated property accesses
+ * made by a template's expressions, e.g. <code>${employee.first_name}</code>
+ * for every row, are plain map lookups.</p>
+ *
+ * <p>A <code>ResultSetSchema</code> is immutable, apart from its memory of
+ * spellings, which is thread-safe.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ResultSetSchema
+{
+    private final List<String> myColumnNames;
+    private final List<Integer> myTypes;
+    private final Map<String, Integer> myIndexes;
+    private final Map<String, Integer> myResolvedNames;
+
+    /**
+     * Constructs a <code>ResultSetSchema</code>.  If two columns share a name,
+     * then the name refers to the last such column.
+     * @param columnNames The names of the columns, in order.
+     * @param types The JDBC datatypes of the columns, as in
+     *    <code>java.sql.Types</code>, in order.
+     */
+    ResultSetSchema(List<String> columnNames, List<Integer> types)
+    {
+        if (columnNames.size() != types.size())
+            throw new IllegalArgumentException("Number of column names (" + columnNames.size() +
+                    ") doesn't match number of types (" + types.size() + ").");
+        myColumnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        myTypes = Collections.unmodifiableList(new ArrayList<>(types));
+        myIndexes = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++)
+        {
+            myIndexes.put(columnNames.get(i).toLowerCase(), i);
+        }
+        myResolvedNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the number of columns.
+     * @return The number of columns.
+     */
+    public int getNumColumns()
+    {
+        return myColumnNames.size();
+    }
+
+    /**
+     * Returns the names of the columns, as reported by the driver.
+     * @return An unmodifiable <code>List</code> of column names.
+     */
+    public List<String> getColumnNames()
+    {
+        return myColumnNames;
+    }
+
+    /**
+     * Returns the JDBC datatypes of the columns.
+     * @return An unmodifiable <code>List</code> of datatypes, as in
+     *    <code>java.sql.Types</code>.
+     */
+    public List<Integer> getTypes()
+    {
+        return myTypes;
+    }
+
+    /**
+     * Returns the 0-based index of the column with the given name, ignoring
+     * case.
+     * @param columnName A column name.
+     * @return The 0-based index, or <code>-1</code> if there is no such
+     *    column.
+     */
+    public int indexOf(String columnName)
+    {
+        Integer index = myResolvedNames.get(columnName);
+        if (index == null)
+        {
+            index = myIndexes.get(columnName.toLowerCase());
+            if (index == null)
+                index = -1;
+            myResolvedNames.put(columnName, index);
+        }
+        return index;
+    }
+}
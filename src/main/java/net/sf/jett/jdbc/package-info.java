@@ -8,7 +8,9 @@
  *
  * <p>The <code>ResultSetRow</code> represents one row of data returned by a
  * <code>JDBCExecutor</code>.  It is not seen directly, but <code>JDBCExecutor</code>'s
- * <code>execQuery</code> method returns a <code>List</code> of <code>ResultSetRows</code>.</p>
+ * <code>execQuery</code> method returns a <code>List</code> of <code>ResultSetRows</code>.
+ * All rows of one query share a <code>ResultSetSchema</code> that maps column
+ * names to positions in each row's array of values.</p>
  *
  * @author Randy Gettman
  * @since 0.6.0
@@ -2,32 +2,58 @@ package net.sf.jett.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.hssf.usermodel.HSSFOptimiser;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Color;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 
+import net.sf.jett.exception.TransformException;
 import net.sf.jett.util.SheetUtil;
 
 /**
  * <p>A <code>CellStyleCache</code> is used internally to keep track of
- * <code>CellStyles</code>.  It defines and uses a string format for declaring
- * all possible style values that can be defined in a <code>CellStyle</code>,
- * even <code>Font</code> characteristics.  Its lifetime is meant to last only
- * during a single transformation.  When created, it reads in all pre-existing
- * <code>CellStyle</code> information and caches it for later reference.</p>
+ * <code>CellStyles</code>.  It keys cell styles by an immutable {@link Key}
+ * of all possible style values that can be defined in a
+ * <code>CellStyle</code>, even <code>Font</code> characteristics.  Its
+ * lifetime is meant to last only during a single transformation.  When
+ * created, it reads in all pre-existing <code>CellStyle</code> information
+ * and caches it for later reference.</p>
+ *
+ * <p>A lookup happens for every styled cell, so keys hold primitive values
+ * and packed RGB colors, and compute their hash codes once, instead of
+ * building and hashing a long string on every lookup.  It counts the hits and
+ * misses of all lookups, for diagnostics.</p>
+ *
+ * <p>It also keeps track of the cell style budget, i.e. how many cell styles
+ * have been created compared to the maximum that the spreadsheet format
+ * allows, warning once when the workbook gets close to it.  Equivalent cell
+ * styles can be consolidated before writing with {@link #consolidate()}, and
+ * {@link #getMetrics()} reports how close the workbook got to the maximum.</p>
+ *
+ * <p>Consolidation only happens after transformation, because it renumbers
+ * or replaces the <code>CellStyles</code> that tags and this cache still
+ * refer to during transformation.  So a transformation that needs more
+ * distinct cell styles than the maximum can't be rescued by consolidation;
+ * it fails as soon as the maximum is reached, when
+ * {@link #ensureRoomForCellStyle()} is called before creating another cell
+ * style.</p>
  *
  * @author Randy Gettman
  * @since 0.5.0
@@ -38,8 +64,25 @@ public class CellStyleCache
 
     private static final String PROP_SEP = "|";
 
+    /**
+     * A warning is logged once the number of cell styles reaches this fraction
+     * of the maximum number of cell styles.
+     * @since 0.12.0
+     */
+    public static final double BUDGET_WARNING_FRACTION = 0.9;
+
     private Workbook myWorkbook;
-    private Map<String, CellStyle> myCellStyleMap;
+    private Map<Key, CellStyle> myCellStyleMap;
+    private int myNumHits;
+    private int myNumMisses;
+    private int myMaxCellStyles;
+    private int myNumPreExisting;
+    private int myNumCreated;
+    private int myPeakNumCellStyles;
+    private int myNumCellsRemapped;
+    private boolean amIConsolidated;
+    private boolean amITrackingCreation;
+    private boolean amIWarnedOfBudget;
 
     /**
      * Constructs a <code>CellStyleCache</code> on a <code>Workbook</code>.
@@ -51,7 +94,10 @@ public class CellStyleCache
     {
         myWorkbook = workbook;
         myCellStyleMap = new HashMap<>();
+        myMaxCellStyles = workbook.getSpreadsheetVersion().getMaxCellStyles();
+        myNumPreExisting = workbook.getNumCellStyles();
         cachePreExistingCellStyles();
+        amITrackingCreation = true;
     }
 
     /**
@@ -78,6 +124,51 @@ public class CellStyleCache
         return myCellStyleMap.size();
     }
 
+    /**
+     * Returns the number of lookups that found a cached <code>CellStyle</code>.
+     * @return The number of cache hits.
+     * @since 0.12.0
+     */
+    public int getNumHits()
+    {
+        return myNumHits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find a cached
+     * <code>CellStyle</code>.
+     * @return The number of cache misses.
+     * @since 0.12.0
+     */
+    public int getNumMisses()
+    {
+        return myNumMisses;
+    }
+
+    /**
+     * Returns the fraction of the maximum number of cell styles that the
+     * workbook currently uses, e.g. <code>0.5</code> for half.
+     * @return The current usage, as a fraction of the maximum.
+     * @since 0.12.0
+     */
+    public double getUsage()
+    {
+        return (double) myWorkbook.getNumCellStyles() / myMaxCellStyles;
+    }
+
+    /**
+     * Returns a snapshot of the cell style metrics of the workbook.
+     * @return A <code>CellStyleMetrics</code>.
+     * @since 0.12.0
+     */
+    public CellStyleMetrics getMetrics()
+    {
+        int numCellStyles = myWorkbook.getNumCellStyles();
+        int peak = amIConsolidated ? myPeakNumCellStyles : numCellStyles;
+        return new CellStyleMetrics(myMaxCellStyles, myNumPreExisting, myNumCreated, myNumHits, myNumMisses,
+                peak, numCellStyles, myNumCellsRemapped, amIConsolidated);
+    }
+
     /**
      * Retrieve a <code>CellStyle</code> from the cache with the given
      * properties.
@@ -120,33 +211,128 @@ public class CellStyleCache
             short indention, short rotation, Color bottomBorderColor, Color leftBorderColor, Color rightBorderColor,
             Color topBorderColor, int fontCharset, short fontTypeOffset, boolean locked, boolean hidden)
     {
-        String representation = getRepresentation(fontBoldweight, fontItalic, fontColor, fontName, fontHeightInPoints,
-                alignment, borderBottom, borderLeft, borderRight, borderTop, dataFormat, fontUnderline, fontStrikeout,
+        FontCache.Key fontKey = new FontCache.Key(fontBoldweight, fontItalic, fontColor, fontName, fontHeightInPoints,
+                fontUnderline, fontStrikeout, fontCharset, fontTypeOffset);
+        Key key = new Key(fontKey, alignment, borderBottom, borderLeft, borderRight, borderTop, dataFormat,
                 wrapText, fillBackgroundColor, fillForegroundColor, fillPattern, verticalAlignment, indention, rotation,
-                bottomBorderColor, leftBorderColor, rightBorderColor, topBorderColor, fontCharset, fontTypeOffset, locked,
-                hidden
-        );
-        CellStyle cs = myCellStyleMap.get(representation);
+                bottomBorderColor, leftBorderColor, rightBorderColor, topBorderColor, locked, hidden);
+        CellStyle cs = lookup(key);
         if (logger.isTraceEnabled())
         {
             if (cs != null)
-                logger.trace("CSCache hit  : {}", representation);
+                logger.trace("CSCache hit  : {}", key);
             else
-                logger.trace("CSCache miss!: {}", representation);
+                logger.trace("CSCache miss!: {}", key);
         }
         return cs;
     }
 
     /**
-     * Caches the given <code>CellStyle</code>.
+     * Caches the given <code>CellStyle</code>.  After construction, this is
+     * called for each newly created <code>CellStyle</code>, so it's counted as
+     * created against the cell style budget.
      *
      * @param cs A <code>CellStyle</code>.
      */
     public void cacheCellStyle(CellStyle cs)
     {
-        String representation = getRepresentation(cs);
-        logger.trace("Caching cs   : {}", representation);
-        myCellStyleMap.put(representation, cs);
+        Key key = getKey(cs);
+        logger.trace("Caching cs   : {}", key);
+        myCellStyleMap.put(key, cs);
+        if (amITrackingCreation)
+        {
+            myNumCreated++;
+            int numCellStyles = myWorkbook.getNumCellStyles();
+            if (!amIWarnedOfBudget && numCellStyles >= myMaxCellStyles * BUDGET_WARNING_FRACTION)
+            {
+                logger.warn("The workbook has {} cell styles, close to the maximum of {}.",
+                        numCellStyles, myMaxCellStyles);
+                amIWarnedOfBudget = true;
+            }
+        }
+    }
+
+    /**
+     * Ensures that another cell style can be created, i.e. that the workbook
+     * hasn't reached the maximum number of cell styles for its format.  Call
+     * this before creating a <code>CellStyle</code> during transformation.
+     * @throws TransformException If the workbook has reached the maximum
+     *    number of cell styles.
+     * @since 0.12.0
+     */
+    public void ensureRoomForCellStyle()
+    {
+        int numCellStyles = myWorkbook.getNumCellStyles();
+        if (numCellStyles >= myMaxCellStyles)
+        {
+            throw new TransformException("Unable to create another cell style: the workbook has " +
+                    numCellStyles + " cell styles, the maximum for its format.  Cell styles are only " +
+                    "consolidated after transformation, so the template must not produce more distinct " +
+                    "cell styles than the maximum.");
+        }
+    }
+
+    /**
+     * <p>Consolidates the cell styles of the workbook, typically just before
+     * it's written.  Every cell and formatted row is remapped to the canonical
+     * cached <code>CellStyle</code> that is equivalent to its own.</p>
+     * <p>For .xls workbooks, POI's <code>HSSFOptimiser</code> then drops the
+     * cell styles that are no longer used, freeing up room under the maximum.
+     * For .xlsx workbooks, POI can't drop cell styles, but remapping means that
+     * only canonical cell styles are referenced.  Afterwards, this cache is
+     * rebuilt from the workbook's remaining cell styles.</p>
+     * @return The number of cells remapped to a different cell style.
+     * @since 0.12.0
+     */
+    public int consolidate()
+    {
+        myPeakNumCellStyles = myWorkbook.getNumCellStyles();
+        int numRemapped = 0;
+        int numCellStyles = myWorkbook.getNumCellStyles();
+        CellStyle[] canonical = new CellStyle[numCellStyles];
+        for (int i = 0; i < numCellStyles; i++)
+        {
+            CellStyle cs = myWorkbook.getCellStyleAt(i);
+            CellStyle cached = myCellStyleMap.get(getKey(cs));
+            canonical[i] = (cached != null) ? cached : cs;
+        }
+        for (Sheet sheet : myWorkbook)
+        {
+            for (Row row : sheet)
+            {
+                // Indexes of .xlsx cell styles can exceed Short.MAX_VALUE.
+                CellStyle rowStyle = row.getRowStyle();
+                if (rowStyle != null)
+                {
+                    int index = Short.toUnsignedInt(rowStyle.getIndex());
+                    if (Short.toUnsignedInt(canonical[index].getIndex()) != index)
+                        row.setRowStyle(canonical[index]);
+                }
+                for (Cell cell : row)
+                {
+                    int index = Short.toUnsignedInt(cell.getCellStyle().getIndex());
+                    if (Short.toUnsignedInt(canonical[index].getIndex()) != index)
+                    {
+                        cell.setCellStyle(canonical[index]);
+                        numRemapped++;
+                    }
+                }
+            }
+        }
+        if (myWorkbook instanceof HSSFWorkbook)
+        {
+            HSSFOptimiser.optimiseCellStyles((HSSFWorkbook) myWorkbook);
+        }
+        myNumCellsRemapped += numRemapped;
+        amIConsolidated = true;
+
+        amITrackingCreation = false;
+        myCellStyleMap.clear();
+        cachePreExistingCellStyles();
+        amITrackingCreation = true;
+        logger.debug("Consolidated {} cell styles into {}; {} cells remapped.",
+                myPeakNumCellStyles, myWorkbook.getNumCellStyles(), numRemapped);
+        return numRemapped;
     }
 
     /**
@@ -163,33 +349,48 @@ public class CellStyleCache
      */
     public CellStyle findCellStyleWithFont(CellStyle cs, Font f)
     {
-        String representation = getRepresentation(cs, f);
-        return myCellStyleMap.get(representation);
+        return lookup(getKey(cs, f));
     }
 
     /**
-     * Gets the string representation of the given <code>CellStyle</code>, using
-     * its own font characteristics.
+     * Looks up the given key, counting the hit or miss.
+     * @param key A <code>Key</code>.
+     * @return The cached <code>CellStyle</code>, or <code>null</code> if not
+     *    found.
+     */
+    private CellStyle lookup(Key key)
+    {
+        CellStyle cs = myCellStyleMap.get(key);
+        if (cs != null)
+            myNumHits++;
+        else
+            myNumMisses++;
+        return cs;
+    }
+
+    /**
+     * Gets the key of the given <code>CellStyle</code>, using its own font
+     * characteristics.
      * @param cs A <code>CellStyle</code>.
-     * @return The string representation.
+     * @return The <code>Key</code>.
      */
-    private String getRepresentation(CellStyle cs)
+    private Key getKey(CellStyle cs)
     {
-        return getRepresentation(cs, myWorkbook.getFontAt(cs.getFontIndex()));
+        return getKey(cs, myWorkbook.getFontAt(cs.getFontIndex()));
     }
 
     /**
-     * Gets the string representation of the given <code>CellStyle</code>, using
+     * Gets the key of the given <code>CellStyle</code>, using
      * the cell style characteristics of the <code>CellStyle</code> and the font
      * characteristics of the given <code>Font</code>.
      * @param cs The <code>CellStyle</code>.  Cell style characteristics are
      *    used, but the font characteristics are not used.
      * @param f The <code>Font</code>.  These font characteristics are used
      *    instead of the font characteristics on the <code>CellStyle</code>.
-     * @return The string representation.
+     * @return The <code>Key</code>.
      * @since 0.10.0
      */
-    private String getRepresentation(CellStyle cs, Font f)
+    private Key getKey(CellStyle cs, Font f)
     {
         // Colors that need an instanceof check
         Color fontColor;
@@ -224,108 +425,197 @@ public class CellStyleCache
         else
             throw new IllegalArgumentException("Bad CellStyle type: " + cs.getClass().getName());
 
-        return getRepresentation(f.getBold(), f.getItalic(), fontColor, f.getFontName(),
-                f.getFontHeightInPoints(), cs.getAlignment(), cs.getBorderBottom(), cs.getBorderLeft(), cs.getBorderRight(),
-                cs.getBorderTop(), cs.getDataFormatString(), f.getUnderline(), f.getStrikeout(), cs.getWrapText(),
-                cs.getFillBackgroundColorColor(), cs.getFillForegroundColorColor(), cs.getFillPattern(), cs.getVerticalAlignment() ,
+        FontCache.Key fontKey = new FontCache.Key(f.getBold(), f.getItalic(), fontColor, f.getFontName(),
+                f.getFontHeightInPoints(), f.getUnderline(), f.getStrikeout(), f.getCharSet(), f.getTypeOffset());
+        return new Key(fontKey, cs.getAlignment(), cs.getBorderBottom(), cs.getBorderLeft(), cs.getBorderRight(),
+                cs.getBorderTop(), cs.getDataFormatString(), cs.getWrapText(),
+                cs.getFillBackgroundColorColor(), cs.getFillForegroundColorColor(), cs.getFillPattern(), cs.getVerticalAlignment(),
                 cs.getIndention(), cs.getRotation(), bottomColor, leftColor, rightColor,
-                topColor, f.getCharSet(), f.getTypeOffset(), cs.getLocked(), cs.getHidden());
+                topColor, cs.getLocked(), cs.getHidden());
     }
 
- 
-	/**
-     * Return the string representation of a <code>CellStyle</code> with the
-     * given properties.
-     * @param fontBoldweight The font boldweight.
-     * @param fontItalic Whether the font is italic.
-     * @param fontColor The font color.
-     * @param fontName The font name.
-     * @param fontHeightInPoints The font height in points.
-     * @param alignment The horizontal alignment.
-     * @param borderBottom The bottom border type.
-     * @param borderLeft The left border type.
-     * @param borderRight The right border type.
-     * @param borderTop The top border type.
-     * @param dataFormat The data format string.
-     * @param fontUnderline The font underline.
-     * @param fontStrikeout Whether the font is in strikeout.
-     * @param wrapText Whether text is wrapped.
-     * @param fillBackgroundColor The fill background color.
-     * @param fillForegroundColor The fill foreground color.
-     * @param fillPattern The fill pattern.
-     * @param verticalAlignment The vertical alignment.
-     * @param indention How many characters the text is indented.
-     * @param rotation How many degrees the text is rotated.
-     * @param bottomBorderColor The bottom border color.
-     * @param leftBorderColor The left border color.
-     * @param rightBorderColor The right border color.
-     * @param topBorderColor The top border color.
-     * @param fontCharset The font charset.
-     * @param fontTypeOffset The font type offset.
-     * @param locked Whether the cell is "locked".
-     * @param hidden Whether the cell is "hidden".
-     * @return The string representation.
+    /**
+     * Returns the ordinal of the given enum constant, or <code>-1</code> if
+     * it's <code>null</code>.
+     * @param e An enum constant, possibly <code>null</code>.
+     * @return The ordinal, or <code>-1</code>.
+     */
+    private static int ordinal(Enum<?> e)
+    {
+        return (e == null) ? -1 : e.ordinal();
+    }
+
+    /**
+     * A <code>Key</code> holds all characteristics of a <code>CellStyle</code>,
+     * including the {@link FontCache.Key} of its font characteristics, as
+     * primitive values.  Enums are held as ordinals and colors as packed RGB
+     * <code>ints</code>.  It is immutable, and its hash code is computed once,
+     * on construction.
+     *
+     * @since 0.12.0
      */
-    private String getRepresentation(boolean fontBoldweight, boolean fontItalic, Color fontColor, String fontName,
-    		short fontHeightInPoints, HorizontalAlignment alignment, BorderStyle borderBottom, BorderStyle borderLeft, BorderStyle borderRight,
-    		BorderStyle borderTop, String dataFormat, byte fontUnderline, boolean fontStrikeout, boolean wrapText,
-    		Color fillBackgroundColor, Color fillForegroundColor, FillPatternType fillPattern, VerticalAlignment verticalAlignment,
-    		short indention, short rotation, Color bottomBorderColor, Color leftBorderColor, Color rightBorderColor,
-    		Color topBorderColor, int fontCharset, short fontTypeOffset, boolean locked, boolean hidden)	
+    static final class Key
     {
-        StringBuilder buf = new StringBuilder();
+        private final FontCache.Key myFontKey;
+        private final int myAlignment;
+        private final int myBorderBottom;
+        private final int myBorderLeft;
+        private final int myBorderRight;
+        private final int myBorderTop;
+        private final String myDataFormat;
+        private final boolean amIWrappingText;
+        private final int myFillBackgroundRgb;
+        private final int myFillForegroundRgb;
+        private final int myFillPattern;
+        private final int myVerticalAlignment;
+        private final short myIndention;
+        private final short myRotation;
+        private final int myBottomBorderRgb;
+        private final int myLeftBorderRgb;
+        private final int myRightBorderRgb;
+        private final int myTopBorderRgb;
+        private final boolean amILocked;
+        private final boolean amIHidden;
+        private final int myHashCode;
 
-        buf.append(fontBoldweight).append(PROP_SEP);
-        // Font italic
-        buf.append(fontItalic).append(PROP_SEP);
-        // Font color
-        buf.append(SheetUtil.getColorHexString(fontColor));
-        // Font name
-        buf.append(PROP_SEP).append(fontName);
-        // Font height in points
-        buf.append(PROP_SEP).append(fontHeightInPoints);
-        // Alignment
-        buf.append(PROP_SEP).append(alignment);
-        // Borders: Bottom, Left, Right, Top
-        buf.append(PROP_SEP).append(borderBottom);
-        buf.append(PROP_SEP).append(borderLeft);
-        buf.append(PROP_SEP).append(borderRight);
-        buf.append(PROP_SEP).append(borderTop);
-        // Data format
-        buf.append(PROP_SEP).append(dataFormat);
-        // Font underline
-        buf.append(PROP_SEP).append(fontUnderline);
-        // Font strikeout
-        buf.append(PROP_SEP).append(fontStrikeout);
-        // Wrap text
-        buf.append(PROP_SEP).append(wrapText);
-        // Fill bg/fg color
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(fillBackgroundColor));
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(fillForegroundColor));
-        // Fill pattern
-        buf.append(PROP_SEP).append(fillPattern);
-        // Vertical alignment
-        buf.append(PROP_SEP).append(verticalAlignment);
-        // Indention
-        buf.append(PROP_SEP).append(indention);
-        // Rotation
-        buf.append(PROP_SEP).append(rotation);
-        // DO NOT DO Column width in chars
-        // DO NOT DO row height in points
-        // Border Colors: Bottom, Left, Right, Top
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(bottomBorderColor));
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(leftBorderColor));
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(rightBorderColor));
-        buf.append(PROP_SEP).append(SheetUtil.getColorHexString(topBorderColor));
-        // Font charset
-        buf.append(PROP_SEP).append(fontCharset);
-        // Font type offset
-        buf.append(PROP_SEP).append(fontTypeOffset);
-        // Locked
-        buf.append(PROP_SEP).append(locked);
-        // Hidden
-        buf.append(PROP_SEP).append(hidden);
+        /**
+         * Constructs a <code>Key</code> with the given properties.
+         * @param fontKey The <code>FontCache.Key</code> of the font properties.
+         * @param alignment The horizontal alignment.
+         * @param borderBottom The bottom border type.
+         * @param borderLeft The left border type.
+         * @param borderRight The right border type.
+         * @param borderTop The top border type.
+         * @param dataFormat The data format string.
+         * @param wrapText Whether text is wrapped.
+         * @param fillBackgroundColor The fill background color.
+         * @param fillForegroundColor The fill foreground color.
+         * @param fillPattern The fill pattern.
+         * @param verticalAlignment The vertical alignment.
+         * @param indention How many characters the text is indented.
+         * @param rotation How many degrees the text is rotated.
+         * @param bottomBorderColor The bottom border color.
+         * @param leftBorderColor The left border color.
+         * @param rightBorderColor The right border color.
+         * @param topBorderColor The top border color.
+         * @param locked Whether the cell is "locked".
+         * @param hidden Whether the cell is "hidden".
+         */
+        Key(FontCache.Key fontKey, HorizontalAlignment alignment, BorderStyle borderBottom, BorderStyle borderLeft,
+            BorderStyle borderRight, BorderStyle borderTop, String dataFormat, boolean wrapText,
+            Color fillBackgroundColor, Color fillForegroundColor, FillPatternType fillPattern,
+            VerticalAlignment verticalAlignment, short indention, short rotation, Color bottomBorderColor,
+            Color leftBorderColor, Color rightBorderColor, Color topBorderColor, boolean locked, boolean hidden)
+        {
+            myFontKey = fontKey;
+            myAlignment = ordinal(alignment);
+            myBorderBottom = ordinal(borderBottom);
+            myBorderLeft = ordinal(borderLeft);
+            myBorderRight = ordinal(borderRight);
+            myBorderTop = ordinal(borderTop);
+            myDataFormat = dataFormat;
+            amIWrappingText = wrapText;
+            myFillBackgroundRgb = SheetUtil.getColorRgb(fillBackgroundColor);
+            myFillForegroundRgb = SheetUtil.getColorRgb(fillForegroundColor);
+            myFillPattern = ordinal(fillPattern);
+            myVerticalAlignment = ordinal(verticalAlignment);
+            myIndention = indention;
+            myRotation = rotation;
+            // DO NOT DO Column width in chars
+            // DO NOT DO row height in points
+            myBottomBorderRgb = SheetUtil.getColorRgb(bottomBorderColor);
+            myLeftBorderRgb = SheetUtil.getColorRgb(leftBorderColor);
+            myRightBorderRgb = SheetUtil.getColorRgb(rightBorderColor);
+            myTopBorderRgb = SheetUtil.getColorRgb(topBorderColor);
+            amILocked = locked;
+            amIHidden = hidden;
 
-        return buf.toString();
+            int hash = myFontKey.hashCode();
+            hash = 31 * hash + myAlignment;
+            hash = 31 * hash + myBorderBottom;
+            hash = 31 * hash + myBorderLeft;
+            hash = 31 * hash + myBorderRight;
+            hash = 31 * hash + myBorderTop;
+            hash = 31 * hash + Objects.hashCode(myDataFormat);
+            hash = 31 * hash + Boolean.hashCode(amIWrappingText);
+            hash = 31 * hash + myFillBackgroundRgb;
+            hash = 31 * hash + myFillForegroundRgb;
+            hash = 31 * hash + myFillPattern;
+            hash = 31 * hash + myVerticalAlignment;
+            hash = 31 * hash + myIndention;
+            hash = 31 * hash + myRotation;
+            hash = 31 * hash + myBottomBorderRgb;
+            hash = 31 * hash + myLeftBorderRgb;
+            hash = 31 * hash + myRightBorderRgb;
+            hash = 31 * hash + myTopBorderRgb;
+            hash = 31 * hash + Boolean.hashCode(amILocked);
+            hash = 31 * hash + Boolean.hashCode(amIHidden);
+            myHashCode = hash;
+        }
+
+        /**
+         * Returns the pre-computed hash code.
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode()
+        {
+            return myHashCode;
+        }
+
+        /**
+         * Determines whether the given object is a <code>Key</code> with the
+         * same cell style and font characteristics.
+         * @param o Another object.
+         * @return Whether the keys are equal.
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return myHashCode == other.myHashCode &&
+                    myAlignment == other.myAlignment &&
+                    myBorderBottom == other.myBorderBottom &&
+                    myBorderLeft == other.myBorderLeft &&
+                    myBorderRight == other.myBorderRight &&
+                    myBorderTop == other.myBorderTop &&
+                    amIWrappingText == other.amIWrappingText &&
+                    myFillBackgroundRgb == other.myFillBackgroundRgb &&
+                    myFillForegroundRgb == other.myFillForegroundRgb &&
+                    myFillPattern == other.myFillPattern &&
+                    myVerticalAlignment == other.myVerticalAlignment &&
+                    myIndention == other.myIndention &&
+                    myRotation == other.myRotation &&
+                    myBottomBorderRgb == other.myBottomBorderRgb &&
+                    myLeftBorderRgb == other.myLeftBorderRgb &&
+                    myRightBorderRgb == other.myRightBorderRgb &&
+                    myTopBorderRgb == other.myTopBorderRgb &&
+                    amILocked == other.amILocked &&
+                    amIHidden == other.amIHidden &&
+                    Objects.equals(myDataFormat, other.myDataFormat) &&
+                    myFontKey.equals(other.myFontKey);
+        }
+
+        /**
+         * Returns the string representation of this <code>Key</code>, for
+         * logging.
+         * @return The string representation.
+         */
+        @Override
+        public String toString()
+        {
+            return myFontKey + PROP_SEP + myAlignment + PROP_SEP + myBorderBottom + PROP_SEP + myBorderLeft +
+                    PROP_SEP + myBorderRight + PROP_SEP + myBorderTop + PROP_SEP + myDataFormat +
+                    PROP_SEP + amIWrappingText + PROP_SEP + String.format("%06x", myFillBackgroundRgb) +
+                    PROP_SEP + String.format("%06x", myFillForegroundRgb) + PROP_SEP + myFillPattern +
+                    PROP_SEP + myVerticalAlignment + PROP_SEP + myIndention + PROP_SEP + myRotation +
+                    PROP_SEP + String.format("%06x", myBottomBorderRgb) + PROP_SEP + String.format("%06x", myLeftBorderRgb) +
+                    PROP_SEP + String.format("%06x", myRightBorderRgb) + PROP_SEP + String.format("%06x", myTopBorderRgb) +
+                    PROP_SEP + amILocked + PROP_SEP + amIHidden;
+        }
     }
 }
@@ -0,0 +1,171 @@
+package net.sf.jett.model;
+
+/**
+ * <p>A <code>CellStyleMetrics</code> is an immutable snapshot of how many
+ * <code>CellStyles</code> a <code>Workbook</code> uses during and after a
+ * transformation, compared to the maximum number of cell styles that its
+ * spreadsheet format allows, e.g. about 4,000 for .xls and 64,000 for .xlsx.
+ * Heavy styling can exhaust that maximum, so these metrics show how close each
+ * transformation gets to it.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ * @see CellStyleCache#getMetrics()
+ */
+public class CellStyleMetrics
+{
+    private int myMaxCellStyles;
+    private int myNumPreExisting;
+    private int myNumCreated;
+    private int myNumHits;
+    private int myNumMisses;
+    private int myPeakNumCellStyles;
+    private int myNumCellStyles;
+    private int myNumCellsRemapped;
+    private boolean amIConsolidated;
+
+    /**
+     * Constructs a <code>CellStyleMetrics</code>.
+     * @param maxCellStyles The maximum number of cell styles allowed.
+     * @param numPreExisting The number of cell styles present before
+     *    transformation.
+     * @param numCreated The number of cell styles created during
+     *    transformation.
+     * @param numHits The number of cell style cache hits.
+     * @param numMisses The number of cell style cache misses.
+     * @param peakNumCellStyles The number of cell styles before any
+     *    consolidation.
+     * @param numCellStyles The current number of cell styles.
+     * @param numCellsRemapped The number of cells remapped to a canonical
+     *    cell style by consolidation.
+     * @param consolidated Whether consolidation has been performed.
+     */
+    public CellStyleMetrics(int maxCellStyles, int numPreExisting, int numCreated, int numHits, int numMisses,
+                            int peakNumCellStyles, int numCellStyles, int numCellsRemapped, boolean consolidated)
+    {
+        myMaxCellStyles = maxCellStyles;
+        myNumPreExisting = numPreExisting;
+        myNumCreated = numCreated;
+        myNumHits = numHits;
+        myNumMisses = numMisses;
+        myPeakNumCellStyles = peakNumCellStyles;
+        myNumCellStyles = numCellStyles;
+        myNumCellsRemapped = numCellsRemapped;
+        amIConsolidated = consolidated;
+    }
+
+    /**
+     * Returns the maximum number of cell styles allowed by the spreadsheet
+     * format.
+     * @return The maximum number of cell styles.
+     */
+    public int getMaxCellStyles()
+    {
+        return myMaxCellStyles;
+    }
+
+    /**
+     * Returns the number of cell styles present before transformation.
+     * @return The number of pre-existing cell styles.
+     */
+    public int getNumPreExisting()
+    {
+        return myNumPreExisting;
+    }
+
+    /**
+     * Returns the number of cell styles created during transformation.
+     * @return The number of cell styles created.
+     */
+    public int getNumCreated()
+    {
+        return myNumCreated;
+    }
+
+    /**
+     * Returns the number of cell style lookups that found an existing cell
+     * style.
+     * @return The number of cache hits.
+     */
+    public int getNumHits()
+    {
+        return myNumHits;
+    }
+
+    /**
+     * Returns the number of cell style lookups that didn't find an existing
+     * cell style.
+     * @return The number of cache misses.
+     */
+    public int getNumMisses()
+    {
+        return myNumMisses;
+    }
+
+    /**
+     * Returns the number of cell styles in the workbook before any
+     * consolidation, i.e. the most it held.
+     * @return The peak number of cell styles.
+     */
+    public int getPeakNumCellStyles()
+    {
+        return myPeakNumCellStyles;
+    }
+
+    /**
+     * Returns the number of cell styles in the workbook, after consolidation
+     * if it was performed.
+     * @return The number of cell styles.
+     */
+    public int getNumCellStyles()
+    {
+        return myNumCellStyles;
+    }
+
+    /**
+     * Returns the number of cells that consolidation remapped to a canonical
+     * cell style.
+     * @return The number of cells remapped.
+     */
+    public int getNumCellsRemapped()
+    {
+        return myNumCellsRemapped;
+    }
+
+    /**
+     * Returns whether consolidation was performed.
+     * @return Whether consolidation was performed.
+     */
+    public boolean isConsolidated()
+    {
+        return amIConsolidated;
+    }
+
+    /**
+     * Returns the fraction of the maximum number of cell styles that the
+     * workbook used at its peak, e.g. <code>0.5</code> for half.
+     * @return The peak usage, as a fraction of the maximum.
+     */
+    public double getPeakUsage()
+    {
+        return (double) myPeakNumCellStyles / myMaxCellStyles;
+    }
+
+    /**
+     * Returns a string representation of these metrics, for logging.
+     * @return A string representation.
+     */
+    @Override
+    public String toString()
+    {
+        return "CellStyleMetrics[max=" + myMaxCellStyles +
+                ", preExisting=" + myNumPreExisting +
+                ", created=" + myNumCreated +
+                ", hits=" + myNumHits +
+                ", misses=" + myNumMisses +
+                ", peak=" + myPeakNumCellStyles +
+                ", current=" + myNumCellStyles +
+                ", cellsRemapped=" + myNumCellsRemapped +
+                ", consolidated=" + amIConsolidated + "]";
+    }
+}
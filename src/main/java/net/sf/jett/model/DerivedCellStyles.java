@@ -0,0 +1,64 @@
+package net.sf.jett.model;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * <p>A <code>DerivedCellStyles</code> remembers the <code>CellStyles</code>
+ * derived by applying one <code>Style</code> to source
+ * <code>CellStyles</code>.  It is indexed directly by the index of the source
+ * <code>CellStyle</code> in its <code>Workbook</code>, so a lookup neither
+ * hashes nor boxes anything.</p>
+ *
+ * <p>Its lifetime is meant to last only during a single transformation.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class DerivedCellStyles
+{
+    private CellStyle[] myDerivedCellStyles = new CellStyle[16];
+
+    /**
+     * Returns the <code>CellStyle</code> derived from the given source
+     * <code>CellStyle</code>.
+     * @param source The source <code>CellStyle</code>.
+     * @return The derived <code>CellStyle</code>, or <code>null</code> if one
+     *    hasn't been derived yet.
+     */
+    public CellStyle get(CellStyle source)
+    {
+        int index = getIndex(source);
+        return (index < myDerivedCellStyles.length) ? myDerivedCellStyles[index] : null;
+    }
+
+    /**
+     * Remembers the <code>CellStyle</code> derived from the given source
+     * <code>CellStyle</code>.
+     * @param source The source <code>CellStyle</code>.
+     * @param derived The derived <code>CellStyle</code>.
+     */
+    public void put(CellStyle source, CellStyle derived)
+    {
+        int index = getIndex(source);
+        if (index >= myDerivedCellStyles.length)
+        {
+            myDerivedCellStyles = Arrays.copyOf(myDerivedCellStyles,
+                    Math.max(index + 1, 2 * myDerivedCellStyles.length));
+        }
+        myDerivedCellStyles[index] = derived;
+    }
+
+    /**
+     * Returns the index of the given <code>CellStyle</code> in its
+     * <code>Workbook</code>.  An .xlsx workbook may have more
+     * <code>CellStyles</code> than a positive <code>short</code> can index.
+     * @param cs A <code>CellStyle</code>.
+     * @return The unsigned index.
+     */
+    private static int getIndex(CellStyle cs)
+    {
+        return cs.getIndex() & 0xFFFF;
+    }
+}
@@ -2,6 +2,7 @@ package net.sf.jett.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -16,12 +17,14 @@ import net.sf.jett.util.SheetUtil;
 
 /**
  * <p>A <code>FontCache</code> is used internally to keep track of
- * <code>Fonts</code>.  It defines and uses a string format for declaring
- * all possible font values that can be defined in a <code>Font</code>.  Its
+ * <code>Fonts</code>.  It keys fonts by an immutable {@link Key} of all
+ * possible font values that can be defined in a <code>Font</code>.  Its
  * lifetime is meant to last only during a single transformation.  When
  * created, it reads in all pre-existing <code>Font</code> information and
  * caches it for later reference.</p>
  *
+ * <p>It counts the hits and misses of all lookups, for diagnostics.</p>
+ *
  * @author Randy Gettman
  * @since 0.5.0
  */
@@ -32,7 +35,9 @@ public class FontCache
     private static final String PROP_SEP = "|";
 
     private Workbook myWorkbook;
-    private Map<String, Font> myFontMap;
+    private Map<Key, Font> myFontMap;
+    private int myNumHits;
+    private int myNumMisses;
 
     /**
      * Constructs a <code>FontCache</code> on a <code>Workbook</code>.
@@ -69,6 +74,27 @@ public class FontCache
         return myFontMap.size();
     }
 
+    /**
+     * Returns the number of lookups that found a cached <code>Font</code>.
+     * @return The number of cache hits.
+     * @since 0.12.0
+     */
+    public int getNumHits()
+    {
+        return myNumHits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find a cached
+     * <code>Font</code>.
+     * @return The number of cache misses.
+     * @since 0.12.0
+     */
+    public int getNumMisses()
+    {
+        return myNumMisses;
+    }
+
     /**
      * Retrieve a <code>Font</code> from the cache with the given
      * properties.
@@ -87,16 +113,15 @@ public class FontCache
     public Font retrieveFont(boolean fontBoldweight, boolean fontItalic, Color fontColor, String fontName,
                              short fontHeightInPoints, byte fontUnderline, boolean fontStrikeout, int fontCharset, short fontTypeOffset)
     {
-        String representation = getRepresentation(fontBoldweight, fontItalic, fontColor, fontName, fontHeightInPoints,
-                fontUnderline, fontStrikeout, fontCharset, fontTypeOffset
-        );
-        Font f = myFontMap.get(representation);
+        Key key = new Key(fontBoldweight, fontItalic, fontColor, fontName, fontHeightInPoints,
+                fontUnderline, fontStrikeout, fontCharset, fontTypeOffset);
+        Font f = lookup(key);
         if (logger.isTraceEnabled())
         {
             if (f != null)
-                logger.trace("FCache hit   : {}", representation);
+                logger.trace("FCache hit   : {}", key);
             else
-                logger.trace("FCache miss! : {}", representation);
+                logger.trace("FCache miss! : {}", key);
         }
         return f;
     }
@@ -107,9 +132,9 @@ public class FontCache
      */
     public void cacheFont(Font f)
     {
-        String representation = getRepresentation(f);
-        logger.trace("Caching  f   : {}", representation);
-        myFontMap.put(representation, f);
+        Key key = getKey(f);
+        logger.trace("Caching  f   : {}", key);
+        myFontMap.put(key, f);
     }
 
     /**
@@ -122,16 +147,30 @@ public class FontCache
      */
     public Font findFont(Font f)
     {
-        String representation = getRepresentation(f);
-        return myFontMap.get(representation);
+        return lookup(getKey(f));
+    }
+
+    /**
+     * Looks up the given key, counting the hit or miss.
+     * @param key A <code>Key</code>.
+     * @return The cached <code>Font</code>, or <code>null</code> if not found.
+     */
+    private Font lookup(Key key)
+    {
+        Font f = myFontMap.get(key);
+        if (f != null)
+            myNumHits++;
+        else
+            myNumMisses++;
+        return f;
     }
 
     /**
-     * Gets the string representation of the given <code>Font</code>.
+     * Gets the key of the given <code>Font</code>.
      * @param f A <code>Font</code>.
-     * @return The string representation.
+     * @return The <code>Key</code>.
      */
-    private String getRepresentation(Font f)
+    private Key getKey(Font f)
     {
         // Colors that need an instanceof check
         Color fontColor;
@@ -148,47 +187,114 @@ public class FontCache
         else
             throw new IllegalArgumentException("Bad Font type: " + f.getClass().getName());
 
-        return getRepresentation(f.getBold(), f.getItalic(), fontColor, f.getFontName(),
+        return new Key(f.getBold(), f.getItalic(), fontColor, f.getFontName(),
                 f.getFontHeightInPoints(), f.getUnderline(), f.getStrikeout(), f.getCharSet(), f.getTypeOffset());
     }
 
     /**
-     * Return the string representation of a <code>Font</code> with the
-     * given properties.
-     * @param fontBoldweight The font boldweight.
-     * @param fontItalic Whether the font is italic.
-     * @param fontColor The font color.
-     * @param fontName The font name.
-     * @param fontHeightInPoints The font height in points.
-     * @param fontUnderline The font underline.
-     * @param fontStrikeout Whether the font is in strikeout.
-     * @param fontCharset The font charset.
-     * @param fontTypeOffset The font type offset.
-     * @return The string representation.
+     * A <code>Key</code> holds all font characteristics of a <code>Font</code>
+     * as primitive values, with colors as packed RGB <code>ints</code>.  It is
+     * immutable, and its hash code is computed once, on construction.
+     *
+     * @since 0.12.0
      */
-    private String getRepresentation(boolean fontBoldweight, boolean fontItalic, Color fontColor, String fontName,
-                                     short fontHeightInPoints, byte fontUnderline, boolean fontStrikeout, int fontCharset, short fontTypeOffset)
+    static final class Key
     {
-        StringBuilder buf = new StringBuilder();
-
-        buf.append(fontBoldweight).append(PROP_SEP);
-        // Font italic
-        buf.append(fontItalic).append(PROP_SEP);
-        // Font color
-        buf.append(SheetUtil.getColorHexString(fontColor));
-        // Font name
-        buf.append(PROP_SEP).append(fontName);
-        // Font height in points
-        buf.append(PROP_SEP).append(fontHeightInPoints);
-        // Font underline
-        buf.append(PROP_SEP).append(fontUnderline);
-        // Font strikeout
-        buf.append(PROP_SEP).append(fontStrikeout);
-        // Font charset
-        buf.append(PROP_SEP).append(fontCharset);
-        // Font type offset
-        buf.append(PROP_SEP).append(fontTypeOffset);
-
-        return buf.toString();
+        private final boolean amIBold;
+        private final boolean amIItalic;
+        private final int myColorRgb;
+        private final String myFontName;
+        private final short myFontHeightInPoints;
+        private final byte myUnderline;
+        private final boolean amIStrikeout;
+        private final int myCharset;
+        private final short myTypeOffset;
+        private final int myHashCode;
+
+        /**
+         * Constructs a <code>Key</code> with the given font properties.
+         * @param fontBoldweight The font boldweight.
+         * @param fontItalic Whether the font is italic.
+         * @param fontColor The font color.
+         * @param fontName The font name.
+         * @param fontHeightInPoints The font height in points.
+         * @param fontUnderline The font underline.
+         * @param fontStrikeout Whether the font is in strikeout.
+         * @param fontCharset The font charset.
+         * @param fontTypeOffset The font type offset.
+         */
+        Key(boolean fontBoldweight, boolean fontItalic, Color fontColor, String fontName,
+            short fontHeightInPoints, byte fontUnderline, boolean fontStrikeout, int fontCharset, short fontTypeOffset)
+        {
+            amIBold = fontBoldweight;
+            amIItalic = fontItalic;
+            myColorRgb = SheetUtil.getColorRgb(fontColor);
+            myFontName = fontName;
+            myFontHeightInPoints = fontHeightInPoints;
+            myUnderline = fontUnderline;
+            amIStrikeout = fontStrikeout;
+            myCharset = fontCharset;
+            myTypeOffset = fontTypeOffset;
+
+            int hash = Boolean.hashCode(amIBold);
+            hash = 31 * hash + Boolean.hashCode(amIItalic);
+            hash = 31 * hash + myColorRgb;
+            hash = 31 * hash + Objects.hashCode(myFontName);
+            hash = 31 * hash + myFontHeightInPoints;
+            hash = 31 * hash + myUnderline;
+            hash = 31 * hash + Boolean.hashCode(amIStrikeout);
+            hash = 31 * hash + myCharset;
+            hash = 31 * hash + myTypeOffset;
+            myHashCode = hash;
+        }
+
+        /**
+         * Returns the pre-computed hash code.
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode()
+        {
+            return myHashCode;
+        }
+
+        /**
+         * Determines whether the given object is a <code>Key</code> with the
+         * same font characteristics.
+         * @param o Another object.
+         * @return Whether the keys are equal.
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return myHashCode == other.myHashCode &&
+                    amIBold == other.amIBold &&
+                    amIItalic == other.amIItalic &&
+                    myColorRgb == other.myColorRgb &&
+                    myFontHeightInPoints == other.myFontHeightInPoints &&
+                    myUnderline == other.myUnderline &&
+                    amIStrikeout == other.amIStrikeout &&
+                    myCharset == other.myCharset &&
+                    myTypeOffset == other.myTypeOffset &&
+                    Objects.equals(myFontName, other.myFontName);
+        }
+
+        /**
+         * Returns the string representation of this <code>Key</code>, for
+         * logging.
+         * @return The string representation.
+         */
+        @Override
+        public String toString()
+        {
+            return amIBold + PROP_SEP + amIItalic + PROP_SEP + String.format("%06x", myColorRgb) +
+                    PROP_SEP + myFontName + PROP_SEP + myFontHeightInPoints + PROP_SEP + myUnderline +
+                    PROP_SEP + amIStrikeout + PROP_SEP + myCharset + PROP_SEP + myTypeOffset;
+        }
     }
-}
\ No newline at end of file
+}
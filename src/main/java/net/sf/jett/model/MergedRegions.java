@@ -0,0 +1,256 @@
+package net.sf.jett.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * <p>A <code>MergedRegions</code> object holds the merged regions of a
+ * <code>Sheet</code> while it is being transformed.  All merged region
+ * manipulation for a <code>Sheet</code> goes through this object, instead of
+ * the <code>Sheet</code> itself, and the regions are written back to the
+ * <code>Sheet</code> once, after transformation.</p>
+ *
+ * <p>Regions are indexed by the row, then the column, of their top-left
+ * corners, so that finding the regions wholly contained in a range, e.g. a
+ * <code>Block</code> being shifted or copied, only looks at regions that
+ * start within the range's rows and columns, instead of scanning every region
+ * on the sheet.  Loops multiply the number of regions on a sheet with each
+ * iteration, so a linear scan on each shift or copy would make processing
+ * quadratic in the number of iterations.</p>
+ *
+ * <p>Iteration returns the regions in order of their top-left corners, top to
+ * bottom, then left to right.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class MergedRegions implements Iterable<CellRangeAddress>
+{
+    private NavigableMap<Integer, NavigableMap<Integer, List<CellRangeAddress>>> myRows;
+    private int mySize;
+
+    /**
+     * Constructs an empty <code>MergedRegions</code>.
+     */
+    public MergedRegions()
+    {
+        myRows = new TreeMap<>();
+        mySize = 0;
+    }
+
+    /**
+     * Adds the given merged region.
+     * @param region A <code>CellRangeAddress</code>.
+     */
+    public void add(CellRangeAddress region)
+    {
+        NavigableMap<Integer, List<CellRangeAddress>> cols = myRows.get(region.getFirstRow());
+        if (cols == null)
+        {
+            cols = new TreeMap<>();
+            myRows.put(region.getFirstRow(), cols);
+        }
+        List<CellRangeAddress> regions = cols.get(region.getFirstColumn());
+        if (regions == null)
+        {
+            regions = new ArrayList<>(1);
+            cols.put(region.getFirstColumn(), regions);
+        }
+        regions.add(region);
+        mySize++;
+    }
+
+    /**
+     * Removes the given merged region, which must be the same instance that
+     * was added.
+     * @param region A <code>CellRangeAddress</code>.
+     * @return Whether the region was found and removed.
+     */
+    public boolean remove(CellRangeAddress region)
+    {
+        NavigableMap<Integer, List<CellRangeAddress>> cols = myRows.get(region.getFirstRow());
+        if (cols == null)
+            return false;
+        List<CellRangeAddress> regions = cols.get(region.getFirstColumn());
+        if (regions == null)
+            return false;
+        for (int i = 0; i < regions.size(); i++)
+        {
+            if (regions.get(i) == region)
+            {
+                regions.remove(i);
+                mySize--;
+                if (regions.isEmpty())
+                {
+                    cols.remove(region.getFirstColumn());
+                    if (cols.isEmpty())
+                        myRows.remove(region.getFirstRow());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the merged region whose top-left corner is at the given row and
+     * column indexes.
+     * @param rowNum The 0-based row index of the top-left corner.
+     * @param colNum The 0-based column index of the top-left corner.
+     * @return The <code>CellRangeAddress</code>, or <code>null</code> if there
+     *    is no such merged region.
+     */
+    public CellRangeAddress getRegionAt(int rowNum, int colNum)
+    {
+        NavigableMap<Integer, List<CellRangeAddress>> cols = myRows.get(rowNum);
+        if (cols == null)
+            return null;
+        List<CellRangeAddress> regions = cols.get(colNum);
+        return (regions == null) ? null : regions.get(0);
+    }
+
+    /**
+     * Returns all merged regions that are wholly contained in the given range.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @return A <code>List</code> of <code>CellRangeAddresses</code>, possibly
+     *    empty.
+     */
+    public List<CellRangeAddress> findRegionsInRange(int left, int right, int top, int bottom)
+    {
+        List<CellRangeAddress> found = new ArrayList<>();
+        if (left > right || top > bottom)
+            return found;
+        for (NavigableMap<Integer, List<CellRangeAddress>> cols : myRows.subMap(top, true, bottom, true).values())
+        {
+            for (List<CellRangeAddress> regions : cols.subMap(left, true, right, true).values())
+            {
+                for (CellRangeAddress region : regions)
+                {
+                    if (region.getLastRow() <= bottom && region.getLastColumn() <= right)
+                        found.add(region);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Removes, moves, or copies all merged regions wholly contained in the
+     * given range, in one batch.  All affected regions are found before any
+     * are changed, so copies are never themselves copied again.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @param numCols The number of columns to translate (can be negative).
+     * @param numRows The number of rows to translate (can be negative).
+     * @param remove Whether to remove the regions found.
+     * @param add Whether to add translated copies of the regions found.
+     * @return The number of regions found.
+     */
+    public int translate(int left, int right, int top, int bottom, int numCols, int numRows,
+                         boolean remove, boolean add)
+    {
+        List<CellRangeAddress> found = findRegionsInRange(left, right, top, bottom);
+        for (CellRangeAddress region : found)
+        {
+            if (remove)
+                remove(region);
+            if (add)
+            {
+                add(new CellRangeAddress(
+                        region.getFirstRow() + numRows,
+                        region.getLastRow() + numRows,
+                        region.getFirstColumn() + numCols,
+                        region.getLastColumn() + numCols));
+            }
+        }
+        return found.size();
+    }
+
+    /**
+     * Returns the number of merged regions.
+     * @return The number of merged regions.
+     */
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * Returns an <code>Iterator</code> over all merged regions, in order of
+     * their top-left corners.  The <code>Iterator</code> does not support
+     * removal.
+     * @return An <code>Iterator</code>.
+     */
+    @Override
+    public Iterator<CellRangeAddress> iterator()
+    {
+        return new Iterator<CellRangeAddress>()
+        {
+            private Iterator<NavigableMap<Integer, List<CellRangeAddress>>> myRowItr = myRows.values().iterator();
+            private Iterator<List<CellRangeAddress>> myColItr = null;
+            private Iterator<CellRangeAddress> myRegionItr = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (myRegionItr == null || !myRegionItr.hasNext())
+                {
+                    while (myColItr == null || !myColItr.hasNext())
+                    {
+                        if (!myRowItr.hasNext())
+                            return false;
+                        myColItr = myRowItr.next().values().iterator();
+                    }
+                    myRegionItr = myColItr.next().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public CellRangeAddress next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return myRegionItr.next();
+            }
+        };
+    }
+
+    /**
+     * Returns a string listing all merged regions, for debugging.
+     * @return A string representation.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder("MergedRegions[");
+        boolean first = true;
+        for (Map<Integer, List<CellRangeAddress>> cols : myRows.values())
+        {
+            for (List<CellRangeAddress> regions : cols.values())
+            {
+                for (CellRangeAddress region : regions)
+                {
+                    if (!first)
+                        buf.append(", ");
+                    first = false;
+                    buf.append(region.formatAsString());
+                }
+            }
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+}
@@ -0,0 +1,298 @@
+package net.sf.jett.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * <p>A <code>ProcessedCells</code> object keeps track of the positions of the
+ * <code>Cells</code> on one <code>Sheet</code> that have already been
+ * processed during transformation.  Each visited cell is checked here, so
+ * positions are kept in a <code>BitSet</code> of column indexes for each row
+ * index, instead of in a collection of "sheet!A1" keys, which would create
+ * a string for every cell visit.</p>
+ *
+ * <p>Positions are marked and checked by row and column index only; a
+ * <code>ProcessedCells</code> object belongs to a single <code>Sheet</code>.
+ * </p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ProcessedCells
+{
+    private static final int INITIAL_ROWS = 64;
+
+    private BitSet[] myRows;
+    private int mySize;
+
+    /**
+     * Constructs an empty <code>ProcessedCells</code>.
+     */
+    public ProcessedCells()
+    {
+        myRows = new BitSet[INITIAL_ROWS];
+        mySize = 0;
+    }
+
+    /**
+     * Marks the position of the given <code>Cell</code> as processed.
+     * @param cell The <code>Cell</code>.
+     */
+    public void add(Cell cell)
+    {
+        add(cell.getRowIndex(), cell.getColumnIndex());
+    }
+
+    /**
+     * Marks the given position as processed.
+     * @param rowNum The 0-based row index.
+     * @param colNum The 0-based column index.
+     */
+    public void add(int rowNum, int colNum)
+    {
+        if (rowNum >= myRows.length)
+        {
+            myRows = Arrays.copyOf(myRows, Math.max(rowNum + 1, 2 * myRows.length));
+        }
+        BitSet row = myRows[rowNum];
+        if (row == null)
+        {
+            row = new BitSet();
+            myRows[rowNum] = row;
+        }
+        if (!row.get(colNum))
+        {
+            row.set(colNum);
+            mySize++;
+        }
+    }
+
+    /**
+     * Returns whether the position of the given <code>Cell</code> has been
+     * processed.
+     * @param cell The <code>Cell</code>.
+     * @return Whether the position has been processed.
+     */
+    public boolean contains(Cell cell)
+    {
+        return contains(cell.getRowIndex(), cell.getColumnIndex());
+    }
+
+    /**
+     * Returns whether the given position has been processed.
+     * @param rowNum The 0-based row index.
+     * @param colNum The 0-based column index.
+     * @return Whether the position has been processed.
+     */
+    public boolean contains(int rowNum, int colNum)
+    {
+        if (rowNum < 0 || rowNum >= myRows.length)
+            return false;
+        BitSet row = myRows[rowNum];
+        return row != null && row.get(colNum);
+    }
+
+    /**
+     * Returns the number of processed positions.
+     * @return The number of processed positions.
+     */
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * Marks the positions of all keys of the given <code>Map</code> of
+     * processed <code>Cells</code> as processed.
+     * @param processedCellsMap A <code>Map</code> of <code>Cells</code>, keyed
+     *    by cell keys of the format "sheet!A1".
+     */
+    public void addAll(Map<String, Cell> processedCellsMap)
+    {
+        for (String key : processedCellsMap.keySet())
+        {
+            CellReference ref = parseKey(key);
+            add(ref.getRow(), ref.getCol());
+        }
+    }
+
+    /**
+     * Parses the position out of a cell key of the format "sheet!A1", whose
+     * sheet name isn't quoted.
+     * @param key The cell key.
+     * @return A <code>CellReference</code> to the position.
+     */
+    private static CellReference parseKey(String key)
+    {
+        return new CellReference(key.substring(key.lastIndexOf('!') + 1));
+    }
+
+    /**
+     * Returns a <code>Map</code> view of the processed <code>Cells</code> on
+     * the given <code>Sheet</code>, keyed by cell keys of the format
+     * "sheet!A1", as {@link net.sf.jett.util.SheetUtil#getCellKey(Cell)} creates them.  Putting
+     * a <code>Cell</code> marks its position as processed.  Positions can't
+     * be removed.
+     * @param sheet The <code>Sheet</code> to which these positions belong.
+     * @return A <code>Map</code> view of the processed <code>Cells</code>.
+     */
+    public Map<String, Cell> asMap(Sheet sheet)
+    {
+        return new ProcessedCellsMap(sheet);
+    }
+
+    /**
+     * A <code>ProcessedCellsMap</code> is a <code>Map</code> view of the
+     * processed <code>Cells</code>, in the form they used to be kept.
+     */
+    private class ProcessedCellsMap extends AbstractMap<String, Cell>
+    {
+        private Sheet mySheet;
+
+        /**
+         * Constructs a <code>ProcessedCellsMap</code>.
+         * @param sheet The <code>Sheet</code> to which the positions belong.
+         */
+        private ProcessedCellsMap(Sheet sheet)
+        {
+            mySheet = sheet;
+        }
+
+        @Override
+        public int size()
+        {
+            return mySize;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            if (!(key instanceof String))
+                return false;
+            CellReference ref = parseKey((String) key);
+            return contains(ref.getRow(), ref.getCol());
+        }
+
+        @Override
+        public Cell get(Object key)
+        {
+            if (!(key instanceof String))
+                return null;
+            CellReference ref = parseKey((String) key);
+            return contains(ref.getRow(), ref.getCol()) ? getCell(ref.getRow(), ref.getCol()) : null;
+        }
+
+        @Override
+        public Cell put(String key, Cell cell)
+        {
+            Cell previous = get(key);
+            if (cell != null)
+            {
+                add(cell);
+            }
+            else
+            {
+                CellReference ref = parseKey(key);
+                add(ref.getRow(), ref.getCol());
+            }
+            return previous;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Cell>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, Cell>>()
+            {
+                @Override
+                public int size()
+                {
+                    return mySize;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Cell>> iterator()
+                {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        /**
+         * Returns the <code>Cell</code> at the given position.
+         * @param rowNum The 0-based row index.
+         * @param colNum The 0-based column index.
+         * @return The <code>Cell</code>, or <code>null</code> if it doesn't
+         *    exist.
+         */
+        private Cell getCell(int rowNum, int colNum)
+        {
+            Row row = mySheet.getRow(rowNum);
+            return (row != null) ? row.getCell(colNum) : null;
+        }
+
+        /**
+         * An <code>EntryIterator</code> iterates over the processed positions
+         * in row, then column order.
+         */
+        private class EntryIterator implements Iterator<Map.Entry<String, Cell>>
+        {
+            private int myRowNum = -1;
+            private int myColNum = -1;
+
+            /**
+             * Constructs an <code>EntryIterator</code>, positioned before the
+             * first processed position.
+             */
+            private EntryIterator()
+            {
+                advance();
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return myRowNum < myRows.length;
+            }
+
+            @Override
+            public Map.Entry<String, Cell> next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                String key = mySheet.getSheetName() + "!" +
+                        CellReference.convertNumToColString(myColNum) + (myRowNum + 1);
+                Map.Entry<String, Cell> entry = new SimpleImmutableEntry<>(key, getCell(myRowNum, myColNum));
+                advance();
+                return entry;
+            }
+
+            /**
+             * Advances to the next processed position, if any.
+             */
+            private void advance()
+            {
+                if (myRowNum >= 0)
+                    myColNum = myRows[myRowNum].nextSetBit(myColNum + 1);
+                while (myColNum < 0)
+                {
+                    myRowNum++;
+                    if (myRowNum >= myRows.length)
+                        return;
+                    if (myRows[myRowNum] != null)
+                        myColNum = myRows[myRowNum].nextSetBit(0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.sf.jett.model;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * A <code>RowFlusher</code> takes rows whose transformation has finished out
+ * of a <code>Sheet</code> while the rest of the <code>Sheet</code> is still
+ * being transformed, so that they no longer take up memory.  Flushed rows
+ * are gone from the <code>Sheet</code>; they must not be read or written
+ * again during transformation.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public interface RowFlusher
+{
+    /**
+     * Flushes all rows of the given <code>Sheet</code> above the given row
+     * index that haven't been flushed yet.  The caller guarantees that no
+     * row above the given row index will change any more.
+     * @param sheet The <code>Sheet</code>.
+     * @param rowNum The 0-based row index of the first row to keep.
+     */
+    public void flushRowsAbove(Sheet sheet, int rowNum);
+}
@@ -0,0 +1,74 @@
+package net.sf.jett.model;
+
+import net.sf.jett.tag.Tag;
+
+/**
+ * A <code>StreamingLoopTagStatus</code> represents information about the
+ * current iteration of a looping tag whose items are streamed, so the total
+ * number of iterations isn't known in advance.  The looping tag looks ahead
+ * one item to determine whether the current iteration is the last one.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class StreamingLoopTagStatus extends BaseLoopTagStatus
+{
+    /**
+     * The number of iterations reported while it's still unknown.
+     */
+    public static final int UNKNOWN_NUM_ITERATIONS = -1;
+
+    private Tag myParentTag;
+    private boolean amILast;
+
+    /**
+     * Constructs a <code>StreamingLoopTagStatus</code> with an unknown number
+     * of iterations and a current index of 0.
+     * @param tag The parent <code>Tag</code>.  This is only used to protect
+     *     the {@link #incrementIndex} and {@link #setLast} methods so only the
+     *     parent tag can call them, not code in templates.
+     */
+    public StreamingLoopTagStatus(Tag tag)
+    {
+        super(tag, UNKNOWN_NUM_ITERATIONS);
+        myParentTag = tag;
+        amILast = false;
+    }
+
+    /**
+     * Returns whether the current iteration is the last iteration.
+     * @return Whether the current iteration is the last iteration.
+     */
+    @Override
+    public boolean isLast()
+    {
+        return amILast;
+    }
+
+    /**
+     * Returns the number of iterations.  This is only known once the last
+     * iteration has been reached.
+     * @return The number of iterations, or {@link #UNKNOWN_NUM_ITERATIONS} if
+     *    the last iteration hasn't been reached yet.
+     */
+    @Override
+    public int getNumIterations()
+    {
+        return amILast ? getIndex() + 1 : UNKNOWN_NUM_ITERATIONS;
+    }
+
+    /**
+     * Sets whether the current iteration is the last iteration, if the given
+     * tag is this object's parent tag.
+     * @param tag The parent tag.
+     * @param last Whether the current iteration is the last iteration.
+     */
+    public void setLast(Tag tag, boolean last)
+    {
+        if (tag == null || tag != myParentTag)
+        {
+            throw new IllegalArgumentException("Tag given is not this object's parent tag!");
+        }
+        amILast = last;
+    }
+}
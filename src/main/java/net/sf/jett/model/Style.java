@@ -1,5 +1,7 @@
 package net.sf.jett.model;
 
+import java.util.Objects;
+
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
@@ -711,4 +713,94 @@ public class Style
 
         if (style.isStyleToApply()) doIHaveStylesToApply = true;
     }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     * @return A hash code.
+     * @since 0.12.0
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = Objects.hashCode(myAlignment);
+        hash = 31 * hash + Objects.hashCode(myBorderBottomType);
+        hash = 31 * hash + Objects.hashCode(myBorderLeftType);
+        hash = 31 * hash + Objects.hashCode(myBorderRightType);
+        hash = 31 * hash + Objects.hashCode(myBorderTopType);
+        hash = 31 * hash + Objects.hashCode(myBorderBottomColor);
+        hash = 31 * hash + Objects.hashCode(myBorderLeftColor);
+        hash = 31 * hash + Objects.hashCode(myBorderRightColor);
+        hash = 31 * hash + Objects.hashCode(myBorderTopColor);
+        hash = 31 * hash + Objects.hashCode(myColumnWidth);
+        hash = 31 * hash + Objects.hashCode(myDataFormat);
+        hash = 31 * hash + Objects.hashCode(myFillBackgroundColor);
+        hash = 31 * hash + Objects.hashCode(myFillForegroundColor);
+        hash = 31 * hash + Objects.hashCode(myFillPatternType);
+        hash = 31 * hash + Objects.hashCode(amIHidden);
+        hash = 31 * hash + Objects.hashCode(myIndention);
+        hash = 31 * hash + Objects.hashCode(amILocked);
+        hash = 31 * hash + Objects.hashCode(myRotationDegrees);
+        hash = 31 * hash + Objects.hashCode(myRowHeight);
+        hash = 31 * hash + Objects.hashCode(myVerticalAlignment);
+        hash = 31 * hash + Objects.hashCode(amIWrappingText);
+        hash = 31 * hash + Objects.hashCode(myFontBoldweight);
+        hash = 31 * hash + Objects.hashCode(myFontCharset);
+        hash = 31 * hash + Objects.hashCode(myFontColor);
+        hash = 31 * hash + Objects.hashCode(myFontHeightInPoints);
+        hash = 31 * hash + Objects.hashCode(myFontName);
+        hash = 31 * hash + Objects.hashCode(amIFontItalic);
+        hash = 31 * hash + Objects.hashCode(amIFontStrikeout);
+        hash = 31 * hash + Objects.hashCode(myFontTypeOffset);
+        hash = 31 * hash + Objects.hashCode(myFontUnderline);
+        return hash;
+    }
+
+    /**
+     * Determines whether the given object is a <code>Style</code> with the
+     * same property values.  A <code>Style</code> that is used as a key, e.g.
+     * to find <code>CellStyles</code> already derived from it, must not be
+     * changed afterwards.
+     * @param o Another object.
+     * @return Whether it's a <code>Style</code> with the same property values.
+     * @since 0.12.0
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (!(o instanceof Style))
+            return false;
+        Style other = (Style) o;
+        return Objects.equals(myAlignment, other.myAlignment) &&
+                Objects.equals(myBorderBottomType, other.myBorderBottomType) &&
+                Objects.equals(myBorderLeftType, other.myBorderLeftType) &&
+                Objects.equals(myBorderRightType, other.myBorderRightType) &&
+                Objects.equals(myBorderTopType, other.myBorderTopType) &&
+                Objects.equals(myBorderBottomColor, other.myBorderBottomColor) &&
+                Objects.equals(myBorderLeftColor, other.myBorderLeftColor) &&
+                Objects.equals(myBorderRightColor, other.myBorderRightColor) &&
+                Objects.equals(myBorderTopColor, other.myBorderTopColor) &&
+                Objects.equals(myColumnWidth, other.myColumnWidth) &&
+                Objects.equals(myDataFormat, other.myDataFormat) &&
+                Objects.equals(myFillBackgroundColor, other.myFillBackgroundColor) &&
+                Objects.equals(myFillForegroundColor, other.myFillForegroundColor) &&
+                Objects.equals(myFillPatternType, other.myFillPatternType) &&
+                Objects.equals(amIHidden, other.amIHidden) &&
+                Objects.equals(myIndention, other.myIndention) &&
+                Objects.equals(amILocked, other.amILocked) &&
+                Objects.equals(myRotationDegrees, other.myRotationDegrees) &&
+                Objects.equals(myRowHeight, other.myRowHeight) &&
+                Objects.equals(myVerticalAlignment, other.myVerticalAlignment) &&
+                Objects.equals(amIWrappingText, other.amIWrappingText) &&
+                Objects.equals(myFontBoldweight, other.myFontBoldweight) &&
+                Objects.equals(myFontCharset, other.myFontCharset) &&
+                Objects.equals(myFontColor, other.myFontColor) &&
+                Objects.equals(myFontHeightInPoints, other.myFontHeightInPoints) &&
+                Objects.equals(myFontName, other.myFontName) &&
+                Objects.equals(amIFontItalic, other.amIFontItalic) &&
+                Objects.equals(amIFontStrikeout, other.amIFontStrikeout) &&
+                Objects.equals(myFontTypeOffset, other.myFontTypeOffset) &&
+                Objects.equals(myFontUnderline, other.myFontUnderline);
+    }
 }
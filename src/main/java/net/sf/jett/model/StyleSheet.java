@@ -0,0 +1,248 @@
+package net.sf.jett.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import net.sf.jett.parser.StyleParser;
+
+/**
+ * <p>A <code>StyleSheet</code> is a set of named <code>Styles</code>, parsed
+ * once from CSS-like text, that can be attached to any number of
+ * <code>ExcelTransformers</code>.  Style names are recognized by the "class"
+ * attribute of the "style" tag.</p>
+ *
+ * <p>A <code>StyleSheet</code> is immutable once constructed, so it can be
+ * shared by any number of threads at the same time.  The <code>Styles</code>
+ * that it returns are shared, and must not be modified.  The <code>Style</code>
+ * resulting from merging a particular combination of style classes is
+ * resolved once and remembered, so tags that use the same combination don't
+ * merge it again.  Class names can come from expressions, so only the
+ * {@link #MAX_RESOLVED_STYLES} most recently used combinations are
+ * remembered.</p>
+ *
+ * <p>Use {@link #forFile(String)} to parse a CSS file only once; the parsed
+ * <code>StyleSheet</code> is cached by the file's path and last modified time,
+ * so it's re-parsed only if the file changes.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ * @see net.sf.jett.transform.ExcelTransformer#addStyleSheet(StyleSheet)
+ */
+public class StyleSheet
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * A <code>StyleSheet</code> with no styles.
+     */
+    public static final StyleSheet EMPTY = new StyleSheet(Collections.<String, Style>emptyMap());
+
+    /**
+     * The maximum number of resolved combinations of style classes that are
+     * remembered.
+     */
+    public static final int MAX_RESOLVED_STYLES = 1024;
+
+    private static final ConcurrentMap<String, CachedFile> FILE_CACHE = new ConcurrentHashMap<>();
+
+    private final Map<String, Style> myStyleMap;
+    private final Map<List<String>, Style> myResolvedStyles;
+
+    /**
+     * Parses the given CSS-like text into a <code>StyleSheet</code>.  Style
+     * definitions are of the format (whitespace is ignored):
+     * <code>[.styleName { [propertyName: value [; propertyName: value]* }]*</code>
+     * @param cssText A string containing one or more style definitions.
+     * @throws net.sf.jett.exception.StyleParseException If there is a problem
+     *    parsing the style definition text.
+     */
+    public StyleSheet(String cssText)
+    {
+        this(parse(cssText));
+    }
+
+    /**
+     * Constructs a <code>StyleSheet</code> with the given styles.
+     * @param styleMap A <code>Map</code> of style names to
+     *    <code>Styles</code>, which is copied.
+     */
+    StyleSheet(Map<String, Style> styleMap)
+    {
+        myStyleMap = Collections.unmodifiableMap(new HashMap<>(styleMap));
+        myResolvedStyles = new LinkedHashMap<List<String>, Style>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Style> eldest)
+            {
+                return size() > MAX_RESOLVED_STYLES;
+            }
+        };
+    }
+
+    /**
+     * Parses the given CSS-like text.
+     * @param cssText A string containing one or more style definitions.
+     * @return A <code>Map</code> of style names to <code>Styles</code>.
+     */
+    private static Map<String, Style> parse(String cssText)
+    {
+        StyleParser parser = new StyleParser(cssText);
+        parser.parse();
+        return parser.getStyleMap();
+    }
+
+    /**
+     * Returns the <code>StyleSheet</code> parsed from the given CSS file.  If
+     * the same file, as identified by its canonical path, has already been
+     * parsed, and it hasn't been modified since, then the cached
+     * <code>StyleSheet</code> is returned without reading the file again.
+     * @param filename The name of a file containing CSS-like style
+     *    definitions.
+     * @return The <code>StyleSheet</code>.
+     * @throws IOException If there is a problem reading the file.
+     * @throws net.sf.jett.exception.StyleParseException If there is a problem
+     *    parsing the style definition text.
+     */
+    public static StyleSheet forFile(String filename) throws IOException
+    {
+        File file = new File(filename);
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        CachedFile cached = FILE_CACHE.get(path);
+        if (cached != null && cached.myLastModified == lastModified && lastModified != 0)
+        {
+            logger.debug("Using cached style sheet for \"{}\".", path);
+            return cached.myStyleSheet;
+        }
+
+        logger.debug("Parsing style sheet file \"{}\".", path);
+        StringBuilder buf = new StringBuilder();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            while ((line = reader.readLine()) != null)
+            {
+                buf.append(line);
+                buf.append("\n");
+            }
+        }
+        StyleSheet styleSheet = new StyleSheet(buf.toString());
+        FILE_CACHE.put(path, new CachedFile(lastModified, styleSheet));
+        return styleSheet;
+    }
+
+    /**
+     * Discards all <code>StyleSheets</code> cached by {@link #forFile(String)}.
+     */
+    public static void clearFileCache()
+    {
+        FILE_CACHE.clear();
+    }
+
+    /**
+     * Returns a <code>StyleSheet</code> with the styles of this
+     * <code>StyleSheet</code> and the given <code>StyleSheet</code>.  Styles
+     * from the given <code>StyleSheet</code> replace styles of the same name
+     * in this <code>StyleSheet</code>.  If either <code>StyleSheet</code> is
+     * empty, then the other is returned as is, keeping its resolved styles.
+     * @param other Another <code>StyleSheet</code>.
+     * @return A <code>StyleSheet</code> with the styles of both.
+     */
+    public StyleSheet merge(StyleSheet other)
+    {
+        if (other.myStyleMap.isEmpty())
+            return this;
+        if (myStyleMap.isEmpty())
+            return other;
+        Map<String, Style> styleMap = new HashMap<>(myStyleMap);
+        styleMap.putAll(other.myStyleMap);
+        return new StyleSheet(styleMap);
+    }
+
+    /**
+     * Returns an unmodifiable <code>Map</code> of style names to
+     * <code>Styles</code>.
+     * @return An unmodifiable <code>Map</code> of style names to
+     *    <code>Styles</code>.
+     */
+    public Map<String, Style> getStyleMap()
+    {
+        return myStyleMap;
+    }
+
+    /**
+     * Returns the <code>Style</code> that results from applying the styles of
+     * the given class names in order, so that subsequent class names override
+     * previous class names.  Unknown class names are ignored.  The result is
+     * computed once per combination of class names, and is shared while the
+     * combination remains among the most recently used.
+     * @param classNames A <code>List</code> of style class names.
+     * @return The resolved <code>Style</code>, which must not be modified.
+     */
+    public Style resolve(List<String> classNames)
+    {
+        List<String> key = new ArrayList<>(classNames.size());
+        for (String className : classNames)
+        {
+            key.add(className.trim());
+        }
+        Style resolved;
+        synchronized (myResolvedStyles)
+        {
+            resolved = myResolvedStyles.get(key);
+        }
+        if (resolved == null)
+        {
+            // Merge outside the lock; if two threads race, the first result
+            // to be remembered wins.
+            resolved = new Style();
+            for (String className : key)
+            {
+                Style style = myStyleMap.get(className);
+                if (style != null)
+                    resolved.apply(style);
+            }
+            synchronized (myResolvedStyles)
+            {
+                Style existing = myResolvedStyles.putIfAbsent(Collections.unmodifiableList(key), resolved);
+                if (existing != null)
+                    resolved = existing;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * A <code>StyleSheet</code> parsed from a file, with the file's last
+     * modified time when it was read.
+     */
+    private static class CachedFile
+    {
+        private final long myLastModified;
+        private final StyleSheet myStyleSheet;
+
+        /**
+         * Constructs a <code>CachedFile</code>.
+         * @param lastModified The file's last modified time.
+         * @param styleSheet The <code>StyleSheet</code> parsed from the file.
+         */
+        private CachedFile(long lastModified, StyleSheet styleSheet)
+        {
+            myLastModified = lastModified;
+            myStyleSheet = styleSheet;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package net.sf.jett.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * <p>A <code>TagLocations</code> object keeps track of where each tag that
+ * is found in the template is now located, mapping its current location to
+ * its original cell reference, e.g. "Sheet!B1".  This is currently used only
+ * to identify original tag locations for exception messages.</p>
+ *
+ * <p>Locations are stored per sheet name, then per row index, as a sorted
+ * array of column indexes.  Shifting, copying, or removing all tag locations
+ * in a range of cells is a single operation on the range that visits only the
+ * rows in the range and, within each row, only the locations in the range's
+ * columns.  A row whose locations all move vertically is moved as a whole by
+ * changing its row index, without touching its locations.  No cell reference
+ * strings are created, and the original cell references are shared, not
+ * copied.</p>
+ *
+ * <p>Tracking can be turned off, in which case all operations do nothing and
+ * no original locations are ever found.  A read-only view, from
+ * {@link #unmodifiableTagLocations(TagLocations)}, can be shared by
+ * transformations that each copy it.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class TagLocations
+{
+    private final boolean amIEnabled;
+    private final boolean amIReadOnly;
+    private final Map<String, SheetTagLocations> mySheets;
+
+    /**
+     * Constructs an empty <code>TagLocations</code> that tracks locations.
+     */
+    public TagLocations()
+    {
+        this(true);
+    }
+
+    /**
+     * Constructs an empty <code>TagLocations</code>.
+     * @param enabled Whether to track locations.
+     */
+    public TagLocations(boolean enabled)
+    {
+        this(enabled, false, new HashMap<String, SheetTagLocations>());
+    }
+
+    /**
+     * Constructs a <code>TagLocations</code> with a copy of the given
+     * <code>TagLocations'</code> locations.  The copy may be modified, even
+     * if the given <code>TagLocations</code> is read-only.
+     * @param other Another <code>TagLocations</code>.
+     */
+    public TagLocations(TagLocations other)
+    {
+        this(other.amIEnabled, false, new HashMap<String, SheetTagLocations>());
+        for (Map.Entry<String, SheetTagLocations> entry : other.mySheets.entrySet())
+        {
+            mySheets.put(entry.getKey(), new SheetTagLocations(entry.getValue()));
+        }
+    }
+
+    /**
+     * Constructs a <code>TagLocations</code> over the given locations.
+     * @param enabled Whether to track locations.
+     * @param readOnly Whether the locations may not be changed.
+     * @param sheets The locations, by sheet name.
+     */
+    private TagLocations(boolean enabled, boolean readOnly, Map<String, SheetTagLocations> sheets)
+    {
+        amIEnabled = enabled;
+        amIReadOnly = readOnly;
+        mySheets = sheets;
+    }
+
+    /**
+     * Returns a read-only view of the given <code>TagLocations</code>.  All
+     * methods that would change locations throw an
+     * <code>UnsupportedOperationException</code>; changes to the given
+     * <code>TagLocations</code> show through.
+     * @param tagLocations A <code>TagLocations</code>.
+     * @return A read-only view of the <code>TagLocations</code>.
+     */
+    public static TagLocations unmodifiableTagLocations(TagLocations tagLocations)
+    {
+        if (tagLocations.amIReadOnly)
+            return tagLocations;
+        return new TagLocations(tagLocations.amIEnabled, true, tagLocations.mySheets);
+    }
+
+    /**
+     * Returns whether this <code>TagLocations</code> is a read-only view.
+     * @return Whether this <code>TagLocations</code> is read-only.
+     */
+    public boolean isReadOnly()
+    {
+        return amIReadOnly;
+    }
+
+    /**
+     * Returns whether locations are being tracked.
+     * @return Whether locations are being tracked.
+     */
+    public boolean isEnabled()
+    {
+        return amIEnabled;
+    }
+
+    /**
+     * Returns the number of tracked locations.
+     * @return The number of tracked locations.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (SheetTagLocations locations : mySheets.values())
+        {
+            size += locations.mySize;
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether there are no tracked locations.
+     * @return Whether there are no tracked locations.
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Records that a tag whose original location is the given cell reference
+     * is at the given location.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param rowNum The 0-based row index.
+     * @param colNum The 0-based column index.
+     * @param origCellRef The original cell reference, e.g. "Sheet!B1".
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    public void put(String sheetName, int rowNum, int colNum, String origCellRef)
+    {
+        checkModifiable();
+        if (!amIEnabled)
+            return;
+        SheetTagLocations locations = mySheets.get(sheetName);
+        if (locations == null)
+        {
+            locations = new SheetTagLocations();
+            mySheets.put(sheetName, locations);
+        }
+        locations.put(rowNum, colNum, origCellRef);
+    }
+
+    /**
+     * Returns the original cell reference of the tag at the given location.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param rowNum The 0-based row index.
+     * @param colNum The 0-based column index.
+     * @return The original cell reference, or <code>null</code> if no tag is
+     *    known to be there.
+     */
+    public String get(String sheetName, int rowNum, int colNum)
+    {
+        SheetTagLocations locations = mySheets.get(sheetName);
+        if (locations == null)
+            return null;
+        return locations.get(rowNum, colNum);
+    }
+
+    /**
+     * Records the locations in the given <code>Map</code> of current tag
+     * location cell references to original tag location cell references, with
+     * the cell references in the format "Sheet!B1".
+     * @param tagLocationsMap A <code>Map</code> of current tag location cell
+     *    references to original tag location cell references.
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    public void putAll(Map<String, String> tagLocationsMap)
+    {
+        for (Map.Entry<String, String> entry : tagLocationsMap.entrySet())
+        {
+            CellReference ref = new CellReference(entry.getKey());
+            put(ref.getSheetName(), ref.getRow(), ref.getCol(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns all locations as a new <code>Map</code> of current tag location
+     * cell references to original tag location cell references, with the cell
+     * references in the format "Sheet!B1".  Changes to the <code>Map</code>
+     * aren't reflected in this <code>TagLocations</code>.
+     * @return A <code>Map</code> of current tag location cell references to
+     *    original tag location cell references.
+     */
+    public Map<String, String> toMap()
+    {
+        Map<String, String> tagLocationsMap = new HashMap<>();
+        for (Map.Entry<String, SheetTagLocations> entry : mySheets.entrySet())
+        {
+            for (Map.Entry<Integer, RowTagLocations> rowEntry : entry.getValue().myRows.entrySet())
+            {
+                RowTagLocations row = rowEntry.getValue();
+                for (int i = 0; i < row.mySize; i++)
+                {
+                    tagLocationsMap.put(new CellReference(entry.getKey(), rowEntry.getKey(), row.myCols[i], false, false)
+                            .formatAsString(), row.myValues[i]);
+                }
+            }
+        }
+        return tagLocationsMap;
+    }
+
+    /**
+     * Forgets all locations in the given range.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    public void removeRange(String sheetName, int left, int right, int top, int bottom)
+    {
+        checkModifiable();
+        SheetTagLocations locations = mySheets.get(sheetName);
+        if (locations != null)
+            locations.translate(left, right, top, bottom, 0, 0, true, false);
+    }
+
+    /**
+     * Moves all locations in the given range by the given number of columns
+     * and rows.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @param numCols The number of columns to move (can be negative).
+     * @param numRows The number of rows to move (can be negative).
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    public void shiftRange(String sheetName, int left, int right, int top, int bottom, int numCols, int numRows)
+    {
+        checkModifiable();
+        SheetTagLocations locations = mySheets.get(sheetName);
+        if (locations != null && (numCols != 0 || numRows != 0))
+            locations.translate(left, right, top, bottom, numCols, numRows, true, true);
+    }
+
+    /**
+     * Copies all locations in the given range by the given number of columns
+     * and rows, keeping the originals.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @param left The 0-based column index on which the range starts.
+     * @param right The 0-based column index on which the range ends.
+     * @param top The 0-based row index on which the range starts.
+     * @param bottom The 0-based row index on which the range ends.
+     * @param numCols The number of columns away to copy (can be negative).
+     * @param numRows The number of rows away to copy (can be negative).
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    public void copyRange(String sheetName, int left, int right, int top, int bottom, int numCols, int numRows)
+    {
+        checkModifiable();
+        SheetTagLocations locations = mySheets.get(sheetName);
+        if (locations != null && (numCols != 0 || numRows != 0))
+            locations.translate(left, right, top, bottom, numCols, numRows, false, true);
+    }
+
+    /**
+     * Ensures that this <code>TagLocations</code> may be modified.
+     * @throws UnsupportedOperationException If this is read-only.
+     */
+    private void checkModifiable()
+    {
+        if (amIReadOnly)
+            throw new UnsupportedOperationException("TagLocations: Read-only!");
+    }
+
+    /**
+     * Returns a string listing all locations, for debugging.
+     * @return A string representation.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder("TagLocations[");
+        boolean first = true;
+        for (Map.Entry<String, SheetTagLocations> entry : mySheets.entrySet())
+        {
+            for (Map.Entry<Integer, RowTagLocations> rowEntry : entry.getValue().myRows.entrySet())
+            {
+                RowTagLocations row = rowEntry.getValue();
+                for (int i = 0; i < row.mySize; i++)
+                {
+                    if (!first)
+                        buf.append(", ");
+                    first = false;
+                    buf.append(new CellReference(entry.getKey(), rowEntry.getKey(), row.myCols[i], false, false)
+                            .formatAsString());
+                    buf.append(" => ");
+                    buf.append(row.myValues[i]);
+                }
+            }
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+
+    /**
+     * The locations on one sheet, as rows sorted by row index.
+     */
+    private static class SheetTagLocations
+    {
+        private TreeMap<Integer, RowTagLocations> myRows;
+        private int mySize;
+
+        /**
+         * Constructs an empty <code>SheetTagLocations</code>.
+         */
+        private SheetTagLocations()
+        {
+            myRows = new TreeMap<>();
+            mySize = 0;
+        }
+
+        /**
+         * Constructs a copy of the given <code>SheetTagLocations</code>.
+         * @param other Another <code>SheetTagLocations</code>.
+         */
+        private SheetTagLocations(SheetTagLocations other)
+        {
+            myRows = new TreeMap<>();
+            for (Map.Entry<Integer, RowTagLocations> entry : other.myRows.entrySet())
+            {
+                RowTagLocations row = entry.getValue();
+                myRows.put(entry.getKey(), row.copy(0, row.mySize));
+            }
+            mySize = other.mySize;
+        }
+
+        /**
+         * Returns the original cell reference at the given location.
+         * @param rowNum The 0-based row index.
+         * @param colNum The 0-based column index.
+         * @return The original cell reference, or <code>null</code>.
+         */
+        private String get(int rowNum, int colNum)
+        {
+            RowTagLocations row = myRows.get(rowNum);
+            return (row != null) ? row.get(colNum) : null;
+        }
+
+        /**
+         * Stores the original cell reference at the given location.
+         * @param rowNum The 0-based row index.
+         * @param colNum The 0-based column index.
+         * @param value The original cell reference.
+         */
+        private void put(int rowNum, int colNum, String value)
+        {
+            RowTagLocations row = myRows.get(rowNum);
+            if (row == null)
+            {
+                row = new RowTagLocations(4);
+                myRows.put(rowNum, row);
+            }
+            if (row.put(colNum, value))
+                mySize++;
+        }
+
+        /**
+         * Removes, moves, or copies all locations in the given range.  Only
+         * the rows in the range are visited, and only the locations in the
+         * range's columns are read.  All translated locations are taken out
+         * before any are put back, so that ranges that overlap their
+         * destinations are handled correctly.
+         * @param left The 0-based column index on which the range starts.
+         * @param right The 0-based column index on which the range ends.
+         * @param top The 0-based row index on which the range starts.
+         * @param bottom The 0-based row index on which the range ends.
+         * @param numCols The number of columns to translate.
+         * @param numRows The number of rows to translate.
+         * @param remove Whether to remove the locations in the range.
+         * @param add Whether to add the translated locations.
+         */
+        private void translate(int left, int right, int top, int bottom, int numCols, int numRows,
+                               boolean remove, boolean add)
+        {
+            if (left > right || top > bottom || mySize == 0)
+                return;
+            List<Integer> destRowNums = null;
+            List<RowTagLocations> destRows = null;
+            Iterator<Map.Entry<Integer, RowTagLocations>> itr =
+                    myRows.subMap(top, true, bottom, true).entrySet().iterator();
+            while (itr.hasNext())
+            {
+                Map.Entry<Integer, RowTagLocations> entry = itr.next();
+                int rowNum = entry.getKey();
+                RowTagLocations row = entry.getValue();
+                int start = row.indexAtOrAfter(left);
+                int end = row.indexAfter(right);
+                if (start >= end)
+                    continue;
+                boolean wholeRow = (start == 0 && end == row.mySize);
+
+                RowTagLocations moved = null;
+                if (add && rowNum + numRows >= 0)
+                {
+                    // Move the row itself if all of its locations go.
+                    moved = (remove && wholeRow) ? row : row.copy(start, end);
+                    moved.shiftColumns(numCols);
+                    if (moved.mySize == 0)
+                        moved = null;
+                }
+                if (remove)
+                {
+                    mySize -= end - start;
+                    if (wholeRow)
+                        itr.remove();
+                    else
+                        row.remove(start, end);
+                }
+                if (moved != null)
+                {
+                    if (destRows == null)
+                    {
+                        destRowNums = new ArrayList<>();
+                        destRows = new ArrayList<>();
+                    }
+                    destRowNums.add(rowNum + numRows);
+                    destRows.add(moved);
+                }
+            }
+            if (destRows == null)
+                return;
+            for (int i = 0; i < destRows.size(); i++)
+            {
+                int rowNum = destRowNums.get(i);
+                RowTagLocations moved = destRows.get(i);
+                RowTagLocations existing = myRows.get(rowNum);
+                if (existing == null)
+                {
+                    myRows.put(rowNum, moved);
+                    mySize += moved.mySize;
+                }
+                else
+                {
+                    mySize -= existing.mySize;
+                    existing.merge(moved);
+                    mySize += existing.mySize;
+                }
+            }
+        }
+    }
+
+    /**
+     * The locations in one row, as sorted column indexes with their original
+     * cell references in parallel.
+     */
+    private static class RowTagLocations
+    {
+        private int[] myCols;
+        private String[] myValues;
+        private int mySize;
+
+        /**
+         * Constructs an empty <code>RowTagLocations</code>.
+         * @param capacity The initial capacity.
+         */
+        private RowTagLocations(int capacity)
+        {
+            myCols = new int[capacity];
+            myValues = new String[capacity];
+            mySize = 0;
+        }
+
+        /**
+         * Returns a new <code>RowTagLocations</code> with the locations at
+         * the given indexes.
+         * @param start The 0-based index of the first location, inclusive.
+         * @param end The 0-based index of the last location, exclusive.
+         * @return A new <code>RowTagLocations</code>.
+         */
+        private RowTagLocations copy(int start, int end)
+        {
+            RowTagLocations copy = new RowTagLocations(Math.max(4, end - start));
+            System.arraycopy(myCols, start, copy.myCols, 0, end - start);
+            System.arraycopy(myValues, start, copy.myValues, 0, end - start);
+            copy.mySize = end - start;
+            return copy;
+        }
+
+        /**
+         * Returns the index of the first location at or after the given
+         * column index.
+         * @param colNum The 0-based column index.
+         * @return The index of the first location at or after the column.
+         */
+        private int indexAtOrAfter(int colNum)
+        {
+            int index = Arrays.binarySearch(myCols, 0, mySize, colNum);
+            return (index >= 0) ? index : -index - 1;
+        }
+
+        /**
+         * Returns the index of the first location after the given column
+         * index.
+         * @param colNum The 0-based column index.
+         * @return The index of the first location after the column.
+         */
+        private int indexAfter(int colNum)
+        {
+            int index = Arrays.binarySearch(myCols, 0, mySize, colNum);
+            return (index >= 0) ? index + 1 : -index - 1;
+        }
+
+        /**
+         * Returns the original cell reference at the given column index.
+         * @param colNum The 0-based column index.
+         * @return The original cell reference, or <code>null</code>.
+         */
+        private String get(int colNum)
+        {
+            int index = Arrays.binarySearch(myCols, 0, mySize, colNum);
+            return (index >= 0) ? myValues[index] : null;
+        }
+
+        /**
+         * Stores the original cell reference at the given column index.
+         * @param colNum The 0-based column index.
+         * @param value The original cell reference.
+         * @return Whether a new location was added, as opposed to replaced.
+         */
+        private boolean put(int colNum, String value)
+        {
+            int index = Arrays.binarySearch(myCols, 0, mySize, colNum);
+            if (index >= 0)
+            {
+                myValues[index] = value;
+                return false;
+            }
+            index = -index - 1;
+            if (mySize == myCols.length)
+            {
+                myCols = Arrays.copyOf(myCols, 2 * mySize);
+                myValues = Arrays.copyOf(myValues, 2 * mySize);
+            }
+            System.arraycopy(myCols, index, myCols, index + 1, mySize - index);
+            System.arraycopy(myValues, index, myValues, index + 1, mySize - index);
+            myCols[index] = colNum;
+            myValues[index] = value;
+            mySize++;
+            return true;
+        }
+
+        /**
+         * Removes the locations at the given indexes.
+         * @param start The 0-based index of the first location, inclusive.
+         * @param end The 0-based index of the last location, exclusive.
+         */
+        private void remove(int start, int end)
+        {
+            System.arraycopy(myCols, end, myCols, start, mySize - end);
+            System.arraycopy(myValues, end, myValues, start, mySize - end);
+            Arrays.fill(myValues, mySize - (end - start), mySize, null);
+            mySize -= end - start;
+        }
+
+        /**
+         * Adds the given number of columns to all locations, dropping any
+         * that would end up before the first column.
+         * @param numCols The number of columns to add (can be negative).
+         */
+        private void shiftColumns(int numCols)
+        {
+            if (numCols == 0)
+                return;
+            int dropped = 0;
+            while (dropped < mySize && myCols[dropped] + numCols < 0)
+                dropped++;
+            if (dropped > 0)
+                remove(0, dropped);
+            for (int i = 0; i < mySize; i++)
+                myCols[i] += numCols;
+        }
+
+        /**
+         * Merges the given locations into these locations.  A given location
+         * replaces an existing location in the same column.
+         * @param other The locations to merge in.
+         */
+        private void merge(RowTagLocations other)
+        {
+            int[] newCols = new int[mySize + other.mySize];
+            String[] newValues = new String[newCols.length];
+            int i = 0, j = 0, n = 0;
+            while (i < mySize || j < other.mySize)
+            {
+                if (j == other.mySize || (i < mySize && myCols[i] < other.myCols[j]))
+                {
+                    newCols[n] = myCols[i];
+                    newValues[n++] = myValues[i++];
+                }
+                else
+                {
+                    if (i < mySize && myCols[i] == other.myCols[j])
+                        i++;
+                    newCols[n] = other.myCols[j];
+                    newValues[n++] = other.myValues[j++];
+                }
+            }
+            myCols = newCols;
+            myValues = newValues;
+            mySize = n;
+        }
+    }
+}
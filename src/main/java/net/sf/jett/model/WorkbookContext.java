@@ -1,14 +1,20 @@
 package net.sf.jett.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.poi.ss.usermodel.Sheet;
+
 import net.sf.jett.event.CellListener;
 import net.sf.jett.event.SheetListener;
 import net.sf.jett.expression.ExpressionFactory;
 import net.sf.jett.formula.CellRef;
+import net.sf.jett.formula.CellRefIndex;
 import net.sf.jett.formula.Formula;
+import net.sf.jett.parser.ParsedTag;
 import net.sf.jett.tag.TagLibraryRegistry;
 
 /**
@@ -25,16 +31,22 @@ public class WorkbookContext
     private List<String> myFixedSizeCollectionNames;
     private List<String> myNoImplicitProcessingCollectionNames;
     private Map<String, Formula> myFormulaMap;
-    private Map<String, String> myTagLocationsMap;
+    private TagLocations myTagLocations;
     private Map<String, List<CellRef>> myCellRefMap;
+    private CellRefIndex myCellRefIndex;
     private int mySequenceNbr;
     private CellStyleCache myCellStyleCache;
     private FontCache myFontCache;
-    private Map<String, Style> myStyleMap;
+    private StyleSheet myStyleSheet;
     private List<String> myTemplateSheetNames;
     private List<String> mySheetNames;
     private ExpressionFactory myExpressionFactory;
     private List<Map<String, Object>> myBeansMaps;
+    private Map<String, String> myExpressionToCollNamesMap;
+    private Map<Style, DerivedCellStyles> myDerivedCellStylesMap;
+    private Map<Sheet, Boolean> myNativeRowShiftingMap;
+    private RowFlusher myRowFlusher;
+    private Map<String, ParsedTag> myParsedTags;
 
     /**
      * Initializes things to null/0.
@@ -51,11 +63,16 @@ public class WorkbookContext
         mySequenceNbr = 0;
         myCellStyleCache = null;
         myFontCache = null;
-        myStyleMap = null;
+        myStyleSheet = null;
         myTemplateSheetNames = null;
         mySheetNames = null;
         myExpressionFactory = null;
         myBeansMaps = null;
+        myExpressionToCollNamesMap = new HashMap<>();
+        myDerivedCellStylesMap = new HashMap<>();
+        myNativeRowShiftingMap = new HashMap<>();
+        myRowFlusher = null;
+        myParsedTags = Collections.emptyMap();
     }
 
     /**
@@ -179,6 +196,32 @@ public class WorkbookContext
         myFormulaMap = formulaMap;
     }
 
+    /**
+     * Returns the tag locations, which map current tag locations to original
+     * tag location cell references, in the format "Sheet!B1".  This is
+     * currently used only to identify original tag locations for exception
+     * messages.
+     * @return The <code>TagLocations</code>.
+     * @since 0.12.0
+     */
+    public TagLocations getTagLocations()
+    {
+        return myTagLocations;
+    }
+
+    /**
+     * Sets the tag locations, which map current tag locations to original
+     * tag location cell references, in the format "Sheet!B1".  This is
+     * currently used only to identify original tag locations for exception
+     * messages.
+     * @param tagLocations The <code>TagLocations</code>.
+     * @since 0.12.0
+     */
+    public void setTagLocations(TagLocations tagLocations)
+    {
+        myTagLocations = tagLocations;
+    }
+
     /**
      * Returns the tag locations map, a <code>Map</code> of current tag location
      * cell references to original tag location cell references, with the cell
@@ -187,10 +230,13 @@ public class WorkbookContext
      * @return A <code>Map</code> of current tag location cell references to
      *    original tag location cell references.
      * @since 0.9.0
+     * @deprecated Use {@link #getTagLocations()}.  The returned
+     *    <code>Map</code> is now a copy; changes to it have no effect.
      */
+    @Deprecated
     public Map<String, String> getTagLocationsMap()
     {
-        return myTagLocationsMap;
+        return (myTagLocations != null) ? myTagLocations.toMap() : null;
     }
 
     /**
@@ -201,10 +247,22 @@ public class WorkbookContext
      * @param tagLocationsMap A <code>Map</code> of current tag location cell
      *    references to original tag location cell references.
      * @since 0.9.0
+     * @deprecated Use {@link #setTagLocations(TagLocations)}.  The
+     *    <code>Map</code> is now copied into a new <code>TagLocations</code>.
      */
+    @Deprecated
     public void setTagLocationsMap(Map<String, String> tagLocationsMap)
     {
-        myTagLocationsMap = tagLocationsMap;
+        if (tagLocationsMap != null)
+        {
+            TagLocations tagLocations = new TagLocations();
+            tagLocations.putAll(tagLocationsMap);
+            myTagLocations = tagLocations;
+        }
+        else
+        {
+            myTagLocations = null;
+        }
     }
 
     /**
@@ -231,6 +289,33 @@ public class WorkbookContext
     public void setCellRefMap(Map<String, List<CellRef>> cellRefMap)
     {
         myCellRefMap = cellRefMap;
+        myCellRefIndex = null;
+    }
+
+    /**
+     * Returns the <code>CellRefIndex</code> of the cell reference map, creating
+     * it if necessary.  Code that shifts or copies cell references through the
+     * index keeps it up to date; any other code that changes the
+     * <code>Lists</code> in the cell reference map must call
+     * {@link #clearCellRefIndex()} afterwards.
+     * @return The <code>CellRefIndex</code>.
+     * @since 0.12.0
+     */
+    public CellRefIndex getCellRefIndex()
+    {
+        if (myCellRefIndex == null)
+            myCellRefIndex = new CellRefIndex(myCellRefMap);
+        return myCellRefIndex;
+    }
+
+    /**
+     * Discards the <code>CellRefIndex</code>, so that it is re-created from the
+     * cell reference map when it is next needed.
+     * @since 0.12.0
+     */
+    public void clearCellRefIndex()
+    {
+        myCellRefIndex = null;
     }
 
     /**
@@ -297,7 +382,27 @@ public class WorkbookContext
      */
     public Map<String, Style> getStyleMap()
     {
-        return myStyleMap;
+        return (myStyleSheet != null) ? myStyleSheet.getStyleMap() : null;
+    }
+
+    /**
+     * Returns the <code>StyleSheet</code> of registered styles.
+     * @return The <code>StyleSheet</code>.
+     * @since 0.12.0
+     */
+    public StyleSheet getStyleSheet()
+    {
+        return myStyleSheet;
+    }
+
+    /**
+     * Sets the <code>StyleSheet</code> of registered styles.
+     * @param styleSheet The <code>StyleSheet</code>.
+     * @since 0.12.0
+     */
+    public void setStyleSheet(StyleSheet styleSheet)
+    {
+        myStyleSheet = styleSheet;
     }
 
     /**
@@ -305,10 +410,13 @@ public class WorkbookContext
      * @param styleMap The <code>Map</code> of style names to
      *    <code>Styles</code>.
      * @since 0.5.0
+     * @deprecated Use {@link #setStyleSheet(StyleSheet)}.  The
+     *    <code>Map</code> is now copied into a new <code>StyleSheet</code>.
      */
+    @Deprecated
     public void setStyleMap(Map<String, Style> styleMap)
     {
-        myStyleMap = styleMap;
+        myStyleSheet = (styleMap != null) ? new StyleSheet(styleMap) : null;
     }
 
     /**
@@ -390,4 +498,105 @@ public class WorkbookContext
     {
         myBeansMaps = new ArrayList<>(beansMaps);
     }
+
+    /**
+     * <p>Returns the <code>Map</code> that caches the collection names found in
+     * expression texts, for implicit collections processing.  If it is known
+     * that there are no collection names, then the value is an empty
+     * <code>String</code>, to distinguish from the case in which the result is
+     * not known yet, in which case the value is <code>null</code>.</p>
+     * <p>The results depend on the beans map, so the cache belongs to this
+     * context, i.e. to a single transformation, and it is cleared whenever a
+     * different beans map comes into use.  Because it isn't shared, concurrent
+     * transformations don't interfere with each other.</p>
+     * @return The <code>Map</code> of expression texts to collection names.
+     * @since 0.12.0
+     */
+    public Map<String, String> getExpressionToCollNamesMap()
+    {
+        return myExpressionToCollNamesMap;
+    }
+
+    /**
+     * <p>Returns the <code>Map</code> of <code>CellStyles</code> already
+     * derived by applying <code>Styles</code> to source
+     * <code>CellStyles</code>.  It maps each applied <code>Style</code> to the
+     * <code>DerivedCellStyles</code> indexed by source
+     * <code>CellStyle</code>.</p>
+     * <p>Because it belongs to this context, every style tag in the workbook
+     * that applies an equal <code>Style</code> to the same source
+     * <code>CellStyle</code>, e.g. each iteration of a looping tag, reuses
+     * one derived <code>CellStyle</code>.</p>
+     * @return The <code>Map</code> of derived <code>CellStyles</code>.
+     * @since 0.12.0
+     */
+    public Map<Style, DerivedCellStyles> getDerivedCellStylesMap()
+    {
+        return myDerivedCellStylesMap;
+    }
+
+    /**
+     * <p>Returns the <code>Map</code> that remembers, for each
+     * <code>Sheet</code>, whether entire rows may be shifted with POI's own
+     * row shifting.  If a <code>Sheet</code> isn't in the <code>Map</code>,
+     * then it hasn't been decided yet.</p>
+     * <p>Tags that add anything that POI's row shifting treats differently,
+     * e.g. formulas, hyperlinks, comments and page breaks, map their
+     * <code>Sheet</code> to <code>false</code>.</p>
+     * @return The <code>Map</code> of <code>Sheets</code> to whether their
+     *    rows may be shifted natively.
+     * @since 0.12.0
+     */
+    public Map<Sheet, Boolean> getNativeRowShiftingMap()
+    {
+        return myNativeRowShiftingMap;
+    }
+
+    /**
+     * Sets the <code>RowFlusher</code> that takes finished rows out of their
+     * <code>Sheets</code> during transformation.
+     * @param rowFlusher The <code>RowFlusher</code>, or <code>null</code> to
+     *    keep all rows until transformation is done.
+     * @since 0.12.0
+     */
+    public void setRowFlusher(RowFlusher rowFlusher)
+    {
+        myRowFlusher = rowFlusher;
+    }
+
+    /**
+     * Returns the <code>RowFlusher</code> that takes finished rows out of
+     * their <code>Sheets</code> during transformation.
+     * @return The <code>RowFlusher</code>, or <code>null</code> if all rows
+     *    are kept until transformation is done.
+     * @since 0.12.0
+     */
+    public RowFlusher getRowFlusher()
+    {
+        return myRowFlusher;
+    }
+
+    /**
+     * Sets the <code>Map</code> of cell texts to the results of parsing them
+     * as tags, computed ahead of time, e.g. by a <code>CompiledTemplate</code>.
+     * @param parsedTags A <code>Map</code> of texts to
+     *    <code>ParsedTags</code>.  It is only read.
+     * @since 0.12.0
+     */
+    public void setParsedTags(Map<String, ParsedTag> parsedTags)
+    {
+        myParsedTags = parsedTags;
+    }
+
+    /**
+     * Returns the <code>Map</code> of cell texts to the results of parsing them
+     * as tags, computed ahead of time.  Texts not found in it are parsed.
+     * @return A <code>Map</code> of texts to <code>ParsedTags</code>, empty if
+     *    nothing was parsed ahead of time.
+     * @since 0.12.0
+     */
+    public Map<String, ParsedTag> getParsedTags()
+    {
+        return myParsedTags;
+    }
 }
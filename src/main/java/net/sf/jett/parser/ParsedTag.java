@@ -0,0 +1,163 @@
+package net.sf.jett.parser;
+
+/**
+ * <p>A <code>ParsedTag</code> is the result of a <code>TagParser</code>
+ * parsing some text, independent of the <code>Cell</code> that contained the
+ * text: whether the text is a tag, the namespace and tag name, and where the
+ * tag and each attribute value are found in the text.  The text doesn't have
+ * to be a tag; that result is worth keeping too.</p>
+ *
+ * <p>A <code>TagParser</code> given a <code>ParsedTag</code> for its text
+ * doesn't scan the text again; it only extracts the attribute values from its
+ * own <code>Cell</code>, so that they keep that <code>Cell's</code>
+ * formatting.  A <code>ParsedTag</code> is immutable and may be shared by
+ * many threads.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ParsedTag
+{
+    private final String myNamespace;
+    private final String myTagName;
+    private final boolean amIATag;
+    private final boolean amIEndTag;
+    private final boolean amIBodiless;
+    private final String[] myAttrNames;
+    private final int[] myAttrBounds;
+    private final int myTagStartIdx;
+    private final int myTagEndIdx;
+
+    /**
+     * Creates a <code>ParsedTag</code>.
+     * @param namespace The namespace, or <code>null</code> if not a tag.
+     * @param tagName The tag name, or <code>null</code> if not a tag.
+     * @param isTag Whether the text is a tag.
+     * @param isEndTag Whether the tag is an end tag.
+     * @param isBodiless Whether the tag is bodiless.
+     * @param attrNames The attribute names, in order.
+     * @param attrBounds The beginning and ending index into the text of the
+     *    value of each attribute, two per attribute name.
+     * @param tagStartIdx The 0-based index into the text of the start of the
+     *    tag, or <code>-1</code> if not a tag.
+     * @param tagEndIdx The 0-based index into the text after the tag, or
+     *    <code>-1</code> if not a tag.
+     */
+    ParsedTag(String namespace, String tagName, boolean isTag, boolean isEndTag, boolean isBodiless,
+              String[] attrNames, int[] attrBounds, int tagStartIdx, int tagEndIdx)
+    {
+        myNamespace = namespace;
+        myTagName = tagName;
+        amIATag = isTag;
+        amIEndTag = isEndTag;
+        amIBodiless = isBodiless;
+        myAttrNames = attrNames;
+        myAttrBounds = attrBounds;
+        myTagStartIdx = tagStartIdx;
+        myTagEndIdx = tagEndIdx;
+    }
+
+    /**
+     * Returns the namespace.
+     * @return The namespace, or <code>null</code> if not a tag.
+     */
+    String getNamespace()
+    {
+        return myNamespace;
+    }
+
+    /**
+     * Returns the tag name.
+     * @return The tag name, or <code>null</code> if not a tag.
+     */
+    String getTagName()
+    {
+        return myTagName;
+    }
+
+    /**
+     * Returns whether the text is a tag.
+     * @return Whether the text is a tag.
+     */
+    boolean isTag()
+    {
+        return amIATag;
+    }
+
+    /**
+     * Returns whether the tag is an end tag.
+     * @return Whether the tag is an end tag.
+     */
+    boolean isEndTag()
+    {
+        return amIEndTag;
+    }
+
+    /**
+     * Returns whether the tag is bodiless.
+     * @return Whether the tag is bodiless.
+     */
+    boolean isBodiless()
+    {
+        return amIBodiless;
+    }
+
+    /**
+     * Returns the number of attributes.
+     * @return The number of attributes.
+     */
+    int getNumAttributes()
+    {
+        return myAttrNames.length;
+    }
+
+    /**
+     * Returns the name of the attribute at the given position.
+     * @param i The 0-based attribute position.
+     * @return The attribute name.
+     */
+    String getAttributeName(int i)
+    {
+        return myAttrNames[i];
+    }
+
+    /**
+     * Returns the 0-based index into the text of the beginning of the value of
+     * the attribute at the given position.
+     * @param i The 0-based attribute position.
+     * @return The beginning index of the attribute value.
+     */
+    int getAttributeBeginIdx(int i)
+    {
+        return myAttrBounds[2 * i];
+    }
+
+    /**
+     * Returns the 0-based index into the text after the value of the
+     * attribute at the given position.
+     * @param i The 0-based attribute position.
+     * @return The ending index of the attribute value.
+     */
+    int getAttributeEndIdx(int i)
+    {
+        return myAttrBounds[2 * i + 1];
+    }
+
+    /**
+     * Returns the 0-based index into the text of the start of the tag.
+     * @return The start index, or <code>-1</code> if not a tag.
+     */
+    int getTagStartIdx()
+    {
+        return myTagStartIdx;
+    }
+
+    /**
+     * Returns the 0-based index into the text after the tag.
+     * @return The end index, or <code>-1</code> if not a tag.
+     */
+    int getTagEndIdx()
+    {
+        return myTagEndIdx;
+    }
+}
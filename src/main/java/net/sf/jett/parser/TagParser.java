@@ -1,7 +1,9 @@
 package net.sf.jett.parser;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -53,6 +55,8 @@ public class TagParser
     private boolean amIEndTag;
     private boolean amIBodiless;
     private Map<String, RichTextString> myAttributes = new HashMap<String, RichTextString>();
+    private List<String> myAttrNames = new ArrayList<>();
+    private List<Integer> myAttrBounds = new ArrayList<>();
     private int myTagStartIdx;
     private int myTagEndIdx;
 
@@ -101,6 +105,8 @@ public class TagParser
         amIEndTag = false;
         amIBodiless = false;
         myAttributes.clear();
+        myAttrNames.clear();
+        myAttrBounds.clear();
         myTagStartIdx = -1;
         myTagEndIdx = -1;
     }
@@ -238,18 +244,8 @@ public class TagParser
                     if (attrName == null)
                         throw new TagParseException("Value found without attribute name: " + myCellText + SheetUtil.getCellLocation(myCell));
                     // Store the RichTextString attribute value.
-                    int pos = myStartIdx + scanner.getNextPosition();
-                    CreationHelper helper = myCell.getSheet().getWorkbook().getCreationHelper();
-                    RichTextString attrValue = RichTextStringUtil.substring(myCellRichTextString,
-                            helper, pos - scanner.getCurrLexeme().length(), pos);
-                    // Replace _all_ tabs, carriage returns, linefeeds with spaces.
-                    attrValue = RichTextStringUtil.replaceValues(attrValue, helper,
-                            Arrays.asList("\n", "\r", "\t"),
-                            Arrays.asList(" " , " " , " " ),
-                            true);
-                    // Perform escape-sequence replacement.
-                    attrValue = RichTextStringUtil.performEscaping(attrValue, helper);
-                    myAttributes.put(attrName, attrValue);
+                    int pos = scanner.getNextPosition();
+                    putAttribute(attrName, pos - scanner.getCurrLexeme().length(), pos);
                     attrName = null;
                 }
                 else
@@ -290,6 +286,81 @@ public class TagParser
         myTagEndIdx = scanner.getNextPosition();
     }
 
+    /**
+     * Parses the tag text, unless the given <code>Map</code> already holds the
+     * result of parsing the same text, in which case only the attribute
+     * values are extracted from this parser's <code>Cell</code>.
+     * @param parsedTags A <code>Map</code> of texts to the results of parsing
+     *    them, e.g. from {@link #getParsedTag()}.
+     * @since 0.12.0
+     */
+    public void parse(Map<String, ParsedTag> parsedTags)
+    {
+        ParsedTag parsedTag = parsedTags.get(myCellText);
+        if (parsedTag == null)
+        {
+            parse();
+            return;
+        }
+        myNamespace = parsedTag.getNamespace();
+        myTagName = parsedTag.getTagName();
+        amIATag = parsedTag.isTag();
+        amIEndTag = parsedTag.isEndTag();
+        amIBodiless = parsedTag.isBodiless();
+        for (int i = 0; i < parsedTag.getNumAttributes(); i++)
+        {
+            putAttribute(parsedTag.getAttributeName(i),
+                    parsedTag.getAttributeBeginIdx(i), parsedTag.getAttributeEndIdx(i));
+        }
+        myTagStartIdx = parsedTag.getTagStartIdx();
+        myTagEndIdx = parsedTag.getTagEndIdx();
+    }
+
+    /**
+     * Stores the value of the given attribute, found between the given
+     * indexes into the tag text, as a <code>RichTextString</code> taken from
+     * the <code>Cell</code>.
+     * @param attrName The attribute name.
+     * @param beginIdx The 0-based index into the tag text of the value.
+     * @param endIdx The 0-based index into the tag text after the value.
+     * @since 0.12.0
+     */
+    private void putAttribute(String attrName, int beginIdx, int endIdx)
+    {
+        CreationHelper helper = myCell.getSheet().getWorkbook().getCreationHelper();
+        RichTextString attrValue = RichTextStringUtil.substring(myCellRichTextString,
+                helper, myStartIdx + beginIdx, myStartIdx + endIdx);
+        // Replace _all_ tabs, carriage returns, linefeeds with spaces.
+        attrValue = RichTextStringUtil.replaceValues(attrValue, helper,
+                Arrays.asList("\n", "\r", "\t"),
+                Arrays.asList(" " , " " , " " ),
+                true);
+        // Perform escape-sequence replacement.
+        attrValue = RichTextStringUtil.performEscaping(attrValue, helper);
+        myAttributes.put(attrName, attrValue);
+        myAttrNames.add(attrName);
+        myAttrBounds.add(beginIdx);
+        myAttrBounds.add(endIdx);
+    }
+
+    /**
+     * Returns the result of the last parse, independent of the
+     * <code>Cell</code>, so that the same text can later be parsed with
+     * {@link #parse(Map)} without scanning it again.
+     * @return A <code>ParsedTag</code>.
+     * @since 0.12.0
+     */
+    public ParsedTag getParsedTag()
+    {
+        int[] attrBounds = new int[myAttrBounds.size()];
+        for (int i = 0; i < attrBounds.length; i++)
+        {
+            attrBounds[i] = myAttrBounds.get(i);
+        }
+        return new ParsedTag(myNamespace, myTagName, amIATag, amIEndTag, amIBodiless,
+                myAttrNames.toArray(new String[0]), attrBounds, myTagStartIdx, myTagEndIdx);
+    }
+
     /**
      * Returns whether the given tag text is in fact a tag.  That is, if the tag
      * text starts with <code>BEGIN_START_TAG</code> or
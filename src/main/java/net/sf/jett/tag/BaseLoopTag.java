@@ -9,6 +9,7 @@ import java.util.Map;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 
 import net.sf.jett.event.TagLoopListener;
@@ -17,6 +18,8 @@ import net.sf.jett.exception.TagParseException;
 import net.sf.jett.model.BaseLoopTagStatus;
 import net.sf.jett.model.Block;
 import net.sf.jett.model.PastEndAction;
+import net.sf.jett.model.RowFlusher;
+import net.sf.jett.model.StreamingLoopTagStatus;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.transform.BlockTransformer;
 import net.sf.jett.util.AttributeUtil;
@@ -46,6 +49,11 @@ public abstract class BaseLoopTag extends BaseTag
 {
     private static final Logger logger = LogManager.getLogger();
 
+    /**
+     * The most <code>Blocks</code> of room that a loop makes at once.
+     */
+    private static final int MAX_ROOM_BLOCKS = 1024;
+
     /**
      * Attribute for forcing "copy right" behavior.  (Default is copy down.)
      */
@@ -365,16 +373,10 @@ public abstract class BaseLoopTag extends BaseTag
     @Override
     public boolean process()
     {
-        TagContext context = getContext();
-        Block block = context.getBlock();
         WorkbookContext workbookContext = getWorkbookContext();
         // Important for formulas, so different cell reference map entries from
         // different loops can be distinguished.
         workbookContext.incrSequenceNbr();
-        int seqNbr = workbookContext.getSequenceNbr();
-
-        Sheet sheet = context.getSheet();
-        Map<String, Object> beans = context.getBeans();
 
         // Decide whether this is "fixed" in 2 ways:
         // 1. A fixed size collection name was specified and is present.
@@ -404,161 +406,525 @@ public abstract class BaseLoopTag extends BaseTag
             fixed = !fixedSizeCollNames.isEmpty();
         }
 
+        if (isStreaming())
+        {
+            Iterator<?> iterator = getLoopIterator();
+            try
+            {
+                if (!iterator.hasNext())
+                {
+                    logger.debug("BaseLoopTag: streaming, no items");
+                    processNoIterations(fixed);
+                    return false;
+                }
+                StreamingLoopTagStatus status = null;
+                if (myVarStatusName != null && !myVarStatusName.isEmpty())
+                    status = new StreamingLoopTagStatus(this);
+                processIterations(fixed, iterator, status, true);
+            }
+            finally
+            {
+                closeQuietly(iterator);
+            }
+            return true;
+        }
+
         int numIterations = getNumIterations();
-        List<String> varNames = getVarNames();
         logger.debug("BaseLoopTag: numIterations={}", numIterations);
         if (numIterations == 0)
         {
-            // If fixed, no shifting is to occur for the removed block.
-            if (fixed)
+            processNoIterations(fixed);
+            return false;
+        }
+        BaseLoopTagStatus status = null;
+        if (myVarStatusName != null && !myVarStatusName.isEmpty())
+            status = getLoopTagStatus();
+        processIterations(fixed, getLoopIterator(), status, false);
+        return true;
+    }
+
+    /**
+     * Removes, clears, or otherwise takes the past end action on this tag's
+     * <code>Block</code>, because there are no iterations to process.
+     * @param fixed Whether this loop is "fixed", i.e. no shifting is to occur
+     *    for the removed block.
+     */
+    private void processNoIterations(boolean fixed)
+    {
+        TagContext context = getContext();
+        Block block = context.getBlock();
+        Sheet sheet = context.getSheet();
+        // If fixed, no shifting is to occur for the removed block.
+        if (fixed)
+        {
+            switch(myPastEndAction)
+            {
+            case CLEAR_CELL:
+                clearBlock();
+                break;
+            case REMOVE_CELL:
+                deleteBlock();
+                break;
+            case REPLACE_EXPR:
+                SheetUtil.takePastEndAction(sheet, block, getVarNames(), myPastEndAction, myReplaceExprValue);
+                block.collapse();
+                break;
+            default:
+                throw new IllegalStateException("BaseLoopTag: Unknown PastEndAction: " + myPastEndAction);
+            }
+        }
+        else
+            removeBlock();
+    }
+
+    /**
+     * <p>Processes all iterations of this loop.  <code>Blocks</code> are
+     * copied on demand: the <code>Block</code> for the next iteration is
+     * copied only after the current iteration has been transformed, from a
+     * single untransformed copy of the loop's content, the source.</p>
+     *
+     * <p>Unless fixed, room for the iterations is made by shifting the content
+     * below (or to the right of) the loop in chunks that double in size, up to
+     * <code>MAX_ROOM_BLOCKS</code> <code>Blocks</code>, or fewer if fewer
+     * iterations remain, so the number of shifts is logarithmic in the number
+     * of items.  The source is copied to the end of each chunk, so that the
+     * empty room is never at the bottom (or right) of an enclosing
+     * <code>Block</code>, where the shifting done by a nested loop would use
+     * it up instead of growing the enclosing <code>Block</code>.  The source
+     * becomes the <code>Block</code> of the chunk's last iteration.  When an
+     * iteration grows or shrinks, e.g. because of a nested loop, the source
+     * is the only <code>Block</code> that has to move.  Any room left over
+     * after the last streamed item is removed.</p>
+     * @param fixed Whether this loop is "fixed", i.e. no shifting is to occur.
+     * @param iterator The <code>Iterator</code> over the items, which must
+     *    have at least one item.
+     * @param status The <code>BaseLoopTagStatus</code> to expose in the beans,
+     *    or <code>null</code> if none.
+     * @param streaming Whether the items are streamed.
+     * @since 0.12.0
+     */
+    private void processIterations(boolean fixed, Iterator<?> iterator, BaseLoopTagStatus status, boolean streaming)
+    {
+        TagContext context = getContext();
+        Block block = context.getBlock();
+        WorkbookContext workbookContext = getWorkbookContext();
+        int seqNbr = workbookContext.getSequenceNbr();
+        Sheet sheet = context.getSheet();
+        Map<String, Object> beans = context.getBeans();
+        List<String> varNames = getVarNames();
+        int collectionSize = streaming ? Integer.MAX_VALUE : getCollectionSize();
+        int numIterations = streaming ? Integer.MAX_VALUE : getNumIterations();
+
+        BlockTransformer transformer = new BlockTransformer();
+        if (status != null)
+        {
+            beans.put(myVarStatusName, status);
+        }
+        // The untransformed size of each Block.
+        int width = block.getRightColNum() - block.getLeftColNum() + 1;
+        int height = block.getBottomRowNum() - block.getTopRowNum() + 1;
+        // Shifting cells doesn't move row heights or column widths, so the
+        // source's may not line up after iterations grow; remember the
+        // untransformed ones.
+        int[] sizes = getRowHeightsOrColumnWidths(sheet, block, width, height);
+        RowFlusher flusher = getRowFlusher();
+        // The untransformed copy at the end of the room, and the index of the
+        // iteration whose Block it becomes.
+        Block source = null;
+        int sourceIndex = -1;
+        Block currBlock = copyBlock(0);
+        int index = 0;
+        int right, bottom, colGrowth, rowGrowth;
+        int maxRight = 0;
+        int maxBottom = 0;
+        boolean hasNext = true;
+        while (hasNext)
+        {
+            Object item = iterator.next();
+            hasNext = iterator.hasNext();
+            if (hasNext && source == null)
+            {
+                int numBlocks;
+                if (fixed)
+                    numBlocks = 1;
+                else if (streaming)
+                    numBlocks = Math.min(index + 1, MAX_ROOM_BLOCKS);
+                else
+                    numBlocks = Math.max(1, Math.min(numIterations - 1 - index, MAX_ROOM_BLOCKS));
+                source = makeRoomAndCopySource(currBlock, width, height, numBlocks, fixed, seqNbr, index);
+                sourceIndex = index + numBlocks;
+            }
+            if (status instanceof StreamingLoopTagStatus)
+                ((StreamingLoopTagStatus) status).setLast(this, !hasNext);
+
+            // Off the end of the collection!
+            if (index >= collectionSize)
             {
                 switch(myPastEndAction)
                 {
                 case CLEAR_CELL:
-                    clearBlock();
+                    SheetUtil.clearBlock(sheet, currBlock, workbookContext);
                     break;
                 case REMOVE_CELL:
-                    deleteBlock();
+                    SheetUtil.deleteBlock(sheet, context, currBlock, workbookContext);
                     break;
                 case REPLACE_EXPR:
-                    SheetUtil.takePastEndAction(sheet, block, varNames, myPastEndAction, myReplaceExprValue);
-                    block.collapse();
+                    SheetUtil.takePastEndAction(sheet, currBlock, varNames, myPastEndAction, myReplaceExprValue);
                     break;
                 default:
                     throw new IllegalStateException("BaseLoopTag: Unknown PastEndAction: " + myPastEndAction);
                 }
             }
-            else
-                removeBlock();
-            return false;
-        }
-        else
-        {
-            BlockTransformer transformer = new BlockTransformer();
-            List<Block> blocksToProcess = new ArrayList<>(numIterations);
-            // Create room for the additional Blocks; the Block knows the proper
-            // direction (right or down).
-            // Don't create room if the collection is "fixed size", i.e. we can
-            // assume that room exists already.
-            if (!fixed)
-                shiftForBlock();
-
-            // Copy the Block.
-            for (int i = 0; i < numIterations; i++)
+
+            // Before Block Processing.
+            beforeBlockProcessed(context, currBlock, item, index);
+
+            // Fire a before tag loop processed event here, after the Before
+            // Block Processing occurs.
+            if (fireBeforeTagLoopProcessedEvent(currBlock, index))
             {
-                Block copy = copyBlock(i);
-                logger.debug("  Adding copied block: {}", copy);
-                blocksToProcess.add(copy);
+                // Process the block.
+                TagContext blockContext = new TagContext();
+                blockContext.setSheet(sheet);
+                blockContext.setBeans(beans);
+                blockContext.setBlock(currBlock);
+                blockContext.setProcessedCells(context.getProcessedCells());
+                blockContext.setDrawing(context.getDrawing());
+                blockContext.setMergedRegions(context.getMergedRegions());
+                blockContext.setCurrentTag(this);
+                String suffix = context.getFormulaSuffix() + "[" + seqNbr + "," + index + "]";
+                blockContext.setFormulaSuffix(suffix);
+
+                logger.debug("  Block Before: {}", currBlock);
+                right = currBlock.getRightColNum();
+                bottom = currBlock.getBottomRowNum();
+
+                transformer.transform(blockContext, workbookContext);
+                // See if the block transformation grew or shrunk the current block.
+                logger.debug("  Block After: {}", currBlock);
+                colGrowth = currBlock.getRightColNum() - right;
+                rowGrowth = currBlock.getBottomRowNum() - bottom;
+                // If it did, then the room and the source after it moved.
+                if (source != null && (colGrowth != 0 || rowGrowth != 0))
+                {
+                    logger.trace("  colGrowth is {}, rowGrowth is {}", colGrowth, rowGrowth);
+                    if (currBlock.getDirection() == Block.Direction.VERTICAL)
+                        source.translate(0, rowGrowth);
+                    else
+                        source.translate(colGrowth, 0);
+                }
+                // Get max right/bottom to expand the tag's block later.
+                if (currBlock.getRightColNum() > maxRight)
+                    maxRight = currBlock.getRightColNum();
+                if (currBlock.getBottomRowNum() > maxBottom)
+                    maxBottom = currBlock.getBottomRowNum();
+
+                // Fire a tag loop processed event here, before the After Block Processing
+                // occurs.
+                fireTagLoopProcessedEvent(currBlock, index);
             }
 
-            int index = 0;
-            Iterator<?> iterator = getLoopIterator();
-            BaseLoopTagStatus status = null;
-            if (myVarStatusName != null && !myVarStatusName.isEmpty())
+            // After Block Processing.
+            afterBlockProcessed(context, currBlock, item, index);
+
+            // End of loop processing.
+            if (status != null)
             {
-                status = getLoopTagStatus();
-                beans.put(myVarStatusName, status);
+                status.incrementIndex(this);
             }
-            int right, bottom, colGrowth, rowGrowth;
-            int maxRight = 0;
-            int maxBottom = 0;
-            while(iterator.hasNext())
+            if (hasNext)
             {
-                Object item = iterator.next();
-                Block currBlock = blocksToProcess.get(index);
-
-                // Off the end of the collection!
-                if (index >= getCollectionSize())
+                // Rows of a finished iteration won't change any more.
+                if (flusher != null && index < collectionSize)
+                    flusher.flushRowsAbove(sheet, currBlock.getBottomRowNum() + 1);
+                Block next;
+                if (index + 1 == sourceIndex)
                 {
-                    switch(myPastEndAction)
-                    {
-                    case CLEAR_CELL:
-                        SheetUtil.clearBlock(sheet, currBlock, getWorkbookContext());
-                        break;
-                    case REMOVE_CELL:
-                        SheetUtil.deleteBlock(sheet, context, currBlock, getWorkbookContext());
-                        break;
-                    case REPLACE_EXPR:
-                        SheetUtil.takePastEndAction(sheet, currBlock, varNames, myPastEndAction, myReplaceExprValue);
-                        break;
-                    default:
-                        throw new IllegalStateException("BaseLoopTag: Unknown PastEndAction: " + myPastEndAction);
-                    }
+                    next = source;
+                    source = null;
                 }
-
-                // Before Block Processing.
-                beforeBlockProcessed(context, currBlock, item, index);
-
-                // Fire a before tag loop processed event here, after the Before
-                // Block Processing occurs.
-                if (fireBeforeTagLoopProcessedEvent(currBlock, index))
+                else
                 {
-                    // Process the block.
-                    TagContext blockContext = new TagContext();
-                    blockContext.setSheet(sheet);
-                    blockContext.setBeans(beans);
-                    blockContext.setBlock(currBlock);
-                    blockContext.setProcessedCellsMap(context.getProcessedCellsMap());
-                    blockContext.setDrawing(context.getDrawing());
-                    blockContext.setMergedRegions(context.getMergedRegions());
-                    blockContext.setCurrentTag(this);
-                    String suffix = context.getFormulaSuffix() + "[" + seqNbr + "," + index + "]";
-                    blockContext.setFormulaSuffix(suffix);
-
-                    logger.debug("  Block Before: {}", currBlock);
-                    right = currBlock.getRightColNum();
-                    bottom = currBlock.getBottomRowNum();
-
-                    transformer.transform(blockContext, workbookContext);
-                    // See if the block transformation grew or shrunk the current block.
-                    logger.debug("  Block After: {}", currBlock);
-                    colGrowth = currBlock.getRightColNum() - right;
-                    rowGrowth = currBlock.getBottomRowNum() - bottom;
-                    // If it did, then all pending blocks must react!
-                    if (colGrowth != 0 || rowGrowth != 0)
-                    {
-                        logger.trace("  colGrowth is {}, rowGrowth is {}", colGrowth, rowGrowth);
-                        for (int j = index + 1; j < numIterations; j++)
-                        {
-                            Block pendingBlock = blocksToProcess.get(j);
-                            logger.trace("    Reacting Block: {}", pendingBlock);
-                            pendingBlock.reactToGrowth(currBlock, colGrowth, rowGrowth);
-                        }
-                    }
-                    // Get max right/bottom to expand the tag's block later.
-                    if (currBlock.getRightColNum() > maxRight)
-                        maxRight = currBlock.getRightColNum();
-                    if (currBlock.getBottomRowNum() > maxBottom)
-                        maxBottom = currBlock.getBottomRowNum();
-
-                    // Fire a tag loop processed event here, before the After Block Processing
-                    // occurs.
-                    fireTagLoopProcessedEvent(currBlock, index);
+                    next = copySource(source, currBlock, seqNbr, index + 1);
                 }
+                matchGrowth(next, currBlock);
+                setRowHeightsOrColumnWidths(sheet, next, sizes);
+                logger.debug("  Next block: {}", next);
+                currBlock = next;
+            }
+            index++;
+        }  // End while loop over items
+
+        if (status != null)
+        {
+            beans.remove(myVarStatusName);
+        }
+
+        // Remove room made for streamed items that never came.
+        if (source != null)
+            removeUnusedRoom(currBlock, source);
+
+        // Expand the tag block.
+        block.expand(maxRight - block.getRightColNum(), maxBottom - block.getBottomRowNum());
+
+        // Grouping - only if there was at least one item to process.
+        groupRowsOrCols(sheet, context.getBlock(), currBlock);
+    }
+
+    /**
+     * Returns the <code>RowFlusher</code> that may flush the rows of finished
+     * iterations, or <code>null</code> if they must be kept.  Rows are only
+     * flushed if this loop and every loop enclosing it is vertical, spans all
+     * columns of the sheet, and doesn't look at its rows again after
+     * processing them, i.e. groups no rows and has no
+     * <code>TagListener</code>.  Any other enclosing tag may still look at
+     * its rows after its body has been processed.
+     * @return The <code>RowFlusher</code>, or <code>null</code>.
+     * @since 0.12.0
+     */
+    private RowFlusher getRowFlusher()
+    {
+        RowFlusher flusher = getWorkbookContext().getRowFlusher();
+        if (flusher == null)
+            return null;
+        Block root = getContext().getBlock();
+        while (root.getParent() != null)
+            root = root.getParent();
+        for (Tag tag = this; tag != null; tag = tag.getParentTag())
+        {
+            if (!(tag instanceof BaseLoopTag))
+                return null;
+            BaseLoopTag loop = (BaseLoopTag) tag;
+            Block block = loop.getContext().getBlock();
+            if (block.getDirection() != Block.Direction.VERTICAL || loop.myGroupDir != Block.Direction.NONE ||
+                    loop.hasTagListener() ||
+                    block.getLeftColNum() > root.getLeftColNum() || block.getRightColNum() < root.getRightColNum())
+                return null;
+        }
+        return flusher;
+    }
+
+    /**
+     * Makes room for the given number of <code>Blocks</code> after the
+     * current <code>Block</code>, unless fixed, and copies the untransformed
+     * content of the current <code>Block</code> to the last of them, as the
+     * source of the <code>Blocks</code> in between.
+     * @param currBlock The current, not yet transformed, <code>Block</code>.
+     * @param width The untransformed width of a <code>Block</code>.
+     * @param height The untransformed height of a <code>Block</code>.
+     * @param numBlocks The number of <code>Blocks</code> of room to make.
+     * @param fixed Whether this loop is "fixed", i.e. no shifting is to occur.
+     * @param seqNbr The sequence number of this loop.
+     * @param index The 0-based iteration index of the current
+     *    <code>Block</code>.
+     * @return The source <code>Block</code>, which is the <code>Block</code>
+     *    for iteration <code>index + numBlocks</code>.
+     * @since 0.12.0
+     */
+    private Block makeRoomAndCopySource(Block currBlock, int width, int height, int numBlocks, boolean fixed,
+        int seqNbr, int index)
+    {
+        TagContext context = getContext();
+        Sheet sheet = context.getSheet();
+        WorkbookContext workbookContext = getWorkbookContext();
+        // The current Block may already be larger than its content, from
+        // matching the growth of previous Blocks; copy only the content.
+        Block content = new Block(currBlock.getParent(), currBlock.getLeftColNum(),
+                currBlock.getLeftColNum() + width - 1, currBlock.getTopRowNum(),
+                currBlock.getTopRowNum() + height - 1, index);
+        content.setDirection(currBlock.getDirection());
+        if (!fixed)
+            SheetUtil.shiftForBlock(sheet, context, content, workbookContext, numBlocks + 1);
+        Block source = SheetUtil.copyBlock(sheet, context, content, workbookContext, numBlocks, seqNbr, index + numBlocks);
+        logger.debug("  Made room for {} blocks; source block: {}", numBlocks, source);
+        return source;
+    }
+
+    /**
+     * Copies the source <code>Block</code> to right after (or right of) the
+     * given, already transformed, <code>Block</code>.
+     * @param source The source <code>Block</code>.
+     * @param prevBlock The <code>Block</code> of the previous iteration.
+     * @param seqNbr The sequence number of this loop.
+     * @param index The 0-based iteration index of the copy.
+     * @return The copied <code>Block</code>.
+     * @since 0.12.0
+     */
+    private Block copySource(Block source, Block prevBlock, int seqNbr, int index)
+    {
+        TagContext context = getContext();
+        int offset = (source.getDirection() == Block.Direction.VERTICAL) ?
+                prevBlock.getBottomRowNum() + 1 - source.getTopRowNum() :
+                prevBlock.getRightColNum() + 1 - source.getLeftColNum();
+        return SheetUtil.copyBlockByOffset(context.getSheet(), context, source, getWorkbookContext(),
+                offset, seqNbr, index);
+    }
+
+    /**
+     * Expands the given untransformed <code>Block</code> across the loop's
+     * direction to match the growth of the previous iteration's
+     * <code>Block</code>, e.g. widens it if the loop is vertical.  Do not
+     * shrink!
+     * @param nextBlock The untransformed <code>Block</code>.
+     * @param prevBlock The <code>Block</code> of the previous iteration.
+     * @since 0.12.0
+     */
+    private void matchGrowth(Block nextBlock, Block prevBlock)
+    {
+        if (nextBlock.getDirection() == Block.Direction.VERTICAL)
+        {
+            int colDiff = (prevBlock.getRightColNum() - prevBlock.getLeftColNum()) -
+                    (nextBlock.getRightColNum() - nextBlock.getLeftColNum());
+            if (colDiff > 0)
+                nextBlock.expand(colDiff, 0);
+        }
+        else
+        {
+            int rowDiff = (prevBlock.getBottomRowNum() - prevBlock.getTopRowNum()) -
+                    (nextBlock.getBottomRowNum() - nextBlock.getTopRowNum());
+            if (rowDiff > 0)
+                nextBlock.expand(0, rowDiff);
+        }
+    }
 
-                // After Block Processing.
-                afterBlockProcessed(context, currBlock, item, index);
+    /**
+     * Returns the heights of the rows of the given untransformed
+     * <code>Block</code> if it's vertical, or the widths of its columns if
+     * it's horizontal, if its copies would get them, else <code>null</code>.
+     * A row that doesn't exist has a height of <code>-1</code>.
+     * @param sheet The <code>Sheet</code>.
+     * @param block The untransformed <code>Block</code>.
+     * @param width The untransformed width of a <code>Block</code>.
+     * @param height The untransformed height of a <code>Block</code>.
+     * @return The row heights or column widths, or <code>null</code>.
+     * @since 0.12.0
+     */
+    private int[] getRowHeightsOrColumnWidths(Sheet sheet, Block block, int width, int height)
+    {
+        // Copies of the same rows (columns) in later iterations of a
+        // horizontal (vertical) parent don't get them again.
+        Block parent = block.getParent();
+        int[] sizes;
+        if (block.getDirection() == Block.Direction.VERTICAL)
+        {
+            if (parent != null && parent.getDirection() == Block.Direction.HORIZONTAL && parent.getIterationNbr() != 0)
+                return null;
+            sizes = new int[height];
+            for (int i = 0; i < height; i++)
+            {
+                Row row = sheet.getRow(block.getTopRowNum() + i);
+                sizes[i] = (row != null) ? row.getHeight() : -1;
+            }
+        }
+        else
+        {
+            if (parent != null && parent.getDirection() == Block.Direction.VERTICAL && parent.getIterationNbr() != 0)
+                return null;
+            sizes = new int[width];
+            for (int i = 0; i < width; i++)
+            {
+                sizes[i] = sheet.getColumnWidth(block.getLeftColNum() + i);
+            }
+        }
+        return sizes;
+    }
 
-                // End of loop processing.
-                if (status != null)
+    /**
+     * Sets the heights of the first rows of the given <code>Block</code> if
+     * it's vertical, or the widths of its first columns if it's horizontal,
+     * to the given untransformed sizes.
+     * @param sheet The <code>Sheet</code>.
+     * @param block The untransformed <code>Block</code>.
+     * @param sizes The sizes from
+     *    {@link #getRowHeightsOrColumnWidths(Sheet, Block, int, int)}, or
+     *    <code>null</code> to leave them alone.
+     * @since 0.12.0
+     */
+    private void setRowHeightsOrColumnWidths(Sheet sheet, Block block, int[] sizes)
+    {
+        if (sizes == null)
+            return;
+        for (int i = 0; i < sizes.length; i++)
+        {
+            if (block.getDirection() == Block.Direction.VERTICAL)
+            {
+                int rowNum = block.getTopRowNum() + i;
+                Row row = sheet.getRow(rowNum);
+                if (sizes[i] >= 0)
                 {
-                    status.incrementIndex(this);
+                    if (row == null)
+                        row = sheet.createRow(rowNum);
+                    row.setHeight((short) sizes[i]);
                 }
-                index++;
-            }  // End while loop over collection items
-
-            if (status != null)
+                else if (row != null)
+                {
+                    row.setHeight(sheet.getDefaultRowHeight());
+                }
+            }
+            else
             {
-                beans.remove(myVarStatusName);
+                sheet.setColumnWidth(block.getLeftColNum() + i, sizes[i]);
             }
+        }
+    }
 
-            // Expand the tag block.
-            block.expand(maxRight - block.getRightColNum(), maxBottom - block.getBottomRowNum());
+    /**
+     * Removes the unused room, including the source <code>Block</code>, after
+     * the last <code>Block</code> of a streaming loop, shifting back the
+     * content beyond it.
+     * @param lastBlock The <code>Block</code> of the last iteration.
+     * @param source The unused source <code>Block</code>.
+     * @since 0.12.0
+     */
+    private void removeUnusedRoom(Block lastBlock, Block source)
+    {
+        TagContext context = getContext();
+        Block unused;
+        if (source.getDirection() == Block.Direction.VERTICAL)
+            unused = new Block(source.getParent(), source.getLeftColNum(), source.getRightColNum(),
+                    lastBlock.getBottomRowNum() + 1, source.getBottomRowNum());
+        else
+            unused = new Block(source.getParent(), lastBlock.getRightColNum() + 1, source.getRightColNum(),
+                    source.getTopRowNum(), source.getBottomRowNum());
+        unused.setDirection(source.getDirection());
+        logger.debug("  Removing unused room: {}", unused);
+        Sheet sheet = context.getSheet();
+        int lastRowNum = sheet.getLastRowNum();
+        SheetUtil.removeBlock(sheet, context, unused, getWorkbookContext());
+        // Shifting up leaves behind the rows that were created to make room;
+        // remove the ones at the end of the sheet that are now empty.
+        if (unused.getDirection() == Block.Direction.VERTICAL)
+        {
+            int numRows = unused.getBottomRowNum() - unused.getTopRowNum() + 1;
+            for (int r = lastRowNum; r > lastRowNum - numRows && r >= 0; r--)
+            {
+                Row row = sheet.getRow(r);
+                if (row != null && row.getPhysicalNumberOfCells() > 0)
+                    break;
+                if (row != null)
+                    sheet.removeRow(row);
+            }
+        }
+    }
 
-            // Grouping - only if there was at least one item to process.
-            groupRowsOrCols(sheet, context.getBlock(), blocksToProcess.get(blocksToProcess.size() - 1));
+    /**
+     * Closes the given streaming <code>Iterator</code>, if it's
+     * <code>AutoCloseable</code>, logging any failure.
+     * @param iterator The <code>Iterator</code>.
+     */
+    private void closeQuietly(Iterator<?> iterator)
+    {
+        if (iterator instanceof AutoCloseable)
+        {
+            try
+            {
+                ((AutoCloseable) iterator).close();
+            }
+            catch (Exception e)
+            {
+                logger.warn("BaseLoopTag: Unable to close streaming iterator{}: {}", getLocation(), e.getMessage());
+            }
         }
-        return true;
     }
 
     /**
@@ -631,18 +997,6 @@ public abstract class BaseLoopTag extends BaseTag
         }
     }
 
-    /**
-     * Shifts cells out of the way of where copied blocks will go.
-     */
-    private void shiftForBlock()
-    {
-        TagContext context = getContext();
-        Block block = context.getBlock();
-        Sheet sheet = context.getSheet();
-        int numIterations = getNumIterations();
-        SheetUtil.shiftForBlock(sheet, context, block, getWorkbookContext(), numIterations);
-    }
-
     /**
      * Copies the <code>Block</code> in a particular direction.
      * @param numBlocksAway How many blocks away the <code>Block</code> will be
@@ -680,6 +1034,23 @@ public abstract class BaseLoopTag extends BaseTag
      */
     protected abstract int getNumIterations();
 
+    /**
+     * Returns whether this loop streams its items from its
+     * <code>Iterator</code>, without knowing the number of iterations in
+     * advance.  If so, then {@link #getNumIterations()} and
+     * {@link #getCollectionSize()} are not called, room for
+     * <code>Blocks</code> is made without knowing how much is needed, and the
+     * "past end action" only applies
+     * when there are no items at all.  This default implementation returns
+     * <code>false</code>.
+     * @return Whether this loop is streaming.
+     * @since 0.12.0
+     */
+    protected boolean isStreaming()
+    {
+        return false;
+    }
+
     /**
      * Returns the size of the collection being iterated.  This may be different
      * than the number of iterations because of the "limit" attribute.
@@ -284,6 +284,17 @@ public abstract class BaseTag implements Tag
         }
     }
 
+    /**
+     * Returns whether a <code>TagListener</code> will be notified after this
+     * <code>Tag</code> is processed.
+     * @return Whether there is a <code>TagListener</code>.
+     * @since 0.12.0
+     */
+    protected boolean hasTagListener()
+    {
+        return myTagListener != null;
+    }
+
     /**
      * Removes the <code>Block</code> of <code>Cells</code> associated with this
      * <code>Tag</code>.  This can be called by subclasses if it determines that
@@ -208,6 +208,8 @@ public class CommentTag extends BaseTag
         anchor.setRow2(top + rows);
 
         Comment comment = drawing.createCellComment(anchor);
+        // Native row shifting would move the comment.
+        workbookContext.getNativeRowShiftingMap().put(sheet, false);
         comment.setAuthor(author);
         if (commentString instanceof RichTextString)
         {
@@ -7,6 +7,10 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -38,11 +42,26 @@ import net.sf.jett.util.OrderByComparator;
  * collection, then blank blocks will result, with the exact result dependent
  * on "past end action" rules.</p>
  *
+ * <p>The items may also be streamed from an <code>Iterator</code>, an
+ * <code>Iterable</code> that isn't a <code>Collection</code>, a
+ * <code>java.util.stream.Stream</code>, or a <code>Spliterator</code>.  Then
+ * items are consumed one at a time as each iteration is processed, so the
+ * whole sequence is never held in memory, and only the next
+ * <code>Block</code> is copied ahead of the current one.  When streaming, the
+ * <code>where</code> condition is evaluated lazily, the <code>limit</code>
+ * only stops the iteration early and never produces blank blocks, and the
+ * <code>varStatus</code> doesn't know the number of iterations until the last
+ * one.  The <code>orderBy</code> and <code>groupBy</code> attributes need
+ * all items, so they read the entire stream into a <code>List</code> first.
+ * A streamed source that is <code>AutoCloseable</code>, such as a
+ * <code>Stream</code>, is closed when the loop is done.</p>
+ *
  * <br>Attributes:
  * <ul>
  * <li><em>Inherits all attributes from {@link BaseTag}.</em></li>
  * <li><em>Inherits all attributes from {@link BaseLoopTag}.</em></li>
- * <li>items (required): <code>Collection</code></li>
+ * <li>items (required): <code>Collection</code>, array, <code>Iterator</code>,
+ * <code>Iterable</code>, <code>Stream</code>, or <code>Spliterator</code></li>
  * <li>var (required): <code>String</code></li>
  * <li>indexVar (optional): <code>String</code></li>
  * <li>where (optional): <code>boolean</code></li>
@@ -100,6 +119,9 @@ public class ForEachTag extends BaseLoopTag
                     ATTR_INDEXVAR, ATTR_WHERE, ATTR_LIMIT, ATTR_GROUP_BY, ATTR_ORDER_BY));
 
     private Collection<Object> myCollection = null;
+    private Iterator<Object> myStreamingIterator = null;
+    private AutoCloseable myStreamingSource = null;
+    private RichTextString myStreamingCondition = null;
     private String myCollectionName = null;
     private String myVarName = null;
     private String myIndexVarName = null;
@@ -140,10 +162,33 @@ public class ForEachTag extends BaseLoopTag
         return optAttrs;
     }
 
+    /**
+     * Validates the attributes and processes this <code>Tag</code>, then
+     * closes the streamed source, if any, even if the attributes are invalid,
+     * processing fails, or a <code>TagListener</code> vetoes processing.
+     * @return Whether the first <code>Cell</code> in the <code>Block</code>
+     *    associated with this <code>Tag</code> was processed.
+     * @since 0.12.0
+     */
+    @Override
+    public boolean processTag()
+    {
+        try
+        {
+            return super.processTag();
+        }
+        finally
+        {
+            closeStreamingSource();
+        }
+    }
+
     /**
      * Validates the attributes for this <code>Tag</code>.  The "items"
-     * attribute must be a <code>Collection</code>.  The "limit", if present,
-     * must be a non-negative integer.
+     * attribute must be a <code>Collection</code>, an array, or a streamable
+     * source: an <code>Iterator</code>, an <code>Iterable</code>, a
+     * <code>Stream</code>, or a <code>Spliterator</code>.  The "limit", if
+     * present, must be a non-negative integer.
      */
     @Override
     @SuppressWarnings("unchecked")
@@ -157,13 +202,31 @@ public class ForEachTag extends BaseLoopTag
         Map<String, Object> beans = context.getBeans();
 
         Map<String, RichTextString> attributes = getAttributes();
+        // Evaluate the other attributes before opening a streamed source.
+        myVarName = AttributeUtil.evaluateString(this, attributes.get(ATTR_VAR), beans, null);
+
+        myIndexVarName = AttributeUtil.evaluateString(this, attributes.get(ATTR_INDEXVAR), beans, null);
+
+        List<String> orderByProperties = AttributeUtil.evaluateList(this, attributes.get(ATTR_ORDER_BY), beans, new ArrayList<String>(0));
+        myGroupByProperties = AttributeUtil.evaluateList(this, attributes.get(ATTR_GROUP_BY), beans, new ArrayList<String>(0));
+
         Object tmp = AttributeUtil.evaluateObject(this, attributes.get(ATTR_ITEMS), beans, ATTR_ITEMS, Object.class,new ArrayList<>(0)); 
         if (tmp instanceof Object[]) 
            myCollection = Arrays.asList((Object[])tmp); 
         else if (tmp instanceof Collection)
             myCollection = (Collection<Object>)tmp;
+        else if (tmp instanceof Iterator)
+            myStreamingIterator = (Iterator<Object>) tmp;
+        else if (tmp instanceof Iterable)
+            myStreamingIterator = ((Iterable<Object>) tmp).iterator();
+        else if (tmp instanceof BaseStream)
+            myStreamingIterator = ((BaseStream<Object, ?>) tmp).iterator();
+        else if (tmp instanceof Spliterator)
+            myStreamingIterator = Spliterators.iterator((Spliterator<Object>) tmp);
         else 
-            throw new TagParseException("JETT ForEachTag: iteration over Arrays or Collections only, got "+(tmp == null ? "NULL" : tmp.getClass()));
+            throw new TagParseException("JETT ForEachTag: iteration over Arrays, Collections, Iterators, Iterables, Streams, or Spliterators only, got "+(tmp == null ? "NULL" : tmp.getClass()));
+        if (tmp instanceof AutoCloseable)
+            myStreamingSource = (AutoCloseable) tmp;
 
         // Collection name.
         String attrItems = attributes.get(ATTR_ITEMS).getString();
@@ -175,13 +238,26 @@ public class ForEachTag extends BaseLoopTag
                     Expression.BEGIN_EXPR.length(), endExprIdx);
         }
 
-        logger.debug("Collection \"{}\" has size {}", attrItems, myCollection.size());
+        // Ordering and grouping need all items at once.
+        if (myStreamingIterator != null && (!orderByProperties.isEmpty() || !myGroupByProperties.isEmpty()))
+        {
+            logger.debug("Reading streamed items \"{}\" for orderBy/groupBy", attrItems);
+            myCollection = readStreamingItems();
+        }
 
-        myVarName = AttributeUtil.evaluateString(this, attributes.get(ATTR_VAR), beans, null);
+        RichTextString rtsCondition = attributes.get(ATTR_WHERE);
+        if (myStreamingIterator != null)
+        {
+            logger.debug("Collection \"{}\" is streamed", attrItems);
+            // Filter lazily.
+            myStreamingCondition = rtsCondition;
+            myLimit = AttributeUtil.evaluateNonNegativeInt(this, attributes.get(ATTR_LIMIT), beans, ATTR_LIMIT, Integer.MAX_VALUE);
+            logger.debug("vA: myLimit={}", myLimit);
+            return;
+        }
 
-        myIndexVarName = AttributeUtil.evaluateString(this, attributes.get(ATTR_INDEXVAR), beans, null);
+        logger.debug("Collection \"{}\" has size {}", attrItems, myCollection.size());
 
-        RichTextString rtsCondition = attributes.get(ATTR_WHERE);
         if (rtsCondition != null)
         {
             // Create a new Collection containing only those items where the given
@@ -200,7 +276,6 @@ public class ForEachTag extends BaseLoopTag
             myCollection = newCollection;
         }
 
-        List<String> orderByProperties = AttributeUtil.evaluateList(this, attributes.get(ATTR_ORDER_BY), beans, new ArrayList<String>(0));
         OrderByComparator<Object> comp = null;
         if (!orderByProperties.isEmpty())
         {
@@ -208,7 +283,6 @@ public class ForEachTag extends BaseLoopTag
             sortTheCollection(comp);
         }
 
-        myGroupByProperties = AttributeUtil.evaluateList(this, attributes.get(ATTR_GROUP_BY), beans, new ArrayList<String>(0));
         if (!myGroupByProperties.isEmpty())
         {
             List<Group> groups = groupTheCollection();
@@ -247,6 +321,18 @@ public class ForEachTag extends BaseLoopTag
         return Arrays.asList(myVarName);
     }
 
+    /**
+     * Returns whether the items are streamed from an <code>Iterator</code>,
+     * <code>Iterable</code>, <code>Stream</code>, or <code>Spliterator</code>.
+     * @return Whether the items are streamed.
+     * @since 0.12.0
+     */
+    @Override
+    protected boolean isStreaming()
+    {
+        return myStreamingIterator != null;
+    }
+
     /**
      * Returns the number of iterations.
      * @return The number of iterations.
@@ -275,9 +361,53 @@ public class ForEachTag extends BaseLoopTag
     @Override
     protected Iterator<Object> getLoopIterator()
     {
+        if (myStreamingIterator != null)
+            return new StreamingForEachTagIterator();
         return new ForEachTagIterator();
     }
 
+    /**
+     * Reads all remaining streamed items into a <code>List</code>, closing the
+     * streamed source, and stops streaming.
+     * @return A <code>List</code> of all streamed items.
+     */
+    private List<Object> readStreamingItems()
+    {
+        List<Object> items = new ArrayList<>();
+        try
+        {
+            while (myStreamingIterator.hasNext())
+            {
+                items.add(myStreamingIterator.next());
+            }
+        }
+        finally
+        {
+            closeStreamingSource();
+        }
+        myStreamingIterator = null;
+        return items;
+    }
+
+    /**
+     * Closes the streamed source, if it's <code>AutoCloseable</code>.
+     */
+    private void closeStreamingSource()
+    {
+        if (myStreamingSource != null)
+        {
+            try
+            {
+                myStreamingSource.close();
+            }
+            catch (Exception e)
+            {
+                logger.warn("ForEachTag: Unable to close streamed items{}: {}", getLocation(), e.getMessage());
+            }
+            myStreamingSource = null;
+        }
+    }
+
     /**
      * Place the <code>Iterator</code> item into the <code>Map</code> of beans.
      *
@@ -439,5 +569,102 @@ public class ForEachTag extends BaseLoopTag
             return myIndex < myLimit;
         }
     }
-}
 
+    /**
+     * The <code>Iterator</code> over streamed items.  It applies the "where"
+     * condition lazily, looking ahead only as far as the next matching item,
+     * and it stops at the limit.  Closing it closes the streamed source.
+     * @since 0.12.0
+     */
+    private class StreamingForEachTagIterator implements Iterator<Object>, AutoCloseable
+    {
+        private int myIndex;
+        private Object myNext;
+        private boolean amINextReady;
+
+        /**
+         * Construct a <code>StreamingForEachTagIterator</code> whose index is
+         * initialized to zero.
+         */
+        private StreamingForEachTagIterator()
+        {
+            myIndex = 0;
+            myNext = null;
+            amINextReady = false;
+        }
+
+        /**
+         * It doesn't make sense to remove values.
+         */
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException("StreamingForEachTagIterator: Remove not supported!");
+        }
+
+        /**
+         * Determines if there are any streamed items left that satisfy the
+         * "where" condition, if any, within the limit.
+         * @return <code>true</code> if there are more items to process;
+         *    <code>false</code> otherwise.
+         */
+        @Override
+        public boolean hasNext()
+        {
+            if (amINextReady)
+                return true;
+            if (myIndex >= myLimit)
+                return false;
+            Map<String, Object> beans = getContext().getBeans();
+            while (myStreamingIterator.hasNext())
+            {
+                Object item = myStreamingIterator.next();
+                if (myStreamingCondition == null)
+                {
+                    myNext = item;
+                    amINextReady = true;
+                    return true;
+                }
+                // Don't disturb the current item's value, which is still in use.
+                Object currValue = beans.put(myVarName, item);
+                boolean condition = AttributeUtil.evaluateBoolean(ForEachTag.this, myStreamingCondition, beans, true);
+                if (currValue != null)
+                    beans.put(myVarName, currValue);
+                else
+                    beans.remove(myVarName);
+                if (condition)
+                {
+                    myNext = item;
+                    amINextReady = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the next streamed item.
+         * @return The next streamed item.
+         */
+        @Override
+        public Object next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException("StreamingForEachTagIterator: No more items!");
+            Object next = myNext;
+            myNext = null;
+            amINextReady = false;
+            myIndex++;
+            return next;
+        }
+
+        /**
+         * Closes the streamed source, if it's <code>AutoCloseable</code>.
+         */
+        @Override
+        public void close()
+        {
+            closeStreamingSource();
+        }
+    }
+}
@@ -183,6 +183,8 @@ public class FormulaTag extends BaseTag
 
         logger.debug("  Formula for row {}, cell {} is {}", top, left, formulaText);
         cell.setCellFormula(formulaText);
+        // Native row shifting would rewrite the formula.
+        getWorkbookContext().getNativeRowShiftingMap().put(sheet, false);
 
         return true;
     }
@@ -178,6 +178,8 @@ public class HyperlinkTag extends BaseTag
         Hyperlink hyperlink = helper.createHyperlink(myLinkType);
         hyperlink.setAddress(myAddress);
         cell.setHyperlink(hyperlink);
+        // Native row shifting would move the hyperlink.
+        workbookContext.getNativeRowShiftingMap().put(sheet, false);
 
         BlockTransformer transformer = new BlockTransformer();
         transformer.transform(context, workbookContext);
@@ -248,6 +248,7 @@ public class NameTag extends BaseTag
                 }
             }
         }
+        workbookContext.clearCellRefIndex();
 
         // Clear the cell; there is no cell-visible result.
         clearBlock();
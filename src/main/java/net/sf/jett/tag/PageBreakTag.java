@@ -152,6 +152,8 @@ public class PageBreakTag extends BaseTag
         if (TYPE_BOTH.equalsIgnoreCase(myType) || TYPE_ROWS.equalsIgnoreCase(myType))
         {
             sheet.setRowBreak(top);
+            // Native row shifting would move the row break.
+            getWorkbookContext().getNativeRowShiftingMap().put(sheet, false);
         }
         if (TYPE_BOTH.equalsIgnoreCase(myType) || TYPE_COLS.equalsIgnoreCase(myType))
         {
@@ -28,9 +28,11 @@ import org.apache.poi.xssf.usermodel.XSSFFont;
 import net.sf.jett.exception.TagParseException;
 import net.sf.jett.model.Block;
 import net.sf.jett.model.CellStyleCache;
+import net.sf.jett.model.DerivedCellStyles;
 import net.sf.jett.model.ExcelColor;
 import net.sf.jett.model.FontCache;
 import net.sf.jett.model.Style;
+import net.sf.jett.model.StyleSheet;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.parser.StyleParser;
 import net.sf.jett.transform.BlockTransformer;
@@ -147,21 +149,16 @@ public class StyleTag extends BaseTag
 
         TagContext context = getContext();
         WorkbookContext wc = getWorkbookContext();
-        Map<String, Style> styleMap = wc.getStyleMap();
+        StyleSheet styleSheet = wc.getStyleSheet();
         Map<String, Object> beans = context.getBeans();
         Map<String, RichTextString> attributes = getAttributes();
 
         myStyle = new Style();
 
         List<String> styleClasses = AttributeUtil.evaluateList(this, attributes.get(ATTR_CLASS), beans, null);
-        if (styleClasses != null)
+        if (styleClasses != null && styleSheet != null)
         {
-            for (String styleClass : styleClasses)
-            {
-                Style style = styleMap.get(styleClass.trim());
-                if (style != null)
-                    myStyle.apply(style);
-            }
+            myStyle.apply(styleSheet.resolve(styleClasses));
         }
 
         String line = AttributeUtil.evaluateString(this, attributes.get(ATTR_STYLE), beans, null);
@@ -211,6 +208,9 @@ public class StyleTag extends BaseTag
 
         if (myStyle.isStyleToApply())
         {
+            // Hash the Style only once for all Cells.
+            DerivedCellStyles derivedCellStyles = getWorkbookContext().getDerivedCellStylesMap()
+                    .computeIfAbsent(myStyle, k -> new DerivedCellStyles());
             // Loop through Rows and Cells, and apply the style to each one in
             // turn.
             for (int r = top; r <= bottom; r++)
@@ -223,7 +223,7 @@ public class StyleTag extends BaseTag
                         Cell cell = row.getCell(c);
                         if (cell != null)
                         {
-                            examineAndApplyStyle(workbook, cell);
+                            examineAndApplyStyle(workbook, cell, derivedCellStyles);
                         }
                     }
                 }
@@ -240,22 +240,61 @@ public class StyleTag extends BaseTag
      * Examine the given <code>Cell's</code> current <code>CellStyle</code>.  If
      * necessary, replace its <code>CellStyle</code> and/or <code>Font</code,
      * guided by the property values retrieved earlier from the "style"
-     * attribute.
+     * attribute.  The <code>CellStyle</code> derived from each distinct
+     * source <code>CellStyle</code> is remembered in the
+     * <code>WorkbookContext</code>, so cells that share a source
+     * <code>CellStyle</code>, in this or any other style tag applying an equal
+     * <code>Style</code>, only cost an array lookup.
      * @param workbook The <code>Workbook</code> that maintains all
      *    <code>CellStyles</code> and <code>Fonts</code>.
      * @param cell The <code>Cell</code> to examine.
+     * @param derivedCellStyles The <code>DerivedCellStyles</code> of this
+     *    tag's <code>Style</code>.
      */
-    private void examineAndApplyStyle(Workbook workbook, Cell cell)
+    private void examineAndApplyStyle(Workbook workbook, Cell cell, DerivedCellStyles derivedCellStyles)
+    {
+        CellStyle cs = cell.getCellStyle();
+
+        logger.debug("eAAS: cell at ({}, {})", cell.getRowIndex(), cell.getColumnIndex());
+
+        // Process row height/column width separately.
+        if (myStyle.getRowHeight() != null)
+        {
+            cell.getRow().setHeight(myStyle.getRowHeight());
+        }
+        if (myStyle.getColumnWidth() != null)
+        {
+            cell.getSheet().setColumnWidth(cell.getColumnIndex(), myStyle.getColumnWidth());
+        }
+
+        CellStyle foundStyle = derivedCellStyles.get(cs);
+        if (foundStyle == null)
+        {
+            foundStyle = deriveCellStyle(workbook, cs);
+            derivedCellStyles.put(cs, foundStyle);
+        }
+        cell.setCellStyle(foundStyle);
+    }
+
+    /**
+     * Determines the <code>CellStyle</code> that results from overriding the
+     * given source <code>CellStyle</code> with any non-null style property
+     * values, finding an existing <code>CellStyle</code> and/or
+     * <code>Font</code> if possible, and creating them if necessary.
+     * @param workbook The <code>Workbook</code> that maintains all
+     *    <code>CellStyles</code> and <code>Fonts</code>.
+     * @param cs The source <code>CellStyle</code>.
+     * @return The derived <code>CellStyle</code>.
+     * @since 0.12.0
+     */
+    private CellStyle deriveCellStyle(Workbook workbook, CellStyle cs)
     {
         WorkbookContext wc = getWorkbookContext();
         CellStyleCache csCache = wc.getCellStyleCache();
         FontCache fCache = wc.getFontCache();
 
-        CellStyle cs = cell.getCellStyle();
         Font f = workbook.getFontAt(cs.getFontIndex());
 
-        logger.debug("eAAS: cell at ({}, {})", cell.getRowIndex(), cell.getColumnIndex());
-
         HorizontalAlignment alignment = (myStyle.getAlignment() != null) ? myStyle.getAlignment() : cs.getAlignment();
         BorderStyle borderBottom = (myStyle.getBorderBottomType() != null) ? myStyle.getBorderBottomType() : cs.getBorderBottom();        
         BorderStyle borderLeft = (myStyle.getBorderLeftType() != null) ? myStyle.getBorderLeftType() : cs.getBorderLeft();
@@ -337,16 +376,6 @@ public class StyleTag extends BaseTag
             }
         }
 
-        // Process row height/column width separately.
-        if (myStyle.getRowHeight() != null)
-        {
-            cell.getRow().setHeight(myStyle.getRowHeight());
-        }
-        if (myStyle.getColumnWidth() != null)
-        {
-            cell.getSheet().setColumnWidth(cell.getColumnIndex(), myStyle.getColumnWidth());
-        }
-
         // At this point, we have all of the desired CellStyle and Font
         // characteristics.  Find a CellStyle if it exists.
         CellStyle foundStyle = csCache.retrieveCellStyle(fontBoldweight, fontItalic, fontColor, fontName,
@@ -378,6 +407,7 @@ public class StyleTag extends BaseTag
             }
 
             // Create the new CellStyle.
+            csCache.ensureRoomForCellStyle();
             //start = System.nanoTime();
             foundStyle = SheetUtil.createCellStyle(workbook, alignment, borderBottom, borderLeft,
                     borderRight, borderTop, dataFormat, wrapText, fillBackgroundColor, fillForegroundColor,
@@ -391,6 +421,6 @@ public class StyleTag extends BaseTag
             logger.trace("  Created new style.");
         }
 
-        cell.setCellStyle(foundStyle);
+        return foundStyle;
     }
 }
\ No newline at end of file
@@ -9,6 +9,8 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 
 import net.sf.jett.model.Block;
+import net.sf.jett.model.MergedRegions;
+import net.sf.jett.model.ProcessedCells;
 
 /**
  * A <code>TagContext</code> object represents the context associated with a
@@ -21,9 +23,9 @@ public class TagContext
     private Sheet mySheet;
     private Block myBlock;
     private Map<String, Object> myBeans;
-    private Map<String, Cell> myProcessedCells;
+    private ProcessedCells myProcessedCells;
     private Drawing myDrawing;
-    private List<CellRangeAddress> myMergedRegions;
+    private MergedRegions myMergedRegions;
     private List<List<CellRangeAddress>> myConditionalFormattingRegions;
     private Tag myCurrTag;
     private String myFormulaSuffix;
@@ -96,24 +98,62 @@ public class TagContext
         this.myBeans = beans;
     }
 
+    /**
+     * Returns the positions of the <code>Cells</code> that have already been
+     * processed.
+     * @return A <code>ProcessedCells</code>.
+     * @since 0.12.0
+     */
+    public ProcessedCells getProcessedCells()
+    {
+        return myProcessedCells;
+    }
+
+    /**
+     * Sets the positions of the <code>Cells</code> that have already been
+     * processed.
+     * @param processedCells A <code>ProcessedCells</code>.
+     * @since 0.12.0
+     */
+    public void setProcessedCells(ProcessedCells processedCells)
+    {
+        myProcessedCells = processedCells;
+    }
+
     /**
      * Returns the <code>Map</code> of <code>Cells</code> that have already been
      * processed.
      * @return A <code>Map</code> of <code>Cells</code>.
+     * @deprecated Use {@link #getProcessedCells()}.  The returned
+     *    <code>Map</code> is now a view of the <code>ProcessedCells</code>, on
+     *    which cells can be put, but not removed.
      */
+    @Deprecated
     public Map<String, Cell> getProcessedCellsMap()
     {
-        return myProcessedCells;
+        return (myProcessedCells != null) ? myProcessedCells.asMap(mySheet) : null;
     }
 
     /**
      * Sets the <code>Map</code> of <code>Cells</code> that have already been
      * processed.
      * @param processedCells A <code>Map</code> of <code>Cells</code>.
+     * @deprecated Use {@link #setProcessedCells(ProcessedCells)}.  The
+     *    positions of the <code>Map's</code> keys are now copied into a new
+     *    <code>ProcessedCells</code>.
      */
+    @Deprecated
     public void setProcessedCellsMap(Map<String, Cell> processedCells)
     {
-        myProcessedCells = processedCells;
+        if (processedCells != null)
+        {
+            myProcessedCells = new ProcessedCells();
+            myProcessedCells.addAll(processedCells);
+        }
+        else
+        {
+            myProcessedCells = null;
+        }
     }
 
     /**
@@ -181,29 +221,28 @@ public class TagContext
     }
 
     /**
-     * Sets the <code>List</code> of <code>CellRangeAddress</code> objects to be
-     * manipulated through this <code>TagContext</code>.  All merged region
-     * manipulation for a <code>Sheet</code> goes through this list, instead of
-     * the <code>Sheet</code> itself, for performance reasons.
-     * @param mergedRegions A <code>List</code> of
-     *    <code>CellRangeAddress</code>es.
+     * Sets the <code>MergedRegions</code> to be manipulated through this
+     * <code>TagContext</code>.  All merged region manipulation for a
+     * <code>Sheet</code> goes through this object, instead of the
+     * <code>Sheet</code> itself, for performance reasons.
+     * @param mergedRegions The <code>MergedRegions</code>.
      * @since 0.8.0
      */
-    public void setMergedRegions(List<CellRangeAddress> mergedRegions)
+    public void setMergedRegions(MergedRegions mergedRegions)
     {
         myMergedRegions = mergedRegions;
     }
 
     /**
-     * Returns the <code>List</code> of <code>CellRangeAddress</code> objects on
-     * the current <code>Sheet</code>.  For performance reasons, the
-     * <code>SheetTransformer</code> reads all merged regions into this list
-     * before transformation, all manipulations are done to this list, and after
-     * transformation, the list is re-applied to the <code>Sheet</code>.
-     * @return A <code>List</code> of <code>CellRangeAddress</code>es.
+     * Returns the <code>MergedRegions</code> on the current <code>Sheet</code>.
+     * For performance reasons, the <code>SheetTransformer</code> reads all
+     * merged regions into this object before transformation, all
+     * manipulations are done to this object, and after transformation, the
+     * regions are re-applied to the <code>Sheet</code>.
+     * @return The <code>MergedRegions</code>.
      * @since 0.8.0
      */
-    public List<CellRangeAddress> getMergedRegions()
+    public MergedRegions getMergedRegions()
     {
         return myMergedRegions;
     }
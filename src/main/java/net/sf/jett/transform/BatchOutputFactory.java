@@ -0,0 +1,30 @@
+package net.sf.jett.transform;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * <p>A <code>BatchOutputFactory</code> supplies the <code>OutputStream</code>
+ * to which each resultant spreadsheet of a batch transformation is written.
+ * It may be called on many threads at once.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ * @see ExcelTransformer#transformBatch(CompiledTemplate, java.util.Iterator, BatchOutputFactory, java.util.concurrent.Executor, int)
+ */
+public interface BatchOutputFactory
+{
+    /**
+     * Creates the <code>OutputStream</code> for the resultant spreadsheet of
+     * one item of the batch.  The <code>ExcelTransformer</code> closes it
+     * after writing the spreadsheet.
+     * @param index The 0-based index of the item in the batch.
+     * @param beans The <code>Map</code> of bean names to bean objects for the
+     *    item.
+     * @return An <code>OutputStream</code>.
+     * @throws IOException If there is a problem creating the
+     *    <code>OutputStream</code>.
+     */
+    OutputStream createOutputStream(int index, Map<String, Object> beans) throws IOException;
+}
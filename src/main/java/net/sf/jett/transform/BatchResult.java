@@ -0,0 +1,194 @@
+package net.sf.jett.transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.jett.model.CellStyleMetrics;
+
+/**
+ * <p>A <code>BatchResult</code> reports the outcome of a batch
+ * transformation: how long each item took, and whether it failed.  One
+ * item's failure doesn't abort the batch; it's recorded here instead.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ * @see ExcelTransformer#transformBatch(CompiledTemplate, java.util.Iterator, BatchOutputFactory, java.util.concurrent.Executor, int)
+ */
+public class BatchResult
+{
+    private List<Item> myItems;
+    private long myElapsedNanos;
+
+    /**
+     * Constructs a <code>BatchResult</code>.
+     * @param items The <code>Items</code>, in order of index.
+     * @param elapsedNanos The elapsed time of the whole batch, in nanoseconds.
+     */
+    BatchResult(List<Item> items, long elapsedNanos)
+    {
+        myItems = Collections.unmodifiableList(items);
+        myElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the results of all items, in order of index.
+     * @return An unmodifiable <code>List</code> of <code>Items</code>.
+     */
+    public List<Item> getItems()
+    {
+        return myItems;
+    }
+
+    /**
+     * Returns the results of the items that failed, in order of index.
+     * @return A <code>List</code> of failed <code>Items</code>, possibly
+     *    empty.
+     */
+    public List<Item> getFailures()
+    {
+        List<Item> failures = new ArrayList<>();
+        for (Item item : myItems)
+        {
+            if (!item.isSuccessful())
+                failures.add(item);
+        }
+        return failures;
+    }
+
+    /**
+     * Returns the number of items that succeeded.
+     * @return The number of items that succeeded.
+     */
+    public int getNumSucceeded()
+    {
+        return myItems.size() - getNumFailed();
+    }
+
+    /**
+     * Returns the number of items that failed.
+     * @return The number of items that failed.
+     */
+    public int getNumFailed()
+    {
+        int numFailed = 0;
+        for (Item item : myItems)
+        {
+            if (!item.isSuccessful())
+                numFailed++;
+        }
+        return numFailed;
+    }
+
+    /**
+     * Returns the elapsed time of the whole batch, in nanoseconds.
+     * @return The elapsed time, in nanoseconds.
+     */
+    public long getElapsedNanos()
+    {
+        return myElapsedNanos;
+    }
+
+    /**
+     * Returns a string summary of this result, for logging.
+     * @return A string representation.
+     */
+    @Override
+    public String toString()
+    {
+        return "BatchResult[items=" + myItems.size() + ", failed=" + getNumFailed() +
+                ", elapsedMillis=" + (myElapsedNanos / 1000000) + "]";
+    }
+
+    /**
+     * An <code>Item</code> is the result of transforming and writing one item
+     * of the batch.
+     */
+    public static class Item
+    {
+        private int myIndex;
+        private long myElapsedNanos;
+        private CellStyleMetrics myCellStyleMetrics;
+        private Throwable myFailure;
+
+        /**
+         * Constructs an <code>Item</code>.
+         * @param index The 0-based index of the item in the batch.
+         * @param elapsedNanos The time taken to transform and write the item,
+         *    in nanoseconds.
+         * @param cellStyleMetrics The cell style metrics of the item's
+         *    transformation, or <code>null</code> if it didn't complete.
+         * @param failure What caused the item to fail, or <code>null</code> if
+         *    it succeeded.
+         */
+        Item(int index, long elapsedNanos, CellStyleMetrics cellStyleMetrics, Throwable failure)
+        {
+            myIndex = index;
+            myElapsedNanos = elapsedNanos;
+            myCellStyleMetrics = cellStyleMetrics;
+            myFailure = failure;
+        }
+
+        /**
+         * Returns the 0-based index of the item in the batch, i.e. the
+         * position of its beans <code>Map</code> in the batch's input.
+         * @return The index.
+         */
+        public int getIndex()
+        {
+            return myIndex;
+        }
+
+        /**
+         * Returns the time taken to transform and write the item, in
+         * nanoseconds.
+         * @return The elapsed time, in nanoseconds.
+         */
+        public long getElapsedNanos()
+        {
+            return myElapsedNanos;
+        }
+
+        /**
+         * Returns the cell style metrics of the item's transformation, showing
+         * how close its <code>Workbook</code> came to the maximum number of
+         * cell styles.
+         * @return The <code>CellStyleMetrics</code>, or <code>null</code> if
+         *    the item's transformation didn't complete.
+         */
+        public CellStyleMetrics getCellStyleMetrics()
+        {
+            return myCellStyleMetrics;
+        }
+
+        /**
+         * Returns whether the item was transformed and written successfully.
+         * @return Whether the item succeeded.
+         */
+        public boolean isSuccessful()
+        {
+            return myFailure == null;
+        }
+
+        /**
+         * Returns what caused the item to fail.
+         * @return The <code>Throwable</code>, or <code>null</code> if the item
+         *    succeeded.
+         */
+        public Throwable getFailure()
+        {
+            return myFailure;
+        }
+
+        /**
+         * Returns a string summary of this item, for logging.
+         * @return A string representation.
+         */
+        @Override
+        public String toString()
+        {
+            return "Item[index=" + myIndex + ", elapsedMillis=" + (myElapsedNanos / 1000000) +
+                    ((myFailure != null) ? ", failure=" + myFailure : "") + "]";
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package net.sf.jett.transform;
 
-import java.util.Map;
-
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.poi.ss.usermodel.Cell;
@@ -9,9 +7,10 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 
 import net.sf.jett.model.Block;
+import net.sf.jett.model.ProcessedCells;
+import net.sf.jett.model.RowFlusher;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.tag.TagContext;
-import net.sf.jett.util.SheetUtil;
 
 /**
  * A <code>BlockTransformer</code> knows how to transform a <code>Block</code>
@@ -43,19 +42,24 @@ public class BlockTransformer
      *    and the <code>Map</code> of bean names to values.
      * @param workbookContext The <code>WorkbookContext</code>.
      * @param process Whether to process the <code>Cells</code>; regardless,
-     *    they are added to the processed cells <code>Map</code>.
+     *    they are marked as processed.
      */
     public void transform(TagContext context, WorkbookContext workbookContext, boolean process)
     {
         Sheet sheet = context.getSheet();
         Block block = context.getBlock();
-        Map<String, Cell> processedCells = context.getProcessedCellsMap();
+        ProcessedCells processedCells = context.getProcessedCells();
         CellTransformer transformer = new CellTransformer();
+        // Only the Block of the entire Sheet knows that all rows above the
+        // current row are finished.
+        RowFlusher flusher = (block.getParent() == null) ? workbookContext.getRowFlusher() : null;
 
         logger.trace("Transforming block: {}", block);
 
         for (int rowNum = block.getTopRowNum(); rowNum <= block.getBottomRowNum(); rowNum++)
         {
+            if (flusher != null)
+                flusher.flushRowsAbove(sheet, rowNum);
             Row row = sheet.getRow(rowNum);
             if (row != null)
             {
@@ -73,10 +77,9 @@ public class BlockTransformer
                             cellProcessed = transformer.transform(cell, workbookContext, context);
                         else
                         {
-                            // Don't process, but place it in the Map to mark it as
-                            // processed anyway.
+                            // Don't process, but mark it as processed anyway.
                             cellProcessed = true;
-                            processedCells.put(SheetUtil.getCellKey(cell), cell);
+                            processedCells.add(cell);
                         }
                     }
                     else
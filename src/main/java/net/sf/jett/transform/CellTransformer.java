@@ -22,6 +22,7 @@ import net.sf.jett.exception.TagParseException;
 import net.sf.jett.exception.TransformException;
 import net.sf.jett.expression.Expression;
 import net.sf.jett.model.Block;
+import net.sf.jett.model.ProcessedCells;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.parser.TagParser;
 import net.sf.jett.tag.Tag;
@@ -52,7 +53,7 @@ public class CellTransformer
      *    fixed size collection names, and the turned off implicit collection
      *    names.
      * @param cellContext The <code>TagContext</code> that provides the
-     *    <code>Map</code> of beans data,  the <code>Map</code> of processed
+     *    <code>Map</code> of beans data,  the processed
      *    <code>Cells</code>, and the parent <code>Block</code>.
      * @return <code>true</code> if this <code>Cell</code> was transformed,
      *    <code>false</code> if it needs to be transformed again.  This may
@@ -62,12 +63,14 @@ public class CellTransformer
     public boolean transform(Cell cell, WorkbookContext workbookContext, TagContext cellContext)
     {
         Map<String, Object> beans = cellContext.getBeans();
-        Map<String, Cell> processedCells = cellContext.getProcessedCellsMap();
+        ProcessedCells processedCells = cellContext.getProcessedCells();
 
         // Make sure this Cell hasn't already been processed.
-        String key = SheetUtil.getCellKey(cell);
-        if (processedCells.containsKey(key))
+        if (processedCells.contains(cell))
             return true;
+        // A looping tag may flush the row of its own Cell.
+        int rowNum = cell.getRowIndex();
+        int colNum = cell.getColumnIndex();
 
         exposeCell(beans, cell);
 
@@ -100,7 +103,7 @@ public class CellTransformer
         if (!fireBeforeCellProcessedEvent(workbookContext, cell, beans, oldValue))
         {
             // Mark as processed without actually processing it.
-            processedCells.put(key, cell);
+            processedCells.add(cell);
             return true;
         }
 
@@ -115,7 +118,7 @@ public class CellTransformer
         {
         case STRING:
             TagParser parser = new TagParser(cell);
-            parser.parse();
+            parser.parse(workbookContext.getParsedTags());
 
             if (parser.isTag() && !parser.isEndTag())
             {
@@ -170,7 +173,7 @@ public class CellTransformer
         {
             fireCellProcessedEvent(workbookContext, cell, beans, oldValue, newValue);
             // Only mark it as processed if the Cell has actually been processed.
-            processedCells.put(key, cell);
+            processedCells.add(rowNum, colNum);
         }
         return cellProcessed;
     }
@@ -242,7 +245,7 @@ public class CellTransformer
         TagLibraryRegistry registry = workbookContext.getRegistry();
         Map<String, Object> beans = cellContext.getBeans();
         Sheet sheet = cellContext.getSheet();
-        Map<String, Cell> processedCells = cellContext.getProcessedCellsMap();
+        ProcessedCells processedCells = cellContext.getProcessedCells();
         String value = cell.getStringCellValue();
         RichTextString richTextString = cell.getRichStringCellValue();
         Block newBlock;
@@ -274,7 +277,7 @@ public class CellTransformer
             context.setBeans(beans);
             context.setBlock(newBlock);
             context.setSheet(sheet);
-            context.setProcessedCellsMap(processedCells);
+            context.setProcessedCells(processedCells);
             context.setDrawing(cellContext.getDrawing());
             context.setMergedRegions(cellContext.getMergedRegions());
             context.setFormulaSuffix(cellContext.getFormulaSuffix());
@@ -282,10 +285,9 @@ public class CellTransformer
             tag = registry.createTag(parser, context, workbookContext);
             if (tag == null)
             {
-                Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
-                String cellRef = SheetUtil.getCellKey(cell);
-                String location = " at " + cellRef;
-                String origCellRef = tagLocationsMap.get(cellRef);
+                String location = " at " + SheetUtil.getCellKey(cell);
+                String origCellRef = workbookContext.getTagLocations().get(
+                        sheet.getSheetName(), cell.getRowIndex(), cell.getColumnIndex());
                 if (origCellRef != null)
                 {
                     location += " (originally located at " + origCellRef + ")";
@@ -386,7 +388,7 @@ public class CellTransformer
         if (candidate.getCellType() != CellType.STRING)
             return false;
         TagParser candidateParser = new TagParser(candidate);
-        candidateParser.parse();
+        candidateParser.parse(context.getParsedTags());
         int rightMostCol = candidate.getColumnIndex();
         int afterTagIdx = 0;
         tagLogger.debug("    iMET: afterTagIdx={}, parser's tag text is \"{}\".",
@@ -432,7 +434,7 @@ public class CellTransformer
             // Setup for next loop.  Advance past this tag.
             afterTagIdx += candidateParser.getAfterTagIdx();
             candidateParser = new TagParser(candidate, afterTagIdx);
-            candidateParser.parse();
+            candidateParser.parse(context.getParsedTags());
             tagLogger.trace("    afterTagIdx is now {}, parser's tag text is \"{}\".",
                     afterTagIdx, candidateParser.getTagText());
         }
@@ -19,6 +19,7 @@ import net.sf.jett.exception.TagParseException;
 import net.sf.jett.expression.Expression;
 import net.sf.jett.expression.ExpressionFactory;
 import net.sf.jett.model.Block;
+import net.sf.jett.model.ProcessedCells;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.parser.MetadataParser;
 import net.sf.jett.tag.BaseLoopTag;
@@ -59,7 +60,7 @@ public class CollectionsTransformer
     {
         Block parentBlock = cellContext.getBlock();
         Map<String, Object> beans = cellContext.getBeans();
-        Map<String, Cell> processedCells = cellContext.getProcessedCellsMap();
+        ProcessedCells processedCells = cellContext.getProcessedCells();
         Sheet sheet = cellContext.getSheet();
         CreationHelper helper = sheet.getWorkbook().getCreationHelper();
         ExpressionFactory factory = workbookContext.getExpressionFactory();
@@ -216,7 +217,7 @@ public class CollectionsTransformer
         context.setBeans(beans);
         context.setBlock(containingBlock);
         context.setSheet(sheet);
-        context.setProcessedCellsMap(processedCells);
+        context.setProcessedCells(processedCells);
         context.setDrawing(cellContext.getDrawing());
         context.setMergedRegions(cellContext.getMergedRegions());
         context.setFormulaSuffix(cellContext.getFormulaSuffix());
@@ -0,0 +1,321 @@
+package net.sf.jett.transform;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+import net.sf.jett.exception.TagParseException;
+import net.sf.jett.formula.Formula;
+import net.sf.jett.model.TagLocations;
+import net.sf.jett.parser.ParsedTag;
+import net.sf.jett.parser.TagParser;
+
+/**
+ * <p>A <code>CompiledTemplate</code> is a template spreadsheet that has been
+ * read and compiled once, so that it can be transformed many times.  It holds
+ * the serialized template bytes, plus everything JETT can find in the
+ * template without any beans: the parsed JETT <code>Formulas</code>, the
+ * original locations of all tags, the parse of the text of every cell as a
+ * tag, and the texts in which expressions are found.</p>
+ *
+ * <p>Each cell text is parsed as a tag once, along with the texts it leaves
+ * behind as tags are processed and removed, so that in each transformation,
+ * finding tags and matching start tags with end tags doesn't scan any text
+ * found in the template.  The texts with expressions, including tag
+ * attribute values, are split into their expressions once per
+ * <code>ExpressionFactory</code>, and are kept by it, apart from texts found
+ * only during transformation and up to its cache limit, so that they are
+ * compiled only once.  Text parsed with an error isn't kept, so that the
+ * error is reported with its location during transformation.</p>
+ *
+ * <p>A transformation still needs its own <code>Workbook</code>, created from
+ * the template bytes, because transforming a <code>Workbook</code> modifies
+ * it and POI can't copy one.  Everything else that each transformation
+ * does depends on the beans: tag attributes and implicit collections are
+ * evaluated, and tags are processed, in the transformed
+ * <code>Workbook</code>.</p>
+ *
+ * <p>A <code>CompiledTemplate</code> is immutable once constructed, so it can
+ * be shared by any number of <code>ExcelTransformers</code>, and by any number
+ * of threads, at the same time.  Pass it to
+ * {@link ExcelTransformer#transform(CompiledTemplate, Map, java.io.OutputStream)}
+ * to perform only the data-dependent work of a transformation.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class CompiledTemplate
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private final byte[] myTemplateBytes;
+    private final Map<String, Formula> myFormulaMap;
+    private final TagLocations myTagLocations;
+    private final Map<String, ParsedTag> myParsedTags;
+    private final List<String> myTemplateTexts;
+
+    /**
+     * Reads and compiles the template spreadsheet found in the given file.
+     * @param inFilename The template spreadsheet filename.
+     * @throws IOException If there is a problem reading the template
+     *    spreadsheet.
+     */
+    public CompiledTemplate(String inFilename) throws IOException
+    {
+        this(readFile(inFilename));
+    }
+
+    /**
+     * Reads and compiles the template spreadsheet read from the given
+     * <code>InputStream</code>.  The stream is read fully, but not closed.
+     * @param is The <code>InputStream</code> from the template spreadsheet.
+     * @throws IOException If there is a problem reading the template
+     *    spreadsheet.
+     */
+    public CompiledTemplate(InputStream is) throws IOException
+    {
+        this(readStream(is));
+    }
+
+    /**
+     * Compiles the template spreadsheet represented by the given
+     * <code>Workbook</code>.  The <code>Workbook</code> is serialized
+     * immediately; later changes to it do not affect this
+     * <code>CompiledTemplate</code>.
+     * @param workbook The template <code>Workbook</code>.
+     * @throws IOException If there is a problem serializing the
+     *    <code>Workbook</code>.
+     */
+    public CompiledTemplate(Workbook workbook) throws IOException
+    {
+        this(serialize(workbook));
+    }
+
+    /**
+     * Stores the template bytes and scans a <code>Workbook</code> created from
+     * them for <code>Formulas</code>, tag locations, tags, and expressions.
+     * @param templateBytes The serialized template spreadsheet.
+     * @throws IOException If there is a problem creating a
+     *    <code>Workbook</code> from the bytes.
+     */
+    private CompiledTemplate(byte[] templateBytes) throws IOException
+    {
+        myTemplateBytes = templateBytes;
+        Map<String, Formula> formulaMap = new HashMap<>();
+        TagLocations tagLocations = new TagLocations();
+        Map<String, ParsedTag> parsedTags = new HashMap<>();
+        Set<String> templateTexts = new LinkedHashSet<>();
+        SheetTransformer transformer = new SheetTransformer();
+        try (Workbook workbook = createWorkbook())
+        {
+            for (int i = 0; i < workbook.getNumberOfSheets(); i++)
+            {
+                Sheet sheet = workbook.getSheetAt(i);
+                transformer.gatherFormulasAndTagLocations(sheet, formulaMap, tagLocations);
+                for (Row row : sheet)
+                {
+                    for (Cell cell : row)
+                    {
+                        if (cell.getCellType() == CellType.STRING)
+                            parseTexts(cell, parsedTags, templateTexts);
+                    }
+                }
+            }
+        }
+        myFormulaMap = Collections.unmodifiableMap(formulaMap);
+        myTagLocations = TagLocations.unmodifiableTagLocations(tagLocations);
+        myParsedTags = Collections.unmodifiableMap(parsedTags);
+        myTemplateTexts = Collections.unmodifiableList(new ArrayList<>(templateTexts));
+        logger.debug("Compiled template: {} formulas, {} tag locations, {} parsed texts, {} template texts.",
+                myFormulaMap.size(), myTagLocations.size(), myParsedTags.size(), myTemplateTexts.size());
+    }
+
+    /**
+     * Parses the text of the given <code>Cell</code> as a tag, and the texts
+     * that transformation leaves behind in the <code>Cell</code>: the text
+     * after each tag, and the text with each tag removed.  Texts that aren't
+     * tags, and the attribute values of tags, are gathered as texts that may
+     * contain expressions.  The <code>Cell</code> is overwritten.
+     * @param cell A <code>Cell</code> of type <code>STRING</code>.
+     * @param parsedTags The <code>Map</code> of texts to
+     *    <code>ParsedTags</code> to fill.
+     * @param templateTexts The texts that may contain expressions, to fill.
+     */
+    private static void parseTexts(Cell cell, Map<String, ParsedTag> parsedTags, Set<String> templateTexts)
+    {
+        Deque<String> texts = new ArrayDeque<>();
+        texts.add(cell.getStringCellValue());
+        while (!texts.isEmpty())
+        {
+            String text = texts.remove();
+            if (parsedTags.containsKey(text))
+                continue;
+            cell.setCellValue(text);
+            TagParser parser = new TagParser(cell);
+            try
+            {
+                parser.parse();
+            }
+            catch (TagParseException e)
+            {
+                logger.debug("Not compiling text with a tag parse error: \"{}\".", text);
+                continue;
+            }
+            parsedTags.put(text, parser.getParsedTag());
+            if (parser.isTag())
+            {
+                for (RichTextString attrValue : parser.getAttributes().values())
+                {
+                    templateTexts.add(attrValue.getString());
+                }
+                texts.add(text.substring(parser.getAfterTagIdx()));
+                texts.add(text.replace(parser.getTagText(), ""));
+            }
+            else
+            {
+                templateTexts.add(text);
+            }
+        }
+    }
+
+    /**
+     * Creates a new, untransformed <code>Workbook</code> from this template.
+     * Each call returns an independent <code>Workbook</code> that may be
+     * transformed.
+     * @return A new <code>Workbook</code>.
+     * @throws IOException If there is a problem creating the
+     *    <code>Workbook</code>.
+     */
+    public Workbook createWorkbook() throws IOException
+    {
+        return WorkbookFactory.create(new ByteArrayInputStream(myTemplateBytes));
+    }
+
+    /**
+     * Returns the unmodifiable <code>Map</code> of formula keys, of the format
+     * "sheetName!formulaText", to the <code>Formulas</code> found in the
+     * template.  Callers that need to modify it must copy it.
+     * @return The unmodifiable formula map.
+     */
+    public Map<String, Formula> getFormulaMap()
+    {
+        return myFormulaMap;
+    }
+
+    /**
+     * Returns the read-only <code>TagLocations</code> of the tags found in the
+     * template, each mapped to its own cell reference, e.g. "Sheet1!B1".
+     * Callers that need to modify it must copy it with
+     * {@link TagLocations#TagLocations(TagLocations)}.
+     * @return The read-only tag locations.
+     */
+    public TagLocations getTagLocations()
+    {
+        return myTagLocations;
+    }
+
+    /**
+     * Returns the unmodifiable <code>Map</code> of cell texts found in the
+     * template, and texts left behind in those cells by processing tags, to
+     * the results of parsing them as tags.
+     * @return The unmodifiable <code>Map</code> of texts to
+     *    <code>ParsedTags</code>.
+     */
+    public Map<String, ParsedTag> getParsedTags()
+    {
+        return myParsedTags;
+    }
+
+    /**
+     * Returns the unmodifiable <code>List</code> of texts found in the
+     * template that may contain expressions: cell texts that aren't tags, and
+     * tag attribute values.
+     * @return The unmodifiable <code>List</code> of texts.
+     */
+    public List<String> getTemplateTexts()
+    {
+        return myTemplateTexts;
+    }
+
+    /**
+     * Reads all bytes from the given template spreadsheet file.
+     * @param inFilename The template spreadsheet filename.
+     * @return All bytes read.
+     * @throws IOException If there is a problem reading the file.
+     */
+    private static byte[] readFile(String inFilename) throws IOException
+    {
+        logger.info("Compiling template file \"{}\".", inFilename);
+        try (InputStream fileIn = new BufferedInputStream(new FileInputStream(inFilename)))
+        {
+            return readFully(fileIn);
+        }
+    }
+
+    /**
+     * Reads all bytes from the given template spreadsheet stream.
+     * @param is The <code>InputStream</code> from the template spreadsheet.
+     * @return All bytes read.
+     * @throws IOException If there is a problem reading the stream.
+     */
+    private static byte[] readStream(InputStream is) throws IOException
+    {
+        logger.info("Compiling a template from an InputStream.");
+        return readFully(is);
+    }
+
+    /**
+     * Serializes the given template <code>Workbook</code>.
+     * @param workbook The template <code>Workbook</code>.
+     * @return The serialized <code>Workbook</code>.
+     * @throws IOException If there is a problem serializing the
+     *    <code>Workbook</code>.
+     */
+    private static byte[] serialize(Workbook workbook) throws IOException
+    {
+        logger.info("Compiling a template from a Workbook.");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        workbook.write(baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Reads all bytes from the given <code>InputStream</code>.
+     * @param is An <code>InputStream</code>.
+     * @return All bytes read.
+     * @throws IOException If there is a problem reading the stream.
+     */
+    private static byte[] readFully(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = is.read(buf)) != -1)
+        {
+            baos.write(buf, 0, read);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -1,17 +1,24 @@
 package net.sf.jett.transform;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.commons.jexl3.introspection.JexlPermissions;
@@ -21,19 +28,20 @@ import org.apache.poi.ss.usermodel.Name;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import net.sf.jett.event.CellListener;
 import net.sf.jett.event.SheetListener;
-import net.sf.jett.expression.Expression;
 import net.sf.jett.expression.ExpressionFactory;
 import net.sf.jett.formula.CellRef;
 import net.sf.jett.formula.Formula;
 //import net.sf.jett.lwxssf.LWXSSFWorkbook;
 import net.sf.jett.model.CellStyleCache;
+import net.sf.jett.model.CellStyleMetrics;
 import net.sf.jett.model.FontCache;
-import net.sf.jett.model.Style;
+import net.sf.jett.model.StyleSheet;
+import net.sf.jett.model.TagLocations;
 import net.sf.jett.model.WorkbookContext;
-import net.sf.jett.parser.StyleParser;
 import net.sf.jett.tag.JtTagLibrary;
 import net.sf.jett.tag.TagLibrary;
 import net.sf.jett.tag.TagLibraryRegistry;
@@ -85,6 +93,22 @@ import net.sf.jett.util.FormulaUtil;
  * transformed spreadsheet, which can be written to a file if desired.</p>
  * <p>The sixth method performs the actual transformation on a
  * <code>Workbook</code>, applying specific bean values to specific sheets.</p>
+ * <p>When the same template is transformed many times, it can be read and
+ * compiled only once by creating a {@link CompiledTemplate} and passing it to
+ * <code>transform(CompiledTemplate template, Map&lt;String, Object&gt; beans,
+ * OutputStream os)</code>.  Many bean maps can be transformed from one
+ * <code>CompiledTemplate</code> in parallel with
+ * {@link #transformBatch(CompiledTemplate, Iterator, BatchOutputFactory, Executor, int)}.</p>
+ * <p>Large .xlsx spreadsheets can be written with only a window of rows per
+ * sheet serialized in memory by calling {@link #setRowAccessWindowSize(int)};
+ * the transformed spreadsheet itself is still built in memory.</p>
+ * <p>Once its settings have been configured, an <code>ExcelTransformer</code>
+ * may transform workbooks on many threads at once; all state that changes
+ * during a transformation is kept in a per-transformation
+ * {@link WorkbookContext}.  Each concurrent transformation must have its own
+ * beans <code>Map</code>, because the <code>Workbook</code> and other objects
+ * are exposed in it.  The settings methods themselves are not thread-safe;
+ * call them before transformations begin.</p>
  * <p>The <code>ExcelTransformer</code>'s settings can be changed with the
  * other public methods of this class, including recognizing custom tag
  * libraries, adding <code>CellListeners</code>, using fixed size collections,
@@ -105,10 +129,14 @@ public class ExcelTransformer
     private List<SheetListener> mySheetListeners;
     private List<String> myFixedSizeCollectionNames;
     private List<String> myNoImplicitProcessingCollectionNames;
-    private Map<String, Style> myStyleMap;
+    private StyleSheet myStyleSheet;
     private boolean amIEvaluatingFormulas;
     private boolean amIForcingRecalculationOnOpening;
     private boolean amIChangingForcingRecalculation;
+    private int myRowAccessWindowSize;
+    private boolean amITrackingTagLocations;
+    private double myCellStyleConsolidationThreshold;
+    private final ThreadLocal<CellStyleMetrics> myCellStyleMetrics;
     private ExpressionFactory myExpressionFactory;
 
     /**
@@ -122,10 +150,14 @@ public class ExcelTransformer
         mySheetListeners = new ArrayList<>();
         myFixedSizeCollectionNames = new ArrayList<>();
         myNoImplicitProcessingCollectionNames = new ArrayList<>();
-        myStyleMap = new HashMap<>();
+        myStyleSheet = StyleSheet.EMPTY;
         amIEvaluatingFormulas = false;
         amIForcingRecalculationOnOpening = false;
         amIChangingForcingRecalculation = false;
+        myRowAccessWindowSize = 0;
+        amITrackingTagLocations = true;
+        myCellStyleConsolidationThreshold = 0.75;
+        myCellStyleMetrics = new ThreadLocal<>();
         myExpressionFactory = new ExpressionFactory();
     }
 
@@ -266,9 +298,7 @@ public class ExcelTransformer
      */
     public void addCssText(String cssText)
     {
-        StyleParser parser = new StyleParser(cssText);
-        parser.parse();
-        myStyleMap.putAll(parser.getStyleMap());
+        addStyleSheet(new StyleSheet(cssText));
     }
 
     /**
@@ -277,27 +307,34 @@ public class ExcelTransformer
      * <code>[.styleName { [propertyName: value [; propertyName: value]* }]*</code>
      *
      * <p>These style names are recognized by the "class" attribute of the
-     * "style" tag.</p>
+     * "style" tag.  The file is parsed only once, until it's modified, no
+     * matter how many <code>ExcelTransformers</code> register it.</p>
      * @param filename The name of a file containing CSS-like style definitions.
      * @throws IOException If there is a problem reading the file.
      * @throws net.sf.jett.exception.StyleParseException If there is a problem
      *    parsing the style definition text.
      * @see net.sf.jett.tag.StyleTag
+     * @see StyleSheet#forFile(String)
      * @since 0.5.0
      */
     public void addCssFile(String filename) throws IOException
     {
-        StringBuilder buf = new StringBuilder();
-        String line;
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename)))
-        {
-            while ((line = reader.readLine()) != null)
-            {
-                buf.append(line);
-                buf.append("\n");
-            }
-            addCssText(buf.toString());
-        }
+        addStyleSheet(StyleSheet.forFile(filename));
+    }
+
+    /**
+     * Register an already parsed <code>StyleSheet</code>.  Its style names are
+     * recognized by the "class" attribute of the "style" tag, and they
+     * override any style names of the same name already registered.  A
+     * <code>StyleSheet</code> is immutable, so the same one may be registered
+     * with any number of <code>ExcelTransformers</code>.
+     * @param styleSheet A <code>StyleSheet</code>.
+     * @see net.sf.jett.tag.StyleTag
+     * @since 0.12.0
+     */
+    public void addStyleSheet(StyleSheet styleSheet)
+    {
+        myStyleSheet = myStyleSheet.merge(styleSheet);
     }
 
     /**
@@ -333,6 +370,93 @@ public class ExcelTransformer
         amIForcingRecalculationOnOpening = forceRecalc;
     }
 
+    /**
+     * <p>Sets the number of rows per sheet to keep in memory when writing a
+     * resultant .xlsx spreadsheet.  If this is positive, then the
+     * <code>transform</code> methods that write their result, to a file or to
+     * an <code>OutputStream</code>, write .xlsx spreadsheets through an
+     * <code>SXSSFWorkbook</code> with this row access window, flushing rows
+     * to compressed temporary files instead of serializing each sheet's XML
+     * in memory.  Shared strings, styles, merged regions, and other
+     * sheet-level settings carry over.</p>
+     * <p>Those methods also flush finished rows out of the
+     * <code>Workbook</code> during transformation: the rows above the sheet
+     * row currently being transformed, and the rows of finished iterations of
+     * vertical looping tags that span all columns of the sheet and are only
+     * enclosed by such looping tags.  So only the rows that are still being
+     * transformed, and the rows below them, are kept in memory, e.g. not much
+     * more than one iteration of a large loop.  Expressions must not look at
+     * flushed rows, e.g. through the exposed sheet.  Rows aren't flushed
+     * during transformation if any <code>CellListeners</code> or
+     * <code>SheetListeners</code> have been registered or formulas are to be
+     * evaluated, nor within looping tags that group rows or have a
+     * <code>TagListener</code>, because those look at finished rows.  Rows
+     * of a sheet with array formulas or cell comments are kept in
+     * memory.</p>
+     * <p>Default is <code>0</code>, which writes the <code>Workbook</code>
+     * directly and keeps all rows.</p>
+     * @param size The number of rows to keep in memory per sheet while
+     *    writing, or <code>0</code> not to stream.
+     * @throws IllegalArgumentException If the size is negative.
+     * @since 0.12.0
+     */
+    public void setRowAccessWindowSize(int size)
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("Row access window size must not be negative: " + size);
+        myRowAccessWindowSize = size;
+    }
+
+    /**
+     * Sets whether to keep track of where each tag from the template ends up
+     * as cells are shifted and copied during transformation.  This is only
+     * used to report the original location of a tag in exception messages;
+     * turning it off saves the bookkeeping on every shift and copy, at the
+     * expense of less helpful messages.  Default is <code>true</code>.
+     * @param track Whether to track tag locations.
+     * @since 0.12.0
+     */
+    public void setTrackTagLocations(boolean track)
+    {
+        amITrackingTagLocations = track;
+    }
+
+    /**
+     * Sets the fraction of the maximum number of cell styles, about 4,000 for
+     * .xls and 64,000 for .xlsx, at or above which the cell styles of the
+     * resultant <code>Workbook</code> are consolidated after transformation.
+     * Consolidation remaps cells to canonical equivalent cell styles, and for
+     * .xls, drops unused cell styles.  <code>0</code> always consolidates, and
+     * a value greater than <code>1</code> never consolidates.  Default is
+     * <code>0.75</code>.
+     * @param threshold The fraction of the maximum number of cell styles.
+     * @throws IllegalArgumentException If the threshold is negative.
+     * @since 0.12.0
+     * @see CellStyleCache#consolidate()
+     */
+    public void setCellStyleConsolidationThreshold(double threshold)
+    {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Cell style consolidation threshold must not be negative: " + threshold);
+        myCellStyleConsolidationThreshold = threshold;
+    }
+
+    /**
+     * Returns the cell style metrics of the most recently completed
+     * transformation on the calling thread, showing how close its
+     * <code>Workbook</code> came to the maximum number of cell styles.
+     * Transformations running concurrently on other threads don't affect the
+     * result.  The metrics of each item of a batch transformation are
+     * available from its {@link BatchResult.Item}.
+     * @return The <code>CellStyleMetrics</code>, or <code>null</code> if no
+     *    transformation has completed on the calling thread yet.
+     * @since 0.12.0
+     */
+    public CellStyleMetrics getCellStyleMetrics()
+    {
+        return myCellStyleMetrics.get();
+    }
+
     /**
      * Transforms the template Excel spreadsheet represented by the given input
      * filename.  Applies the given <code>Map</code> of beans to all sheets.
@@ -353,8 +477,11 @@ public class ExcelTransformer
         try (FileOutputStream fileOut = new FileOutputStream(outFilename))
         {
             Workbook workbook = WorkbookFactory.create(new File(inFilename));
-            transform(workbook, beans);
-            workbook.write(fileOut);
+            try (StreamingWorkbookWriter writer = createStreamingWorkbookWriter(workbook))
+            {
+                transform(workbook, beans, writer);
+                write(workbook, writer, fileOut);
+            }
         }
         logger.info("Done transforming file \"{}\" into file \"{}\".", inFilename, outFilename);
     }
@@ -391,14 +518,305 @@ public class ExcelTransformer
      * @since 0.6.0
      */
     public void transform(Workbook workbook, Map<String, Object> beans)
+    {
+        transform(workbook, beans, null);
+    }
+
+    /**
+     * Transforms the template Excel spreadsheet represented by the given
+     * <code>Workbook</code>.  Applies the given <code>Map</code> of beans
+     * to all sheets.
+     * @param workbook A <code>Workbook</code> object.  Transformation is
+     *    performed directly on this object.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @param writer The <code>StreamingWorkbookWriter</code> that will write
+     *    the <code>Workbook</code>, or <code>null</code> if none.
+     * @since 0.12.0
+     */
+    private void transform(Workbook workbook, Map<String, Object> beans, StreamingWorkbookWriter writer)
     {
         logger.info("Transforming a Workbook.");
-        // This is done for performance reasons, related to identifying
-        // collection names in expression text, which may vary from beans
-        // map to beans map.
-        Expression.clearExpressionToCollNamesMap();
         SheetTransformer sheetTransformer = new SheetTransformer();
         WorkbookContext context = createContext(workbook, sheetTransformer);
+        attachRowFlusher(writer, context);
+        transform(workbook, context, sheetTransformer, beans);
+        logger.info("Done transforming a Workbook.");
+    }
+
+    /**
+     * Transforms a new <code>Workbook</code> created from the given
+     * <code>CompiledTemplate</code>.  Applies the given <code>Map</code> of
+     * beans to all sheets.  The template is not scanned again; the
+     * <code>Formulas</code>, tag locations, parsed tags, and expressions found
+     * when it was compiled are reused.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @return A new <code>Workbook</code> object capable of being written to an
+     *    <code>OutputStream</code>.
+     * @throws IOException If there is a problem creating the
+     *    <code>Workbook</code> from the template.
+     * @since 0.12.0
+     */
+    public Workbook transform(CompiledTemplate template, Map<String, Object> beans)
+            throws IOException
+    {
+        Workbook workbook = template.createWorkbook();
+        transform(template, workbook, beans, null);
+        return workbook;
+    }
+
+    /**
+     * Transforms a new <code>Workbook</code> created from the given
+     * <code>CompiledTemplate</code>, applying the given <code>Map</code> of
+     * beans to all sheets, and writes the resultant spreadsheet to the given
+     * <code>OutputStream</code>.  The stream is not closed.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @param os The <code>OutputStream</code> to which to write the resultant
+     *    spreadsheet.
+     * @throws IOException If there is a problem creating the
+     *    <code>Workbook</code> or writing it.
+     * @since 0.12.0
+     */
+    public void transform(CompiledTemplate template, Map<String, Object> beans, OutputStream os)
+            throws IOException
+    {
+        try (Workbook workbook = template.createWorkbook();
+             StreamingWorkbookWriter writer = createStreamingWorkbookWriter(workbook))
+        {
+            transform(template, workbook, beans, writer);
+            write(workbook, writer, os);
+        }
+    }
+
+    /**
+     * Transforms a <code>Workbook</code> created from the given
+     * <code>CompiledTemplate</code>.  Applies the given <code>Map</code> of
+     * beans to all sheets.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param workbook The <code>Workbook</code> created from the template.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @param writer The <code>StreamingWorkbookWriter</code> that will write
+     *    the <code>Workbook</code>, or <code>null</code> if none.
+     * @since 0.12.0
+     */
+    private void transform(CompiledTemplate template, Workbook workbook, Map<String, Object> beans,
+                           StreamingWorkbookWriter writer)
+    {
+        logger.info("Transforming a CompiledTemplate.");
+        SheetTransformer sheetTransformer = new SheetTransformer();
+        WorkbookContext context = createContext(workbook, new ArrayList<String>(), new ArrayList<String>(),
+                new ArrayList<Map<String, Object>>(), new HashMap<>(template.getFormulaMap()),
+                amITrackingTagLocations ? new TagLocations(template.getTagLocations()) : new TagLocations(false));
+        context.setParsedTags(template.getParsedTags());
+        myExpressionFactory.addTemplateTexts(template.getTemplateTexts());
+        attachRowFlusher(writer, context);
+        transform(workbook, context, sheetTransformer, beans);
+        logger.info("Done transforming a CompiledTemplate.");
+    }
+
+    /**
+     * <p>Transforms the given <code>CompiledTemplate</code> once for each beans
+     * <code>Map</code> supplied by the given <code>Iterator</code>, writing
+     * each resultant spreadsheet to an <code>OutputStream</code> from the
+     * given <code>BatchOutputFactory</code>.  Items are transformed on the
+     * given <code>Executor</code>, each into its own <code>Workbook</code>,
+     * while sharing the parsed template and this
+     * <code>ExcelTransformer</code>'s settings and JEXL engine.  Any
+     * <code>Executor</code> may be used, e.g. a thread pool, or on Java 21 and
+     * later, one that starts a virtual thread per task.</p>
+     * <p>At most <code>maxInFlight</code> items are in progress at once; the
+     * <code>Iterator</code> isn't advanced while that many items are in
+     * progress, which bounds the memory used by <code>Workbooks</code> and
+     * beans at any one time.  This method returns after all items have
+     * finished.  An item that fails doesn't abort the batch; its failure is
+     * recorded in the returned <code>BatchResult</code>, along with each
+     * item's timing.  If the <code>Iterator</code> itself throws an exception,
+     * then no more items are started, and the exception is thrown once the
+     * items in progress have finished.</p>
+     * @param template The <code>CompiledTemplate</code>.
+     * @param beansIterator An <code>Iterator</code> over the beans
+     *    <code>Maps</code>, one per item.  Each item must have its own
+     *    <code>Map</code>.  It's only called on the calling thread.
+     * @param outputFactory A <code>BatchOutputFactory</code> that supplies the
+     *    <code>OutputStream</code> for each item, which is closed after
+     *    writing.
+     * @param executor The <code>Executor</code> on which to transform items.
+     * @param maxInFlight The maximum number of items in progress at once.
+     * @return A <code>BatchResult</code> with the result of each item.
+     * @throws IllegalArgumentException If <code>maxInFlight</code> is less
+     *    than 1.
+     * @since 0.12.0
+     */
+    public BatchResult transformBatch(final CompiledTemplate template, Iterator<Map<String, Object>> beansIterator,
+                                      final BatchOutputFactory outputFactory, Executor executor, int maxInFlight)
+    {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("Maximum number of items in flight must be at least 1: " + maxInFlight);
+        logger.info("Transforming a batch of a CompiledTemplate.");
+        long start = System.nanoTime();
+        final List<BatchResult.Item> items = Collections.synchronizedList(new ArrayList<BatchResult.Item>());
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        int index = 0;
+        try
+        {
+            for (;;)
+            {
+                // Don't advance the Iterator until an item can start.
+                inFlight.acquireUninterruptibly();
+                boolean started = false;
+                try
+                {
+                    if (!beansIterator.hasNext())
+                        break;
+                    final Map<String, Object> beans = beansIterator.next();
+                    final int itemIndex = index++;
+                    try
+                    {
+                        executor.execute(() -> transformBatchItem(template, itemIndex, beans, outputFactory, items, inFlight));
+                        started = true;
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        logger.error("Batch item {} rejected by the executor.", itemIndex, e);
+                        items.add(new BatchResult.Item(itemIndex, 0, null, e));
+                    }
+                }
+                finally
+                {
+                    if (!started)
+                        inFlight.release();
+                }
+            }
+        }
+        finally
+        {
+            // Wait for all items in flight to finish.
+            inFlight.acquireUninterruptibly(maxInFlight);
+        }
+
+        List<BatchResult.Item> sorted = new ArrayList<>(items);
+        sorted.sort((item1, item2) -> Integer.compare(item1.getIndex(), item2.getIndex()));
+        BatchResult result = new BatchResult(sorted, System.nanoTime() - start);
+        logger.info("Done transforming a batch of a CompiledTemplate: {}", result);
+        return result;
+    }
+
+    /**
+     * Transforms the given <code>CompiledTemplate</code> once for each beans
+     * <code>Map</code> in the given <code>Stream</code>, as
+     * {@link #transformBatch(CompiledTemplate, Iterator, BatchOutputFactory, Executor, int)}
+     * does.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param beansStream A <code>Stream</code> of beans <code>Maps</code>, one
+     *    per item.  It's closed when this method returns.
+     * @param outputFactory A <code>BatchOutputFactory</code> that supplies the
+     *    <code>OutputStream</code> for each item, which is closed after
+     *    writing.
+     * @param executor The <code>Executor</code> on which to transform items.
+     * @param maxInFlight The maximum number of items in progress at once.
+     * @return A <code>BatchResult</code> with the result of each item.
+     * @throws IllegalArgumentException If <code>maxInFlight</code> is less
+     *    than 1.
+     * @since 0.12.0
+     */
+    public BatchResult transformBatch(CompiledTemplate template, Stream<Map<String, Object>> beansStream,
+                                      BatchOutputFactory outputFactory, Executor executor, int maxInFlight)
+    {
+        try (Stream<Map<String, Object>> stream = beansStream)
+        {
+            return transformBatch(template, stream.iterator(), outputFactory, executor, maxInFlight);
+        }
+    }
+
+    /**
+     * Transforms the given <code>CompiledTemplate</code> once for each beans
+     * <code>Map</code> supplied by the given <code>Iterator</code>, as
+     * {@link #transformBatch(CompiledTemplate, Iterator, BatchOutputFactory, Executor, int)}
+     * does, on a pool of the given number of threads that is shut down
+     * afterwards, with one item in flight per thread.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param beansIterator An <code>Iterator</code> over the beans
+     *    <code>Maps</code>, one per item.
+     * @param outputFactory A <code>BatchOutputFactory</code> that supplies the
+     *    <code>OutputStream</code> for each item, which is closed after
+     *    writing.
+     * @param numThreads The number of threads.
+     * @return A <code>BatchResult</code> with the result of each item.
+     * @throws IllegalArgumentException If <code>numThreads</code> is less
+     *    than 1.
+     * @since 0.12.0
+     */
+    public BatchResult transformBatch(CompiledTemplate template, Iterator<Map<String, Object>> beansIterator,
+                                      BatchOutputFactory outputFactory, int numThreads)
+    {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            return transformBatch(template, beansIterator, outputFactory, executor, numThreads);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Transforms and writes one item of a batch, recording its result and
+     * releasing its in-flight permit, whether it succeeds or fails.
+     * @param template The <code>CompiledTemplate</code>.
+     * @param index The 0-based index of the item.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @param outputFactory The <code>BatchOutputFactory</code>.
+     * @param items The synchronized <code>List</code> of item results.
+     * @param inFlight The <code>Semaphore</code> bounding the items in flight.
+     * @since 0.12.0
+     */
+    private void transformBatchItem(CompiledTemplate template, int index, Map<String, Object> beans,
+                                    BatchOutputFactory outputFactory, List<BatchResult.Item> items, Semaphore inFlight)
+    {
+        long start = System.nanoTime();
+        CellStyleMetrics metrics = null;
+        Throwable failure = null;
+        try (OutputStream os = outputFactory.createOutputStream(index, beans))
+        {
+            // Don't report another item's metrics if this one fails.
+            myCellStyleMetrics.remove();
+            transform(template, beans, os);
+            metrics = myCellStyleMetrics.get();
+        }
+        catch (Exception e)
+        {
+            logger.error("Batch item {} failed.", index, e);
+            failure = e;
+        }
+        catch (Error e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            items.add(new BatchResult.Item(index, System.nanoTime() - start, metrics, failure));
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Transforms all sheets of the given <code>Workbook</code>, whose
+     * <code>WorkbookContext</code> has already been created, and performs
+     * post-transformation processing.
+     * @param workbook The <code>Workbook</code>.
+     * @param context The <code>WorkbookContext</code>.
+     * @param sheetTransformer The <code>SheetTransformer</code>.
+     * @param beans The <code>Map</code> of bean names to bean objects.
+     * @since 0.12.0
+     */
+    private void transform(Workbook workbook, WorkbookContext context, SheetTransformer sheetTransformer,
+                           Map<String, Object> beans)
+    {
         exposeWorkbook(beans, workbook);
         for (int s = 0; s < workbook.getNumberOfSheets(); s++)
         {
@@ -406,7 +824,6 @@ public class ExcelTransformer
             sheetTransformer.transform(sheet, context, beans);
         }
         postTransformation(workbook, context, sheetTransformer);
-        logger.info("Done transforming a Workbook.");
     }
 
     /**
@@ -439,8 +856,12 @@ public class ExcelTransformer
         try (FileOutputStream fileOut = new FileOutputStream(outFilename);
              InputStream fileIn = new BufferedInputStream(new FileInputStream(inFilename)))
         {
-            Workbook workbook = transform(fileIn, templateSheetNamesList, newSheetNamesList, beansList);
-            workbook.write(fileOut);
+            Workbook workbook = WorkbookFactory.create(fileIn);
+            try (StreamingWorkbookWriter writer = createStreamingWorkbookWriter(workbook))
+            {
+                transform(workbook, templateSheetNamesList, newSheetNamesList, beansList, writer);
+                write(workbook, writer, fileOut);
+            }
         }
         logger.info("Done transforming file \"{}\" into file \"{}\" with Sheet Specific Beans.", inFilename, outFilename);
     }
@@ -497,6 +918,29 @@ public class ExcelTransformer
      */
     public void transform(Workbook workbook, List<String> templateSheetNamesList,
                           List<String> newSheetNamesList, List<Map<String, Object>> beansList)
+    {
+        transform(workbook, templateSheetNamesList, newSheetNamesList, beansList, null);
+    }
+
+    /**
+     * Transforms the template Excel spreadsheet represented by the given
+     * <code>Workbook</code>, with sheet specific beans, as in
+     * {@link #transform(Workbook, List, List, List)}.
+     * @param workbook A <code>Workbook</code> object.  Transformation is
+     *    performed directly on this object.
+     * @param templateSheetNamesList A <code>List</code> of template sheet
+     *    names, with duplicates indicating to clone sheets.
+     * @param newSheetNamesList A <code>List</code> of resulting sheet names
+     *    corresponding to the template sheet names list.
+     * @param beansList A <code>List</code> of <code>Maps</code> representing
+     *    the beans map exposed to each resulting sheet.
+     * @param writer The <code>StreamingWorkbookWriter</code> that will write
+     *    the <code>Workbook</code>, or <code>null</code> if none.
+     * @since 0.12.0
+     */
+    private void transform(Workbook workbook, List<String> templateSheetNamesList,
+                           List<String> newSheetNamesList, List<Map<String, Object>> beansList,
+                           StreamingWorkbookWriter writer)
     {
         logger.info("Transforming a Workbook with Sheet Specific Beans.");
         logger.debug("templateSheetNamesList.size()={}", templateSheetNamesList.size());
@@ -507,6 +951,7 @@ public class ExcelTransformer
 
         SheetTransformer sheetTransformer = new SheetTransformer();
         WorkbookContext context = createContext(workbook, sheetTransformer, templateSheetNamesList, newSheetNamesList, beansList);
+        attachRowFlusher(writer, context);
         FormulaUtil.updateSheetNameRefsAfterClone(context);
         logger.debug("number of Sheets={}", workbook.getNumberOfSheets());
 
@@ -523,10 +968,9 @@ public class ExcelTransformer
                 Map<String, Object> beans = beansList.get(i);
                 exposeWorkbook(beans, workbook);
                 Sheet sheet = workbook.getSheetAt(i);
-                // This is done for performance reasons, related to identifying
-                // collection names in expression text, which may vary from beans
-                // map to beans map.
-                Expression.clearExpressionToCollNamesMap();
+                // Collection names identified in expression text may vary from
+                // beans map to beans map.
+                context.getExpressionToCollNamesMap().clear();
                 sheetTransformer.transform(sheet, context, beans, cloner);
             }
             numItemsProcessed++;
@@ -535,11 +979,65 @@ public class ExcelTransformer
         logger.info("Done transforming a Workbook with Sheet Specific Beans.");
     }
 
+    /**
+     * Creates the <code>StreamingWorkbookWriter</code> for the given
+     * <code>Workbook</code>, if it's an .xlsx spreadsheet and a row access
+     * window size has been set.
+     * @param workbook The <code>Workbook</code> to transform and write.
+     * @return The <code>StreamingWorkbookWriter</code>, or <code>null</code>
+     *    if the <code>Workbook</code> is to be written directly.
+     * @since 0.12.0
+     */
+    private StreamingWorkbookWriter createStreamingWorkbookWriter(Workbook workbook)
+    {
+        if (myRowAccessWindowSize > 0 && workbook instanceof XSSFWorkbook)
+            return new StreamingWorkbookWriter((XSSFWorkbook) workbook, myRowAccessWindowSize);
+        return null;
+    }
+
+    /**
+     * Lets the given <code>StreamingWorkbookWriter</code>, if any, flush
+     * finished rows during transformation.  Rows aren't flushed if any
+     * <code>CellListeners</code> or <code>SheetListeners</code> have been
+     * registered, or if formulas are to be evaluated, because they look at
+     * finished rows.
+     * @param writer The <code>StreamingWorkbookWriter</code>, or
+     *    <code>null</code> if none.
+     * @param context The <code>WorkbookContext</code>.
+     * @since 0.12.0
+     */
+    private void attachRowFlusher(StreamingWorkbookWriter writer, WorkbookContext context)
+    {
+        if (writer != null && myCellListeners.isEmpty() && mySheetListeners.isEmpty() && !amIEvaluatingFormulas)
+            writer.attach(context);
+    }
+
+    /**
+     * Writes the resultant <code>Workbook</code> to the given
+     * <code>OutputStream</code>, through the given
+     * <code>StreamingWorkbookWriter</code>, if any.
+     * @param workbook The transformed <code>Workbook</code>.
+     * @param writer The <code>StreamingWorkbookWriter</code>, or
+     *    <code>null</code> to write the <code>Workbook</code> directly.
+     * @param os The <code>OutputStream</code>.
+     * @throws IOException If there is a problem writing the
+     *    <code>Workbook</code>.
+     * @since 0.12.0
+     */
+    private void write(Workbook workbook, StreamingWorkbookWriter writer, OutputStream os) throws IOException
+    {
+        if (writer != null)
+            writer.write(os);
+        else
+            workbook.write(os);
+    }
+
     /**
      * Perform post-transformation processing.  This currently includes
      * replacing all JETT formulas with Excel formulas, recalculating all
      * formulas, and/or marking the workbook to be recalculated when Excel opens
-     * it.
+     * it, and consolidating cell styles if the workbook is close to the
+     * maximum number of cell styles.
      * @param workbook The <code>Workbook</code>.
      * @param context The <code>WorkbookContext</code>.
      * @param sheetTransformer The <code>SheetTransformer</code> used to
@@ -560,6 +1058,14 @@ public class ExcelTransformer
         {
             workbook.setForceFormulaRecalculation(amIForcingRecalculationOnOpening);
         }
+        CellStyleCache csCache = context.getCellStyleCache();
+        if (csCache.getUsage() >= myCellStyleConsolidationThreshold)
+        {
+            csCache.consolidate();
+        }
+        CellStyleMetrics metrics = csCache.getMetrics();
+        logger.debug("Cell Style Metrics: {}", metrics);
+        myCellStyleMetrics.set(metrics);
     }
 
     /**
@@ -588,6 +1094,32 @@ public class ExcelTransformer
      */
     public WorkbookContext createContext(Workbook workbook, SheetTransformer transformer,
                                          List<String> templateSheetNames, List<String> sheetNames, List<Map<String, Object>> beansMaps)
+    {
+        Map<String, Formula> formulaMap = new HashMap<>();
+        TagLocations tagLocations = new TagLocations(amITrackingTagLocations);
+        createFormulaAndCellMaps(workbook, transformer, formulaMap, tagLocations);
+        return createContext(workbook, templateSheetNames, sheetNames, beansMaps, formulaMap, tagLocations);
+    }
+
+    /**
+     * Creates a <code>WorkbookContext</code> for a <code>Workbook</code>, using
+     * an already gathered formula map and tag locations.
+     * @param workbook The <code>Workbook</code>.
+     * @param templateSheetNames A <code>List</code> of template sheet names,
+     *    from the <code>transform</code> method.
+     * @param sheetNames A <code>List</code> of sheet names, from the
+     *    <code>transform</code> method.
+     * @param beansMaps A <code>List</code> of beans maps, from the
+     *    <code>transform</code> method.
+     * @param formulaMap The modifiable <code>Map</code> of formula keys to
+     *    <code>Formulas</code>.
+     * @param tagLocations The modifiable <code>TagLocations</code> of tags.
+     * @return A <code>WorkbookContext</code>.
+     * @since 0.12.0
+     */
+    private WorkbookContext createContext(Workbook workbook, List<String> templateSheetNames, List<String> sheetNames,
+                                          List<Map<String, Object>> beansMaps, Map<String, Formula> formulaMap,
+                                          TagLocations tagLocations)
     {
         WorkbookContext context = new WorkbookContext();
         context.setCellListeners(myCellListeners);
@@ -595,18 +1127,15 @@ public class ExcelTransformer
         context.setRegistry(myRegistry);
         context.setFixedSizeCollectionNames(myFixedSizeCollectionNames);
         context.setNoImplicitCollectionProcessingNames(myNoImplicitProcessingCollectionNames);
-        Map<String, Formula> formulaMap = new HashMap<>();
-        Map<String, String> tagLocationsMap = new HashMap<>();
-        createFormulaAndCellMaps(workbook, transformer, formulaMap, tagLocationsMap);
         context.setFormulaMap(formulaMap);
-        context.setTagLocationsMap(tagLocationsMap);
+        context.setTagLocations(tagLocations);
         Map<String, List<CellRef>> cellRefMap = FormulaUtil.createCellRefMap(formulaMap);
         context.setCellRefMap(cellRefMap);
         CellStyleCache csCache = new CellStyleCache(workbook);
         context.setCellStyleCache(csCache);
         FontCache fCache = new FontCache(workbook);
         context.setFontCache(fCache);
-        context.setStyleMap(myStyleMap);
+        context.setStyleSheet(myStyleSheet);
         context.setTemplateSheetNames(templateSheetNames);
         context.setSheetNames(sheetNames);
         context.setExpressionFactory(myExpressionFactory);
@@ -620,14 +1149,7 @@ public class ExcelTransformer
                 logger.debug("  {} => {}", key, formulaMap.get(key));
             }
         }
-        logger.debug("Tag Locations Map:");
-        if (logger.isDebugEnabled())
-        {
-            for (String cellRef : tagLocationsMap.keySet())
-            {
-                logger.debug("  {} => {}", cellRef, tagLocationsMap.get(cellRef));
-            }
-        }
+        logger.debug("Tag Locations: {}", tagLocations);
         logger.debug("Cell Ref Map:");
         if (logger.isDebugEnabled())
         {
@@ -651,26 +1173,24 @@ public class ExcelTransformer
 
     /**
      * Searches for <code>Formulas</code> in the given <code>Workbook</code>.
-     * Also creates a <code>Map</code> of current cell references to original
-     * cell references, which is used when creating cell-specific exception
-     * messages.
+     * Also records the locations of tags, which are used when creating
+     * cell-specific exception messages.
      * @param workbook The <code>Workbook</code> in which to search.
      * @param transformer A <code>SheetTransformer</code> that searches
      *    individual <code>Sheets</code> within <code>workbook</code>.
      * @param formulaMap Stores map entries of strings to <code>Formulas</code>
      *    in this <code>Map</code>.  The keys are strings of the format
      *    "sheetName!formulaText".
-     * @param tagLocationsMap Stores map entries of current cell reference
-     *    strings to original cell reference strings, e.g. "Sheet1!B1" =>
-     *    "Sheet1!B1".
+     * @param tagLocations Stores the locations of tags, each mapped to its
+     *    own cell reference string, e.g. "Sheet1!B1".
      */
     private void createFormulaAndCellMaps(Workbook workbook, SheetTransformer transformer,
-                                          Map<String, Formula> formulaMap, Map<String, String> tagLocationsMap)
+                                          Map<String, Formula> formulaMap, TagLocations tagLocations)
     {
         for (int i = 0; i < workbook.getNumberOfSheets(); i++)
         {
             Sheet sheet = workbook.getSheetAt(i);
-            transformer.gatherFormulasAndTagLocations(sheet, formulaMap, tagLocationsMap);
+            transformer.gatherFormulasAndTagLocations(sheet, formulaMap, tagLocations);
         }
     }
 
@@ -686,6 +1206,7 @@ public class ExcelTransformer
         Map<String, Formula> formulaMap = context.getFormulaMap();
         Map<String, List<CellRef>> cellRefMap = context.getCellRefMap();
         FormulaUtil.findAndReplaceCellRanges(cellRefMap);
+        context.clearCellRefIndex();
 
         logger.debug("Formula Map after transformation:");
         if (logger.isDebugEnabled())
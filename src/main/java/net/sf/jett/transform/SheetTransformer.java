@@ -1,7 +1,6 @@
 package net.sf.jett.transform;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +25,9 @@ import net.sf.jett.expression.Expression;
 import net.sf.jett.expression.ExpressionFactory;
 import net.sf.jett.formula.Formula;
 import net.sf.jett.model.Block;
+import net.sf.jett.model.MergedRegions;
+import net.sf.jett.model.ProcessedCells;
+import net.sf.jett.model.TagLocations;
 import net.sf.jett.model.WorkbookContext;
 import net.sf.jett.parser.FormulaParser;
 import net.sf.jett.parser.TagParser;
@@ -140,8 +142,8 @@ public class SheetTransformer
         tagContext.setSheet(sheet);
         tagContext.setBlock(block);
         tagContext.setBeans(beans);
-        tagContext.setProcessedCellsMap(new HashMap<String, Cell>());
-        List<CellRangeAddress> mergedRegions = new ArrayList<>();
+        tagContext.setProcessedCells(new ProcessedCells());
+        MergedRegions mergedRegions = new MergedRegions();
         tagContext.setMergedRegions(mergedRegions);
         readMergedRegions(sheet, mergedRegions);
         List<List<CellRangeAddress>> conditionalFormattingRegions = new ArrayList<>();
@@ -250,9 +252,34 @@ public class SheetTransformer
      *    with the keys of the format "sheetName!formulaText".
      * @param tagLocationsMap A <code>Map</code> of cell reference strings to
      *    original cell reference strings.
+     * @deprecated Use
+     *    {@link #gatherFormulasAndTagLocations(Sheet, Map, TagLocations)}.
      */
+    @Deprecated
     public void gatherFormulasAndTagLocations(Sheet sheet, Map<String, Formula> formulaMap,
                                               Map<String, String> tagLocationsMap)
+    {
+        TagLocations tagLocations = new TagLocations();
+        gatherFormulasAndTagLocations(sheet, formulaMap, tagLocations);
+        tagLocationsMap.putAll(tagLocations.toMap());
+    }
+
+    /**
+     * Searches for all <code>Formulas</code> contained on the given
+     * <code>Sheet</code>.  Adds them to the given formula map.  Searches for
+     * tags on the given <code>Sheet</code>.  Adds them to the given tag
+     * locations, if tag locations are tracked.
+     *
+     * @param sheet The <code>Sheet</code> on which to search for
+     *    <code>Formulas</code>.
+     * @param formulaMap A <code>Map</code> of strings to <code>Formulas</code>,
+     *    with the keys of the format "sheetName!formulaText".
+     * @param tagLocations The <code>TagLocations</code> that map tag locations
+     *    to original cell reference strings.
+     * @since 0.12.0
+     */
+    public void gatherFormulasAndTagLocations(Sheet sheet, Map<String, Formula> formulaMap,
+                                              TagLocations tagLocations)
     {
         int top = sheet.getFirstRowNum();
         int bottom = sheet.getLastRowNum();
@@ -306,13 +333,13 @@ public class SheetTransformer
                                 // THIS MATCHES WHAT TagParser LOOKS FOR TO DETERMINE IF
                                 // IT'S THE START OF A TAG.
                                 // Also, don't count "/", because that is an end tag.
-                                if (!Character.isWhitespace(next) &&
+                                if (tagLocations.isEnabled() && !Character.isWhitespace(next) &&
                                         "=<>\"/".indexOf(next) == -1)
                                 {
                                     String cellRef = new CellReference(sheet.getSheetName(),
                                             cell.getRowIndex(), cell.getColumnIndex(), false, false).formatAsString();
                                     logger.debug("gF: Tag text found: {} for {}", cellText, cellRef);
-                                    tagLocationsMap.put(cellRef, cellRef);
+                                    tagLocations.put(sheetName, cell.getRowIndex(), cell.getColumnIndex(), cellRef);
                                 }
                             }
                         }  // End if cell text isn't null
@@ -334,7 +361,6 @@ public class SheetTransformer
         int bottom = sheet.getLastRowNum();
         int left, right;
         String sheetName = sheet.getSheetName();
-        Map<String, Formula> formulaMap = context.getFormulaMap();
         logger.debug("rF: Rows from {} to {}", top, bottom);
 
         for (int rowNum = top; rowNum <= bottom; rowNum++)
@@ -351,23 +377,12 @@ public class SheetTransformer
                     if (cell != null && cell.getCellType() == CellType.STRING)
                     {
                         String cellText = cell.getStringCellValue();
-                        if (cellText != null && cellText.startsWith(Formula.BEGIN_FORMULA) &&
-                                cellText.endsWith(Formula.END_FORMULA))
+                        String excelFormula = getExcelFormula(cellText, sheetName, context);
+                        if (excelFormula != null)
                         {
-                            // Don't consider any suffixes (e.g. "[0,0]") when looking
-                            // up the Formula.
-                            int idx = FormulaUtil.getEndOfJettFormula(cellText, 0);
-                            String cellTextNoSfx = cellText.substring(0, idx + 1);
-                            String key = sheetName + "!" + cellTextNoSfx;
-                            Formula formula = formulaMap.get(key);
-                            if (formula != null)
-                            {
-                                // Replace all original cell references with translated cell references.
-                                String excelFormula = FormulaUtil.createExcelFormulaString(cellText, formula, sheetName, context);
-                                logger.debug("  At {}, row {}, cell {}, replacing formula text \"{}\" with excel formula \"{}\".",
-                                        sheetName, rowNum, cellNum, cellText, excelFormula);
-                                cell.setCellFormula(excelFormula);
-                            }
+                            logger.debug("  At {}, row {}, cell {}, replacing formula text \"{}\" with excel formula \"{}\".",
+                                    sheetName, rowNum, cellNum, cellText, excelFormula);
+                            cell.setCellFormula(excelFormula);
                         }
                     }
                 }  // End cell for loop.
@@ -375,6 +390,36 @@ public class SheetTransformer
         }  // End row for loop.
     }
 
+    /**
+     * Returns the Excel formula that replaces the given cell text, if it's a
+     * JETT formula.
+     * @param cellText The text of a string cell.
+     * @param sheetName The name of the <code>Sheet</code> of the cell.
+     * @param context The <code>WorkbookContext</code>.
+     * @return The Excel formula, or <code>null</code> if the text isn't a
+     *    known JETT formula.
+     * @since 0.12.0
+     */
+    static String getExcelFormula(String cellText, String sheetName, WorkbookContext context)
+    {
+        if (cellText != null && cellText.startsWith(Formula.BEGIN_FORMULA) &&
+                cellText.endsWith(Formula.END_FORMULA))
+        {
+            // Don't consider any suffixes (e.g. "[0,0]") when looking
+            // up the Formula.
+            int idx = FormulaUtil.getEndOfJettFormula(cellText, 0);
+            String cellTextNoSfx = cellText.substring(0, idx + 1);
+            String key = sheetName + "!" + cellTextNoSfx;
+            Formula formula = context.getFormulaMap().get(key);
+            if (formula != null)
+            {
+                // Replace all original cell references with translated cell references.
+                return FormulaUtil.createExcelFormulaString(cellText, formula, sheetName, context);
+            }
+        }
+        return null;
+    }
+
     /**
      * Make the <code>Sheet</code> object available as bean in the given
      * <code>Map</code> of beans.
@@ -430,33 +475,32 @@ public class SheetTransformer
 
     /**
      * Reads all merged regions from the given <code>Sheet</code> and populates
-     * the given <code>List</code> with them.  All transformation that
+     * the given <code>MergedRegions</code> with them.  All transformation that
      * manipulates merged regions will be done on this cache of merged regions,
      * instead of directly on the <code>Sheet</code>, for performance reasons.
      * @param sheet The <code>Sheet</code>.
-     * @param mergedRegions A <code>List</code> of
-     *    <code>CellRangeAddress</code>es, which is modified.
+     * @param mergedRegions The <code>MergedRegions</code>, which is modified.
      * @since 0.8.0
      */
-    private void readMergedRegions(Sheet sheet, List<CellRangeAddress> mergedRegions)
+    private void readMergedRegions(Sheet sheet, MergedRegions mergedRegions)
     {
         int numMergedRegions = sheet.getNumMergedRegions();
         for (int i = 0; i < numMergedRegions; i++)
         {
-            mergedRegions.add(sheet.getMergedRegion(i));
+            // Copy each region; an HSSFSheet returns its own instances, which it
+            // modifies when shifting rows.
+            mergedRegions.add(sheet.getMergedRegion(i).copy());
         }
     }
 
     /**
      * Clears all merged regions on the given <code>Sheet</code> and populates
-     * the <code>Sheet</code> with the given <code>List</code> of merged
-     * regions.
+     * the <code>Sheet</code> with the given merged regions.
      * @param sheet The <code>Sheet</code>.
-     * @param mergedRegions A <code>List</code> of
-     *    <code>CellRangeAddresses</code>.
+     * @param mergedRegions The <code>MergedRegions</code>.
      * @since 0.8.0
      */
-    private void writeMergedRegions(Sheet sheet, List<CellRangeAddress> mergedRegions)
+    private void writeMergedRegions(Sheet sheet, MergedRegions mergedRegions)
     {
         // Clear the existing merged regions on the sheet.
         // Remove them last item first, in an attempt to avoid internal ArrayList
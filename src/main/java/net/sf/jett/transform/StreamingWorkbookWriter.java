@@ -0,0 +1,746 @@
+package net.sf.jett.transform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRow;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+import net.sf.jett.exception.TransformException;
+import net.sf.jett.model.RowFlusher;
+import net.sf.jett.model.WorkbookContext;
+
+/**
+ * <p>A <code>StreamingWorkbookWriter</code> keeps the memory used by a large
+ * <code>XSSFWorkbook</code> bounded, by flushing finished rows out of it
+ * during transformation, and by writing it through an
+ * <code>SXSSFWorkbook</code>, so that the sheet data is serialized to
+ * compressed temporary files with only a window of rows kept in memory,
+ * instead of being serialized all at once from the XML DOM.</p>
+ *
+ * <p>Once attached to a <code>WorkbookContext</code>, it's the
+ * <code>RowFlusher</code> that transformation calls whenever the rows above
+ * a certain row won't change any more: when the <code>Block</code> of the
+ * entire sheet moves on to its next row, and when a vertical looping tag
+ * that spans the whole sheet finishes an iteration.  Each such row is
+ * captured to a compressed temporary file and removed from the
+ * <code>XSSFSheet</code>, releasing its DOM, so that only the rows of the
+ * lowest <code>Blocks</code> still being transformed, and whatever lies
+ * below them, are kept in memory.  JETT formulas in flushed rows are
+ * replaced with Excel formulas when the rows are read back.</p>
+ *
+ * <p>When writing, the remaining rows of each sheet are captured the same
+ * way, then all rows are read back one at a time into the
+ * <code>SXSSFSheet</code> that wraps the <code>XSSFSheet</code>, which
+ * flushes them as its window fills.  An <code>SXSSFSheet</code> only accepts
+ * rows below the last row of the sheet it wraps, which is why no row can be
+ * re-created until all rows have been removed.  Everything that isn't row
+ * data, e.g. merged regions, column widths, hyperlinks, conditional
+ * formatting, and drawings, stays with the <code>XSSFSheet</code>, and the
+ * shared strings table and cell styles are shared by both workbooks, so
+ * distinct string values still accumulate in memory.</p>
+ *
+ * <p>Cell comments and array formulas are tied to the row data of the
+ * <code>XSSFSheet</code>.  Rows of a sheet with array formulas are never
+ * flushed, and rows of a sheet stop being flushed once it has cell
+ * comments.  Such a sheet is written without streaming its rows; any rows
+ * that were already flushed are put back first.</p>
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+class StreamingWorkbookWriter implements RowFlusher, AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private XSSFWorkbook myWorkbook;
+    private int myRowAccessWindowSize;
+    private WorkbookContext myContext;
+    private Map<Sheet, FlushedRows> myFlushedRowsMap;
+
+    /**
+     * Constructs a <code>StreamingWorkbookWriter</code> for the given
+     * <code>XSSFWorkbook</code>.
+     * @param workbook The <code>XSSFWorkbook</code>.
+     * @param rowAccessWindowSize The number of rows kept in memory per sheet
+     *    while writing; must be positive.
+     */
+    StreamingWorkbookWriter(XSSFWorkbook workbook, int rowAccessWindowSize)
+    {
+        myWorkbook = workbook;
+        myRowAccessWindowSize = rowAccessWindowSize;
+        myContext = null;
+        myFlushedRowsMap = new HashMap<>();
+    }
+
+    /**
+     * Makes this the <code>RowFlusher</code> of the given
+     * <code>WorkbookContext</code>, so that finished rows are flushed during
+     * transformation.  The context is also used to replace the JETT formulas
+     * of flushed rows when writing.
+     * @param context The <code>WorkbookContext</code> of the workbook.
+     */
+    void attach(WorkbookContext context)
+    {
+        myContext = context;
+        context.setRowFlusher(this);
+    }
+
+    /**
+     * Captures all rows of the given <code>Sheet</code> above the given row
+     * index to a temporary file, and removes them from the
+     * <code>Sheet</code>.
+     * @param sheet The <code>Sheet</code>, which must belong to this writer's
+     *    <code>XSSFWorkbook</code>.
+     * @param rowNum The 0-based row index of the first row to keep.
+     * @throws TransformException If there is a problem with the temporary
+     *    file.
+     */
+    @Override
+    public void flushRowsAbove(Sheet sheet, int rowNum)
+    {
+        try
+        {
+            getFlushedRows((XSSFSheet) sheet).flushRowsAbove(rowNum);
+        }
+        catch (IOException e)
+        {
+            throw new TransformException("Unable to flush rows of sheet \"" + sheet.getSheetName() + "\": " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the workbook to the given <code>OutputStream</code>.  After this
+     * method returns, the rows of the <code>XSSFWorkbook</code> have been
+     * removed and it has been closed.
+     * @param os The <code>OutputStream</code>.
+     * @throws IOException If there is a problem writing the workbook.
+     */
+    void write(OutputStream os) throws IOException
+    {
+        logger.debug("Writing workbook with a row access window of {}.", myRowAccessWindowSize);
+        // Closing the SXSSFWorkbook deletes its temporary files and closes
+        // the XSSFWorkbook it wraps, which is of no further use anyway.
+        try (SXSSFWorkbook streaming = new SXSSFWorkbook(myWorkbook, myRowAccessWindowSize, true, true))
+        {
+            for (int i = 0; i < myWorkbook.getNumberOfSheets(); i++)
+            {
+                XSSFSheet sheet = myWorkbook.getSheetAt(i);
+                FlushedRows flushed = getFlushedRows(sheet);
+                if (flushed.canStream())
+                {
+                    flushed.flushRowsAbove(Integer.MAX_VALUE);
+                    flushed.moveTo(streaming.getSheetAt(i), myContext);
+                }
+                else
+                {
+                    logger.info("Sheet \"{}\" has cell comments or array formulas; writing it without streaming.",
+                            sheet.getSheetName());
+                    flushed.restore(myContext);
+                }
+            }
+            streaming.write(os);
+        }
+    }
+
+    /**
+     * Deletes all temporary files of flushed rows.
+     */
+    @Override
+    public void close()
+    {
+        for (FlushedRows flushed : myFlushedRowsMap.values())
+        {
+            flushed.delete();
+        }
+        myFlushedRowsMap.clear();
+    }
+
+    /**
+     * Returns the <code>FlushedRows</code> of the given
+     * <code>XSSFSheet</code>, creating it if necessary.
+     * @param sheet The <code>XSSFSheet</code>.
+     * @return The <code>FlushedRows</code>.
+     */
+    private FlushedRows getFlushedRows(XSSFSheet sheet)
+    {
+        FlushedRows flushed = myFlushedRowsMap.get(sheet);
+        if (flushed == null)
+        {
+            flushed = new FlushedRows(sheet);
+            myFlushedRowsMap.put(sheet, flushed);
+        }
+        return flushed;
+    }
+
+    /**
+     * Determines whether the given sheet has any array formulas, which can't
+     * be removed cell by cell.
+     * @param sheet The <code>XSSFSheet</code>.
+     * @return Whether the sheet has any array formulas.
+     */
+    private static boolean hasArrayFormulas(XSSFSheet sheet)
+    {
+        for (Row row : sheet)
+        {
+            for (Cell cell : row)
+            {
+                if (cell.getCellType() == CellType.FORMULA && cell.isPartOfArrayFormulaGroup())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The <code>FlushedRows</code> of a sheet are the rows that have been
+     * captured to its temporary file, in ascending order, and removed from
+     * it.  Rows are removed from the top down, which keeps each removal
+     * cheap.
+     */
+    private static class FlushedRows
+    {
+        private XSSFSheet mySheet;
+        private File myFile;
+        private DataOutputStream myOut;
+        private int myNumRows;
+        private int myLastRowNum;
+        private boolean amIStopped;
+
+        /**
+         * Constructs the <code>FlushedRows</code> of the given sheet, which
+         * has none yet.
+         * @param sheet The <code>XSSFSheet</code>.
+         */
+        private FlushedRows(XSSFSheet sheet)
+        {
+            mySheet = sheet;
+            myFile = null;
+            myOut = null;
+            myNumRows = 0;
+            myLastRowNum = -1;
+            amIStopped = hasArrayFormulas(sheet);
+        }
+
+        /**
+         * Determines whether all rows of the sheet can be moved to an
+         * <code>SXSSFSheet</code>.
+         * @return Whether the sheet can be streamed.
+         */
+        private boolean canStream()
+        {
+            return !amIStopped && !mySheet.hasComments();
+        }
+
+        /**
+         * Captures all rows above the given row index to the temporary file
+         * and removes them, unless flushing has stopped for the sheet.
+         * @param rowNum The 0-based row index of the first row to keep.
+         * @throws IOException If there is a problem writing the temporary
+         *    file.
+         * @throws IllegalStateException If a row above the flushed rows has
+         *    been created since they were flushed.
+         */
+        private void flushRowsAbove(int rowNum) throws IOException
+        {
+            if (amIStopped)
+                return;
+            if (mySheet.hasComments())
+            {
+                // Removing rows would remove their comments.
+                logger.debug("Sheet \"{}\" has cell comments; no longer flushing its rows.", mySheet.getSheetName());
+                amIStopped = true;
+                return;
+            }
+            while (mySheet.getPhysicalNumberOfRows() > 0 && mySheet.getFirstRowNum() < rowNum)
+            {
+                int firstRowNum = mySheet.getFirstRowNum();
+                if (firstRowNum <= myLastRowNum)
+                    throw new IllegalStateException("Row " + firstRowNum + " of sheet \"" +
+                            mySheet.getSheetName() + "\" was created after it had been flushed.");
+                if (myOut == null)
+                {
+                    myFile = TempFile.createTempFile("jett-rows", ".gz");
+                    myOut = new DataOutputStream(new BufferedOutputStream(
+                            new GZIPOutputStream(new FileOutputStream(myFile))));
+                }
+                XSSFRow row = mySheet.getRow(firstRowNum);
+                new RowData(row).write(myOut);
+                mySheet.removeRow(row);
+                myLastRowNum = firstRowNum;
+                myNumRows++;
+            }
+        }
+
+        /**
+         * Re-creates all flushed rows, which must be all rows of the sheet,
+         * in the given <code>SXSSFSheet</code>, and deletes the temporary
+         * file.
+         * @param streaming The <code>SXSSFSheet</code> wrapping the sheet.
+         * @param context The <code>WorkbookContext</code> used to replace JETT
+         *    formulas, or <code>null</code> if they have been replaced already.
+         * @throws IOException If there is a problem reading the temporary
+         *    file or flushing rows.
+         */
+        private void moveTo(SXSSFSheet streaming, WorkbookContext context) throws IOException
+        {
+            logger.debug("Streaming {} rows of sheet \"{}\".", myNumRows, mySheet.getSheetName());
+            try (DataInputStream in = openForReading())
+            {
+                for (int i = 0; i < myNumRows; i++)
+                {
+                    new RowData(in, mySheet.getWorkbook()).create(streaming, context);
+                }
+            }
+            finally
+            {
+                delete();
+            }
+            streaming.flushRows();
+        }
+
+        /**
+         * Puts all flushed rows back into the sheet, and deletes the temporary
+         * file.  They're re-created from the bottom up, because all rows
+         * still in the sheet are below them, which keeps each insertion
+         * cheap.
+         * @param context The <code>WorkbookContext</code> used to replace JETT
+         *    formulas, or <code>null</code> if they have been replaced already.
+         * @throws IOException If there is a problem reading the temporary
+         *    file.
+         */
+        private void restore(WorkbookContext context) throws IOException
+        {
+            if (myNumRows == 0)
+                return;
+            logger.debug("Restoring {} flushed rows of sheet \"{}\".", myNumRows, mySheet.getSheetName());
+            List<RowData> rows = new ArrayList<>(myNumRows);
+            try (DataInputStream in = openForReading())
+            {
+                for (int i = 0; i < myNumRows; i++)
+                {
+                    rows.add(new RowData(in, mySheet.getWorkbook()));
+                }
+            }
+            finally
+            {
+                delete();
+            }
+            for (int i = rows.size() - 1; i >= 0; i--)
+            {
+                rows.get(i).create(mySheet, context);
+            }
+        }
+
+        /**
+         * Finishes writing the temporary file and opens it for reading.
+         * @return A <code>DataInputStream</code> over the flushed rows.
+         * @throws IOException If there is a problem with the temporary file.
+         */
+        private DataInputStream openForReading() throws IOException
+        {
+            if (myOut == null)
+                return new DataInputStream(new ByteArrayInputStream(new byte[0]));
+            myOut.close();
+            myOut = null;
+            return new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(myFile))));
+        }
+
+        /**
+         * Closes and deletes the temporary file, if any.
+         */
+        private void delete()
+        {
+            if (myOut != null)
+            {
+                try
+                {
+                    myOut.close();
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Unable to close temporary file {}.", myFile, e);
+                }
+                myOut = null;
+            }
+            if (myFile != null)
+            {
+                if (!myFile.delete())
+                    logger.warn("Unable to delete temporary file {}.", myFile);
+                myFile = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the given string, which may be longer than
+     * <code>DataOutput.writeUTF</code> allows.
+     * @param out The <code>DataOutput</code>.
+     * @param s The string.
+     * @throws IOException If there is a problem writing.
+     */
+    private static void writeString(DataOutput out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     * @param in The <code>DataInput</code>.
+     * @return The string.
+     * @throws IOException If there is a problem reading.
+     */
+    private static String readString(DataInput in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A <code>RowData</code> captures the properties and cells of a row, so
+     * that the row can be written to and read back from a temporary file.
+     */
+    private static class RowData
+    {
+        private int myRowNum;
+        private short myHeight;
+        private boolean amICustomHeight;
+        private boolean amIZeroHeight;
+        private boolean amICollapsed;
+        private int myOutlineLevel;
+        private CellStyle myRowStyle;
+        private List<CellData> myCells;
+
+        /**
+         * Captures the given row.
+         * @param row The <code>XSSFRow</code>.
+         */
+        private RowData(XSSFRow row)
+        {
+            CTRow ctRow = row.getCTRow();
+            myRowNum = row.getRowNum();
+            myHeight = row.getHeight();
+            amICustomHeight = ctRow.isSetHt();
+            amIZeroHeight = row.getZeroHeight();
+            amICollapsed = ctRow.isSetCollapsed() && ctRow.getCollapsed();
+            myOutlineLevel = row.getOutlineLevel();
+            myRowStyle = row.isFormatted() ? row.getRowStyle() : null;
+            myCells = new ArrayList<>(row.getPhysicalNumberOfCells());
+            for (Cell cell : row)
+            {
+                myCells.add(new CellData((XSSFCell) cell));
+            }
+        }
+
+        /**
+         * Reads a row written by {@link #write(DataOutput)}.
+         * @param in The <code>DataInput</code>.
+         * @param workbook The <code>XSSFWorkbook</code> that holds the cell
+         *    styles.
+         * @throws IOException If there is a problem reading.
+         */
+        private RowData(DataInput in, XSSFWorkbook workbook) throws IOException
+        {
+            myRowNum = in.readInt();
+            myHeight = in.readShort();
+            amICustomHeight = in.readBoolean();
+            amIZeroHeight = in.readBoolean();
+            amICollapsed = in.readBoolean();
+            myOutlineLevel = in.readInt();
+            int styleIndex = in.readInt();
+            myRowStyle = (styleIndex >= 0) ? workbook.getCellStyleAt(styleIndex) : null;
+            int numCells = in.readInt();
+            myCells = new ArrayList<>(numCells);
+            for (int i = 0; i < numCells; i++)
+            {
+                myCells.add(new CellData(in, workbook));
+            }
+        }
+
+        /**
+         * Writes the row.
+         * @param out The <code>DataOutput</code>.
+         * @throws IOException If there is a problem writing.
+         */
+        private void write(DataOutput out) throws IOException
+        {
+            out.writeInt(myRowNum);
+            out.writeShort(myHeight);
+            out.writeBoolean(amICustomHeight);
+            out.writeBoolean(amIZeroHeight);
+            out.writeBoolean(amICollapsed);
+            out.writeInt(myOutlineLevel);
+            out.writeInt((myRowStyle != null) ? Short.toUnsignedInt(myRowStyle.getIndex()) : -1);
+            out.writeInt(myCells.size());
+            for (CellData cellData : myCells)
+            {
+                cellData.write(out);
+            }
+        }
+
+        /**
+         * Re-creates the row in the given <code>Sheet</code>, either an
+         * <code>SXSSFSheet</code> or the <code>XSSFSheet</code> from which it
+         * was captured.
+         * @param sheet The <code>Sheet</code>.
+         * @param context The <code>WorkbookContext</code> used to replace JETT
+         *    formulas, or <code>null</code> if they have been replaced already.
+         */
+        private void create(Sheet sheet, WorkbookContext context)
+        {
+            Row row = sheet.createRow(myRowNum);
+            if (amICustomHeight)
+                row.setHeight(myHeight);
+            if (amIZeroHeight)
+                row.setZeroHeight(true);
+            if (myRowStyle != null)
+                row.setRowStyle(myRowStyle);
+            if (row instanceof XSSFRow)
+            {
+                CTRow ctRow = ((XSSFRow) row).getCTRow();
+                if (amICollapsed)
+                    ctRow.setCollapsed(true);
+                if (myOutlineLevel > 0)
+                    ctRow.setOutlineLevel((short) myOutlineLevel);
+            }
+            else
+            {
+                if (amICollapsed)
+                    ((SXSSFRow) row).setCollapsed(true);
+                // SXSSFRow only exposes its outline level through grouping.
+                for (int i = 0; i < myOutlineLevel; i++)
+                {
+                    sheet.groupRow(myRowNum, myRowNum);
+                }
+            }
+            for (CellData cellData : myCells)
+            {
+                cellData.create(row, context);
+            }
+        }
+    }
+
+    /**
+     * A <code>CellData</code> captures the style and value of a cell.  A
+     * formula cell keeps its formula and its cached result, if any.  A string
+     * with formatting runs is kept as the XML of its rich text.
+     */
+    private static class CellData
+    {
+        private int myColumnIndex;
+        private CellStyle myStyle;
+        private String myFormula;
+        private CellType myType;
+        private Object myValue;
+
+        /**
+         * Captures the given cell.
+         * @param cell The <code>XSSFCell</code>.
+         */
+        private CellData(XSSFCell cell)
+        {
+            myColumnIndex = cell.getColumnIndex();
+            myStyle = cell.getCellStyle();
+            myType = cell.getCellType();
+            if (myType == CellType.FORMULA)
+            {
+                myFormula = cell.getCellFormula();
+                myType = cell.getCachedFormulaResultType();
+            }
+            switch (myType)
+            {
+            case NUMERIC:
+                myValue = cell.getNumericCellValue();
+                break;
+            case STRING:
+                XSSFRichTextString rich = cell.getRichStringCellValue();
+                myValue = (myFormula == null && rich.numFormattingRuns() > 0) ? rich : rich.getString();
+                break;
+            case BOOLEAN:
+                myValue = cell.getBooleanCellValue();
+                break;
+            case ERROR:
+                myValue = cell.getErrorCellValue();
+                break;
+            default:
+                myValue = null;
+                break;
+            }
+        }
+
+        /**
+         * Reads a cell written by {@link #write(DataOutput)}.
+         * @param in The <code>DataInput</code>.
+         * @param workbook The <code>XSSFWorkbook</code> that holds the cell
+         *    styles.
+         * @throws IOException If there is a problem reading.
+         */
+        private CellData(DataInput in, XSSFWorkbook workbook) throws IOException
+        {
+            myColumnIndex = in.readInt();
+            myStyle = workbook.getCellStyleAt(in.readInt());
+            myFormula = in.readBoolean() ? readString(in) : null;
+            myType = CellType.values()[in.readByte()];
+            if (!in.readBoolean())
+                return;
+            switch (myType)
+            {
+            case NUMERIC:
+                myValue = in.readDouble();
+                break;
+            case STRING:
+                if (in.readBoolean())
+                {
+                    try
+                    {
+                        myValue = new XSSFRichTextString(CTRst.Factory.parse(readString(in)));
+                    }
+                    catch (XmlException e)
+                    {
+                        throw new IOException("Unable to read rich text: " + e.getMessage(), e);
+                    }
+                }
+                else
+                {
+                    myValue = readString(in);
+                }
+                break;
+            case BOOLEAN:
+                myValue = in.readBoolean();
+                break;
+            case ERROR:
+                myValue = in.readByte();
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * Writes the cell.
+         * @param out The <code>DataOutput</code>.
+         * @throws IOException If there is a problem writing.
+         */
+        private void write(DataOutput out) throws IOException
+        {
+            out.writeInt(myColumnIndex);
+            out.writeInt(Short.toUnsignedInt(myStyle.getIndex()));
+            out.writeBoolean(myFormula != null);
+            if (myFormula != null)
+                writeString(out, myFormula);
+            out.writeByte(myType.ordinal());
+            out.writeBoolean(myValue != null);
+            if (myValue == null)
+                return;
+            switch (myType)
+            {
+            case NUMERIC:
+                out.writeDouble((Double) myValue);
+                break;
+            case STRING:
+                out.writeBoolean(myValue instanceof XSSFRichTextString);
+                if (myValue instanceof XSSFRichTextString)
+                    writeString(out, ((XSSFRichTextString) myValue).getCTRst().xmlText());
+                else
+                    writeString(out, (String) myValue);
+                break;
+            case BOOLEAN:
+                out.writeBoolean((Boolean) myValue);
+                break;
+            case ERROR:
+                out.writeByte((Byte) myValue);
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * Re-creates the cell in the given <code>Row</code>.  If it's a
+         * string cell with a JETT formula, then it's replaced with the Excel
+         * formula.
+         * @param row The <code>Row</code>.
+         * @param context The <code>WorkbookContext</code> used to replace JETT
+         *    formulas, or <code>null</code> if they have been replaced already.
+         */
+        private void create(Row row, WorkbookContext context)
+        {
+            Cell cell = row.createCell(myColumnIndex);
+            cell.setCellStyle(myStyle);
+            if (myFormula == null && myType == CellType.STRING && context != null)
+            {
+                String text = (myValue instanceof XSSFRichTextString) ?
+                        ((XSSFRichTextString) myValue).getString() : (String) myValue;
+                String excelFormula = SheetTransformer.getExcelFormula(text, row.getSheet().getSheetName(), context);
+                if (excelFormula != null)
+                {
+                    cell.setCellFormula(excelFormula);
+                    return;
+                }
+            }
+            if (myFormula != null)
+                cell.setCellFormula(myFormula);
+            if (myValue == null)
+                return;
+            switch (myType)
+            {
+            case NUMERIC:
+                cell.setCellValue((Double) myValue);
+                break;
+            case STRING:
+                if (myValue instanceof XSSFRichTextString)
+                    cell.setCellValue((XSSFRichTextString) myValue);
+                else
+                    cell.setCellValue((String) myValue);
+                break;
+            case BOOLEAN:
+                cell.setCellValue((Boolean) myValue);
+                break;
+            case ERROR:
+                cell.setCellErrorValue((Byte) myValue);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
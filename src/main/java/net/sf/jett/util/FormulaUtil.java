@@ -3,8 +3,10 @@ package net.sf.jett.util;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,6 +15,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.poi.ss.formula.SheetNameFormatter;
 
 import net.sf.jett.formula.CellRef;
+import net.sf.jett.formula.CellRefIndex;
 import net.sf.jett.formula.CellRefRange;
 import net.sf.jett.formula.Formula;
 import net.sf.jett.model.WorkbookContext;
@@ -293,99 +296,79 @@ public class FormulaUtil
      * Examines all <code>CellRefs</code> in each <code>List</code>.  If a group
      * of <code>CellRefs</code> represent a linear range, horizontally or
      * vertically, then they are replaced with a <code>CellRefRange</code>.
+     * Each <code>List</code> is sorted once, then coalesced in a single pass
+     * into a new <code>List</code>, which replaces the contents of the
+     * original <code>List</code> only if any ranges were found.
      * @param cellRefMap The cell reference map.
      */
     public static void findAndReplaceCellRanges(Map<String, List<CellRef>> cellRefMap)
     {
-        for (String key : cellRefMap.keySet())
+        for (Map.Entry<String, List<CellRef>> entry : cellRefMap.entrySet())
         {
-            List<CellRef> cellRefs = cellRefMap.get(key);
+            List<CellRef> cellRefs = entry.getValue();
             // This will put cells that should be part of a range in consecutive
             // positions.
             Collections.sort(cellRefs);
 
-            logger.debug("fARCR: Replacing cell ref ranges for \"{}\".", key);
+            logger.debug("fARCR: Replacing cell ref ranges for \"{}\".", entry.getKey());
             logger.debug("  cellRefs: {}", cellRefs);
 
-            boolean vertical = false;
-            boolean horizontal = false;
-            CellRef first = null, prev = null;
-            int firstIdx = -1;
-            int size = cellRefs.size();
+            List<CellRef> coalesced = coalesceCellRanges(cellRefs);
+            if (coalesced.size() < cellRefs.size())
+            {
+                cellRefs.clear();
+                cellRefs.addAll(coalesced);
+            }
+        }
+    }
 
-            for (int i = 0; i < size; i++)
+    /**
+     * Coalesces the given sorted <code>CellRefs</code> into ranges.  Starting
+     * with each <code>CellRef</code> that isn't already part of a range, the
+     * next <code>CellRef</code> determines the direction of the range, if it
+     * is directly to the right of it or directly below it, and the range
+     * extends as long as each <code>CellRef</code> continues in that
+     * direction.
+     * @param cellRefs A sorted <code>List</code> of <code>CellRefs</code>,
+     *    which isn't modified.
+     * @return A new <code>List</code> of <code>CellRefs</code>, in which each
+     *    range of two or more <code>CellRefs</code> has been replaced by a
+     *    single <code>CellRefRange</code>.
+     * @since 0.12.0
+     */
+    private static List<CellRef> coalesceCellRanges(List<CellRef> cellRefs)
+    {
+        int size = cellRefs.size();
+        List<CellRef> coalesced = new ArrayList<>();
+        int firstIdx = 0;
+        while (firstIdx < size)
+        {
+            CellRef first = cellRefs.get(firstIdx);
+            int lastIdx = firstIdx;
+            if (firstIdx + 1 < size)
             {
-                CellRef curr = cellRefs.get(i);
-                logger.debug("  curr is {}", curr.formatAsString());
-                if (first == null)
+                // Decide on the proper direction, if any.
+                CellRef next = cellRefs.get(firstIdx + 1);
+                if (isRightOf(first, next))
                 {
-                    vertical = false;
-                    horizontal = false;
-                    first = curr;
-                    firstIdx = i;
-                    logger.debug("    Case first was null; first: {}, firstIdx = {}",
-                            first.formatAsString(), firstIdx);
+                    lastIdx++;
+                    while (lastIdx + 1 < size && isRightOf(cellRefs.get(lastIdx), cellRefs.get(lastIdx + 1)))
+                        lastIdx++;
                 }
-                else if (vertical)
+                else if (isBelow(first, next))
                 {
-                    logger.debug("    Case vertical; first: {}, firstIdx = {}",
-                            first.formatAsString(), firstIdx);
-                    if (!isBelow(prev, curr))
-                    {
-                        // End of range.  Replace sequence of vertically arranged
-                        // CellRefs with a single CellRefRange.
-                        replaceRange(cellRefs, firstIdx, i - 1);
-                        // The list has shrunk.
-                        int shrink = size - cellRefs.size();
-                        size -= shrink;
-                        i -= shrink;
-                        // Setup for next range.
-                        vertical = false;
-                        first = curr;
-                        firstIdx = i;
-                    }
-                }
-                else if (horizontal)
-                {
-                    logger.debug("    Case horizontal; first: {}, firstIdx = {}",
-                            first.formatAsString(), firstIdx);
-                    if (!isRightOf(prev, curr))
-                    {
-                        // End of range.  Replace sequence of vertically arranged
-                        // CellRefs with a single CellRefRange.
-                        replaceRange(cellRefs, firstIdx, i - 1);
-                        // The list has shrunk.
-                        int shrink = size - cellRefs.size();
-                        size -= shrink;
-                        i -= shrink;
-                        // Setup for next range.
-                        horizontal = false;
-                        first = curr;
-                        firstIdx = i;
-                    }
+                    lastIdx++;
+                    while (lastIdx + 1 < size && isBelow(cellRefs.get(lastIdx), cellRefs.get(lastIdx + 1)))
+                        lastIdx++;
                 }
-                else
-                {
-                    // Decide on the proper direction, if any.
-                    if (isRightOf(prev, curr))
-                        horizontal = true;
-                    else if (isBelow(prev, curr))
-                        vertical = true;
-                    else
-                    {
-                        first = curr;
-                        firstIdx = i;
-                    }
-                    logger.debug("    Case none; first: {}, firstIdx = {}, horizontal = {}, vertical = {}",
-                            first.formatAsString(), firstIdx, horizontal, vertical);
-                }
-                prev = curr;
             }
-
-            // Don't forget the last one!
-            if (horizontal || vertical)
-                replaceRange(cellRefs, firstIdx, size - 1);
+            if (lastIdx > firstIdx)
+                coalesced.add(createRange(first, cellRefs.get(lastIdx)));
+            else
+                coalesced.add(first);
+            firstIdx = lastIdx + 1;
         }
+        return coalesced;
     }
 
     /**
@@ -464,6 +447,7 @@ public class FormulaUtil
             }  // End null check on templateSheetRefName
             cellRefs.addAll(addedCellRefs);
         }  // End for loop on cell keys.
+        context.clearCellRefIndex();
     }
 
     /**
@@ -561,6 +545,7 @@ public class FormulaUtil
         }
         // Add the new entries.
         cellRefMap.putAll(addToCellRefMap);
+        context.clearCellRefIndex();
     }
 
     /**
@@ -653,6 +638,7 @@ public class FormulaUtil
         }
         // Put back all the replacements.
         cellRefMap.putAll(addToCellRefMap);
+        context.clearCellRefIndex();
     }
 
     /**
@@ -698,31 +684,20 @@ public class FormulaUtil
     }
 
     /**
-     * Replace the <code>CellRefs</code> in the given <code>List</code> of
-     * <code>CellRefs</code>, in the range of indexes between
-     * <code>startIdx</code> and <code>endIdx</code> with a single
-     * <code>CellRefRange</code>.
-     * @param cellRefs Modifies this <code>List</code> of <code>CellRefs</code>.
-     * @param startIdx The <code>CellRef</code> at this index is treated as the
-     *    start of the range (inclusive).
-     * @param endIdx The <code>CellRef</code> at this index is treated as the
-     *    end of the range (inclusive).
+     * Creates a <code>CellRefRange</code> that starts at the first
+     * <code>CellRef</code> and ends at the last <code>CellRef</code>.
+     * @param first The <code>CellRef</code> that starts the range.
+     * @param last The <code>CellRef</code> that ends the range.
+     * @return A <code>CellRefRange</code>.
      */
-    private static void replaceRange(List<CellRef> cellRefs, int startIdx, int endIdx)
+    private static CellRefRange createRange(CellRef first, CellRef last)
     {
-        // Create the range.
-        CellRef first = cellRefs.get(startIdx);
-        CellRef prev = cellRefs.get(endIdx);
         CellRefRange range = new CellRefRange(first.getSheetName(), first.getRow(), first.getCol(),
                 first.isRowAbsolute(), first.isColAbsolute());
-        range.setRangeEndCellRef(prev);
+        range.setRangeEndCellRef(last);
         logger.debug("  Replacing {} through {} with {}",
-                first.formatAsString(), prev.formatAsString(), range.formatAsString());
-        // Replace the first with the range.
-        cellRefs.set(startIdx, range);
-        // Remove the others in the range.  The end index for the "subList"
-        // method is exclusive.
-        cellRefs.subList(startIdx + 1, endIdx + 1).clear();
+                first.formatAsString(), last.formatAsString(), range.formatAsString());
+        return range;
     }
 
     /**
@@ -758,63 +733,43 @@ public class FormulaUtil
     {
         logger.trace("    sCRIR: left {}, right {}, top {}, bottom {}, numCols {}, numRows {}, remove {}, add {}",
                 left, right, top, bottom, numCols, numRows, remove, add);
-        Map<String, List<CellRef>> cellRefMap = context.getCellRefMap();
-        List<String> templateSheetNames = context.getTemplateSheetNames();
-        List<String> newSheetNames = context.getSheetNames();
         if (numCols == 0 && numRows == 0 && remove && add)
             return;
-        for (String cellKey : cellRefMap.keySet())
+        CellRefIndex index = context.getCellRefIndex();
+        List<CellRefIndex.Entry> entries = index.find(sheetName, getTemplateSheetName(context, sheetName),
+                left, right, top, bottom);
+        // Gather the CellRefs to delete from each List, by identity, so that
+        // each List is compacted only once.
+        Map<List<CellRef>, Set<CellRef>> deletes = new IdentityHashMap<>();
+        for (CellRefIndex.Entry entry : entries)
         {
-            // All cell keys have the sheet name in them.
-            boolean isExplicit = cellKey.startsWith(EXPLICIT_REF_PREFIX);
-            // Bypass explicit/implicit indicator.
-            String keySheetName = cellKey.substring(2, cellKey.indexOf("!"));
-            if (!keySheetName.equals(sheetName))
+            CellRef cellRef = entry.getCellRef();
+            List<CellRef> cellRefs = entry.getCellRefs();
+            String cellKey = entry.getCellKey();
+            if (remove)
             {
-                // No exact match.  Check the corresponding template sheet name, if
-                // it exists.
-                int index = newSheetNames.indexOf(sheetName);
-                if (isExplicit || (index != -1 && keySheetName.equals(templateSheetNames.get(index))))
-                {
-                    // Template sheet name match.
-                    // Update keySheetName (the template sheet name) to the new sheet name.
-                    keySheetName = sheetName;
-                }
-                else
+                logger.debug("      Deleting cell reference: {} for cell key {}", cellRef.formatAsString(), cellKey);
+                index.remove(entry);
+                Set<CellRef> delete = deletes.get(cellRefs);
+                if (delete == null)
                 {
-                    continue;
+                    delete = Collections.newSetFromMap(new IdentityHashMap<CellRef, Boolean>());
+                    deletes.put(cellRefs, delete);
                 }
+                delete.add(cellRef);
             }
-
-            List<CellRef> cellRefs = cellRefMap.get(cellKey);
-            List<CellRef> delete = new ArrayList<>();
-            List<CellRef> insert = new ArrayList<>();
-            for (CellRef cellRef : cellRefs)
+            if (add)
             {
-                String cellRefSheetName = cellRef.getSheetName();
-                int row = cellRef.getRow();
-                int col = cellRef.getCol();
-                if ((cellRefSheetName == null || keySheetName.equals(cellRefSheetName)) &&
-                        (row >= top && row <= bottom && col >= left && col <= right))
-                {
-                    if (remove)
-                    {
-                        logger.debug("      Deleting cell reference: {} for cell key {}", cellRef.formatAsString(), cellKey);
-                        delete.add(cellRef);
-                    }
-                    if (add)
-                    {
-                        CellRef adjCellRef = new CellRef(cellRefSheetName, row + numRows, col + numCols,
-                                cellRef.isRowAbsolute(), cellRef.isColAbsolute());
-                        logger.debug("      Adding cell reference: {} for cell key {}", adjCellRef.formatAsString(), cellKey);
-                        insert.add(adjCellRef);
-                    }
-                }
+                CellRef adjCellRef = new CellRef(cellRef.getSheetName(), cellRef.getRow() + numRows,
+                        cellRef.getCol() + numCols, cellRef.isRowAbsolute(), cellRef.isColAbsolute());
+                logger.debug("      Adding cell reference: {} for cell key {}", adjCellRef.formatAsString(), cellKey);
+                cellRefs.add(adjCellRef);
+                index.add(cellKey, cellRefs, adjCellRef);
             }
-            if (remove)
-                cellRefs.removeAll(delete);
-            if (add)
-                cellRefs.addAll(insert);
+        }
+        for (Map.Entry<List<CellRef>, Set<CellRef>> delete : deletes.entrySet())
+        {
+            delete.getKey().removeIf(delete.getValue()::contains);
         }
     }
 
@@ -848,75 +803,92 @@ public class FormulaUtil
         logger.trace("    cCRIR: left {}, right {}, top {}, bottom {}, numCols {}, numRows {}, currSuffix: \"{}\", newSuffix: \"{}\"",
                 left, right, top, bottom, numCols, numRows, currSuffix, newSuffix);
         Map<String, List<CellRef>> cellRefMap = context.getCellRefMap();
-        Map<String, List<CellRef>> newCellRefEntries = new HashMap<>();
-        List<String> templateSheetNames = context.getTemplateSheetNames();
-        List<String> newSheetNames = context.getSheetNames();
-        for (String cellKey : cellRefMap.keySet())
+        CellRefIndex index = context.getCellRefIndex();
+        List<CellRefIndex.Entry> entries = index.find(sheetName, getTemplateSheetName(context, sheetName),
+                left, right, top, bottom);
+        Map<String, CellRefIndex.Entry> newEntrySources = new HashMap<>();
+        Map<String, CellRef> newEntryCellRefs = new HashMap<>();
+        for (CellRefIndex.Entry entry : entries)
         {
-            // All cell keys have the sheet name in them.
-            boolean isExplicit = cellKey.startsWith(EXPLICIT_REF_PREFIX);
-            // Bypass the explicit/implicit indicator.
-            String keySheetName = cellKey.substring(2, cellKey.indexOf("!"));
-            if (!keySheetName.equals(sheetName))
+            // A cell key may have a suffix, e.g. [0,1].
+            String keySuffix = entry.getKeySuffix();
+            if (!currSuffix.startsWith(keySuffix))
+                continue;
+            CellRef cellRef = entry.getCellRef();
+            List<CellRef> cellRefs = entry.getCellRefs();
+            String cellKey = entry.getCellKey();
+            CellRef adjCellRef = new CellRef(cellRef.getSheetName(), cellRef.getRow() + numRows,
+                    cellRef.getCol() + numCols, cellRef.isRowAbsolute(), cellRef.isColAbsolute());
+            // Only add the reference if being translated!
+            if (numRows != 0 || numCols != 0)
             {
-                // No exact match.  Check the corresponding template sheet name, if
-                // it exists.
-                int index = newSheetNames.indexOf(sheetName);
-                if (isExplicit || (index != -1 && keySheetName.equals(templateSheetNames.get(index))))
-                {
-                    // Template sheet name match.
-                    // Update keySheetName (the template sheet name) to the new sheet name.
-                    keySheetName = sheetName;
-                }
-                else
-                {
-                    continue;
-                }
+                logger.debug("      Adding cell reference: {} for cell key {}", adjCellRef.formatAsString(), cellKey);
+                cellRefs.add(adjCellRef);
+                index.add(cellKey, cellRefs, adjCellRef);
             }
-
-            // A cell key may have a suffix, e.g. [0,1].
-            String keySuffix = "";
-            int idx = cellKey.indexOf("[");
-            if (idx > -1)
-                keySuffix = cellKey.substring(idx);
-            if (currSuffix.startsWith(keySuffix)) // Suffix matches
+            // Introduce new mappings with the new suffix, e.g. [2,0], appended to
+            // the current suffix, e.g. [0,1][2,0].
+            // Look for formulas in the range.
+            // Only do this once (pick out those without suffixes to accomplish this).
+            if (keySuffix.isEmpty())
             {
-                List<CellRef> cellRefs = cellRefMap.get(cellKey);
-                List<CellRef> insert = new ArrayList<>();
-                for (CellRef cellRef : cellRefs)
+                String newCellKey = cellKey + currSuffix + newSuffix;
+                // If more than one reference for the same cell key is in range, the
+                // one that is later in the List wins.
+                CellRefIndex.Entry other = newEntrySources.get(newCellKey);
+                if (other == null || indexOfIdentity(cellRefs, other.getCellRef()) < indexOfIdentity(cellRefs, cellRef))
                 {
-                    String cellRefSheetName = cellRef.getSheetName();
-                    int row = cellRef.getRow();
-                    int col = cellRef.getCol();
-                    if ((cellRefSheetName == null || keySheetName.equals(cellRefSheetName)) &&    // Sheet matches
-                            (row >= top && row <= bottom && col >= left && col <= right))             // In cell range
-                    {
-                        CellRef adjCellRef = new CellRef(cellRefSheetName, row + numRows, col + numCols,
-                                cellRef.isRowAbsolute(), cellRef.isColAbsolute());
-                        // Only add the reference if being translated!
-                        if (numRows != 0 || numCols != 0)
-                        {
-                            logger.debug("      Adding cell reference: {} for cell key {}", adjCellRef.formatAsString(), cellKey);
-                            insert.add(adjCellRef);
-                        }
-                        // Introduce new mappings with the new suffix, e.g. [2,0], appended to
-                        // the current suffix, e.g. [0,1][2,0].
-                        // Look for formulas in the range.
-                        // Only do this once (pick out those without suffixes to accomplish this).
-                        if (idx == -1)
-                        {
-                            String newCellKey = cellKey + currSuffix + newSuffix;
-                            List<CellRef> newCellRefs = new ArrayList<>();
-                            newCellRefs.add(adjCellRef);
-                            logger.debug("      Adding new entry: {} => [{}]", newCellKey, adjCellRef.formatAsString());
-                            newCellRefEntries.put(newCellKey, newCellRefs);
-                        }
-                    }
+                    newEntrySources.put(newCellKey, entry);
+                    newEntryCellRefs.put(newCellKey, adjCellRef);
                 }
-                cellRefs.addAll(insert);
             }
         }
-        cellRefMap.putAll(newCellRefEntries);
+        for (Map.Entry<String, CellRef> newEntry : newEntryCellRefs.entrySet())
+        {
+            String newCellKey = newEntry.getKey();
+            List<CellRef> newCellRefs = new ArrayList<>();
+            newCellRefs.add(newEntry.getValue());
+            logger.debug("      Adding new entry: {} => [{}]", newCellKey, newEntry.getValue().formatAsString());
+            List<CellRef> replaced = cellRefMap.put(newCellKey, newCellRefs);
+            if (replaced != null)
+                index.removeAll(newCellKey, replaced);
+            index.add(newCellKey, newCellRefs, newEntry.getValue());
+        }
+    }
+
+    /**
+     * Returns the name of the template sheet from which the given sheet was
+     * created, according to the template sheet names and new sheet names in
+     * the given <code>WorkbookContext</code>.
+     * @param context The <code>WorkbookContext</code>.
+     * @param sheetName The name of the <code>Sheet</code>.
+     * @return The template sheet name, or <code>null</code> if the sheet name
+     *    isn't one of the new sheet names.
+     * @since 0.12.0
+     */
+    private static String getTemplateSheetName(WorkbookContext context, String sheetName)
+    {
+        List<String> newSheetNames = context.getSheetNames();
+        int index = newSheetNames.indexOf(sheetName);
+        return (index != -1) ? context.getTemplateSheetNames().get(index) : null;
+    }
+
+    /**
+     * Returns the index of the given <code>CellRef</code> in the given
+     * <code>List</code>, comparing by identity.
+     * @param cellRefs The <code>List</code> of <code>CellRefs</code>.
+     * @param cellRef The <code>CellRef</code>.
+     * @return The 0-based index, or <code>-1</code> if not found.
+     * @since 0.12.0
+     */
+    private static int indexOfIdentity(List<CellRef> cellRefs, CellRef cellRef)
+    {
+        for (int i = 0; i < cellRefs.size(); i++)
+        {
+            if (cellRefs.get(i) == cellRef)
+                return i;
+        }
+        return -1;
     }
 
     /**
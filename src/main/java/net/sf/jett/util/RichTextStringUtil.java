@@ -621,6 +621,7 @@ public class RichTextStringUtil
             CellStyle newCellStyle = cellStyleCache.findCellStyleWithFont(cellStyle, font);
             if (newCellStyle == null)
             {
+                cellStyleCache.ensureRoomForCellStyle();
                 newCellStyle = workbook.createCellStyle();
                 newCellStyle.cloneStyleFrom(cellStyle);
                 // For some reason, just setting the Font directly doesn't work.
@@ -14,6 +14,10 @@ import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.apache.poi.hssf.usermodel.HSSFComment;
+import org.apache.poi.hssf.usermodel.HSSFPatriarch;
+import org.apache.poi.hssf.usermodel.HSSFShape;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.ss.usermodel.BorderStyle;
@@ -30,6 +34,7 @@ import org.apache.poi.ss.usermodel.Footer;
 import org.apache.poi.ss.usermodel.Header;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
 import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Name;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -233,7 +238,6 @@ public class SheetUtil
         Row row;
         Cell cell, newCell;
         int newColIndex;
-        Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
         for (int rowIndex = rowStart; rowIndex <= rowEnd; rowIndex++)
         {
             row = sheet.getRow(rowIndex);
@@ -252,17 +256,6 @@ public class SheetUtil
                             newCell = row.createCell(newColIndex);
                         copyCell(cell, newCell);
 
-                        String cellRef = getCellKey(cell);
-                        String newCellRef = getCellKey(newCell);
-                        String origCellRef = tagLocationsMap.get(cellRef);
-                        if (origCellRef != null)
-                        {
-                            tagLocationsMap.remove(cellRef);
-                            tagLocationsMap.put(newCellRef, origCellRef);
-                            logger.debug("sCL: Replacing {} => {} with {} => {}",
-                                    cellRef, origCellRef, newCellRef, origCellRef);
-                        }
-
                         // Remove the just copied Cell if we detect that it won't be
                         // overwritten by future loops.
                         if (colIndex > colEnd - numCols && colIndex <= colEnd)
@@ -272,6 +265,8 @@ public class SheetUtil
             }
         }
 
+        workbookContext.getTagLocations().shiftRange(sheet.getSheetName(),
+                colStart, colEnd, rowStart, rowEnd, -numCols, 0);
         shiftMergedRegionsInRange(context, colStart, colEnd, rowStart, rowEnd, -numCols, 0, true, true);
         //shiftConditionalFormattingRegionsInRange(sheet, colStart, colEnd,
         //         rowStart, rowEnd, -numCols, 0);
@@ -299,7 +294,6 @@ public class SheetUtil
         Row row;
         Cell cell, newCell;
         int newColIndex;
-        Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
         for (int rowIndex = rowStart; rowIndex <= rowEnd; rowIndex++)
         {
             row = sheet.getRow(rowIndex);
@@ -318,17 +312,6 @@ public class SheetUtil
                             newCell = row.createCell(newColIndex);
                         copyCell(cell, newCell);
 
-                        String cellRef = getCellKey(cell);
-                        String newCellRef = getCellKey(newCell);
-                        String origCellRef = tagLocationsMap.get(cellRef);
-                        if (origCellRef != null)
-                        {
-                            tagLocationsMap.remove(cellRef);
-                            tagLocationsMap.put(newCellRef, origCellRef);
-                            logger.debug("sCR: Replacing {} => {} with {} => {}",
-                                    cellRef, origCellRef, newCellRef, origCellRef);
-                        }
-
                         // Remove the just copied Cell if we detect that it won't be
                         // overwritten by future loops.
                         if (colIndex < colStart + numCols && colIndex <= colEnd)
@@ -338,6 +321,8 @@ public class SheetUtil
             }
         }
 
+        workbookContext.getTagLocations().shiftRange(sheet.getSheetName(),
+                colStart, colEnd, rowStart, rowEnd, numCols, 0);
         shiftMergedRegionsInRange(context, colStart, colEnd, rowStart, rowEnd, numCols, 0, true, true);
         //shiftConditionalFormattingRegionsInRange(sheet, colStart, colEnd,
         //         rowStart, rowEnd, numCols, 0);
@@ -365,7 +350,6 @@ public class SheetUtil
         int newRowIndex;
         Row oldRow, newRow;
         Cell cell, newCell;
-        Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
         for (int colIndex = colStart; colIndex <= colEnd; colIndex++)
         {
             for (int rowIndex = rowStart; rowIndex <= rowEnd; rowIndex++)
@@ -390,17 +374,6 @@ public class SheetUtil
                         newCell = newRow.createCell(colIndex);
                     copyCell(cell, newCell);
 
-                    String cellRef = getCellKey(cell);
-                    String newCellRef = getCellKey(newCell);
-                    String origCellRef = tagLocationsMap.get(cellRef);
-                    if (origCellRef != null)
-                    {
-                        tagLocationsMap.remove(cellRef);
-                        tagLocationsMap.put(newCellRef, origCellRef);
-                        logger.debug("sCU: Replacing {} => {} with {} => {}",
-                                cellRef, origCellRef, newCellRef, origCellRef);
-                    }
-
                     // Remove the just copied Cell if we detect that it won't be
                     // overwritten by future loops.
                     if (rowIndex > rowEnd - numRows && rowIndex <= rowEnd)
@@ -409,6 +382,8 @@ public class SheetUtil
             }
         }
 
+        workbookContext.getTagLocations().shiftRange(sheet.getSheetName(),
+                colStart, colEnd, rowStart, rowEnd, 0, -numRows);
         shiftMergedRegionsInRange(context, colStart, colEnd, rowStart, rowEnd, 0, -numRows, true, true);
         //shiftConditionalFormattingRegionsInRange(sheet, colStart, colEnd,
         //         rowStart, rowEnd, 0, -numRows);
@@ -433,10 +408,15 @@ public class SheetUtil
     {
         logger.trace("    Shifting cells down in rows {} to {}, cells {} to {} by {} rows.",
                 rowStart, rowEnd, colStart, colEnd, numRows);
+        if (sheet instanceof HSSFSheet && isFullWidth(sheet, colStart, colEnd, rowStart, rowEnd + numRows) &&
+                canShiftRowsNatively((HSSFSheet) sheet, workbookContext))
+        {
+            shiftRowsDown((HSSFSheet) sheet, context, workbookContext, colStart, colEnd, rowStart, rowEnd, numRows);
+            return;
+        }
         int newRowIndex;
         Row oldRow, newRow;
         Cell cell, newCell;
-        Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
         for (int rowIndex = rowEnd; rowIndex >= rowStart; rowIndex--)
         {
             newRowIndex = rowIndex + numRows;
@@ -457,18 +437,6 @@ public class SheetUtil
                     if (newCell == null)
                         newCell = newRow.createCell(colIndex);
                     copyCell(cell, newCell);
-
-                    String cellRef = getCellKey(cell);
-                    String newCellRef = getCellKey(newCell);
-                    String origCellRef = tagLocationsMap.get(cellRef);
-                    if (origCellRef != null)
-                    {
-                        tagLocationsMap.remove(cellRef);
-                        tagLocationsMap.put(newCellRef, origCellRef);
-
-                        logger.debug("sCD: Replacing {} => {} with {} => {}",
-                                cellRef, origCellRef, newCellRef, origCellRef);
-                    }
                 }
 
                 // Remove the just copied Cell if we detect that it won't be
@@ -478,11 +446,168 @@ public class SheetUtil
             }
         }
 
+        workbookContext.getTagLocations().shiftRange(sheet.getSheetName(),
+                colStart, colEnd, rowStart, rowEnd, 0, numRows);
         shiftMergedRegionsInRange(context, colStart, colEnd, rowStart, rowEnd, 0, numRows, true, true);
         //shiftConditionalFormattingRegionsInRange(sheet, colStart, colEnd,
         //         rowStart, rowEnd, 0, numRows);
     }
 
+    /**
+     * Determines whether all <code>Cells</code> in the given range of rows lie
+     * within the given range of columns, so that shifting those columns is the
+     * same as shifting entire rows.
+     *
+     * @param sheet    The <code>Sheet</code>.
+     * @param colStart The 0-based column index on which the range starts.
+     * @param colEnd   The 0-based column index on which the range ends.
+     * @param rowStart The 0-based row index on which the range starts.
+     * @param rowEnd   The 0-based row index on which the range ends.
+     * @return Whether no <code>Cells</code> in the given rows lie outside the
+     *    given columns.
+     * @since 0.12.0
+     */
+    private static boolean isFullWidth(Sheet sheet, int colStart, int colEnd, int rowStart, int rowEnd)
+    {
+        for (int r = rowStart; r <= rowEnd; r++)
+        {
+            Row row = sheet.getRow(r);
+            if (row != null && row.getFirstCellNum() != -1 &&
+                    (row.getFirstCellNum() < colStart || row.getLastCellNum() - 1 > colEnd))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Determines whether shifting entire rows on the given sheet with its
+     * own row shifting has the same result as shifting <code>Cells</code> one
+     * at a time.  This is decided once per sheet, the first time that it's
+     * needed, and remembered in the <code>WorkbookContext</code>.  Tags that
+     * add anything that would make a difference turn it off for their
+     * sheet.</p>
+     *
+     * <p><code>HSSFSheet.shiftRows</code> rewrites every Excel formula and
+     * named range in the workbook that refers to the moved rows, whereas
+     * shifting <code>Cells</code> copies formulas verbatim.  It also moves row
+     * breaks, hyperlinks and comments, and rewrites conditional formatting on
+     * all sheets, none of which shifting <code>Cells</code> does.  So sheets
+     * with any of these, or referred to by any Excel formula or named range,
+     * aren't shifted natively.  JETT formulas are only turned into Excel
+     * formulas after a sheet has been transformed.</p>
+     *
+     * <p>Only .xls sheets are shifted natively.
+     * <code>XSSFSheet.shiftRows</code> rewrites formulas, named ranges,
+     * conditional formatting and hyperlinks throughout the workbook and
+     * rebuilds the sheet's map of rows on every call, so it isn't cheaper
+     * than shifting <code>Cells</code>, and it removes the overwritten rows,
+     * which disconnects any <code>XSSFRow</code> or <code>XSSFCell</code>
+     * still held for them.</p>
+     *
+     * @param sheet           The <code>HSSFSheet</code>.
+     * @param workbookContext A <code>WorkbookContext</code>.
+     * @return Whether rows may be shifted natively.
+     * @since 0.12.0
+     */
+    private static boolean canShiftRowsNatively(HSSFSheet sheet, WorkbookContext workbookContext)
+    {
+        Map<Sheet, Boolean> nativeRowShiftingMap = workbookContext.getNativeRowShiftingMap();
+        Boolean canShift = nativeRowShiftingMap.get(sheet);
+        if (canShift == null)
+        {
+            canShift = isNativeRowShiftingSafe(sheet);
+            logger.debug("Native row shifting on sheet {}: {}", sheet.getSheetName(), canShift);
+            nativeRowShiftingMap.put(sheet, canShift);
+        }
+        return canShift;
+    }
+
+    /**
+     * Inspects the given sheet and its workbook for anything that
+     * <code>HSSFSheet.shiftRows</code> would treat differently from shifting
+     * <code>Cells</code> one at a time.  Formulas and named ranges are
+     * considered to refer to the sheet if their text contains its name, which
+     * may find more than necessary, but never less.
+     *
+     * @param sheet The <code>HSSFSheet</code>.
+     * @return Whether rows may be shifted natively.
+     * @since 0.12.0
+     */
+    private static boolean isNativeRowShiftingSafe(HSSFSheet sheet)
+    {
+        if (sheet.getRowBreaks().length > 0 || !sheet.getHyperlinkList().isEmpty())
+            return false;
+        HSSFPatriarch patriarch = sheet.getDrawingPatriarch();
+        if (patriarch != null)
+        {
+            for (HSSFShape shape : patriarch.getChildren())
+            {
+                if (shape instanceof HSSFComment)
+                    return false;
+            }
+        }
+        HSSFWorkbook workbook = sheet.getWorkbook();
+        String sheetName = sheet.getSheetName();
+        for (Name name : workbook.getAllNames())
+        {
+            if (!name.isFunctionName())
+            {
+                String formula = name.getRefersToFormula();
+                if (formula != null && formula.contains(sheetName))
+                    return false;
+            }
+        }
+        for (int i = 0; i < workbook.getNumberOfSheets(); i++)
+        {
+            HSSFSheet otherSheet = workbook.getSheetAt(i);
+            if (otherSheet.getSheetConditionalFormatting().getNumConditionalFormattings() > 0)
+                return false;
+            for (Row row : otherSheet)
+            {
+                for (Cell cell : row)
+                {
+                    if (cell.getCellType() == CellType.FORMULA &&
+                            (otherSheet == sheet || cell.getCellFormula().contains(sheetName)))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shift entire rows in the given range of row indexes down by the given
+     * number of rows, using the <code>HSSFSheet's</code> own row shifting
+     * instead of copying <code>Cells</code> one at a time.  The caller has
+     * made sure with <code>canShiftRowsNatively</code> that the result is the
+     * same.  Like shifting <code>Cells</code>, row heights stay where they
+     * are.  JETT's own formula references are shifted by the caller for
+     * either path.  The merged regions and tag locations in the range are
+     * shifted in one pass each.
+     *
+     * @param sheet           The <code>HSSFSheet</code> on which to move rows.
+     * @param context         A <code>TagContext</code>.
+     * @param workbookContext A <code>WorkbookContext</code>.
+     * @param colStart        The 0-based column index on which populated
+     *                        <code>Cells</code> start.
+     * @param colEnd          The 0-based column index on which populated
+     *                        <code>Cells</code> end.
+     * @param rowStart        The 0-based row index on which to start moving rows.
+     * @param rowEnd          The 0-based row index on which to end moving rows.
+     * @param numRows         The number of rows to move down.
+     * @since 0.12.0
+     */
+    private static void shiftRowsDown(HSSFSheet sheet, TagContext context, WorkbookContext workbookContext,
+                                      int colStart, int colEnd, int rowStart, int rowEnd, int numRows)
+    {
+        logger.trace("    Shifting rows {} to {} down by {} rows.", rowStart, rowEnd, numRows);
+        sheet.shiftRows(rowStart, rowEnd, numRows, false, false);
+
+        workbookContext.getTagLocations().shiftRange(sheet.getSheetName(),
+                colStart, colEnd, rowStart, rowEnd, 0, numRows);
+        shiftMergedRegionsInRange(context, colStart, colEnd, rowStart, rowEnd, 0, numRows, true, true);
+    }
+
     /**
      * Removes the given <code>Cell</code> from the given <code>Row</code>.
      * Also removes any <code>Comment</code>.
@@ -783,51 +908,8 @@ public class SheetUtil
         if (numCols == 0 && numRows == 0 && remove && add)
             return;
 
-        List<CellRangeAddress> sheetMergedRegions = context.getMergedRegions();
-        if (add)
-        {
-            int numMergedRegions = sheetMergedRegions.size();
-            for (int i = 0; i < numMergedRegions; i++)
-            {
-                CellRangeAddress region = sheetMergedRegions.get(i);
-                if (isCellAddressWhollyContained(region, left, right, top, bottom))
-                {
-                    CellRangeAddress newRegion = new CellRangeAddress(
-                            region.getFirstRow() + numRows,
-                            region.getLastRow() + numRows,
-                            region.getFirstColumn() + numCols,
-                            region.getLastColumn() + numCols);
-                    if (remove)
-                    {
-                        logger.debug("      Updating adjusted merged region from {} to {}.", region, newRegion);
-                        sheetMergedRegions.set(i, newRegion);
-                    }
-                    else
-                    {
-                        logger.debug("      Copying merged region from {} to {}.", region, newRegion);
-                        sheetMergedRegions.add(newRegion);
-                    }
-                }
-            }
-        }
-        else if (remove)
-        {
-            int numMergedRegions = sheetMergedRegions.size();
-            List<CellRangeAddress> regionsToRemove = new ArrayList<>();
-            for (int i = 0; i < numMergedRegions; i++)
-            for (CellRangeAddress region : sheetMergedRegions)
-            {
-                if (isCellAddressWhollyContained(region, left, right, top, bottom))
-                {
-                    logger.debug("      Removing merged region: {}");
-                    regionsToRemove.add(region);
-                }
-            }
-            if (!regionsToRemove.isEmpty())
-            {
-                sheetMergedRegions.removeAll(regionsToRemove);
-            }
-        }
+        int numFound = context.getMergedRegions().translate(left, right, top, bottom, numCols, numRows, remove, add);
+        logger.debug("      {} {} merged regions.", (add ? (remove ? "Shifted" : "Copied") : "Removed"), numFound);
     }
 
     // TODO: Decide whether to even do this in this build.
@@ -1095,7 +1177,6 @@ public class SheetUtil
         int right = block.getRightColNum();
         int top = block.getTopRowNum();
         int bottom = block.getBottomRowNum();
-        Map<String, String> tagLocationsMap = context.getTagLocationsMap();
 
         // Blank out the Cells.
         for (int rowNum = top; rowNum <= bottom; rowNum++)
@@ -1108,15 +1189,12 @@ public class SheetUtil
                     Cell c = r.getCell(cellNum);
                     if (c != null)
                     {
-                        String cellRef = getCellKey(c);
                         removeCell(r, c);
-                        tagLocationsMap.remove(cellRef);
-
-                        logger.debug("dB: Removing {}", cellRef);
                     }
                 }
             }
         }
+        context.getTagLocations().removeRange(sheet.getSheetName(), left, right, top, bottom);
         // Remove any merged regions in this Block.
         shiftMergedRegionsInRange(tagContext, left, right, top, bottom, 0, 0, true, false);
         // Remove any conditional formatting regions in this Block.
@@ -1143,7 +1221,6 @@ public class SheetUtil
         int right = block.getRightColNum();
         int top = block.getTopRowNum();
         int bottom = block.getBottomRowNum();
-        Map<String, String> tagLocationsMap = context.getTagLocationsMap();
 
         // Blank out the Cells.
         for (int rowNum = top; rowNum <= bottom; rowNum++)
@@ -1156,15 +1233,13 @@ public class SheetUtil
                     Cell c = r.getCell(cellNum);
                     if (c != null)
                     {
-                        String cellRef = getCellKey(c);
                         c.setCellType(CellType.BLANK);
                         c.removeHyperlink();
-                        tagLocationsMap.remove(cellRef);
-                        logger.debug("cB: Removing {}", cellRef);
                     }
                 }
             }
         }
+        context.getTagLocations().removeRange(sheet.getSheetName(), left, right, top, bottom);
         // Lose the current cell references.
         FormulaUtil.shiftCellReferencesInRange(sheet.getSheetName(), context,
                 left, right, top, bottom,
@@ -1626,7 +1701,10 @@ public class SheetUtil
     }
 
     /**
-     * Shifts <code>Cells</code> out of the way.
+     * Shifts <code>Cells</code> out of the way.  If nothing is populated
+     * below (or to the right of) the <code>Block</code>, e.g. a loop at the
+     * bottom of the sheet, then only the ancestor <code>Blocks</code> grow; no
+     * <code>Cells</code>, merged regions, or formula references are visited.
      *
      * @param sheet         The <code>Sheet</code> on which to shift.
      * @param tagContext    A <code>TagContext</code>.
@@ -1731,6 +1809,13 @@ public class SheetUtil
             {
                 Block toShift = blocksToShift.pop();
                 translateDown = shiftAmounts.pop();
+                // Nothing populated below, e.g. the block is at the bottom of
+                // the sheet.  Its copies will simply be appended.
+                if (toShift.getTopRowNum() > toShift.getBottomRowNum())
+                {
+                    logger.debug("    Nothing to shift below {}.", block);
+                    continue;
+                }
 
                 // Don't copy the same row heights down again.  This would occur if
                 // the parent is horizontal and already past its first iteration, e.g.
@@ -1810,6 +1895,13 @@ public class SheetUtil
             {
                 Block toShift = blocksToShift.pop();
                 translateRight = shiftAmounts.pop();
+                // Nothing populated to the right, e.g. the block is at the right
+                // edge of the sheet.  Its copies will simply be appended.
+                if (toShift.getLeftColNum() > toShift.getRightColNum())
+                {
+                    logger.debug("    Nothing to shift right of {}.", block);
+                    continue;
+                }
 
                 // Don't copy the same column widths right again.  This would occur if
                 // the parent is vertical and already past its first iteration, e.g.
@@ -1844,16 +1936,30 @@ public class SheetUtil
     private static int getEmptyRowsAtBottom(Sheet sheet, int left, int right, int top, int bottom)
     {
         int emptyRows = 0;
+        // Rows past the last row on the sheet are empty without looking.
+        int lastRowNum = sheet.getLastRowNum();
+        if (bottom > lastRowNum && bottom >= top)
+        {
+            emptyRows = bottom - Math.max(lastRowNum, top - 1);
+            bottom = lastRowNum;
+        }
         for (int r = bottom; r >= top; r--)
         {
             boolean rowEmpty = true;
-            for (int c = left; c <= right; c++)
+            Row row = sheet.getRow(r);
+            if (row != null)
             {
-                if (!isCellImmaterial(sheet, r, c))
+                // Only look at the cells that exist in the row.
+                int start = Math.max(left, row.getFirstCellNum());
+                int end = Math.min(right, row.getLastCellNum() - 1);
+                for (int c = start; c <= end; c++)
                 {
-                    logger.trace("      gERAB: Row {} is not empty because of cell {}", r, c);
-                    rowEmpty = false;
-                    break;
+                    if (!isCellImmaterial(sheet, r, c))
+                    {
+                        logger.trace("      gERAB: Row {} is not empty because of cell {}", r, c);
+                        rowEmpty = false;
+                        break;
+                    }
                 }
             }
             if (rowEmpty)
@@ -1878,7 +1984,20 @@ public class SheetUtil
      */
     private static int getEmptyColumnsAtRight(Sheet sheet, int left, int right, int top, int bottom)
     {
+        // Columns past the last cell of every row are empty without looking.
+        int lastColNum = -1;
+        for (int r = top; r <= bottom; r++)
+        {
+            Row row = sheet.getRow(r);
+            if (row != null)
+                lastColNum = Math.max(lastColNum, row.getLastCellNum() - 1);
+        }
         int emptyColumns = 0;
+        if (right > lastColNum && right >= left)
+        {
+            emptyColumns = right - Math.max(lastColNum, left - 1);
+            right = lastColNum;
+        }
         for (int c = right; c >= left; c--)
         {
             boolean colEmpty = true;
@@ -1916,6 +2035,66 @@ public class SheetUtil
      * @return The newly copied <code>Block</code>.
      */
     public static Block copyBlock(Sheet sheet, TagContext tagContext, Block block, WorkbookContext context, int numBlocksAway)
+    {
+        return copyBlock(sheet, tagContext, block, context, numBlocksAway, context.getSequenceNbr(), numBlocksAway);
+    }
+
+    /**
+     * Copies an entire <code>Block</code> the given number of blocks away on
+     * the given <code>Sheet</code>, where the copy represents the given
+     * iteration number of the loop with the given sequence number.  This
+     * allows a <code>Block</code> that is itself a copy, e.g. the latest
+     * iteration of a loop, to be copied one block away as the next iteration,
+     * even after nested loops have advanced the sequence number.
+     *
+     * @param sheet         The <code>Sheet</code> on which to copy.
+     * @param tagContext    A <code>TagContext</code>.
+     * @param block         The <code>Block</code> to copy.
+     * @param context       The <code>WorkbookContext</code>.
+     * @param numBlocksAway The number of blocks (widths or lengths, depending
+     *                      on the direction of <code>block</code>), away to copy.
+     * @param seqNbr        The sequence number of the loop, used for the
+     *                      formula suffix.
+     * @param iterationNbr  The 0-based iteration number of the copy, used for
+     *                      the formula suffix and the new <code>Block</code>.
+     * @return The newly copied <code>Block</code>.
+     * @since 0.12.0
+     */
+    public static Block copyBlock(Sheet sheet, TagContext tagContext, Block block, WorkbookContext context,
+                                  int numBlocksAway, int seqNbr, int iterationNbr)
+    {
+        int size = (block.getDirection() == Block.Direction.HORIZONTAL) ?
+                block.getRightColNum() - block.getLeftColNum() + 1 :
+                block.getBottomRowNum() - block.getTopRowNum() + 1;
+        return copyBlockByOffset(sheet, tagContext, block, context, numBlocksAway * size, seqNbr, iterationNbr);
+    }
+
+    /**
+     * Copies an entire <code>Block</code> the given number of rows (if
+     * vertical) or columns (if horizontal) away on the given
+     * <code>Sheet</code>, where the copy represents the given iteration number
+     * of the loop with the given sequence number.  Unlike
+     * {@link #copyBlock(Sheet, TagContext, Block, WorkbookContext, int, int, int)},
+     * the offset needn't be a multiple of the <code>Block's</code> size, and
+     * it may be negative, e.g. to copy a <code>Block</code> back to right
+     * after an earlier iteration that has grown.  The copy must not overlap
+     * the <code>Block</code>.
+     *
+     * @param sheet         The <code>Sheet</code> on which to copy.
+     * @param tagContext    A <code>TagContext</code>.
+     * @param block         The <code>Block</code> to copy.
+     * @param context       The <code>WorkbookContext</code>.
+     * @param offset        The number of rows (if vertical) or columns (if
+     *                      horizontal) away to copy.
+     * @param seqNbr        The sequence number of the loop, used for the
+     *                      formula suffix.
+     * @param iterationNbr  The 0-based iteration number of the copy, used for
+     *                      the formula suffix and the new <code>Block</code>.
+     * @return The newly copied <code>Block</code>.
+     * @since 0.12.0
+     */
+    public static Block copyBlockByOffset(Sheet sheet, TagContext tagContext, Block block, WorkbookContext context,
+                                          int offset, int seqNbr, int iterationNbr)
     {
         int left = block.getLeftColNum();
         int right = block.getRightColNum();
@@ -1924,20 +2103,17 @@ public class SheetUtil
         Block parent = block.getParent();
         Block newBlock = null;
         String sheetName = sheet.getSheetName();
-        int seqNbr = context.getSequenceNbr();
         String currSuffix = tagContext.getFormulaSuffix();
-        String newSuffix = "[" + seqNbr + "," + numBlocksAway + "]";
-        Map<String, String> tagLocationsMap = context.getTagLocationsMap();
-        logger.trace("copyBlock: {}: {}, numBlocksAway={}", sheet.getSheetName(), block, numBlocksAway);
+        String newSuffix = "[" + seqNbr + "," + iterationNbr + "]";
+        logger.trace("copyBlock: {}: {}, offset={}, iterationNbr={}", sheet.getSheetName(), block, offset, iterationNbr);
+        boolean copying = offset != 0;
 
         // If copying down...
-        int height = block.getBottomRowNum() - block.getTopRowNum() + 1;
-        int translateDown = numBlocksAway * height;
+        int translateDown = offset;
         int newTop = top + translateDown;
         int newBottom = bottom + translateDown;
         // If copying right...
-        int width = block.getRightColNum() - block.getLeftColNum() + 1;
-        int translateRight = numBlocksAway * width;
+        int translateRight = offset;
         int newLeft = left + translateRight;
         int newRight = right + translateRight;
 
@@ -1964,18 +2140,9 @@ public class SheetUtil
                     Cell newCell = newRow.getCell(c);
                     if (newCell == null)
                         newCell = newRow.createCell(c);
-                    if (numBlocksAway > 0)
+                    if (copying)
                         copyCell(oldCell, newCell);
 
-                    String oldCellRef = getCellKey(oldCell);
-                    String newCellRef = getCellKey(newCell);
-                    String origCellRef = tagLocationsMap.get(oldCellRef);
-                    if (origCellRef != null)
-                    {
-                        tagLocationsMap.put(newCellRef, origCellRef);
-                        logger.debug("cB: Adding {} => {}", newCellRef, origCellRef);
-                    }
-
                     // Append "[loop,iter]" on formulas.
                     if (newCell.getCellType() == CellType.STRING)
                     {
@@ -1987,7 +2154,7 @@ public class SheetUtil
                             // If this is NOT the first iteration, then the copied
                             // text already has the previous iteration's suffix
                             // appended to it!  Remove it first.
-                            if (numBlocksAway > 0)
+                            if (copying)
                             {
                                 int idx = cellText.lastIndexOf("[");
                                 if (idx > -1)
@@ -2000,7 +2167,9 @@ public class SheetUtil
                 }
             }
 
-            if (numBlocksAway > 0)
+            context.getTagLocations().copyRange(sheetName, left, right, top, bottom, 0, translateDown);
+
+            if (copying)
             {
                 // Copy merged regions down.
                 shiftMergedRegionsInRange(tagContext, left, right,
@@ -2017,7 +2186,7 @@ public class SheetUtil
                 {
                     copyRowHeightsDown(sheet, top, bottom, translateDown);
                 }
-                newBlock = new Block(parent, left, right, newTop, newBottom, numBlocksAway);
+                newBlock = new Block(parent, left, right, newTop, newBottom, iterationNbr);
                 newBlock.setDirection(block.getDirection());
             }
             else
@@ -2045,18 +2214,9 @@ public class SheetUtil
                     Cell newCell = row.getCell(col + translateRight);
                     if (newCell == null)
                         newCell = row.createCell(col + translateRight);
-                    if (numBlocksAway > 0)
+                    if (copying)
                         copyCell(oldCell, newCell);
 
-                    String oldCellRef = getCellKey(oldCell);
-                    String newCellRef = getCellKey(newCell);
-                    String origCellRef = tagLocationsMap.get(oldCellRef);
-                    if (origCellRef != null)
-                    {
-                        tagLocationsMap.put(newCellRef, origCellRef);
-                        logger.debug("cB: Adding {} => {}", newCellRef, origCellRef);
-                    }
-
                     // Append proper "[loop,iter]" on formulas.
                     if (newCell.getCellType() == CellType.STRING)
                     {
@@ -2068,7 +2228,7 @@ public class SheetUtil
                             // If this is NOT the first iteration, then the copied
                             // text already has the previous iteration's suffix
                             // appended to it!  Remove it first.
-                            if (numBlocksAway > 0)
+                            if (copying)
                             {
                                 int idx = cellText.lastIndexOf("[");
                                 if (idx > -1)
@@ -2081,7 +2241,9 @@ public class SheetUtil
                 }
             }
 
-            if (numBlocksAway > 0)
+            context.getTagLocations().copyRange(sheetName, left, right, top, bottom, translateRight, 0);
+
+            if (copying)
             {
                 // Copy merged regions right.
                 shiftMergedRegionsInRange(tagContext, left, right, top, bottom, translateRight, 0, false, true);
@@ -2096,7 +2258,7 @@ public class SheetUtil
                 {
                     copyColumnWidthsRight(sheet, left, right, translateRight);
                 }
-                newBlock = new Block(parent, newLeft, newRight, top, bottom, numBlocksAway);
+                newBlock = new Block(parent, newLeft, newRight, top, bottom, iterationNbr);
                 newBlock.setDirection(block.getDirection());
             }
             else
@@ -2341,20 +2503,35 @@ public class SheetUtil
      * @since 0.5.0
      */
     public static String getColorHexString(Color color)
+    {
+        return String.format("%06x", getColorRgb(color));
+    }
+
+    /**
+     * Get the RGB value of the <code>Color</code>, packed into an
+     * <code>int</code> as <code>0xRRGGBB</code>.  This is the same value that
+     * {@link #getColorHexString(Color)} represents, without creating any
+     * strings.
+     *
+     * @param color A POI <code>Color</code>.
+     * @return The packed RGB value that represents the <code>Color</code>.
+     * @since 0.12.0
+     */
+    public static int getColorRgb(Color color)
     {
         if (color instanceof HSSFColor)
         {
             HSSFColor hssfColor = (HSSFColor) color;
-            return getHSSFColorHexString(hssfColor);
+            return getHSSFColorRgb(hssfColor);
         }
         else if (color instanceof XSSFColor)
         {
             XSSFColor xssfColor = (XSSFColor) color;
-            return getXSSFColorHexString(xssfColor);
+            return getXSSFColorRgb(xssfColor);
         }
         else if (color == null)
         {
-            return "000000";
+            return 0;
         }
         else
         {
@@ -2363,37 +2540,34 @@ public class SheetUtil
     }
 
     /**
-     * Get the hex string for a <code>HSSFColor</code>.  Moved from test code.
+     * Get the packed RGB value for a <code>HSSFColor</code>.
      *
      * @param hssfColor A <code>HSSFColor</code>.
-     * @return The hex string.
-     * @since 0.5.0
+     * @return The packed RGB value.
+     * @since 0.12.0
      */
-    private static String getHSSFColorHexString(HSSFColor hssfColor)
+    private static int getHSSFColorRgb(HSSFColor hssfColor)
     {
         short[] shorts = hssfColor.getTriplet();
-        StringBuilder hexString = new StringBuilder();
+        int rgb = 0;
         for (short s : shorts)
         {
-            String twoHex = Integer.toHexString(0x000000FF & s);
-            if (twoHex.length() == 1)
-                hexString.append('0');
-            hexString.append(twoHex);
+            rgb = (rgb << 8) | (0x000000FF & s);
         }
-        return hexString.toString();
+        return rgb;
     }
 
     /**
-     * Get the hex string for a <code>XSSFColor</code>.  Moved from test code.
+     * Get the packed RGB value for a <code>XSSFColor</code>.
      *
      * @param xssfColor A <code>XSSFColor</code>.
-     * @return The hex string.
-     * @since 0.5.0
+     * @return The packed RGB value.
+     * @since 0.12.0
      */
-    private static String getXSSFColorHexString(XSSFColor xssfColor)
+    private static int getXSSFColorRgb(XSSFColor xssfColor)
     {
         if (xssfColor == null)
-            return "000000";
+            return 0;
         byte[] bytes;
         // As of Apache POI 3.8, there are Bugs 51236 and 52079 about font
         // color where somehow black and white get switched.  It appears to
@@ -2419,24 +2593,17 @@ public class SheetUtil
             // Indexed Color - like HSSF
             HSSFColor hColor = ExcelColor.getHssfColorByIndex(xssfColor.getIndexed());
             if (hColor != null)
-                return getHSSFColorHexString(ExcelColor.getHssfColorByIndex(xssfColor.getIndexed()));
+                return getHSSFColorRgb(hColor);
             else
-                return "000000";
-        }
-        if (bytes.length == 4)
-        {
-            // Lose the alpha.
-            bytes = new byte[] {bytes[1], bytes[2], bytes[3]};
+                return 0;
         }
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes)
+        // Lose the alpha, if any.
+        int rgb = 0;
+        for (int i = Math.max(0, bytes.length - 3); i < bytes.length; i++)
         {
-            String twoHex = Integer.toHexString(0x000000FF & b);
-            if (twoHex.length() == 1)
-                hexString.append('0');
-            hexString.append(twoHex);
+            rgb = (rgb << 8) | (0x000000FF & bytes[i]);
         }
-        return hexString.toString();
+        return rgb;
     }
 
     /**
@@ -2721,7 +2888,6 @@ public class SheetUtil
 
         StringBuilder buf = new StringBuilder();
         WorkbookContext workbookContext = tag.getWorkbookContext();
-        Map<String, String> tagLocationsMap = workbookContext.getTagLocationsMap();
         do
         {
             TagContext tagContext = tag.getContext();
@@ -2729,8 +2895,9 @@ public class SheetUtil
             Block block = tagContext.getBlock();
             int row = block.getTopRowNum();
             int col = block.getLeftColNum();
-            String cellRef = new CellReference(sheet == null ? "DNE" : sheet.getSheetName(), row, col, false, false).formatAsString();
-            String origCellRef = tagLocationsMap.get(cellRef);
+            String sheetName = (sheet == null) ? "DNE" : sheet.getSheetName();
+            String cellRef = new CellReference(sheetName, row, col, false, false).formatAsString();
+            String origCellRef = workbookContext.getTagLocations().get(sheetName, row, col);
             buf.append(System.getProperty("line.separator"));
             buf.append("  inside tag \"");
             buf.append(tag.getName());
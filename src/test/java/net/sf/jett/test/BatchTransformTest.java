@@ -0,0 +1,288 @@
+package net.sf.jett.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.transform.BatchResult;
+import net.sf.jett.transform.CompiledTemplate;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that a batch of bean maps transformed from one
+ * <code>CompiledTemplate</code> in parallel reports its items in order, never
+ * has more than the maximum number of items in flight, records the failures
+ * of items without aborting the batch, and propagates the failure of its
+ * input.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class BatchTransformTest
+{
+    private static final int NUM_THREADS = 4;
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final int NUM_ITEMS = 12;
+
+    private ExecutorService myExecutor;
+    private CompiledTemplate myTemplate;
+
+    /**
+     * Creates the thread pool and a template that writes each item's value.
+     * @throws IOException If the template can't be created.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        myExecutor = Executors.newFixedThreadPool(NUM_THREADS);
+        try (Workbook workbook = new XSSFWorkbook())
+        {
+            workbook.createSheet("Batch").createRow(0).createCell(0).setCellValue("${value}");
+            myTemplate = new CompiledTemplate(workbook);
+        }
+    }
+
+    /**
+     * Shuts down the thread pool.
+     */
+    @After
+    public void tearDown()
+    {
+        myExecutor.shutdownNow();
+    }
+
+    /**
+     * Tests that items are reported in order of index, and that each item's
+     * output comes from its own beans, even though later items finish first.
+     * @throws IOException If an output can't be read.
+     */
+    @Test
+    public void testOrdering() throws IOException
+    {
+        final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[NUM_ITEMS];
+        BatchResult result = new ExcelTransformer().transformBatch(myTemplate, createBeansList().iterator(),
+                (index, beans) -> {
+                    // Earlier items take longer.
+                    sleep(5 * (NUM_THREADS - index % NUM_THREADS));
+                    outputs[index] = new ByteArrayOutputStream();
+                    return outputs[index];
+                }, myExecutor, NUM_THREADS);
+
+        assertEquals(NUM_ITEMS, result.getNumSucceeded());
+        List<BatchResult.Item> items = result.getItems();
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            assertEquals(i, items.get(i).getIndex());
+            try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(outputs[i].toByteArray())))
+            {
+                assertEquals("Item " + i, TestUtility.getStringCellValue(workbook.getSheetAt(0), 0, 0));
+            }
+        }
+    }
+
+    /**
+     * Tests that no more than the maximum number of items are in flight, and
+     * that the input isn't advanced while that many items are in flight.
+     */
+    @Test
+    public void testInFlightBound()
+    {
+        final AtomicInteger numInFlight = new AtomicInteger();
+        final AtomicInteger maxNumInFlight = new AtomicInteger();
+        final AtomicInteger numFinished = new AtomicInteger();
+        final AtomicInteger maxNumAheadOfFinished = new AtomicInteger();
+        final Iterator<Map<String, Object>> beansList = createBeansList().iterator();
+        Iterator<Map<String, Object>> beansIterator = new Iterator<Map<String, Object>>()
+        {
+            private int myNumTaken = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return beansList.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next()
+            {
+                myNumTaken++;
+                maxNumAheadOfFinished.accumulateAndGet(myNumTaken - numFinished.get(), Math::max);
+                return beansList.next();
+            }
+        };
+
+        BatchResult result = new ExcelTransformer().transformBatch(myTemplate, beansIterator,
+                (index, beans) -> {
+                    maxNumInFlight.accumulateAndGet(numInFlight.incrementAndGet(), Math::max);
+                    sleep(20);
+                    return new ByteArrayOutputStream()
+                    {
+                        @Override
+                        public void close()
+                        {
+                            numInFlight.decrementAndGet();
+                            numFinished.incrementAndGet();
+                        }
+                    };
+                }, myExecutor, MAX_IN_FLIGHT);
+
+        assertEquals(NUM_ITEMS, result.getNumSucceeded());
+        assertEquals(MAX_IN_FLIGHT, maxNumInFlight.get());
+        // The item being taken counts against the bound.
+        assertEquals(MAX_IN_FLIGHT, maxNumAheadOfFinished.get());
+    }
+
+    /**
+     * Tests that failing items, whether they fail to get an output or to
+     * transform, are recorded without aborting the batch.
+     */
+    @Test
+    public void testItemFailures()
+    {
+        List<Map<String, Object>> beansList = createBeansList();
+        beansList.get(7).put("value", new Object()
+        {
+            @Override
+            public String toString()
+            {
+                throw new IllegalStateException("Expected transform failure");
+            }
+        });
+
+        BatchResult result = new ExcelTransformer().transformBatch(myTemplate, beansList.iterator(),
+                (index, beans) -> {
+                    if (index == 3)
+                        throw new IOException("Expected failure");
+                    return new ByteArrayOutputStream();
+                }, myExecutor, MAX_IN_FLIGHT);
+
+        assertEquals(NUM_ITEMS, result.getItems().size());
+        assertEquals(NUM_ITEMS - 2, result.getNumSucceeded());
+        List<BatchResult.Item> failures = result.getFailures();
+        assertEquals(2, failures.size());
+        assertEquals(3, failures.get(0).getIndex());
+        assertEquals("Expected failure", failures.get(0).getFailure().getMessage());
+        assertNull(failures.get(0).getCellStyleMetrics());
+        assertEquals(7, failures.get(1).getIndex());
+        assertNotNull(failures.get(1).getFailure());
+        assertNull(failures.get(1).getCellStyleMetrics());
+        assertNotNull(result.getItems().get(0).getCellStyleMetrics());
+    }
+
+    /**
+     * Tests that an exception from the input stops the batch, and is thrown
+     * after the items already started have finished.
+     */
+    @Test
+    public void testInputFailure()
+    {
+        final AtomicInteger numFinished = new AtomicInteger();
+        final Iterator<Map<String, Object>> beansList = createBeansList().iterator();
+        Iterator<Map<String, Object>> beansIterator = new Iterator<Map<String, Object>>()
+        {
+            private int myNumTaken = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return beansList.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next()
+            {
+                if (myNumTaken++ == 5)
+                    throw new IllegalStateException("Expected failure");
+                return beansList.next();
+            }
+        };
+
+        try
+        {
+            new ExcelTransformer().transformBatch(myTemplate, beansIterator,
+                    (index, beans) -> {
+                        sleep(20);
+                        return new ByteArrayOutputStream()
+                        {
+                            @Override
+                            public void close()
+                            {
+                                numFinished.incrementAndGet();
+                            }
+                        };
+                    }, myExecutor, MAX_IN_FLIGHT);
+            fail("Expected IllegalStateException!");
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("Expected failure", e.getMessage());
+            assertEquals(5, numFinished.get());
+        }
+    }
+
+    /**
+     * Tests that the <code>Stream</code> of beans is closed.
+     */
+    @Test
+    public void testStreamClosed()
+    {
+        final AtomicBoolean closed = new AtomicBoolean();
+        Stream<Map<String, Object>> beansStream = createBeansList().stream().onClose(() -> closed.set(true));
+
+        BatchResult result = new ExcelTransformer().transformBatch(myTemplate, beansStream,
+                (index, beans) -> new ByteArrayOutputStream(), myExecutor, MAX_IN_FLIGHT);
+
+        assertEquals(NUM_ITEMS, result.getNumSucceeded());
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Creates a beans map for each item, with the value "Item <i>n</i>".
+     * @return A <code>List</code> of beans maps.
+     */
+    private static List<Map<String, Object>> createBeansList()
+    {
+        List<Map<String, Object>> beansList = new ArrayList<>();
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            Map<String, Object> beans = new HashMap<>();
+            beans.put("value", "Item " + i);
+            beansList.add(beans);
+        }
+        return beansList;
+    }
+
+    /**
+     * Sleeps for the given number of milliseconds.
+     * @param millis The number of milliseconds.
+     */
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.formula.CellRef;
+import net.sf.jett.formula.CellRefIndex;
+
+/**
+ * This JUnit Test class tests that <code>CellRefIndex</code> finds the cell
+ * references in a range on a sheet.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class CellRefIndexTest
+{
+    /**
+     * Tests finding implicit and explicit cell references by sheet and range.
+     */
+    @Test
+    public void testFind()
+    {
+        Map<String, List<CellRef>> cellRefMap = new HashMap<>();
+        CellRef implicit = new CellRef(1, 2, false, false);
+        cellRefMap.put("i/Template!C2", list(implicit));
+        CellRef explicit = new CellRef("Result", 3, 2, false, false);
+        cellRefMap.put("e/Template!C4", list(explicit));
+        CellRef other = new CellRef("Other", 1, 2, false, false);
+        cellRefMap.put("e/Other!C2", list(other));
+        CellRefIndex index = new CellRefIndex(cellRefMap);
+
+        // Implicit references are found on the template sheet, or on a sheet
+        // created from it.
+        assertEquals(1, index.find("Template", null, 0, 5, 0, 5).size());
+        List<CellRefIndex.Entry> found = index.find("Result", "Template", 0, 5, 0, 5);
+        assertEquals(2, found.size());
+        assertEquals(0, index.find("Result", null, 0, 5, 0, 2).size());
+
+        // Only references in range are found.
+        found = index.find("Result", "Template", 2, 2, 2, 3);
+        assertEquals(1, found.size());
+        assertSame(explicit, found.get(0).getCellRef());
+        assertEquals("e/Template!C4", found.get(0).getCellKey());
+        assertEquals(0, index.find("Other", null, 0, 5, 2, 5).size());
+    }
+
+    /**
+     * Tests that removed and added cell references are reflected.
+     */
+    @Test
+    public void testAddAndRemove()
+    {
+        Map<String, List<CellRef>> cellRefMap = new HashMap<>();
+        List<CellRef> cellRefs = list(new CellRef(1, 2, false, false));
+        cellRefMap.put("i/Sheet!C2[0,1]", cellRefs);
+        CellRefIndex index = new CellRefIndex(cellRefMap);
+
+        List<CellRefIndex.Entry> found = index.find("Sheet", null, 2, 2, 1, 1);
+        assertEquals(1, found.size());
+        assertEquals("[0,1]", found.get(0).getKeySuffix());
+        index.remove(found.get(0));
+        assertTrue(index.find("Sheet", null, 2, 2, 1, 1).isEmpty());
+
+        CellRef moved = new CellRef(5, 2, false, false);
+        cellRefs.add(moved);
+        index.add("i/Sheet!C2[0,1]", cellRefs, moved);
+        found = index.find("Sheet", null, 0, 10, 0, 10);
+        assertEquals(1, found.size());
+        assertSame(moved, found.get(0).getCellRef());
+        assertSame(cellRefs, found.get(0).getCellRefs());
+    }
+
+    /**
+     * Creates a modifiable <code>List</code> of the given <code>CellRef</code>.
+     * @param cellRef The <code>CellRef</code>.
+     * @return A <code>List</code>.
+     */
+    private static List<CellRef> list(CellRef cellRef)
+    {
+        List<CellRef> cellRefs = new ArrayList<>();
+        cellRefs.add(cellRef);
+        return cellRefs;
+    }
+}
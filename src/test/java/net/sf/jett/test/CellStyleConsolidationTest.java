@@ -0,0 +1,245 @@
+package net.sf.jett.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.exception.TransformException;
+import net.sf.jett.model.CellStyleCache;
+import net.sf.jett.model.CellStyleMetrics;
+import net.sf.jett.transform.BatchResult;
+import net.sf.jett.transform.CompiledTemplate;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that <code>CellStyleCache</code> tracks the
+ * cell style budget and consolidates equivalent cell styles.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class CellStyleConsolidationTest
+{
+    /**
+     * Tests that cells with equivalent .xlsx cell styles are remapped to one
+     * canonical cell style.
+     */
+    @Test
+    public void testXlsx()
+    {
+        Workbook workbook = new XSSFWorkbook();
+        Row row = createCells(workbook);
+        CellStyleCache csCache = new CellStyleCache(workbook);
+        assertEquals(64000, csCache.getMetrics().getMaxCellStyles());
+
+        assertEquals(1, csCache.consolidate());
+        assertEquals(row.getCell(0).getCellStyle().getIndex(), row.getCell(1).getCellStyle().getIndex());
+        assertEquals(HorizontalAlignment.RIGHT, row.getCell(0).getCellStyle().getAlignment());
+
+        CellStyleMetrics metrics = csCache.getMetrics();
+        assertTrue(metrics.isConsolidated());
+        assertEquals(1, metrics.getNumCellsRemapped());
+        assertEquals(3, metrics.getPeakNumCellStyles());
+    }
+
+    /**
+     * Tests that duplicate and unused .xls cell styles are dropped, and that
+     * created cell styles are counted.
+     */
+    @Test
+    public void testXls()
+    {
+        Workbook workbook = new HSSFWorkbook();
+        Row row = createCells(workbook);
+        CellStyleCache csCache = new CellStyleCache(workbook);
+        CellStyle created = workbook.createCellStyle();
+        created.setAlignment(HorizontalAlignment.CENTER);
+        csCache.cacheCellStyle(created);
+        int before = workbook.getNumCellStyles();
+
+        assertEquals(1, csCache.consolidate());
+        CellStyleMetrics metrics = csCache.getMetrics();
+        assertEquals(1, metrics.getNumCreated());
+        assertEquals(1, metrics.getNumCellsRemapped());
+        assertEquals(before, metrics.getPeakNumCellStyles());
+        // The duplicate and the unused cell style are gone.
+        assertEquals(before - 2, metrics.getNumCellStyles());
+        assertEquals(HorizontalAlignment.RIGHT, row.getCell(0).getCellStyle().getAlignment());
+        assertEquals(HorizontalAlignment.RIGHT, row.getCell(1).getCellStyle().getAlignment());
+        assertNotNull(csCache.findCellStyleWithFont(row.getCell(0).getCellStyle(), workbook.getFontAt(0)));
+    }
+
+    /**
+     * Tests that creating a cell style fails fast, with a clear message, once
+     * the workbook has the maximum number of cell styles.
+     */
+    @Test
+    public void testBudgetExhausted()
+    {
+        Workbook workbook = new HSSFWorkbook();
+        CellStyleCache csCache = new CellStyleCache(workbook);
+        int max = csCache.getMetrics().getMaxCellStyles();
+        while (workbook.getNumCellStyles() < max)
+        {
+            csCache.ensureRoomForCellStyle();
+            csCache.cacheCellStyle(workbook.createCellStyle());
+        }
+        try
+        {
+            csCache.ensureRoomForCellStyle();
+            fail("Expected TransformException!");
+        }
+        catch (TransformException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("the maximum for its format"));
+        }
+    }
+
+    /**
+     * Tests that each thread sees the cell style metrics of its own most
+     * recent transformation.
+     * @throws Exception If a transformation fails.
+     */
+    @Test
+    public void testMetricsPerThread() throws Exception
+    {
+        final CompiledTemplate template = createTemplate();
+        final ExcelTransformer transformer = new ExcelTransformer();
+        transformer.transform(template, createBeans("alignment: center"));
+        assertEquals(1, transformer.getCellStyleMetrics().getNumCreated());
+
+        final AtomicReference<CellStyleMetrics> before = new AtomicReference<>();
+        final AtomicReference<CellStyleMetrics> after = new AtomicReference<>();
+        Thread thread = new Thread(() ->
+        {
+            before.set(transformer.getCellStyleMetrics());
+            try
+            {
+                transformer.transform(template, createBeans("alignment: center", "alignment: right"));
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+            after.set(transformer.getCellStyleMetrics());
+        });
+        thread.start();
+        thread.join();
+
+        assertNull(before.get());
+        assertEquals(2, after.get().getNumCreated());
+        assertEquals(1, transformer.getCellStyleMetrics().getNumCreated());
+    }
+
+    /**
+     * Tests that each item of a batch reports the cell style metrics of its
+     * own transformation.
+     * @throws Exception If the template can't be created.
+     */
+    @Test
+    public void testMetricsPerBatchItem() throws Exception
+    {
+        List<Map<String, Object>> beansList = new ArrayList<>();
+        beansList.add(createBeans("alignment: center"));
+        beansList.add(createBeans("alignment: center", "alignment: right", "alignment: left"));
+        beansList.add(createBeans("alignment: center", "alignment: right"));
+        BatchResult result = new ExcelTransformer().transformBatch(createTemplate(), beansList.iterator(),
+                (index, beans) -> new ByteArrayOutputStream(), 3);
+
+        List<BatchResult.Item> items = result.getItems();
+        assertEquals(3, items.size());
+        assertEquals(1, items.get(0).getCellStyleMetrics().getNumCreated());
+        assertEquals(3, items.get(1).getCellStyleMetrics().getNumCreated());
+        assertEquals(2, items.get(2).getCellStyleMetrics().getNumCreated());
+    }
+
+    /**
+     * Tests that repeated style tags applying an equal style to cells with the
+     * same source cell style derive one cell style, which all of the cells
+     * share, and consult the cell style cache only once.
+     * @throws Exception If the template can't be created or transformed.
+     */
+    @Test
+    public void testDerivedCellStyleReused() throws Exception
+    {
+        ExcelTransformer transformer = new ExcelTransformer();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        transformer.transform(createTemplate(),
+                createBeans("alignment: center", "alignment: center", "alignment: center"), os);
+
+        CellStyleMetrics metrics = transformer.getCellStyleMetrics();
+        assertEquals(1, metrics.getNumCreated());
+        assertEquals(1, metrics.getNumMisses());
+        assertEquals(0, metrics.getNumHits());
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(os.toByteArray())))
+        {
+            Sheet sheet = workbook.getSheetAt(0);
+            CellStyle cs = TestUtility.getCellStyle(sheet, 0, 0);
+            assertEquals(HorizontalAlignment.CENTER, cs.getAlignment());
+            assertEquals(cs.getIndex(), TestUtility.getCellStyle(sheet, 1, 0).getIndex());
+            assertEquals(cs.getIndex(), TestUtility.getCellStyle(sheet, 2, 0).getIndex());
+        }
+    }
+
+    /**
+     * Creates a template that styles one cell per item with the item's style.
+     * @return The <code>CompiledTemplate</code>.
+     * @throws Exception If the template can't be created.
+     */
+    private static CompiledTemplate createTemplate() throws Exception
+    {
+        try (Workbook workbook = new XSSFWorkbook())
+        {
+            workbook.createSheet("Styles").createRow(0).createCell(0).setCellValue(
+                    "<jt:forEach items=\"${styles}\" var=\"style\"><jt:style style=\"${style}\">${style}</jt:style></jt:forEach>");
+            return new CompiledTemplate(workbook);
+        }
+    }
+
+    /**
+     * Creates beans with the given styles, one per item.
+     * @param styles The style strings.
+     * @return The beans <code>Map</code>.
+     */
+    private static Map<String, Object> createBeans(String... styles)
+    {
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("styles", Arrays.asList(styles));
+        return beans;
+    }
+
+    /**
+     * Creates two cells with equivalent, but distinct, cell styles.
+     * @param workbook The <code>Workbook</code>.
+     * @return The <code>Row</code> with the cells.
+     */
+    private static Row createCells(Workbook workbook)
+    {
+        Row row = workbook.createSheet("Styles").createRow(0);
+        for (int c = 0; c < 2; c++)
+        {
+            CellStyle cs = workbook.createCellStyle();
+            cs.setAlignment(HorizontalAlignment.RIGHT);
+            Cell cell = row.createCell(c);
+            cell.setCellValue(c);
+            cell.setCellStyle(cs);
+        }
+        return row;
+    }
+}
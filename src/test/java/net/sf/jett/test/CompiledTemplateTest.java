@@ -0,0 +1,220 @@
+package net.sf.jett.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.formula.Formula;
+import net.sf.jett.model.TagLocations;
+import net.sf.jett.parser.ParsedTag;
+import net.sf.jett.transform.CompiledTemplate;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that a <code>CompiledTemplate</code> finds
+ * the JETT formulas, tag locations, tags, and expressions of its template
+ * once, and that it can be transformed many times, from any source, without
+ * any transformation affecting the template or the other transformations.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class CompiledTemplateTest
+{
+    private static final String LOOP_TEXT = "<jt:forEach items=\"${items}\" var=\"item\">${item}</jt:forEach>";
+
+    /**
+     * Tests the results of the scan of an .xls template.
+     * @throws IOException If the template can't be created.
+     */
+    @Test
+    public void testScanXls() throws IOException
+    {
+        checkScan(compile(new HSSFWorkbook()));
+    }
+
+    /**
+     * Tests the results of the scan of an .xlsx template.
+     * @throws IOException If the template can't be created.
+     */
+    @Test
+    public void testScanXlsx() throws IOException
+    {
+        checkScan(compile(new XSSFWorkbook()));
+    }
+
+    /**
+     * Tests transforming an .xls template more than once.
+     * @throws IOException If the template can't be created or transformed.
+     */
+    @Test
+    public void testReuseXls() throws IOException
+    {
+        checkReuse(compile(new HSSFWorkbook()));
+    }
+
+    /**
+     * Tests transforming an .xlsx template more than once.
+     * @throws IOException If the template can't be created or transformed.
+     */
+    @Test
+    public void testReuseXlsx() throws IOException
+    {
+        checkReuse(compile(new XSSFWorkbook()));
+    }
+
+    /**
+     * Tests that a template read from an <code>InputStream</code> is
+     * transformed the same way, and that changes to a template
+     * <code>Workbook</code> after it's scanned don't affect the
+     * <code>CompiledTemplate</code>.
+     * @throws IOException If the template can't be created or transformed.
+     */
+    @Test
+    public void testSources() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CompiledTemplate fromWorkbook;
+        try (Workbook workbook = new XSSFWorkbook())
+        {
+            createTemplate(workbook);
+            workbook.write(os);
+            fromWorkbook = new CompiledTemplate(workbook);
+            workbook.getSheetAt(0).getRow(0).getCell(0).setCellValue("Changed");
+        }
+        CompiledTemplate fromStream = new CompiledTemplate(new ByteArrayInputStream(os.toByteArray()));
+
+        checkReuse(fromWorkbook);
+        checkReuse(fromStream);
+        assertEquals(fromWorkbook.getFormulaMap().keySet(), fromStream.getFormulaMap().keySet());
+    }
+
+    /**
+     * Checks that the formula and the tag of the template were found, and
+     * that the results of the scan can't be changed.
+     * @param template The <code>CompiledTemplate</code>.
+     */
+    private void checkScan(CompiledTemplate template)
+    {
+        Map<String, Formula> formulaMap = template.getFormulaMap();
+        assertEquals(Collections.singleton("Template!$[SUM(B2)]"), formulaMap.keySet());
+        try
+        {
+            formulaMap.clear();
+            fail("Expected UnsupportedOperationException!");
+        }
+        catch (UnsupportedOperationException expected) {}
+
+        TagLocations tagLocations = template.getTagLocations();
+        assertEquals(1, tagLocations.size());
+        assertEquals("Template!B2", tagLocations.get("Template", 1, 1));
+        assertTrue(tagLocations.isReadOnly());
+        try
+        {
+            tagLocations.shiftRange("Template", 0, 1, 0, 1, 0, 1);
+            fail("Expected UnsupportedOperationException!");
+        }
+        catch (UnsupportedOperationException expected) {}
+        // A copy may be modified.
+        TagLocations copy = new TagLocations(tagLocations);
+        copy.shiftRange("Template", 0, 1, 0, 1, 0, 1);
+        assertEquals("Template!B2", copy.get("Template", 2, 1));
+        assertEquals("Template!B2", tagLocations.get("Template", 1, 1));
+
+        // The loop cell, and what's left of it as its tags are removed.
+        Map<String, ParsedTag> parsedTags = template.getParsedTags();
+        assertTrue(parsedTags.containsKey(LOOP_TEXT));
+        assertTrue(parsedTags.containsKey("${item}</jt:forEach>"));
+        assertTrue(parsedTags.containsKey("${item}"));
+        assertTrue(parsedTags.containsKey("${title}"));
+        try
+        {
+            parsedTags.clear();
+            fail("Expected UnsupportedOperationException!");
+        }
+        catch (UnsupportedOperationException expected) {}
+
+        // Texts that aren't tags, and attribute values.
+        List<String> templateTexts = template.getTemplateTexts();
+        assertTrue(templateTexts.containsAll(Arrays.asList("${title}", "${items}", "item", "${item}")));
+        assertFalse(templateTexts.contains(LOOP_TEXT));
+    }
+
+    /**
+     * Transforms the given template with different beans, in an order in
+     * which a later transformation has fewer items, and checks that each
+     * result reflects only its own beans.
+     * @param template The <code>CompiledTemplate</code>.
+     * @throws IOException If a transformation fails.
+     */
+    private void checkReuse(CompiledTemplate template) throws IOException
+    {
+        ExcelTransformer transformer = new ExcelTransformer();
+        List<List<Integer>> itemsLists = Arrays.asList(
+                Arrays.asList(1, 2, 3), Arrays.asList(10), Arrays.asList(100, 200));
+        for (List<Integer> items : itemsLists)
+        {
+            Map<String, Object> beans = new HashMap<>();
+            beans.put("title", "Items: " + items.size());
+            beans.put("items", items);
+            try (Workbook workbook = transformer.transform(template, beans))
+            {
+                Sheet sheet = workbook.getSheetAt(0);
+                assertEquals("Items: " + items.size(), TestUtility.getStringCellValue(sheet, 0, 0));
+                for (int i = 0; i < items.size(); i++)
+                {
+                    assertEquals(items.get(i), TestUtility.getNumericCellValue(sheet, i + 1, 1), 0);
+                }
+                int total = items.size() + 1;
+                String range = (items.size() == 1) ? "B2" : "B2:B" + total;
+                assertEquals("SUM(" + range + ")", TestUtility.getFormulaCellValue(sheet, total, 1));
+                assertEquals(total, sheet.getLastRowNum());
+            }
+        }
+        // The template itself is still untransformed.
+        try (Workbook workbook = template.createWorkbook())
+        {
+            assertEquals("${title}", TestUtility.getStringCellValue(workbook.getSheetAt(0), 0, 0));
+        }
+    }
+
+    /**
+     * Creates the template in the given <code>Workbook</code>, then scans it.
+     * @param workbook An empty <code>Workbook</code>, which is closed.
+     * @return The <code>CompiledTemplate</code>.
+     * @throws IOException If the template can't be created.
+     */
+    private static CompiledTemplate compile(Workbook workbook) throws IOException
+    {
+        try (Workbook template = workbook)
+        {
+            createTemplate(template);
+            return new CompiledTemplate(template);
+        }
+    }
+
+    /**
+     * Creates a template with a title, a loop over "items", and a JETT
+     * formula that sums the items below the loop.
+     * @param workbook An empty <code>Workbook</code>.
+     */
+    private static void createTemplate(Workbook workbook)
+    {
+        Sheet sheet = workbook.createSheet("Template");
+        sheet.createRow(0).createCell(0).setCellValue("${title}");
+        sheet.createRow(1).createCell(1).setCellValue(LOOP_TEXT);
+        sheet.createRow(2).createCell(1).setCellValue("$[SUM(B2)]");
+    }
+}
@@ -0,0 +1,201 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.test.model.Employee;
+import net.sf.jett.transform.CompiledTemplate;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that one <code>ExcelTransformer</code> can
+ * transform the same template on many threads at once, when implicit
+ * collections processing depends on each thread's own beans.  Some threads
+ * expose a <code>List</code> of employees and others a single employee under
+ * the same name, so a cached decision about whether an expression refers to
+ * a collection must not leak from one transformation to another.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ConcurrentTransformTest
+{
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_TRANSFORMS = 32;
+
+    /**
+     * Tests concurrent transformations of an .xls template.
+     * @throws Exception If a transformation fails.
+     */
+    @Test
+    public void testXls() throws Exception
+    {
+        concurrentTest(new HSSFWorkbook());
+    }
+
+    /**
+     * Tests concurrent transformations of an .xlsx template.
+     * @throws Exception If a transformation fails.
+     */
+    @Test
+    public void testXlsx() throws Exception
+    {
+        concurrentTest(new XSSFWorkbook());
+    }
+
+    /**
+     * Transforms a template that uses implicit collections processing
+     * concurrently with one shared <code>ExcelTransformer</code>, giving each
+     * transformation different beans, and checks each resultant
+     * <code>Workbook</code> against its own beans.
+     * @param template An empty <code>Workbook</code> in which to create the
+     *    template.
+     * @throws Exception If a transformation fails.
+     */
+    private void concurrentTest(Workbook template) throws Exception
+    {
+        final CompiledTemplate compiled;
+        try (Workbook workbook = template)
+        {
+            createTemplate(workbook);
+            compiled = new CompiledTemplate(workbook);
+        }
+        final ExcelTransformer transformer = new ExcelTransformer();
+        transformer.setStrict(true);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < NUM_TRANSFORMS; i++)
+            {
+                final int transform = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try (Workbook workbook = transformer.transform(compiled, createBeans(transform)))
+                    {
+                        check(workbook, transform);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a template whose first row refers to the properties of the
+     * "employees" bean, with a footer below it.
+     * @param workbook The <code>Workbook</code> in which to create the
+     *    template.
+     */
+    private static void createTemplate(Workbook workbook)
+    {
+        Sheet sheet = workbook.createSheet("Employees");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("${employees.firstName}");
+        row.createCell(1).setCellValue("${employees.salary}");
+        sheet.createRow(1).createCell(0).setCellValue("End of ${label}");
+    }
+
+    /**
+     * Creates the beans for the given transformation.  Even transformations
+     * get a <code>List</code> of employees whose size depends on the
+     * transformation, and odd transformations get a single employee.
+     * @param transform The number of the transformation.
+     * @return The beans <code>Map</code>.
+     */
+    private static Map<String, Object> createBeans(int transform)
+    {
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("label", "Transform " + transform);
+        if (transform % 2 == 0)
+        {
+            List<Employee> employees = new ArrayList<>();
+            for (int j = 0; j < getNumEmployees(transform); j++)
+            {
+                employees.add(createEmployee(transform, j));
+            }
+            beans.put("employees", employees);
+        }
+        else
+        {
+            beans.put("employees", createEmployee(transform, 0));
+        }
+        return beans;
+    }
+
+    /**
+     * Returns the number of employees for the given transformation.
+     * @param transform The number of the transformation.
+     * @return The number of employees.
+     */
+    private static int getNumEmployees(int transform)
+    {
+        return (transform % 2 == 0) ? transform % 5 + 2 : 1;
+    }
+
+    /**
+     * Creates an employee whose properties identify the given transformation.
+     * @param transform The number of the transformation.
+     * @param index The index of the employee.
+     * @return An <code>Employee</code>.
+     */
+    private static Employee createEmployee(int transform, int index)
+    {
+        Employee employee = new Employee();
+        employee.setFirstName("Employee " + transform + "-" + index);
+        employee.setSalary(1000 * transform + index);
+        return employee;
+    }
+
+    /**
+     * Checks that the given resultant <code>Workbook</code> contains exactly
+     * the employees of the given transformation, followed by the footer.
+     * @param workbook The resultant <code>Workbook</code>.
+     * @param transform The number of the transformation.
+     */
+    private static void check(Workbook workbook, int transform)
+    {
+        Sheet sheet = workbook.getSheetAt(0);
+        int numEmployees = getNumEmployees(transform);
+        for (int j = 0; j < numEmployees; j++)
+        {
+            assertEquals("Employee " + transform + "-" + j, TestUtility.getStringCellValue(sheet, j, 0));
+            assertEquals(1000 * transform + j, TestUtility.getNumericCellValue(sheet, j, 1), 0);
+        }
+        assertEquals("End of Transform " + transform, TestUtility.getStringCellValue(sheet, numEmployees, 0));
+        assertEquals(numEmployees, sheet.getLastRowNum());
+    }
+}
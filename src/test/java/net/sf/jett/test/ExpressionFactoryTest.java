@@ -0,0 +1,251 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlExpression;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.exception.ParseException;
+import net.sf.jett.expression.Expression;
+import net.sf.jett.expression.ExpressionFactory;
+import net.sf.jett.model.WorkbookContext;
+
+/**
+ * This JUnit Test class tests that an <code>ExpressionFactory</code> caches
+ * the work that doesn't depend on the beans, so that text seen before isn't
+ * compiled or parsed again, while different texts are never confused.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ExpressionFactoryTest
+{
+    /**
+     * Tests that evaluating the same text again, even with other beans,
+     * compiles nothing, and that each distinct text is compiled separately.
+     */
+    @Test
+    public void testInterpolationCache()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        assertEquals("Hello Alice!", Expression.evaluateString("Hello ${name}!", factory, createBeans("Alice")));
+        assertEquals(1, factory.getCompiled().size());
+        assertEquals("Hello Bob!", Expression.evaluateString("Hello ${name}!", factory, createBeans("Bob")));
+        assertEquals(1, factory.getCompiled().size());
+
+        // Different texts with the same expression don't share results.
+        assertEquals("Bye Bob!", Expression.evaluateString("Bye ${name}!", factory, createBeans("Bob")));
+        assertEquals("Bob", Expression.evaluateString("${name}", factory, createBeans("Bob")));
+        assertEquals(3, factory.getCompiled().size());
+        assertEquals("Hi Carol and Carol",
+                Expression.evaluateString("Hi ${name} and ${name}", factory, createBeans("Carol")));
+        assertEquals(5, factory.getCompiled().size());
+        assertEquals("Hello Dave!", Expression.evaluateString("Hello ${name}!", factory, createBeans("Dave")));
+        assertEquals(5, factory.getCompiled().size());
+    }
+
+    /**
+     * Tests that a configuration change discards the cache, so that text is
+     * compiled again with the new configuration.
+     */
+    @Test
+    public void testInterpolationCacheReset()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        Expression.evaluateString("Hello ${name}!", factory, createBeans("Alice"));
+        factory.setCacheSize(64);
+        assertEquals("Hello Bob!", Expression.evaluateString("Hello ${name}!", factory, createBeans("Bob")));
+        assertEquals(2, factory.getCompiled().size());
+    }
+
+    /**
+     * Tests that the cache is bounded, and that text evicted from it is
+     * compiled again when seen again.
+     */
+    @Test
+    public void testInterpolationCacheBounded()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        factory.setCacheSize(1);
+        Map<String, Object> beans = createBeans("Alice");
+        int numTexts = ExpressionFactory.INTERPOLATION_CACHE_FACTOR + 1;
+        for (int i = 0; i < numTexts; i++)
+        {
+            assertEquals(i + " Alice", Expression.evaluateString(i + " ${name}", factory, beans));
+        }
+        assertEquals(numTexts, factory.getCompiled().size());
+        assertEquals("0 Alice", Expression.evaluateString("0 ${name}", factory, beans));
+        assertEquals(numTexts + 1, factory.getCompiled().size());
+    }
+
+    /**
+     * Tests that template texts aren't pushed out by other texts, that adding
+     * them again doesn't split them again, and that they are bounded like
+     * other texts.
+     */
+    @Test
+    public void testTemplateTextsBounded()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        factory.setCacheSize(1);
+        Map<String, Object> beans = createBeans("Alice");
+        List<String> templateTexts = Collections.singletonList("Template ${name}");
+        factory.addTemplateTexts(templateTexts);
+        assertEquals("Template Alice", Expression.evaluateString("Template ${name}", factory, beans));
+        int numTexts = ExpressionFactory.INTERPOLATION_CACHE_FACTOR + 1;
+        for (int i = 0; i < numTexts; i++)
+        {
+            Expression.evaluateString(i + " ${name}", factory, beans);
+        }
+        factory.addTemplateTexts(templateTexts);
+        assertEquals("Template Alice", Expression.evaluateString("Template ${name}", factory, beans));
+        assertEquals(numTexts + 1, factory.getCompiled().size());
+
+        // Many other templates' texts push it out.
+        List<String> otherTexts = new ArrayList<>();
+        for (int i = 0; i < numTexts; i++)
+        {
+            otherTexts.add("Other " + i + " ${name}");
+        }
+        factory.addTemplateTexts(otherTexts);
+        assertEquals("Template Alice", Expression.evaluateString("Template ${name}", factory, beans));
+        assertEquals(numTexts + 2, factory.getCompiled().size());
+    }
+
+    /**
+     * Tests that the variables of an expression are parsed once per distinct
+     * text, with the factory's own engine, and that different texts have
+     * their own variables.
+     */
+    @Test
+    public void testVariablesCache()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        Set<List<String>> variables = factory.getVariables("a.b.c + d");
+        assertEquals(2, variables.size());
+        assertTrue(variables.contains(Arrays.asList("a", "b", "c")));
+        assertTrue(variables.contains(Collections.singletonList("d")));
+        assertSame(variables, factory.getVariables("a.b.c + d"));
+
+        Set<List<String>> other = factory.getVariables("x.y");
+        assertEquals(Collections.singleton(Arrays.asList("x", "y")), other);
+        assertSame(other, factory.getVariables("x.y"));
+        assertEquals(1, factory.getNumEngines());
+
+        try
+        {
+            factory.getVariables("a +");
+            fail("Expected ParseException!");
+        }
+        catch (ParseException expected) {}
+    }
+
+    /**
+     * Tests that implicit collections detection reuses the factory's engine
+     * and cached variables across transformations, while the collections
+     * found still depend on each transformation's own beans.
+     */
+    @Test
+    public void testImplicitCollectionDetection()
+    {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        Map<String, Object> listBeans = new HashMap<>();
+        listBeans.put("employees", TestUtility.getEmployees());
+        Map<String, Object> singleBeans = new HashMap<>();
+        singleBeans.put("employees", TestUtility.getEmployees().get(0));
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(Collections.singletonList("employees"), Expression.getImplicitCollectionExpr(
+                    "${employees.firstName}", listBeans, createContext(factory)));
+            assertEquals(Collections.emptyList(), Expression.getImplicitCollectionExpr(
+                    "${employees.firstName}", singleBeans, createContext(factory)));
+        }
+        assertEquals(1, factory.getNumEngines());
+    }
+
+    /**
+     * Creates a <code>WorkbookContext</code>, as for a new transformation,
+     * that uses the given <code>ExpressionFactory</code>.
+     * @param factory The <code>ExpressionFactory</code>.
+     * @return A new <code>WorkbookContext</code>.
+     */
+    private static WorkbookContext createContext(ExpressionFactory factory)
+    {
+        WorkbookContext context = new WorkbookContext();
+        context.setExpressionFactory(factory);
+        context.setNoImplicitCollectionProcessingNames(new ArrayList<>());
+        return context;
+    }
+
+    /**
+     * Creates beans with the given name.
+     * @param name The name.
+     * @return The beans <code>Map</code>.
+     */
+    private static Map<String, Object> createBeans(String name)
+    {
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("name", name);
+        return beans;
+    }
+
+    /**
+     * An <code>ExpressionFactory</code> that records the text of every
+     * expression that it compiles, and counts the engines that it creates.
+     */
+    private static class CountingExpressionFactory extends ExpressionFactory
+    {
+        private final List<String> myCompiled = new ArrayList<>();
+        private int myNumEngines;
+
+        /**
+         * Counts the engine, then creates it.
+         * @return A new <code>JexlEngine</code>.
+         */
+        @Override
+        public JexlEngine createJexlEngine()
+        {
+            myNumEngines++;
+            return super.createJexlEngine();
+        }
+
+        /**
+         * Returns the number of engines created.
+         * @return The number of engines created.
+         */
+        public int getNumEngines()
+        {
+            return myNumEngines;
+        }
+
+        /**
+         * Records the expression text, then compiles it.
+         * @param expression The expression text.
+         * @return A <code>JexlExpression</code>.
+         */
+        @Override
+        public JexlExpression createExpression(String expression)
+        {
+            myCompiled.add(expression);
+            return super.createExpression(expression);
+        }
+
+        /**
+         * Returns the texts of the compiled expressions, in order.
+         * @return A <code>List</code> of expression texts.
+         */
+        public List<String> getCompiled()
+        {
+            return myCompiled;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.sf.jett.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.expression.Expression;
+import net.sf.jett.expression.ExpressionFactory;
+
+/**
+ * This JUnit Test class tests that <code>Expression.evaluateString</code>
+ * replaces each expression embedded in text with its result, unescapes
+ * escaped expressions in the literal text, and leaves expression results
+ * alone.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class InterpolationTest
+{
+    private final ExpressionFactory myFactory = new ExpressionFactory();
+
+    /**
+     * Tests replacing expressions, including the same expression more than
+     * once and an expression with braces inside it.
+     */
+    @Test
+    public void testExpressions()
+    {
+        Map<String, Object> beans = createBeans();
+        assertEquals("5 items at 5 each: 25",
+                Expression.evaluateString("${count} items at ${count} each: ${count * count}", myFactory, beans));
+        assertEquals("Sum: 3.", Expression.evaluateString("Sum: ${{'a': 1, 'b': 2}.a + 2}.", myFactory, beans));
+        assertEquals("Missing: [].", Expression.evaluateString("Missing: [${missing}].", myFactory, beans));
+        assertEquals("No expressions", Expression.evaluateString("No expressions", myFactory, beans));
+    }
+
+    /**
+     * Tests that text that is exactly one expression evaluates to the
+     * expression's result, which may be any <code>Object</code>.
+     */
+    @Test
+    public void testSingleExpression()
+    {
+        assertEquals(5, Expression.evaluateString("${count}", myFactory, createBeans()));
+        assertNull(Expression.evaluateString("${missing}", myFactory, createBeans()));
+    }
+
+    /**
+     * Tests that escaped expressions in the literal text are left
+     * unevaluated, without the escaping backslash, wherever they appear.
+     */
+    @Test
+    public void testEscapedLiterals()
+    {
+        Map<String, Object> beans = createBeans();
+        assertEquals("${count}", Expression.evaluateString("\\${count}", myFactory, beans));
+        assertEquals("Use ${count} to get 5.",
+                Expression.evaluateString("Use \\${count} to get ${count}.", myFactory, beans));
+        assertEquals("5 comes from ${count}, not ${count * 2}",
+                Expression.evaluateString("${count} comes from \\${count}, not \\${count * 2}", myFactory, beans));
+        assertEquals("${count}5", Expression.evaluateString("\\${count}${count}", myFactory, beans));
+        // A backslash that doesn't escape an expression is kept.
+        assertEquals("C:\\dir\\ 5", Expression.evaluateString("C:\\dir\\ ${count}", myFactory, beans));
+    }
+
+    /**
+     * Tests that expression results are inserted as they are: escapes in them
+     * are not unescaped, and expressions in them are not evaluated.
+     */
+    @Test
+    public void testEscapesInResults()
+    {
+        Map<String, Object> beans = createBeans();
+        beans.put("escaped", "\\${count}");
+        beans.put("unescaped", "${count}");
+        assertEquals("[\\${count}] and [${count}]",
+                Expression.evaluateString("[${escaped}] and [${unescaped}]", myFactory, beans));
+        assertEquals("\\${count}", Expression.evaluateString("${escaped}", myFactory, beans));
+        assertEquals("${count} = 5, not \\${count}",
+                Expression.evaluateString("\\${count} = ${count}, not ${escaped}", myFactory, beans));
+    }
+
+    /**
+     * Creates the beans for the tests.
+     * @return The beans <code>Map</code>.
+     */
+    private static Map<String, Object> createBeans()
+    {
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("count", 5);
+        return beans;
+    }
+}
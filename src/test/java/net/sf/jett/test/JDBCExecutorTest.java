@@ -1,24 +1,47 @@
 package net.sf.jett.test;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import net.sf.jett.event.TagEvent;
+import net.sf.jett.event.TagListener;
 import net.sf.jett.jdbc.JDBCExecutor;
+import net.sf.jett.jdbc.QueryResultCache;
+import net.sf.jett.jdbc.ResultSetCursor;
+import net.sf.jett.jdbc.ResultSetRow;
+import net.sf.jett.jdbc.ResultSetSchema;
 import net.sf.jett.transform.ExcelTransformer;
 
 /**
@@ -108,6 +131,513 @@ public class JDBCExecutorTest extends TestCase
         super.testXlsx();
     }
 
+    /**
+     * Tests that <code>streamQuery</code> reads rows lazily, and that its
+     * <code>ResultSetCursor</code> closes itself after the last row.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testStreamQuery() throws SQLException
+    {
+        JDBCExecutor jdbc = new JDBCExecutor(theConnection);
+        jdbc.setFetchSize(2);
+        ResultSetCursor cursor = jdbc.streamQuery(
+                "SELECT first_name, salary FROM employee WHERE salary >= ? ORDER BY emp_id", 900);
+        assertEquals(Arrays.asList("FIRST_NAME", "SALARY"), cursor.getColumnNames());
+        assertEquals(0, cursor.getNumRowsRead());
+
+        Iterator<ResultSetRow> itr = cursor.iterator();
+        assertTrue(itr.hasNext());
+        assertEquals(1, cursor.getNumRowsRead());
+        assertEquals("Robert", itr.next().get("first_name"));
+        assertEquals("Suzie", itr.next().get("first_name"));
+        assertEquals("Bugs", itr.next().get("first_name"));
+        assertFalse(cursor.isClosed());
+        assertFalse(itr.hasNext());
+        assertTrue(cursor.isClosed());
+        assertEquals(3, cursor.getNumRowsRead());
+
+        try
+        {
+            cursor.iterator();
+            fail("Expected IllegalStateException iterating a cursor twice.");
+        }
+        catch (IllegalStateException expected) {}
+        // Closing again has no effect; the connection stays open.
+        cursor.close();
+        assertFalse(theConnection.isClosed());
+    }
+
+    /**
+     * Tests that all rows of a query share one <code>ResultSetSchema</code>,
+     * and that column names are case-insensitive.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testSharedSchema() throws SQLException
+    {
+        JDBCExecutor jdbc = new JDBCExecutor(theConnection);
+        List<ResultSetRow> rows = jdbc.execQuery("SELECT emp_id, last_name FROM employee ORDER BY emp_id");
+        assertEquals(4, rows.size());
+        ResultSetSchema schema = rows.get(0).getSchema();
+        assertNotNull(schema);
+        assertEquals(2, schema.getNumColumns());
+        assertEquals(1, schema.indexOf("Last_Name"));
+        assertEquals(-1, schema.indexOf("salary"));
+        for (ResultSetRow row : rows)
+        {
+            assertSame(schema, row.getSchema());
+        }
+
+        ResultSetRow row = rows.get(1);
+        assertEquals("Queue", row.get("last_name"));
+        assertEquals("Queue", row.get("LAST_NAME"));
+        assertEquals(2, row.get("Emp_Id"));
+        assertNull(row.get("salary"));
+
+        // Properties that aren't columns are still supported.
+        row.set("Nickname", "Suz");
+        assertEquals("Suz", row.get("nickname"));
+        row.set("last_name", "Stack");
+        assertEquals("Stack", row.get("Last_Name"));
+    }
+
+    /**
+     * Tests that <code>execQuery</code> reuses cached statements.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testStatementCache() throws SQLException
+    {
+        try (JDBCExecutor jdbc = new JDBCExecutor(theConnection))
+        {
+            jdbc.setStatementCacheSize(1);
+            String byTitle = "SELECT emp_id FROM employee WHERE title = ?";
+            assertEquals(2, jdbc.execQuery(byTitle, "Cartoon Character").size());
+            assertEquals(2, jdbc.execQuery(byTitle, "Data Structures Programmer").size());
+            assertEquals(0, jdbc.execQuery(byTitle, "Nonexistent Title").size());
+            assertEquals(1, jdbc.getNumStatementsPrepared());
+            assertEquals(2, jdbc.getNumStatementCacheHits());
+
+            // Evicts the first statement.
+            assertEquals(1, jdbc.execQuery("SELECT emp_id FROM employee WHERE salary > ?", 1000).size());
+            assertEquals(2, jdbc.execQuery(byTitle, "Cartoon Character").size());
+            assertEquals(3, jdbc.getNumStatementsPrepared());
+        }
+        assertFalse(theConnection.isClosed());
+    }
+
+    /**
+     * Tests that <code>execQueryIn</code> fetches the rows for many keys with
+     * one query, and separates them by key.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testExecQueryIn() throws SQLException
+    {
+        JDBCExecutor jdbc = new JDBCExecutor(theConnection);
+        List<String> titles = Arrays.asList("Cartoon Character", "Data Structures Programmer", "Nonexistent Title",
+                "Cartoon Character");
+        Map<Object, List<ResultSetRow>> byTitle = jdbc.execQueryIn(
+                "SELECT * FROM employee WHERE title in ( ? ) ORDER BY emp_id", "title", titles);
+        assertEquals(3, byTitle.size());
+        assertEquals(1, jdbc.getNumStatementsPrepared());
+        List<ResultSetRow> cartoons = byTitle.get("Cartoon Character");
+        assertEquals(2, cartoons.size());
+        assertEquals("Fudd", cartoons.get(0).get("last_name"));
+        assertEquals("Bunny", cartoons.get(1).get("last_name"));
+        assertEquals(2, byTitle.get("Data Structures Programmer").size());
+        assertTrue(byTitle.get("Nonexistent Title").isEmpty());
+
+        // Other bind variables on both sides; Long keys match INTEGER values.
+        Map<Object, List<ResultSetRow>> byId = jdbc.execQueryIn(
+                "SELECT emp_id FROM employee WHERE salary >= ? AND emp_id IN (?) AND is_a_manager = ?", "emp_id",
+                Arrays.asList(1L, 2L, 3L, null), 900, "Y");
+        assertEquals(Arrays.<Object>asList(1L, 2L, 3L), new ArrayList<>(byId.keySet()));
+        assertEquals(1, byId.get(1L).size());
+        assertTrue(byId.get(2L).isEmpty());
+        assertTrue(byId.get(3L).isEmpty());
+
+        // A "?" in a literal or a comment isn't a bind variable.
+        byId = jdbc.execQueryIn("SELECT emp_id FROM employee WHERE catch_phrase <> 'What''s up?' " +
+                "/* which ones? */ AND emp_id IN (?) -- and ?\n AND salary >= ?", "emp_id",
+                Arrays.asList(1L, 2L, 4L), 1000);
+        assertEquals(1, byId.get(1L).size());
+        assertTrue(byId.get(2L).isEmpty());
+        assertEquals(1, byId.get(4L).size());
+
+        try
+        {
+            jdbc.execQueryIn("SELECT * FROM employee WHERE title = ?", "title", titles);
+            fail("Expected IllegalArgumentException without \"IN (?)\".");
+        }
+        catch (IllegalArgumentException expected) {}
+    }
+
+    /**
+     * Tests that a <code>QueryResultCache</code> shared by two
+     * <code>JDBCExecutors</code> returns cached rows, and that results are
+     * invalidated, evicted, and expired.
+     * @throws Exception If there is a problem executing the query, or if
+     *    interrupted while waiting for results to expire.
+     * @since 0.12.0
+     */
+    @Test
+    public void testResultCache() throws Exception
+    {
+        QueryResultCache cache = new QueryResultCache(1000000, 0);
+        JDBCExecutor first = new JDBCExecutor(theConnection);
+        first.setResultCache(cache);
+        JDBCExecutor second = new JDBCExecutor(theConnection);
+        second.setResultCache(cache);
+
+        String byTitle = "SELECT * FROM employee WHERE title = ?";
+        List<ResultSetRow> rows = first.execQuery(byTitle, "Cartoon Character");
+        assertEquals(2, rows.size());
+        // Each call gets its own List of the shared rows.
+        List<ResultSetRow> cachedRows = second.execQuery(byTitle, "Cartoon Character");
+        assertNotSame(rows, cachedRows);
+        assertSame(rows.get(0), cachedRows.get(0));
+        assertSame(rows.get(1), cachedRows.get(1));
+        assertNotSame(rows.get(0), second.execQuery(byTitle, "Data Structures Programmer").get(0));
+        assertEquals(1, cache.getNumHits());
+        assertEquals(2, cache.getNumMisses());
+        assertEquals(2, cache.getNumEntries());
+        assertTrue(cache.getWeight() > 0);
+        rows.clear();
+        assertEquals(2, first.execQuery(byTitle, "Cartoon Character").size());
+
+        cache.invalidate(byTitle, "Cartoon Character");
+        assertNotSame(cachedRows.get(0), first.execQuery(byTitle, "Cartoon Character").get(0));
+        cache.invalidateAll(byTitle);
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(0, cache.getWeight());
+
+        // Only room for one result; the least recently used is evicted.
+        first.execQuery(byTitle, "Cartoon Character");
+        QueryResultCache small = new QueryResultCache(cache.getWeight() * 3 / 2, 0);
+        first.setResultCache(small);
+        first.execQuery(byTitle, "Cartoon Character");
+        first.execQuery(byTitle, "Data Structures Programmer");
+        assertEquals(1, small.getNumEntries());
+        assertEquals(1, small.getNumEvictions());
+
+        QueryResultCache expiring = new QueryResultCache(1000000, 50);
+        first.setResultCache(expiring);
+        rows = first.execQuery(byTitle, "Cartoon Character");
+        Thread.sleep(100);
+        assertNotSame(rows.get(0), first.execQuery(byTitle, "Cartoon Character").get(0));
+        assertEquals(1, expiring.getNumExpirations());
+        assertEquals(0, expiring.getNumHits());
+    }
+
+    /**
+     * Tests that a "forEach" tag can sort the rows of a cached query, both
+     * when they're first cached and when they come from the cache, without
+     * changing the order of the cached rows.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testResultCacheOrderBy() throws SQLException
+    {
+        QueryResultCache cache = new QueryResultCache(1000000, 0);
+        JDBCExecutor jdbc = new JDBCExecutor(theConnection);
+        jdbc.setResultCache(cache);
+        String sql = "SELECT * FROM employee ORDER BY emp_id";
+        for (int i = 0; i < 2; i++)
+        {
+            Workbook workbook = new XSSFWorkbook();
+            Sheet sheet = workbook.createSheet("Employees");
+            sheet.createRow(0).createCell(0).setCellValue("<jt:forEach items=\"${jdbc.execQuery('" + sql +
+                    "')}\" var=\"emp\" orderBy=\"first_name\">${emp.first_name}</jt:forEach>");
+            Map<String, Object> beans = new HashMap<>();
+            beans.put("jdbc", jdbc);
+
+            new ExcelTransformer().transform(workbook, beans);
+
+            assertEquals("Bugs", TestUtility.getStringCellValue(sheet, 0, 0));
+            assertEquals("Elmer", TestUtility.getStringCellValue(sheet, 1, 0));
+            assertEquals("Robert", TestUtility.getStringCellValue(sheet, 2, 0));
+            assertEquals("Suzie", TestUtility.getStringCellValue(sheet, 3, 0));
+        }
+        assertEquals(1, cache.getNumHits());
+        assertEquals(1, cache.getNumMisses());
+        assertEquals("Robert", jdbc.execQuery(sql).get(0).get("first_name"));
+    }
+
+    /**
+     * Tests that CLOBs are read with their line terminators, optionally
+     * truncated, and that <code>execQuery</code> reads LOBs right away over a
+     * <code>DataSource</code>, even if asked to read them lazily, because the
+     * <code>Connection</code> is closed before the rows are used.  HSQLDB 1.8
+     * has no LOB types, so the LOBs come from a stand-in
+     * <code>DataSource</code>, whose LOBs become invalid when their
+     * <code>Connection</code> is closed.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testLobs() throws SQLException
+    {
+        String sql = "SELECT * FROM document ORDER BY doc_id";
+        JDBCExecutor jdbc = new JDBCExecutor(getLobDataSource());
+        jdbc.setReadLobsLazily(true);
+        List<ResultSetRow> rows = jdbc.execQuery(sql);
+        assertEquals("First line\nSecond line", rows.get(0).get("body"));
+        assertArrayEquals(new byte[] {(byte) 0xCA, (byte) 0xFE}, (byte[]) rows.get(0).get("data"));
+        assertNull(rows.get(1).get("body"));
+        assertNull(rows.get(1).get("data"));
+        assertEquals("Last", rows.get(2).get("body"));
+
+        jdbc.setMaxClobLength(5);
+        assertEquals("First", jdbc.execQuery(sql).get(0).get("body"));
+    }
+
+    /**
+     * Tests that cached rows with LOBs read over a supplied
+     * <code>Connection</code> hold <code>byte[]</code>s instead of the
+     * driver's BLOBs, which are no longer valid once the
+     * <code>Connection</code> is closed, and that <code>JDBCExecutors</code>
+     * with different maximum CLOB lengths sharing a cache each get their own
+     * text.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testResultCacheLobs() throws SQLException
+    {
+        String sql = "SELECT * FROM document ORDER BY doc_id";
+        QueryResultCache cache = new QueryResultCache(1000000, 0);
+        Connection first = getLobConnection();
+        JDBCExecutor truncating = new JDBCExecutor(first);
+        truncating.setMaxClobLength(5);
+        truncating.setResultCache(cache);
+        Connection second = getLobConnection();
+        JDBCExecutor entire = new JDBCExecutor(second);
+        entire.setResultCache(cache);
+
+        assertEquals("First", truncating.execQuery(sql).get(0).get("body"));
+        assertEquals("First line\nSecond line", entire.execQuery(sql).get(0).get("body"));
+        assertEquals(0, cache.getNumHits());
+        assertEquals(2, cache.getNumEntries());
+        first.close();
+        second.close();
+
+        List<ResultSetRow> rows = truncating.execQuery(sql);
+        assertEquals("First", rows.get(0).get("body"));
+        assertArrayEquals(new byte[] {(byte) 0xCA, (byte) 0xFE}, (byte[]) rows.get(0).get("data"));
+        assertEquals("First line\nSecond line", entire.execQuery(sql).get(0).get("body"));
+        assertEquals(2, cache.getNumHits());
+
+        cache.invalidate(sql);
+        assertEquals(0, cache.getNumEntries());
+    }
+
+    /**
+     * Tests that a "forEach" tag over a <code>ResultSetCursor</code> with
+     * lazily read LOBs can access the LOBs of every row, including the last
+     * one, even though the cursor, and with it the <code>Connection</code>,
+     * is closed as soon as the tag finds that there are no more rows.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testLazyLobsInForEach() throws SQLException
+    {
+        JDBCExecutor jdbc = new JDBCExecutor(getLobDataSource());
+        jdbc.setMaxClobLength(JDBCExecutor.EXCEL_MAX_TEXT_LENGTH);
+        jdbc.setReadLobsLazily(true);
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Documents");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${documents}\" var=\"doc\">${doc.doc_id}");
+        row.createCell(1).setCellValue("${doc.body}</jt:forEach>");
+        ResultSetCursor cursor = jdbc.streamQuery("SELECT * FROM document ORDER BY doc_id");
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("documents", cursor);
+
+        new ExcelTransformer().transform(workbook, beans);
+
+        assertTrue(cursor.isClosed());
+        assertEquals(1, TestUtility.getNumericCellValue(sheet, 0, 0), 0);
+        assertEquals("First line\nSecond line", TestUtility.getStringCellValue(sheet, 0, 1));
+        assertEquals(2, TestUtility.getNumericCellValue(sheet, 1, 0), 0);
+        assertEquals(3, TestUtility.getNumericCellValue(sheet, 2, 0), 0);
+        assertEquals("Last", TestUtility.getStringCellValue(sheet, 2, 1));
+    }
+
+    /**
+     * Tests that a "forEach" tag over a <code>ResultSetCursor</code> closes
+     * the cursor, and with it the <code>Connection</code> from the
+     * <code>DataSource</code>, when a <code>TagListener</code> vetoes the
+     * processing of the tag.
+     * @throws SQLException If there is a problem executing the query.
+     * @since 0.12.0
+     */
+    @Test
+    public void testVetoedForEachClosesCursor() throws SQLException
+    {
+        JDBCExecutor jdbc = new JDBCExecutor(getLobDataSource());
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Documents");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue(
+                "<jt:forEach items=\"${documents}\" var=\"doc\" onProcessed=\"${veto}\">${doc.doc_id}</jt:forEach>");
+        ResultSetCursor cursor = jdbc.streamQuery("SELECT * FROM document ORDER BY doc_id");
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("documents", cursor);
+        beans.put("veto", new TagListener() {
+            @Override
+            public boolean beforeTagProcessed(TagEvent event)
+            {
+                return false;
+            }
+
+            @Override
+            public void onTagProcessed(TagEvent event) {}
+        });
+
+        new ExcelTransformer().transform(workbook, beans);
+
+        assertTrue(cursor.isClosed());
+        assertEquals(0, cursor.getNumRowsRead());
+    }
+
+    /**
+     * Returns a stand-in <code>DataSource</code> whose statements all return
+     * the same three rows of a "document" table with CLOB and BLOB columns.
+     * Like those of many drivers, the LOBs can't be read once their
+     * <code>Connection</code> is closed.
+     * @return A <code>DataSource</code>.
+     */
+    private static DataSource getLobDataSource()
+    {
+        return proxy(DataSource.class, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection"))
+                return getLobConnection();
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    /**
+     * Returns a stand-in <code>Connection</code> whose statements all return
+     * the same three rows of a "document" table with CLOB and BLOB columns.
+     * @return A <code>Connection</code>.
+     * @throws SQLException If the LOBs can't be created.
+     */
+    private static Connection getLobConnection() throws SQLException
+    {
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final String[] names = {"DOC_ID", "BODY", "DATA"};
+        final int[] types = {Types.INTEGER, Types.CLOB, Types.BLOB};
+        final Object[][] data = {
+                {1, invalidOnClose(Clob.class, new SerialClob("First line\nSecond line".toCharArray()), closed),
+                        invalidOnClose(Blob.class, new SerialBlob(new byte[] {(byte) 0xCA, (byte) 0xFE}), closed)},
+                {2, null, null},
+                {3, invalidOnClose(Clob.class, new SerialClob("Last".toCharArray()), closed),
+                        invalidOnClose(Blob.class, new SerialBlob(new byte[] {1}), closed)}
+        };
+        final InvocationHandler metaData = (proxy, method, args) -> {
+            switch (method.getName())
+            {
+            case "getColumnCount":
+                return names.length;
+            case "getColumnName":
+                return names[(Integer) args[0] - 1];
+            case "getColumnType":
+                return types[(Integer) args[0] - 1];
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        final InvocationHandler statement = (proxy, method, args) -> {
+            switch (method.getName())
+            {
+            case "executeQuery":
+                final int[] state = {-1, 0};  // row index, was null
+                return proxy(ResultSet.class, (rsProxy, rsMethod, rsArgs) -> {
+                    switch (rsMethod.getName())
+                    {
+                    case "next":
+                        return ++state[0] < data.length;
+                    case "getMetaData":
+                        return proxy(ResultSetMetaData.class, metaData);
+                    case "wasNull":
+                        return state[1] == 1;
+                    case "close":
+                        return null;
+                    default:
+                        Object value = data[state[0]][(Integer) rsArgs[0] - 1];
+                        state[1] = (value == null) ? 1 : 0;
+                        return (value == null && rsMethod.getReturnType() == int.class) ? 0 : value;
+                    }
+                });
+            case "close":
+            case "setFetchSize":
+            case "clearParameters":
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName())
+            {
+            case "prepareStatement":
+                return proxy(PreparedStatement.class, statement);
+            case "createStatement":
+                return proxy(Statement.class, statement);
+            case "close":
+                closed.set(true);
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Wraps the given LOB so that it can't be read once the given flag is
+     * set, as when its <code>Connection</code> is closed.
+     * @param type The LOB interface.
+     * @param lob The LOB.
+     * @param closed Whether the LOB's <code>Connection</code> is closed.
+     * @param <T> The type of the LOB.
+     * @return The wrapped LOB.
+     */
+    private static <T> T invalidOnClose(Class<T> type, T lob, AtomicBoolean closed)
+    {
+        return proxy(type, (proxy, method, args) -> {
+            if (closed.get() && !method.getName().equals("free"))
+                throw new SQLException("LOB is no longer valid; its Connection is closed.");
+            try
+            {
+                return method.invoke(lob, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Creates a dynamic proxy for the given interface.
+     * @param type The interface.
+     * @param handler The <code>InvocationHandler</code>.
+     * @param <T> The type of the interface.
+     * @return The proxy.
+     */
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
     /**
      * Returns the Excel name base for the template and resultant spreadsheets
      * for this test.
@@ -1,5 +1,14 @@
 package net.sf.jett.test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -32,4 +41,44 @@ public class JettFuncsTest
         assertEquals("B2:C4", JettFuncs.cellRef(1, 1, 3, 2));
         assertEquals("K2:K32", JettFuncs.cellRef(1, 10, 31, 1));
     }
+
+    /**
+     * Tests that threads picking cards at the same time each deal a whole
+     * deck, without duplicates, before any card repeats.
+     * @throws Exception If a thread fails.
+     * @since 0.12.0
+     */
+    @Test
+    public void testPickACardConcurrently() throws Exception
+    {
+        int numThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            List<Future<Set<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++)
+            {
+                futures.add(executor.submit(new Callable<Set<String>>() {
+                    @Override
+                    public Set<String> call()
+                    {
+                        Set<String> cards = new HashSet<>();
+                        for (int i = 0; i < 52; i++)
+                        {
+                            cards.add(JettFuncs.pickACard());
+                        }
+                        return cards;
+                    }
+                }));
+            }
+            for (Future<Set<String>> future : futures)
+            {
+                assertEquals(52, future.get().size());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
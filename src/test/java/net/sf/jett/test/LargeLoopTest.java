@@ -0,0 +1,223 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that large loops with a lot of content below
+ * them are processed correctly and without shifting that content once per
+ * iteration, whether the number of items is known or the items are streamed,
+ * and that nested loops take time linear in the number of items.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class LargeLoopTest
+{
+    private static final int NUM_ITEMS = 2000;
+    private static final int NUM_STATIC_ROWS = 2000;
+    private static final int NUM_PARENTS = 2000;
+    private static final int NUM_NESTED_STATIC_ROWS = 10;
+    private static final int NUM_CHILDREN = 5;
+    private static final long TIMEOUT = 30000;
+
+    /**
+     * Tests a <code>List</code> of items in an .xls spreadsheet.
+     */
+    @Test(timeout = TIMEOUT)
+    public void testListXls()
+    {
+        genericTest(false, false);
+    }
+
+    /**
+     * Tests a <code>List</code> of items in an .xlsx spreadsheet.
+     */
+    @Test(timeout = TIMEOUT)
+    public void testListXlsx()
+    {
+        genericTest(true, false);
+    }
+
+    /**
+     * Tests streamed items in an .xls spreadsheet.
+     */
+    @Test(timeout = TIMEOUT)
+    public void testStreamedXls()
+    {
+        genericTest(false, true);
+    }
+
+    /**
+     * Tests streamed items in an .xlsx spreadsheet.
+     */
+    @Test(timeout = TIMEOUT)
+    public void testStreamedXlsx()
+    {
+        genericTest(true, true);
+    }
+
+    /**
+     * Tests that the time taken by nested loops in an .xls spreadsheet grows
+     * linearly with the number of items.
+     */
+    @Test(timeout = 4 * TIMEOUT)
+    public void testNestedScalingXls()
+    {
+        nestedScalingTest(false);
+    }
+
+    /**
+     * Tests that the time taken by nested loops in an .xlsx spreadsheet grows
+     * linearly with the number of items.
+     */
+    @Test(timeout = 4 * TIMEOUT)
+    public void testNestedScalingXlsx()
+    {
+        nestedScalingTest(true);
+    }
+
+    /**
+     * Times nested loops over some parents and over four times as many
+     * parents.  Loops used to copy all of their iterations up front, so every
+     * iteration that grew shifted all iterations after it, and the time taken
+     * grew quadratically.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     */
+    private void nestedScalingTest(boolean xlsx)
+    {
+        // Warm up.
+        nestedTest(xlsx, NUM_PARENTS / 4);
+        long small = nestedTest(xlsx, NUM_PARENTS / 4);
+        long large = nestedTest(xlsx, NUM_PARENTS);
+        // Linear is 4 times as long and quadratic is 16 times as long.
+        assertTrue("Nested loops took " + small + " ms for " + (NUM_PARENTS / 4) + " parents but " + large +
+                " ms for " + NUM_PARENTS + " parents.", large < 6 * small + 1000);
+    }
+
+    /**
+     * Transforms a loop over parents with a loop over each parent's children,
+     * with static rows below it, and checks that every item and every static
+     * row ends up in place.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @param numParents The number of parents.
+     * @return The number of milliseconds that the transformation took.
+     */
+    private long nestedTest(boolean xlsx, int numParents)
+    {
+        Workbook workbook = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Nested");
+        sheet.createRow(0).createCell(0).setCellValue("Header");
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${parents}\" var=\"children\">Parent");
+        row = sheet.createRow(2);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${children}\" var=\"child\">${child}");
+        row.createCell(1).setCellValue("${child * 2}</jt:forEach>");
+        row = sheet.createRow(3);
+        row.createCell(0).setCellValue("Total");
+        row.createCell(1).setCellValue("${children.size()}</jt:forEach>");
+        for (int r = 0; r < NUM_NESTED_STATIC_ROWS; r++)
+        {
+            row = sheet.createRow(r + 4);
+            row.createCell(0).setCellValue("Static " + r);
+            row.createCell(1).setCellValue(r);
+        }
+
+        List<List<Integer>> parents = new ArrayList<>(numParents);
+        for (int p = 0; p < numParents; p++)
+        {
+            List<Integer> children = new ArrayList<>(NUM_CHILDREN);
+            for (int c = 0; c < NUM_CHILDREN; c++)
+            {
+                children.add(p * NUM_CHILDREN + c);
+            }
+            parents.add(children);
+        }
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("parents", parents);
+        long start = System.currentTimeMillis();
+        new ExcelTransformer().transform(workbook, beans);
+        long elapsed = System.currentTimeMillis() - start;
+
+        int parentSize = NUM_CHILDREN + 2;
+        assertEquals("Header", TestUtility.getStringCellValue(sheet, 0, 0));
+        for (int p = 0; p < numParents; p++)
+        {
+            int top = p * parentSize + 1;
+            assertEquals("Parent", TestUtility.getStringCellValue(sheet, top, 0));
+            for (int c = 0; c < NUM_CHILDREN; c++)
+            {
+                int item = p * NUM_CHILDREN + c;
+                assertEquals(item, TestUtility.getNumericCellValue(sheet, top + c + 1, 0), 0);
+                assertEquals(item * 2, TestUtility.getNumericCellValue(sheet, top + c + 1, 1), 0);
+            }
+            assertEquals("Total", TestUtility.getStringCellValue(sheet, top + parentSize - 1, 0));
+            assertEquals(NUM_CHILDREN, TestUtility.getNumericCellValue(sheet, top + parentSize - 1, 1), 0);
+        }
+        int staticTop = numParents * parentSize + 1;
+        for (int r = 0; r < NUM_NESTED_STATIC_ROWS; r++)
+        {
+            assertEquals("Static " + r, TestUtility.getStringCellValue(sheet, staticTop + r, 0));
+            assertEquals(r, TestUtility.getNumericCellValue(sheet, staticTop + r, 1), 0);
+        }
+        assertEquals(staticTop + NUM_NESTED_STATIC_ROWS - 1, sheet.getLastRowNum());
+        return elapsed;
+    }
+
+    /**
+     * Transforms a loop over many items with many static rows below it, and
+     * checks that every item and every static row ends up in place.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @param streamed Whether to stream the items from an
+     *    <code>Iterator</code>.
+     */
+    private void genericTest(boolean xlsx, boolean streamed)
+    {
+        Workbook workbook = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Large");
+        sheet.createRow(0).createCell(0).setCellValue("Header");
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${items}\" var=\"item\">${item}");
+        row.createCell(1).setCellValue("${item * 2}</jt:forEach>");
+        for (int r = 0; r < NUM_STATIC_ROWS; r++)
+        {
+            row = sheet.createRow(r + 2);
+            row.createCell(0).setCellValue("Static " + r);
+            row.createCell(1).setCellValue(r);
+        }
+
+        List<Integer> items = new ArrayList<>(NUM_ITEMS);
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            items.add(i);
+        }
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("items", streamed ? items.iterator() : items);
+        new ExcelTransformer().transform(workbook, beans);
+
+        assertEquals("Header", TestUtility.getStringCellValue(sheet, 0, 0));
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            assertEquals(i, TestUtility.getNumericCellValue(sheet, i + 1, 0), 0);
+            assertEquals(i * 2, TestUtility.getNumericCellValue(sheet, i + 1, 1), 0);
+        }
+        for (int r = 0; r < NUM_STATIC_ROWS; r++)
+        {
+            assertEquals("Static " + r, TestUtility.getStringCellValue(sheet, NUM_ITEMS + r + 1, 0));
+            assertEquals(r, TestUtility.getNumericCellValue(sheet, NUM_ITEMS + r + 1, 1), 0);
+        }
+        assertEquals(NUM_ITEMS + NUM_STATIC_ROWS, sheet.getLastRowNum());
+    }
+}
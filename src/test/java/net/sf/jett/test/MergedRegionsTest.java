@@ -0,0 +1,75 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.model.MergedRegions;
+
+/**
+ * This JUnit Test class tests that <code>MergedRegions</code> finds, moves,
+ * copies, and removes merged regions by range.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class MergedRegionsTest
+{
+    /**
+     * Tests that only regions wholly contained in a range are found.
+     */
+    @Test
+    public void testFindRegionsInRange()
+    {
+        MergedRegions regions = new MergedRegions();
+        CellRangeAddress inside = new CellRangeAddress(1, 2, 1, 2);
+        regions.add(inside);
+        // Starts inside, but ends outside.
+        regions.add(new CellRangeAddress(2, 4, 1, 1));
+        // Starts to the left.
+        regions.add(new CellRangeAddress(1, 1, 0, 1));
+        regions.add(new CellRangeAddress(10, 10, 0, 5));
+
+        List<CellRangeAddress> found = regions.findRegionsInRange(1, 3, 1, 3);
+        assertEquals(1, found.size());
+        assertSame(inside, found.get(0));
+        assertSame(inside, regions.getRegionAt(1, 1));
+        assertNull(regions.getRegionAt(1, 2));
+    }
+
+    /**
+     * Tests shifting, copying, and removing regions in a range.
+     */
+    @Test
+    public void testTranslate()
+    {
+        MergedRegions regions = new MergedRegions();
+        regions.add(new CellRangeAddress(0, 0, 0, 1));
+        regions.add(new CellRangeAddress(1, 1, 0, 1));
+        regions.add(new CellRangeAddress(5, 5, 0, 1));
+
+        // Copy the first two rows down twice; copies aren't copied again.
+        assertEquals(2, regions.translate(0, 1, 0, 1, 0, 2, false, true));
+        assertEquals(5, regions.size());
+        assertNotNull(regions.getRegionAt(3, 0));
+
+        // Shift the last region up.
+        assertEquals(1, regions.translate(0, 1, 5, 5, 0, -1, true, true));
+        assertNull(regions.getRegionAt(5, 0));
+        assertEquals(new CellRangeAddress(4, 4, 0, 1), regions.getRegionAt(4, 0));
+
+        // Remove the copies.
+        assertEquals(2, regions.translate(0, 1, 2, 3, 0, 0, true, false));
+        assertEquals(3, regions.size());
+
+        List<String> order = new ArrayList<>();
+        for (CellRangeAddress region : regions)
+        {
+            order.add(region.formatAsString());
+        }
+        assertEquals("[A1:B1, A2:B2, A5:B5]", order.toString());
+    }
+}
@@ -0,0 +1,84 @@
+package net.sf.jett.test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.model.ProcessedCells;
+import net.sf.jett.tag.TagContext;
+import net.sf.jett.util.SheetUtil;
+
+/**
+ * This JUnit Test class tests that <code>ProcessedCells</code> tracks
+ * processed positions, and that the deprecated <code>Map</code> of processed
+ * cells on <code>TagContext</code> still works on top of it.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class ProcessedCellsTest
+{
+    /**
+     * Tests adding and checking positions, including far beyond the initial
+     * capacity.
+     */
+    @Test
+    public void testPositions()
+    {
+        ProcessedCells processedCells = new ProcessedCells();
+        processedCells.add(0, 0);
+        processedCells.add(0, 0);
+        processedCells.add(5000, 3);
+        assertEquals(2, processedCells.size());
+        assertTrue(processedCells.contains(0, 0));
+        assertTrue(processedCells.contains(5000, 3));
+        assertFalse(processedCells.contains(5000, 2));
+        assertFalse(processedCells.contains(10000, 0));
+        assertFalse(processedCells.contains(-1, 0));
+    }
+
+    /**
+     * Tests the deprecated <code>Map</code> of processed cells.
+     * @throws Exception If the workbook can't be closed.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testMap() throws Exception
+    {
+        try (XSSFWorkbook workbook = new XSSFWorkbook())
+        {
+            Sheet sheet = workbook.createSheet("My Sheet");
+            Cell b2 = sheet.createRow(1).createCell(1);
+            Cell a3 = sheet.createRow(2).createCell(0);
+            TagContext context = new TagContext();
+            context.setSheet(sheet);
+            context.setProcessedCells(new ProcessedCells());
+
+            Map<String, Cell> map = context.getProcessedCellsMap();
+            assertNull(map.put(SheetUtil.getCellKey(a3), a3));
+            map.put(SheetUtil.getCellKey(b2), b2);
+            assertTrue(context.getProcessedCells().contains(b2));
+            assertTrue(map.containsKey("My Sheet!A3"));
+            assertSame(a3, map.get("My Sheet!A3"));
+            assertFalse(map.containsKey("My Sheet!A2"));
+            assertEquals(2, map.size());
+
+            Iterator<String> keys = map.keySet().iterator();
+            assertEquals("My Sheet!B2", keys.next());
+            assertEquals("My Sheet!A3", keys.next());
+            assertFalse(keys.hasNext());
+
+            Map<String, Cell> processed = new HashMap<>();
+            processed.put("My Sheet!C4", null);
+            context.setProcessedCellsMap(processed);
+            assertTrue(context.getProcessedCells().contains(3, 2));
+            assertEquals(1, context.getProcessedCells().size());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.sf.jett.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.exception.TagParseException;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that shifting entire rows below a loop gives
+ * the same results in .xls spreadsheets, where the rows are shifted
+ * natively if nothing refers to them, as in .xlsx spreadsheets, where cells
+ * are shifted one at a time.  Excel formulas, named ranges and row heights
+ * are left as they are, while JETT formulas, merged regions, and tag
+ * locations move with their cells.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class RowShiftingTest
+{
+    /**
+     * Tests shifting rows in an .xls spreadsheet.
+     */
+    @Test
+    public void testXls()
+    {
+        genericTest(false);
+    }
+
+    /**
+     * Tests shifting rows in an .xlsx spreadsheet.
+     */
+    @Test
+    public void testXlsx()
+    {
+        genericTest(true);
+    }
+
+    /**
+     * Tests that tag locations are shifted in an .xls spreadsheet.
+     */
+    @Test
+    public void testTagLocationsXls()
+    {
+        tagLocationsTest(false);
+    }
+
+    /**
+     * Tests that tag locations are shifted in an .xlsx spreadsheet.
+     */
+    @Test
+    public void testTagLocationsXlsx()
+    {
+        tagLocationsTest(true);
+    }
+
+    /**
+     * Tests that row heights end up the same in .xls and .xlsx spreadsheets.
+     */
+    @Test
+    public void testRowHeights()
+    {
+        assertArrayEquals(rowHeightsTest(false), rowHeightsTest(true));
+    }
+
+    /**
+     * Transforms a full-width loop over 4 items with static rows of different
+     * heights below it, without any Excel formulas, so that an .xls
+     * spreadsheet's rows are shifted natively.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @return The heights of the resulting rows, <code>-1</code> for the
+     *    default height.
+     */
+    private short[] rowHeightsTest(boolean xlsx)
+    {
+        Workbook workbook = createTemplate(xlsx);
+        Sheet sheet = workbook.getSheetAt(0);
+        sheet.getRow(1).setHeight((short) 600);
+        for (int r = 2; r < 5; r++)
+        {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue("Static " + r);
+            row.setHeight((short) (300 * r));
+        }
+
+        transform(workbook);
+
+        assertEquals("Static 2", TestUtility.getStringCellValue(sheet, 5, 0));
+        assertEquals(7, sheet.getLastRowNum());
+        short[] heights = new short[sheet.getLastRowNum() + 1];
+        for (int r = 0; r < heights.length; r++)
+        {
+            Row row = sheet.getRow(r);
+            // Default heights differ between .xls and .xlsx.
+            heights[r] = (row == null || row.getHeight() == sheet.getDefaultRowHeight()) ? -1 : row.getHeight();
+        }
+        return heights;
+    }
+
+    /**
+     * Transforms a full-width loop over 4 items with static content below it,
+     * and checks where the static content ended up.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     */
+    private void genericTest(boolean xlsx)
+    {
+        Workbook workbook = createTemplate(xlsx);
+        Sheet sheet = workbook.getSheetAt(0);
+        Row row = sheet.createRow(2);
+        row.createCell(0).setCellValue(7);
+        row.createCell(1).setCellFormula("A3*2");
+        sheet.createRow(3).createCell(0).setCellValue("$[SUM(B2)]");
+        row = sheet.createRow(4);
+        row.createCell(0).setCellValue("Merged");
+        row.createCell(1);
+        sheet.addMergedRegion(new CellRangeAddress(4, 4, 0, 1));
+        Name name = workbook.createName();
+        name.setNameName("Static");
+        name.setRefersToFormula("Shift!$A$3");
+
+        transform(workbook);
+
+        for (int i = 1; i <= 4; i++)
+        {
+            assertEquals(i, TestUtility.getNumericCellValue(sheet, i, 0), 0);
+            assertEquals(i * 2, TestUtility.getNumericCellValue(sheet, i, 1), 0);
+        }
+        assertEquals(7, TestUtility.getNumericCellValue(sheet, 5, 0), 0);
+        // Excel formulas are copied as is.
+        assertEquals("A3*2", TestUtility.getFormulaCellValue(sheet, 5, 1));
+        // JETT formulas follow the cells they reference.
+        assertEquals("SUM(B2:B5)", TestUtility.getFormulaCellValue(sheet, 6, 0));
+        assertEquals("Merged", TestUtility.getStringCellValue(sheet, 7, 0));
+        assertEquals(1, sheet.getNumMergedRegions());
+        assertEquals("A8:B8", sheet.getMergedRegion(0).formatAsString());
+        assertEquals("Shift!$A$3", workbook.getName("Static").getRefersToFormula());
+        assertEquals(7, sheet.getLastRowNum());
+    }
+
+    /**
+     * Transforms a full-width loop with an invalid tag below it, and checks
+     * that the error message reports the tag's original location.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     */
+    private void tagLocationsTest(boolean xlsx)
+    {
+        Workbook workbook = createTemplate(xlsx);
+        Sheet sheet = workbook.getSheetAt(0);
+        sheet.createRow(2).createCell(0).setCellValue("Static");
+        sheet.createRow(3).createCell(0).setCellValue("<jt:doesnotexist/>");
+        try
+        {
+            transform(workbook);
+            fail("Expected TagParseException!");
+        }
+        catch (TagParseException e)
+        {
+            assertEquals("Invalid tag: <jt:doesnotexist/> at Shift!A7 (originally located at Shift!A4)",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a template with a full-width loop in its second row.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @return The template <code>Workbook</code>.
+     */
+    private Workbook createTemplate(boolean xlsx)
+    {
+        Workbook workbook = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Shift");
+        sheet.createRow(0).createCell(0).setCellValue("Header");
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${items}\" var=\"item\">${item}");
+        row.createCell(1).setCellValue("${item * 2}</jt:forEach>");
+        return workbook;
+    }
+
+    /**
+     * Transforms the given template over the items 1 through 4.
+     * @param workbook The template <code>Workbook</code>.
+     */
+    private void transform(Workbook workbook)
+    {
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("items", Arrays.asList(1, 2, 3, 4));
+        new ExcelTransformer().transform(workbook, beans);
+    }
+}
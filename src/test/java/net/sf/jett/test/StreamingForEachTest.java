@@ -0,0 +1,189 @@
+package net.sf.jett.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.exception.TagParseException;
+import net.sf.jett.test.model.Team;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that the "forEach" tag produces the same
+ * results when its items are streamed from an <code>Iterator</code>,
+ * <code>Iterable</code>, or <code>Stream</code> as when they come from a
+ * <code>List</code>.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class StreamingForEachTest
+{
+    /**
+     * Tests streaming in .xls spreadsheets.
+     */
+    @Test
+    public void testXls()
+    {
+        genericTest(false);
+    }
+
+    /**
+     * Tests streaming in .xlsx spreadsheets.
+     */
+    @Test
+    public void testXlsx()
+    {
+        genericTest(true);
+    }
+
+    /**
+     * Transforms the same template with a <code>List</code> and with each kind
+     * of streamed source, and compares the results.
+     * @param xlsx Whether to create .xlsx spreadsheets.
+     */
+    @SuppressWarnings("unchecked")
+    private void genericTest(boolean xlsx)
+    {
+        List<Team> teams = (List<Team>) TestUtility.getTeamsData().get("teams");
+        Workbook expected = transform(xlsx, teams);
+        Sheet expSheet = expected.getSheetAt(0);
+        int numTeams = (int) teams.stream().filter(team -> team.getWins() >= 40).count();
+        // Header, teams with at least 40 wins, total, footer.
+        assertEquals(numTeams + 2, expSheet.getLastRowNum());
+        assertEquals("Footer", TestUtility.getStringCellValue(expSheet, numTeams + 2, 0));
+        assertEquals("SUM(B2:B" + (numTeams + 1) + ")", TestUtility.getFormulaCellValue(expSheet, numTeams + 1, 1));
+        assertTrue(TestUtility.getBooleanCellValue(expSheet, numTeams, 2));
+
+        Iterable<Team> iterable = teams::iterator;
+        assertSameCells(expSheet, transform(xlsx, iterable).getSheetAt(0));
+        assertSameCells(expSheet, transform(xlsx, teams.iterator()).getSheetAt(0));
+
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<Team> stream = teams.stream().onClose(() -> closed.set(true));
+        assertSameCells(expSheet, transform(xlsx, stream).getSheetAt(0));
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Tests that an empty streamed source removes the block.
+     */
+    @Test
+    public void testEmpty()
+    {
+        Iterator<Team> empty = new ArrayList<Team>().iterator();
+        Sheet sheet = transform(true, empty).getSheetAt(0);
+        assertEquals("Header", TestUtility.getStringCellValue(sheet, 0, 0));
+        assertEquals("Total", TestUtility.getStringCellValue(sheet, 1, 0));
+        assertEquals("Footer", TestUtility.getStringCellValue(sheet, 2, 0));
+    }
+
+    /**
+     * Tests that a streamed source is closed when another attribute of the
+     * tag is invalid.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClosedOnInvalidAttribute()
+    {
+        List<Team> teams = (List<Team>) TestUtility.getTeamsData().get("teams");
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<Team> stream = teams.stream().onClose(() -> closed.set(true));
+        try
+        {
+            transform(true, stream, "limit=\"-1\"");
+            fail("Expected TagParseException!");
+        }
+        catch (TagParseException expected) {}
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Creates the template and transforms it with the given items.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @param items The items.
+     * @return The transformed <code>Workbook</code>.
+     */
+    private Workbook transform(boolean xlsx, Object items)
+    {
+        return transform(xlsx, items, "");
+    }
+
+    /**
+     * Creates the template, with the given additional attributes on the
+     * "forEach" tag, and transforms it with the given items.
+     * @param xlsx Whether to create an .xlsx spreadsheet.
+     * @param items The items.
+     * @param attributes Additional attributes, possibly empty.
+     * @return The transformed <code>Workbook</code>.
+     */
+    private Workbook transform(boolean xlsx, Object items, String attributes)
+    {
+        Workbook workbook = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Streaming");
+        sheet.createRow(0).createCell(0).setCellValue("Header");
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${teams}\" var=\"team\" varStatus=\"status\" " +
+                "where=\"${team.wins >= 40}\" " + attributes + ">${team.city}");
+        row.createCell(1).setCellValue("${team.wins}");
+        row.createCell(2).setCellValue("${status.last}</jt:forEach>");
+        row = sheet.createRow(2);
+        row.createCell(0).setCellValue("Total");
+        row.createCell(1).setCellValue("$[SUM(B2)]");
+        sheet.createRow(3).createCell(0).setCellValue("Footer");
+
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("teams", items);
+        new ExcelTransformer().transform(workbook, beans);
+        return workbook;
+    }
+
+    /**
+     * Asserts that the two <code>Sheets</code> have the same cell contents.
+     * @param expected The expected <code>Sheet</code>.
+     * @param actual The actual <code>Sheet</code>.
+     */
+    private void assertSameCells(Sheet expected, Sheet actual)
+    {
+        assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+        for (int r = 0; r <= expected.getLastRowNum(); r++)
+        {
+            Row expRow = expected.getRow(r);
+            Row actRow = actual.getRow(r);
+            for (int c = 0; c < 3; c++)
+            {
+                assertEquals("Row " + r + ", col " + c, toString(expRow, c), toString(actRow, c));
+            }
+        }
+    }
+
+    /**
+     * Returns a representation of the cell's type and contents.
+     * @param row The <code>Row</code>, possibly <code>null</code>.
+     * @param col The column index.
+     * @return A representation of the cell.
+     */
+    private static String toString(Row row, int col)
+    {
+        Cell cell = (row == null) ? null : row.getCell(col);
+        if (cell == null)
+            return "";
+        if (cell.getCellType() == CellType.FORMULA)
+            return "=" + cell.getCellFormula();
+        return cell.getCellType() + ":" + cell.toString();
+    }
+}
@@ -0,0 +1,306 @@
+package net.sf.jett.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.event.TagLoopEvent;
+import net.sf.jett.event.TagLoopListener;
+import net.sf.jett.transform.CompiledTemplate;
+import net.sf.jett.transform.ExcelTransformer;
+
+/**
+ * This JUnit Test class tests that a resultant .xlsx spreadsheet written
+ * through a row access window much smaller than the number of rows reads
+ * back with all of its rows, values, styles, and sheet-level settings, and
+ * that finished rows are flushed out of the workbook during transformation.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class StreamingOutputTest
+{
+    private static final int NUM_ITEMS = 500;
+    private static final int WINDOW_SIZE = 10;
+
+    /**
+     * Tests writing through a small row access window.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    public void testStreaming() throws IOException
+    {
+        check(transform(WINDOW_SIZE));
+    }
+
+    /**
+     * Tests writing directly, to show that the checks don't depend on
+     * streaming.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    public void testNotStreaming() throws IOException
+    {
+        check(transform(0));
+    }
+
+    /**
+     * Tests that the rows of finished iterations are flushed during
+     * transformation, so that the sheet never holds more than a few rows, and
+     * that the JETT formulas in flushed rows are still replaced.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    public void testFlushingDuringTransformation() throws IOException
+    {
+        MaxRowsListener listener = new MaxRowsListener();
+        try (XSSFWorkbook result = transformFlushing(WINDOW_SIZE, listener, false))
+        {
+            checkFlushing(result);
+        }
+        assertTrue("Too many rows held: " + listener.myMaxNumRows, listener.myMaxNumRows < 10);
+    }
+
+    /**
+     * Tests that the rows flushed before a cell comment was added to the
+     * sheet are put back when writing it.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    public void testFlushingWithComment() throws IOException
+    {
+        MaxRowsListener listener = new MaxRowsListener();
+        try (XSSFWorkbook result = transformFlushing(WINDOW_SIZE, listener, true))
+        {
+            checkFlushing(result);
+            Sheet sheet = result.getSheetAt(0);
+            Comment comment = sheet.getCellComment(new CellAddress(NUM_ITEMS + 2, 0));
+            assertNotNull(comment);
+            assertEquals("Note", comment.getString().getString());
+            assertEquals("Total", TestUtility.getStringCellValue(sheet, NUM_ITEMS + 2, 0));
+        }
+        assertTrue("Too many rows held: " + listener.myMaxNumRows, listener.myMaxNumRows < 10);
+    }
+
+    /**
+     * Tests the flushing template written directly, to show that the checks
+     * don't depend on flushing.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    public void testNotFlushing() throws IOException
+    {
+        MaxRowsListener listener = new MaxRowsListener();
+        try (XSSFWorkbook result = transformFlushing(0, listener, false))
+        {
+            checkFlushing(result);
+        }
+        assertTrue(listener.myMaxNumRows > NUM_ITEMS);
+    }
+
+    /**
+     * Checks the resultant spreadsheet.
+     * @param workbook The resultant <code>XSSFWorkbook</code>, read back.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void check(XSSFWorkbook workbook) throws IOException
+    {
+        try (XSSFWorkbook result = workbook)
+        {
+            Sheet sheet = result.getSheetAt(0);
+            assertEquals("Header", TestUtility.getStringCellValue(sheet, 0, 0));
+            assertEquals(40 * 20, sheet.getRow(0).getHeight());
+            for (int i = 0; i < NUM_ITEMS; i++)
+            {
+                assertEquals(i, TestUtility.getNumericCellValue(sheet, i + 1, 0), 0);
+                assertEquals("Item " + i, TestUtility.getStringCellValue(sheet, i + 1, 1));
+                assertEquals(i % 2 == 0, TestUtility.getBooleanCellValue(sheet, i + 1, 2));
+                assertEquals("#,##0.00", TestUtility.getCellStyle(sheet, i + 1, 0).getDataFormatString());
+            }
+            int last = NUM_ITEMS + 1;
+            assertEquals("SUM(A2:A" + last + ")", TestUtility.getFormulaCellValue(sheet, last, 0));
+            XSSFRichTextString rich = (XSSFRichTextString) TestUtility.getRichTextStringCellValue(sheet, last, 1);
+            assertEquals("Bold end", rich.getString());
+            assertTrue(rich.numFormattingRuns() > 0);
+            assertEquals(FormulaError.DIV0.getCode(), TestUtility.getCell(sheet, last, 2).getErrorCellValue());
+            assertTrue(TestUtility.isMergedRegionPresent(sheet, new CellRangeAddress(last + 1, last + 1, 0, 2)));
+            assertEquals(last + 1, sheet.getLastRowNum());
+            assertEquals(NUM_ITEMS + 3, sheet.getPhysicalNumberOfRows());
+        }
+    }
+
+    /**
+     * Checks the resultant spreadsheet of the flushing template.
+     * @param result The resultant <code>XSSFWorkbook</code>, read back.
+     */
+    private void checkFlushing(XSSFWorkbook result)
+    {
+        Sheet sheet = result.getSheetAt(0);
+        assertEquals("Header", TestUtility.getStringCellValue(sheet, 0, 0));
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            assertEquals(i, TestUtility.getNumericCellValue(sheet, i + 1, 0), 0);
+            assertEquals("A" + (i + 2) + "*2", TestUtility.getFormulaCellValue(sheet, i + 1, 1));
+            assertEquals("Item " + i, TestUtility.getStringCellValue(sheet, i + 1, 2));
+        }
+        int last = NUM_ITEMS + 1;
+        assertEquals("SUM(B2:B" + last + ")", TestUtility.getFormulaCellValue(sheet, last, 1));
+    }
+
+    /**
+     * Transforms a loop over many items, writing the result through the given
+     * row access window, and reads the result back.
+     * @param windowSize The row access window size, or <code>0</code> not to
+     *    stream.
+     * @return The resultant <code>XSSFWorkbook</code>.
+     * @throws IOException If an I/O error occurs.
+     */
+    private XSSFWorkbook transform(int windowSize) throws IOException
+    {
+        CompiledTemplate template;
+        try (XSSFWorkbook workbook = createTemplate())
+        {
+            template = new CompiledTemplate(workbook);
+        }
+        List<Integer> items = new ArrayList<>(NUM_ITEMS);
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            items.add(i);
+        }
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("items", items);
+        ExcelTransformer transformer = new ExcelTransformer();
+        transformer.setRowAccessWindowSize(windowSize);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        transformer.transform(template, beans, os);
+        return new XSSFWorkbook(new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    /**
+     * Transforms a loop over many items whose rows can be flushed during
+     * transformation, writing the result through the given row access
+     * window, and reads the result back.
+     * @param windowSize The row access window size, or <code>0</code> not to
+     *    stream.
+     * @param listener The <code>MaxRowsListener</code> for the loop.
+     * @param comment Whether to add a cell comment below the loop.
+     * @return The resultant <code>XSSFWorkbook</code>.
+     * @throws IOException If an I/O error occurs.
+     */
+    private XSSFWorkbook transformFlushing(int windowSize, MaxRowsListener listener, boolean comment)
+            throws IOException
+    {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Flushing");
+        sheet.createRow(0).createCell(0).setCellValue("Header");
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${items}\" var=\"item\" onLoopProcessed=\"${listener}\">${item}");
+        row.createCell(1).setCellValue("$[A2*2]");
+        row.createCell(2).setCellValue("Item ${item}</jt:forEach>");
+        row = sheet.createRow(2);
+        row.createCell(1).setCellValue("$[SUM(B2)]");
+        if (comment)
+        {
+            sheet.createRow(3).createCell(0).setCellValue(
+                    "<jt:comment value=\"Total\" comment=\"Note\" author=\"JETT\"/>");
+        }
+
+        CompiledTemplate template = new CompiledTemplate(workbook);
+        List<Integer> items = new ArrayList<>(NUM_ITEMS);
+        for (int i = 0; i < NUM_ITEMS; i++)
+        {
+            items.add(i);
+        }
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("items", items);
+        beans.put("listener", listener);
+        ExcelTransformer transformer = new ExcelTransformer();
+        transformer.setRowAccessWindowSize(windowSize);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        transformer.transform(template, beans, os);
+        return new XSSFWorkbook(new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    /**
+     * Creates a template with a styled header, a loop with numeric, string,
+     * and boolean results, and a formula, rich text, an error value, and a
+     * merged region below the loop.
+     * @return The template <code>XSSFWorkbook</code>.
+     */
+    private XSSFWorkbook createTemplate()
+    {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Streaming");
+        Row row = sheet.createRow(0);
+        row.setHeightInPoints(40);
+        row.createCell(0).setCellValue("Header");
+
+        CellStyle numberStyle = workbook.createCellStyle();
+        numberStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue("<jt:forEach items=\"${items}\" var=\"item\">${item}");
+        row.getCell(0).setCellStyle(numberStyle);
+        row.createCell(1).setCellValue("Item ${item}");
+        row.createCell(2).setCellValue("${item % 2 == 0}</jt:forEach>");
+
+        row = sheet.createRow(2);
+        row.createCell(0).setCellValue("$[SUM(A2)]");
+        XSSFFont bold = workbook.createFont();
+        bold.setBold(true);
+        XSSFRichTextString rich = new XSSFRichTextString("Bold end");
+        rich.applyFont(0, 4, bold);
+        row.createCell(1).setCellValue(rich);
+        row.createCell(2).setCellErrorValue(FormulaError.DIV0.getCode());
+
+        sheet.createRow(3).createCell(0).setCellValue("Merged");
+        sheet.addMergedRegion(new CellRangeAddress(3, 3, 0, 2));
+        return workbook;
+    }
+
+    /**
+     * A <code>MaxRowsListener</code> records the most rows that the sheet
+     * held after an iteration was processed.
+     */
+    public static class MaxRowsListener implements TagLoopListener
+    {
+        private int myMaxNumRows;
+
+        /**
+         * Processes every iteration.
+         * @param event The <code>TagLoopEvent</code>.
+         * @return <code>true</code>.
+         */
+        @Override
+        public boolean beforeTagLoopProcessed(TagLoopEvent event)
+        {
+            return true;
+        }
+
+        /**
+         * Records the number of rows in the sheet.
+         * @param event The <code>TagLoopEvent</code>.
+         */
+        @Override
+        public void onTagLoopProcessed(TagLoopEvent event)
+        {
+            myMaxNumRows = Math.max(myMaxNumRows, event.getSheet().getPhysicalNumberOfRows());
+        }
+    }
+}
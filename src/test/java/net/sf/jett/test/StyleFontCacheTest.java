@@ -191,6 +191,8 @@ public class StyleFontCacheTest extends TestCase
                 bottomBorderColor, leftBorderColor, rightBorderColor, topBorderColor, fontCharset, fontTypeOffset,
                 locked, hidden);
         assertNotNull(nowCached);
+        assertEquals(2, csCache.getNumHits());
+        assertEquals(1, csCache.getNumMisses());
     }
 
     /**
@@ -201,6 +203,21 @@ public class StyleFontCacheTest extends TestCase
     {
         Sheet sFontCache = workbook.getSheetAt(1);
         FontCache fCache = new FontCache(workbook);
+        Font f = workbook.getFontAt(sFontCache.getRow(0).getCell(0).getCellStyle().getFontIndex());
+        // Workbooks may contain duplicate fonts; any equivalent font will do.
+        Font found = fCache.findFont(f);
+        assertNotNull(found);
+        assertEquals(f.getFontName(), found.getFontName());
+        Color fontColor;
+        if (workbook instanceof HSSFWorkbook)
+            fontColor = ExcelColor.getHssfColorByIndex(f.getColor());
+        else
+            fontColor = new XSSFColor(((XSSFFont) f).getXSSFColor().getRGB(), new DefaultIndexedColorMap());
+        // Only the font name differs.
+        assertNull(fCache.retrieveFont(f.getBold(), f.getItalic(), fontColor, f.getFontName() + "X",
+                f.getFontHeightInPoints(), f.getUnderline(), f.getStrikeout(), f.getCharSet(), f.getTypeOffset()));
+        assertEquals(1, fCache.getNumHits());
+        assertEquals(1, fCache.getNumMisses());
     }
 
     /**
@@ -0,0 +1,152 @@
+package net.sf.jett.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.model.Style;
+import net.sf.jett.model.StyleSheet;
+import net.sf.jett.model.WorkbookContext;
+
+/**
+ * This JUnit Test class tests that <code>StyleSheets</code> resolve style
+ * classes once per combination, and are parsed from a file only once until
+ * the file changes.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class StyleSheetTest
+{
+    /**
+     * Tests resolving combinations of style classes.
+     */
+    @Test
+    public void testResolve()
+    {
+        StyleSheet styleSheet = new StyleSheet(
+                ".left { alignment: left; font-weight: bold }\n.right { alignment: right }");
+
+        Style resolved = styleSheet.resolve(Arrays.asList("left", " right "));
+        assertEquals(HorizontalAlignment.RIGHT, resolved.getAlignment());
+        assertTrue(resolved.getFontBoldweight());
+        assertSame(resolved, styleSheet.resolve(Arrays.asList("left", "right")));
+
+        resolved = styleSheet.resolve(Arrays.asList("right", "left", "unknown"));
+        assertEquals(HorizontalAlignment.LEFT, resolved.getAlignment());
+        assertFalse(styleSheet.resolve(Arrays.asList("unknown")).isStyleToApply());
+    }
+
+    /**
+     * Tests that only the most recently used combinations of style classes
+     * are remembered.
+     */
+    @Test
+    public void testResolvedStylesBounded()
+    {
+        StyleSheet styleSheet = new StyleSheet(".a { alignment: left }");
+        Style first = styleSheet.resolve(Arrays.asList("a", "class0"));
+        Style second = styleSheet.resolve(Arrays.asList("a", "class1"));
+        Style third = styleSheet.resolve(Arrays.asList("a", "class2"));
+        for (int i = 3; i < StyleSheet.MAX_RESOLVED_STYLES; i++)
+        {
+            styleSheet.resolve(Arrays.asList("a", "class" + i));
+        }
+        // Using the first combination again keeps it from being evicted.
+        assertSame(first, styleSheet.resolve(Arrays.asList("a", "class0")));
+        assertSame(second, styleSheet.resolve(Arrays.asList("a", "class1")));
+        styleSheet.resolve(Arrays.asList("a", "class" + StyleSheet.MAX_RESOLVED_STYLES));
+        styleSheet.resolve(Arrays.asList("a", "class" + (StyleSheet.MAX_RESOLVED_STYLES + 1)));
+
+        assertSame(first, styleSheet.resolve(Arrays.asList("a", "class0")));
+        assertSame(second, styleSheet.resolve(Arrays.asList("a", "class1")));
+        Style evicted = styleSheet.resolve(Arrays.asList("a", "class2"));
+        assertNotSame(third, evicted);
+        assertEquals(HorizontalAlignment.LEFT, evicted.getAlignment());
+        assertSame(evicted, styleSheet.resolve(Arrays.asList("a", "class2")));
+    }
+
+    /**
+     * Tests that the deprecated <code>Map</code> of styles on
+     * <code>WorkbookContext</code> still works on top of a
+     * <code>StyleSheet</code>.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testStyleMap()
+    {
+        Style style = new Style();
+        style.setAlignment(HorizontalAlignment.CENTER);
+        Map<String, Style> styleMap = new HashMap<>();
+        styleMap.put("center", style);
+
+        WorkbookContext context = new WorkbookContext();
+        context.setStyleMap(styleMap);
+        assertEquals(HorizontalAlignment.CENTER,
+                context.getStyleSheet().resolve(Collections.singletonList("center")).getAlignment());
+        assertSame(style, context.getStyleMap().get("center"));
+
+        context.setStyleMap(null);
+        assertNull(context.getStyleSheet());
+    }
+
+    /**
+     * Tests that merged styles override styles of the same name.
+     */
+    @Test
+    public void testMerge()
+    {
+        StyleSheet first = new StyleSheet(".a { alignment: left }\n.b { alignment: left }");
+        StyleSheet second = new StyleSheet(".b { alignment: right }");
+
+        StyleSheet merged = first.merge(second);
+        assertEquals(2, merged.getStyleMap().size());
+        assertEquals(HorizontalAlignment.RIGHT, merged.getStyleMap().get("b").getAlignment());
+        assertSame(second, StyleSheet.EMPTY.merge(second));
+    }
+
+    /**
+     * Tests that a CSS file is parsed again only when it's modified.
+     * @throws IOException If the temporary file can't be written.
+     */
+    @Test
+    public void testForFile() throws IOException
+    {
+        File file = File.createTempFile("jett", ".css");
+        file.deleteOnExit();
+        write(file, ".a { alignment: left }");
+        assertTrue(file.setLastModified(1000000000000L));
+
+        StyleSheet styleSheet = StyleSheet.forFile(file.getPath());
+        assertSame(styleSheet, StyleSheet.forFile(file.getPath()));
+
+        write(file, ".a { alignment: right }");
+        assertTrue(file.setLastModified(1000000001000L));
+        StyleSheet modified = StyleSheet.forFile(file.getPath());
+        assertNotSame(styleSheet, modified);
+        assertEquals(HorizontalAlignment.RIGHT, modified.getStyleMap().get("a").getAlignment());
+    }
+
+    /**
+     * Writes the given text to the given file.
+     * @param file The <code>File</code>.
+     * @param text The text.
+     * @throws IOException If the file can't be written.
+     */
+    private static void write(File file, String text) throws IOException
+    {
+        try (Writer writer = new FileWriter(file))
+        {
+            writer.write(text);
+        }
+    }
+}
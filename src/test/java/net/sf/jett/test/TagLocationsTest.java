@@ -0,0 +1,184 @@
+package net.sf.jett.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import net.sf.jett.model.TagLocations;
+import net.sf.jett.model.WorkbookContext;
+
+/**
+ * This JUnit Test class tests that <code>TagLocations</code> moves, copies,
+ * and removes tag locations by range.
+ *
+ * @author Randy Gettman
+ * @since 0.12.0
+ */
+public class TagLocationsTest
+{
+    /**
+     * Tests shifting a range, including into locations that are occupied.
+     */
+    @Test
+    public void testShiftRange()
+    {
+        TagLocations locations = new TagLocations();
+        locations.put("Sheet", 1, 0, "Sheet!A2");
+        locations.put("Sheet", 1, 2, "Sheet!C2");
+        locations.put("Sheet", 2, 0, "Sheet!A3");
+        locations.put("Sheet", 5, 0, "Sheet!A6");
+        locations.put("Other", 1, 0, "Other!A2");
+
+        locations.shiftRange("Sheet", 0, 1, 1, 2, 0, 1);
+
+        assertNull(locations.get("Sheet", 1, 0));
+        assertEquals("Sheet!A2", locations.get("Sheet", 2, 0));
+        assertEquals("Sheet!A3", locations.get("Sheet", 3, 0));
+        // Outside the range.
+        assertEquals("Sheet!C2", locations.get("Sheet", 1, 2));
+        assertEquals("Sheet!A6", locations.get("Sheet", 5, 0));
+        assertEquals("Other!A2", locations.get("Other", 1, 0));
+        assertEquals(5, locations.size());
+
+        locations.shiftRange("Sheet", 0, 0, 2, 3, 1, -1);
+        assertEquals("Sheet!A2", locations.get("Sheet", 1, 1));
+        assertEquals("Sheet!A3", locations.get("Sheet", 2, 1));
+        assertEquals(5, locations.size());
+    }
+
+    /**
+     * Tests that shifting a range moves only the locations in the range's
+     * rows and columns, leaving those in the rows just above and below it,
+     * and in the columns just left and right of it, where they were.
+     */
+    @Test
+    public void testShiftRangeTouchesOnlyRange()
+    {
+        TagLocations locations = new TagLocations();
+        for (int r = 0; r < 10; r++)
+        {
+            for (int c = 0; c < 5; c++)
+            {
+                locations.put("Sheet", r, c, "Sheet!" + r + "," + c);
+            }
+        }
+
+        // Rows 3-5, columns 1-3, down past the last row.
+        locations.shiftRange("Sheet", 1, 3, 3, 5, 0, 10);
+
+        for (int r = 0; r < 10; r++)
+        {
+            for (int c = 0; c < 5; c++)
+            {
+                boolean inRange = (r >= 3 && r <= 5 && c >= 1 && c <= 3);
+                assertEquals(inRange ? null : "Sheet!" + r + "," + c, locations.get("Sheet", r, c));
+                assertEquals(inRange ? "Sheet!" + r + "," + c : null, locations.get("Sheet", r + 10, c));
+            }
+        }
+        assertEquals(50, locations.size());
+    }
+
+    /**
+     * Tests copying and removing a range.
+     */
+    @Test
+    public void testCopyAndRemoveRange()
+    {
+        TagLocations locations = new TagLocations();
+        locations.put("Sheet", 0, 0, "Sheet!A1");
+        locations.put("Sheet", 0, 1, "Sheet!B1");
+
+        locations.copyRange("Sheet", 0, 1, 0, 0, 0, 1);
+        locations.copyRange("Sheet", 0, 1, 0, 0, 0, 2);
+        assertEquals(6, locations.size());
+        assertEquals("Sheet!B1", locations.get("Sheet", 2, 1));
+
+        // A copy is independent of the original.
+        TagLocations copy = new TagLocations(locations);
+        locations.removeRange("Sheet", 0, 1, 1, 2);
+        assertEquals(2, locations.size());
+        assertNull(locations.get("Sheet", 1, 0));
+        assertEquals("Sheet!A1", locations.get("Sheet", 0, 0));
+        assertEquals(6, copy.size());
+        assertEquals("Sheet!A1", copy.get("Sheet", 1, 0));
+    }
+
+    /**
+     * Tests moving whole rows onto each other, and copying part of a row
+     * right without disturbing the row's other locations.
+     */
+    @Test
+    public void testOverlappingRowsAndColumns()
+    {
+        TagLocations locations = new TagLocations();
+        for (int r = 0; r < 4; r++)
+        {
+            locations.put("Sheet", r, 0, "Sheet!A" + (r + 1));
+        }
+        locations.put("Sheet", 1, 5, "Sheet!F2");
+
+        // Rows 0-2 move down onto rows 1-3; row 1's F2 stays behind.
+        locations.shiftRange("Sheet", 0, 0, 0, 2, 0, 1);
+        assertNull(locations.get("Sheet", 0, 0));
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 0));
+        assertEquals("Sheet!A2", locations.get("Sheet", 2, 0));
+        assertEquals("Sheet!A3", locations.get("Sheet", 3, 0));
+        assertEquals("Sheet!F2", locations.get("Sheet", 1, 5));
+        assertEquals(4, locations.size());
+
+        // Copy A2 right twice, onto and past F2.
+        locations.copyRange("Sheet", 0, 0, 1, 1, 5, 0);
+        locations.copyRange("Sheet", 0, 0, 1, 1, 6, 0);
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 0));
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 5));
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 6));
+        assertEquals(5, locations.size());
+
+        // Shifting left past the first column drops locations.
+        locations.shiftRange("Sheet", 0, 6, 1, 1, -5, 0);
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 0));
+        assertEquals("Sheet!A1", locations.get("Sheet", 1, 1));
+        assertEquals(4, locations.size());
+    }
+
+    /**
+     * Tests converting to and from a tag locations map, including through the
+     * deprecated <code>WorkbookContext</code> methods.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testMap()
+    {
+        Map<String, String> map = new HashMap<>();
+        map.put("Sheet!B3", "Sheet!B1");
+        map.put("'My Sheet'!A2", "'My Sheet'!A1");
+        WorkbookContext context = new WorkbookContext();
+        context.setTagLocationsMap(map);
+
+        TagLocations locations = context.getTagLocations();
+        assertEquals(2, locations.size());
+        assertEquals("Sheet!B1", locations.get("Sheet", 2, 1));
+        assertEquals("'My Sheet'!A1", locations.get("My Sheet", 1, 0));
+        assertEquals(map, context.getTagLocationsMap());
+
+        context.setTagLocationsMap(null);
+        assertNull(context.getTagLocations());
+        assertNull(context.getTagLocationsMap());
+    }
+
+    /**
+     * Tests that nothing is tracked when tracking is turned off.
+     */
+    @Test
+    public void testDisabled()
+    {
+        TagLocations locations = new TagLocations(false);
+        assertFalse(locations.isEnabled());
+        locations.put("Sheet", 0, 0, "Sheet!A1");
+        locations.shiftRange("Sheet", 0, 0, 0, 0, 0, 1);
+        assertTrue(locations.isEmpty());
+        assertNull(locations.get("Sheet", 1, 0));
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +23,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import net.sf.jett.exception.TagParseException;
+import net.sf.jett.parser.ParsedTag;
 import net.sf.jett.parser.TagParser;
 
 /**
@@ -314,4 +316,36 @@ public class TagParserTest
             assertEquals("Cannot find Formula end in tag text: $[IF(L2>TODAY(),\"Date is in the future\",\"\") at Sheet1!A16", expected.getMessage());
         }
     }
+
+    /**
+     * Ensure that parsing text with the <code>ParsedTag</code> of an earlier
+     * parse of the same text yields the same results.
+     * @since 0.12.0
+     */
+    @Test
+    public void testParsedTag()
+    {
+        Cell cell = getCellForTest(14, 0);
+        TagParser parser = new TagParser(cell);
+        parser.parse();
+        Map<String, ParsedTag> parsedTags = Collections.singletonMap(
+                cell.getStringCellValue(), parser.getParsedTag());
+
+        TagParser cached = new TagParser(cell);
+        cached.parse(parsedTags);
+
+        assertTrue(cached.isTag());
+        assertEquals(parser.isEndTag(), cached.isEndTag());
+        assertEquals(parser.isBodiless(), cached.isBodiless());
+        assertEquals(parser.getNamespaceAndTagName(), cached.getNamespaceAndTagName());
+        assertEquals(parser.getTagText(), cached.getTagText());
+        assertEquals(parser.getAfterTagIdx(), cached.getAfterTagIdx());
+        Map<String, RichTextString> attributes = parser.getAttributes();
+        Map<String, RichTextString> cachedAttributes = cached.getAttributes();
+        assertEquals(attributes.keySet(), cachedAttributes.keySet());
+        for (String attrName : attributes.keySet())
+        {
+            assertEquals(attributes.get(attrName).getString(), cachedAttributes.get(attrName).getString());
+        }
+    }
 }